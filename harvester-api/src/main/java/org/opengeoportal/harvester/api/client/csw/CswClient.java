@@ -5,9 +5,15 @@ import org.jdom.Element;
 import org.opengeoportal.harvester.api.client.csw.request.*;
 import org.opengeoportal.harvester.api.client.csw.response.GetCapabilitiesResponse;
 import org.opengeoportal.harvester.api.client.csw.response.GetRecordsResponse;
+import org.opengeoportal.harvester.api.client.http.TransferCounter;
+import org.opengeoportal.harvester.api.domain.InstanceType;
+import org.opengeoportal.harvester.api.metrics.IngestMetrics;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
 import java.net.URL;
 import org.opengeoportal.harvester.api.exception.CswClientException;
 
@@ -23,6 +29,13 @@ public class CswClient {
     /** CSW server url **/
     private String serverUrl;
 
+    /** Counts the bytes of the responses, can be null **/
+    private TransferCounter transferCounter;
+
+    /** Times the requests **/
+    private IngestMetrics metrics = MetricsRegistry.getDefault().forIngest(
+            null, InstanceType.CSW.name());
+
     public CswClient(String serverUrl) {
         this.serverUrl = serverUrl;
     }
@@ -31,16 +44,34 @@ public class CswClient {
         this(serverUrl.toString());
     }
 
+    /**
+     * @param transferCounter counts the bytes of the responses of the
+     * requests created by this client.
+     */
+    public void setTransferCounter(TransferCounter transferCounter) {
+        this.transferCounter = transferCounter;
+    }
+
+    /**
+     * @param metrics metrics where the GetRecords requests are timed, tagged
+     * with the ingest that sends them.
+     */
+    public void setMetrics(IngestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
 
     public GetCapabilitiesResponse getCapabilities() throws Exception {
         URL url = new URL(this.serverUrl);
         GetCapabilitiesRequest cswGetCapabilities = new GetCapabilitiesRequest(url);
         cswGetCapabilities.setUrl(url);
+        cswGetCapabilities.setTransferCounter(transferCounter);
 
        return new GetCapabilitiesParser().parse(cswGetCapabilities.execute());
     }
 
     public GetRecordsResponse getRecords(GetRecordsRequest request, int start, int max) throws Exception {
+        Timer.Context timer = metrics.timer("csw.getRecords").time();
         try
         {
             logger.info("Searching on : " + " ("+ start + ", " + (start + max) +")");
@@ -56,6 +87,49 @@ public class CswClient {
         } catch(Exception e) {
             logger.warn("Raised exception when searching : "+ e);
             throw new CswClientException("Raised exception when searching: " + e.getMessage(), e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Streaming version of {@link #getRecords(GetRecordsRequest, int, int)}.
+     * The records are passed to the handler while the response is read, so
+     * the whole response is never loaded in memory.
+     *
+     * @param request the request.
+     * @param start first record position, used for logging.
+     * @param max max number of records, used for logging.
+     * @param handler receives each record as a DOM document.
+     * @return the response attributes, without results.
+     * @throws Exception if the request fails or the handler throws an
+     * exception.
+     */
+    public GetRecordsResponse getRecords(GetRecordsRequest request, int start, int max,
+                                         final GetRecordsStreamParser.RecordHandler handler) throws Exception {
+        Timer.Context timer = metrics.timer("csw.getRecords").time();
+        try
+        {
+            logger.info("Searching on : " + " ("+ start + ", " + (start + max) +")");
+            GetRecordsResponse response = request.execute(new CatalogRequest.ResponseHandler<GetRecordsResponse>() {
+                @Override
+                public GetRecordsResponse handle(InputStream response) throws Exception {
+                    return new GetRecordsStreamParser().parse(response, handler);
+                }
+            });
+            if(logger.isDebugEnabled()) {
+                logger.debug("Sent request " + request.getSentData());
+            }
+
+            return response;
+
+        } catch(InterruptedException e) {
+            throw e;
+        } catch(Exception e) {
+            logger.warn("Raised exception when searching : "+ e);
+            throw new CswClientException("Raised exception when searching: " + e.getMessage(), e);
+        } finally {
+            timer.stop();
         }
     }
 
@@ -72,6 +146,7 @@ public class CswClient {
         URL url = new URL(this.serverUrl);
         GetRecordsRequest request = new GetRecordsRequest(url);
         request.setUrl(url);
+        request.setTransferCounter(transferCounter);
 
         request.setResultType(ResultType.RESULTS);
         request.setElementSetName(ElementSetName.FULL);
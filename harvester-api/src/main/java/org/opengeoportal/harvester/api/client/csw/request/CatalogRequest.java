@@ -4,7 +4,7 @@ package org.opengeoportal.harvester.api.client.csw.request;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.NameValuePair;
@@ -19,10 +19,16 @@ import org.jdom.Namespace;
 import org.opengeoportal.harvester.api.client.geonetwork.Xml;
 import org.opengeoportal.harvester.api.client.csw.Csw;
 import org.opengeoportal.harvester.api.client.csw.exception.CatalogException;
+import org.opengeoportal.harvester.api.client.http.HttpTransport;
+import org.opengeoportal.harvester.api.client.http.TransferCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -47,7 +53,10 @@ public abstract class CatalogRequest
 
     protected String serverVersion = Csw.CSW_VERSION;  // Sets default value
 
-    private HttpClient client = new HttpClient();
+    private final HttpTransport transport;
+    private final HttpState state = new HttpState();
+    private final HostConfiguration hostConfiguration = new HostConfiguration();
+    private TransferCounter transferCounter;
 
     private ArrayList<NameValuePair> alGetParams;
     private ArrayList<NameValuePair> alSetupGetParams;
@@ -63,16 +72,31 @@ public abstract class CatalogRequest
 
 
     public CatalogRequest(URL cswServerUrl) {
+        this(cswServerUrl, HttpTransport.getDefault());
+    }
+
+    /**
+     * @param cswServerUrl CSW server url.
+     * @param transport shared transport used to send the request. The cookies
+     * and host configuration belong to the request.
+     */
+    public CatalogRequest(URL cswServerUrl, HttpTransport transport) {
         this.host    = cswServerUrl.getHost();
         this.port    = cswServerUrl.getPort();
         this.protocol= cswServerUrl.getProtocol();
+        this.transport = transport;
 
         setMethod(Method.POST);
         Cookie cookie = new Cookie();
-        HttpState state = new HttpState();
         state.addCookie(cookie);
-        client.setState(state);
-        client.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
+    }
+
+    /**
+     * @param transferCounter counts the bytes of the responses, can be
+     * <code>null</code>.
+     */
+    public void setTransferCounter(TransferCounter transferCounter) {
+        this.transferCounter = transferCounter;
     }
 
     public String getHost() {
@@ -197,6 +221,64 @@ public abstract class CatalogRequest
         return response;
     }
 
+    /**
+     * Executes the request passing the response body to a handler, so it can
+     * be read as a stream instead of loading it in memory. The handler is
+     * responsible of detecting exception reports. SOAP responses are loaded
+     * and unembedded before calling the handler.
+     *
+     * @param handler reads the response body.
+     * @param <T> type of the handler result.
+     * @return the result of the handler.
+     * @throws Exception if the request fails or the handler throws it.
+     */
+    public <T> T execute(ResponseHandler<T> handler) throws Exception {
+        if (useSOAP) {
+            Element response = execute();
+            return handler.handle(new ByteArrayInputStream(Xml.getString(
+                    new Document((Element) response.detach())).getBytes("UTF-8")));
+        }
+
+        HttpMethodBase httpMethod = setupHttpMethod();
+        hostConfiguration.setHost(host, port, protocol);
+        HttpTransport.Response response = null;
+        try {
+            response = transport.executeCached(hostConfiguration, httpMethod,
+                    state, transferCounter);
+
+            if (response.getStatusCode() == 200) {
+                return handler.handle(response.getBody());
+            } else {
+                throw new CatalogException("http" + httpMethod.getStatusCode(), httpMethod.getStatusText(), "");
+            }
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+            httpMethod.releaseConnection();
+            try {
+                setupSentData(httpMethod);
+                setupReceivedData(httpMethod, null);
+            } catch (Throwable e) {
+                logger.warn("Exception was raised during cleanup of a CSW request : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the body of a successful response.
+     *
+     * @param <T> type of the result.
+     */
+    public interface ResponseHandler<T> {
+        /**
+         * @param response the response body. It is closed by the request.
+         * @return the result of reading the response.
+         * @throws Exception if the response cannot be read.
+         */
+        T handle(InputStream response) throws Exception;
+    }
+
     protected abstract String  getRequestName();
 
     protected abstract void    setupGetParams();
@@ -330,20 +412,28 @@ public abstract class CatalogRequest
     }
 
     private Element doExecute(HttpMethodBase httpMethod) throws IOException, JDOMException, CatalogException {
-        client.getHostConfiguration().setHost(host, port, protocol);
+        hostConfiguration.setHost(host, port, protocol);
 
         byte[] data = null;
 
+        HttpTransport.Response response = null;
         try
         {
-            client.executeMethod(httpMethod);
-
-            if (httpMethod.getStatusCode() == 200) {
-                return Xml.loadStream(httpMethod.getResponseBodyAsStream());
+            response = transport.executeCached(hostConfiguration, httpMethod,
+                    state, transferCounter);
+
+            if (response.getStatusCode() == 200) {
+                // Read the whole body so it is cached, the parser can stop
+                // before the end
+                byte[] body = ByteStreams.toByteArray(response.getBody());
+                return Xml.loadStream(new ByteArrayInputStream(body));
             } else {
                 throw new CatalogException("http" + httpMethod.getStatusCode(), httpMethod.getStatusText(), "");
             }
         } finally {
+            if (response != null) {
+                response.close();
+            }
             httpMethod.releaseConnection();
             try {
                 setupSentData(httpMethod);
@@ -391,6 +481,7 @@ public abstract class CatalogRequest
         }
 
 //		httpMethod.setFollowRedirects(true);
+        httpMethod.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
 
         return httpMethod;
     }
@@ -0,0 +1,255 @@
+package org.opengeoportal.harvester.api.client.csw.request;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom.input.DOMBuilder;
+import org.opengeoportal.harvester.api.client.csw.Csw;
+import org.opengeoportal.harvester.api.client.csw.exception.CatalogException;
+import org.opengeoportal.harvester.api.client.csw.response.GetRecordsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Streaming version of {@link GetRecordsResponseParser}. Reads a GetRecords
+ * response with StAX and builds a DOM document for each
+ * <code>csw:SearchResults</code> child as soon as it is read, so only one
+ * record is kept in memory at a time.
+ *
+ */
+public class GetRecordsStreamParser {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final DocumentBuilder documentBuilder;
+
+    public GetRecordsStreamParser() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        this.documentBuilder = factory.newDocumentBuilder();
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        return factory;
+    }
+
+    /**
+     * Parse a GetRecords response.
+     *
+     * @param response the response stream.
+     * @param handler receives each record.
+     * @return the response attributes. The results list is always empty, the
+     * records are passed to the handler.
+     * @throws Exception if the response is an exception report, it cannot be
+     * parsed or the handler throws an exception.
+     */
+    public GetRecordsResponse parse(InputStream response, RecordHandler handler)
+            throws Exception {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(response);
+        try {
+            GetRecordsResponse getRecordsResponse = new GetRecordsResponse();
+            getRecordsResponse.setResults(Collections
+                    .<org.jdom.Element> emptyList());
+
+            // Namespaces declared in the ancestors of the records, they are
+            // copied to each record so QName values can still be resolved.
+            Map<String, String> namespaces = Maps.newLinkedHashMap();
+
+            nextStartElement(reader);
+            if ("ExceptionReport".equals(reader.getLocalName())) {
+                Document exception = readElement(reader, namespaces);
+                CatalogException.unmarshal(new DOMBuilder().build(exception
+                        .getDocumentElement()));
+            }
+            addNamespaces(reader, namespaces);
+
+            boolean found = false;
+            while (!found && nextStartElement(reader)) {
+                addNamespaces(reader, namespaces);
+                found = "SearchResults".equals(reader.getLocalName())
+                        && isCswNamespace(reader.getNamespaceURI());
+            }
+            if (!found) {
+                throw new XMLStreamException("Missing 'SearchResults'");
+            }
+            if (Csw.NAMESPACE_CSW_OLD.getURI().equals(reader.getNamespaceURI())) {
+                logger.warn("Received GetRecords response with incorrect namespace: "
+                        + Csw.NAMESPACE_CSW_OLD);
+            }
+
+            getRecordsResponse.setNumberOfRecordsMatched(Integer.parseInt(
+                    reader.getAttributeValue(null, "numberOfRecordsMatched")));
+            getRecordsResponse.setNumberOfRecordsReturned(Integer.parseInt(
+                    reader.getAttributeValue(null, "numberOfRecordsReturned")));
+            getRecordsResponse.setNextRecord(Integer.parseInt(
+                    reader.getAttributeValue(null, "nextRecord")));
+            getRecordsResponse.setElementSet(reader.getAttributeValue(null,
+                    "elementSet"));
+
+            // Read the SearchResults children one by one
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    handler.record(readElement(reader, namespaces));
+                }
+                event = reader.next();
+            }
+
+            return getRecordsResponse;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isCswNamespace(String uri) {
+        return Csw.NAMESPACE_CSW.getURI().equals(uri)
+                || Csw.NAMESPACE_CSW_OLD.getURI().equals(uri);
+    }
+
+    /**
+     * Move the reader to the next start element.
+     *
+     * @return <code>false</code> if the end of the document has been reached.
+     */
+    private static boolean nextStartElement(XMLStreamReader reader)
+            throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addNamespaces(XMLStreamReader reader,
+            Map<String, String> namespaces) {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            namespaces.put(StringUtils.defaultString(reader.getNamespacePrefix(i)),
+                    reader.getNamespaceURI(i));
+        }
+    }
+
+    /**
+     * Build a DOM document with the element where the reader is positioned.
+     * When it returns the reader is positioned at the element end.
+     *
+     * @param reader reader positioned at a start element.
+     * @param inheritedNamespaces namespaces declared in the element ancestors.
+     * @return the document.
+     */
+    private Document readElement(XMLStreamReader reader,
+            Map<String, String> inheritedNamespaces) throws XMLStreamException {
+        Document document = documentBuilder.newDocument();
+        Element root = createElement(document, reader);
+        for (Map.Entry<String, String> ns : inheritedNamespaces.entrySet()) {
+            // The default namespace is not inherited, elements without prefix
+            // already carry their namespace
+            if (ns.getKey().length() == 0) {
+                continue;
+            }
+            String attribute = XMLConstants.XMLNS_ATTRIBUTE + ":" + ns.getKey();
+            if (!root.hasAttribute(attribute)) {
+                root.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        attribute, ns.getValue());
+            }
+        }
+        document.appendChild(root);
+
+        Node current = root;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element element = createElement(document, reader);
+                current.appendChild(element);
+                current = element;
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                current = current.getParentNode();
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                current.appendChild(document.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.CDATA:
+                current.appendChild(document.createCDATASection(reader
+                        .getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                current.appendChild(document.createComment(reader.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                current.appendChild(document.createProcessingInstruction(
+                        reader.getPITarget(), reader.getPIData()));
+                break;
+            default:
+                break;
+            }
+        }
+        return document;
+    }
+
+    private static Element createElement(Document document,
+            XMLStreamReader reader) {
+        Element element = document.createElementNS(
+                StringUtils.trimToNull(reader.getNamespaceURI()),
+                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    StringUtils.isEmpty(prefix) ? XMLConstants.XMLNS_ATTRIBUTE
+                            : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(
+                    StringUtils.trimToNull(reader.getAttributeNamespace(i)),
+                    qualifiedName(reader.getAttributePrefix(i),
+                            reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return StringUtils.isEmpty(prefix) ? localName : prefix + ":"
+                + localName;
+    }
+
+    /**
+     * Receives the records of a GetRecords response.
+     */
+    public interface RecordHandler {
+        /**
+         * @param record a <code>csw:SearchResults</code> child as a standalone
+         * DOM document.
+         * @throws Exception to stop reading the response.
+         */
+        void record(Document record) throws Exception;
+    }
+}
@@ -33,6 +33,12 @@ import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 import org.jdom.output.DOMOutputter;
+import org.opengeoportal.harvester.api.client.http.HttpTransport;
+import org.opengeoportal.harvester.api.client.http.TransferCounter;
+import org.opengeoportal.harvester.api.domain.InstanceType;
+import org.opengeoportal.harvester.api.metrics.IngestMetrics;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.Timer;
 
 import java.net.URL;
 import java.util.AbstractMap;
@@ -48,16 +54,75 @@ public class GeoNetworkClient {
     private static final Namespace GEONET_NS = Namespace.getNamespace("geonet",
             "http://www.fao.org/geonetwork");
 
+    /**
+     * Default max number of simultaneous metadata retrievals from the
+     * GeoNetwork host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
     /**
      * GeoNetwork server url. *
      */
     private final String serverUrl;
 
-    private final XmlRequest request;
+    /**
+     * Transport used to send the requests.
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Counts the bytes of the responses, can be <code>null</code>.
+     */
+    private TransferCounter transferCounter;
+
+    /**
+     * Times the searches and metadata retrievals.
+     */
+    private IngestMetrics metrics = MetricsRegistry.getDefault().forIngest(
+            null, InstanceType.GEONETWORK.name());
 
     public GeoNetworkClient(URL serverUrl) {
+        this(serverUrl, HttpTransport.getDefault());
+    }
+
+    /**
+     * Create a client that can be used from several threads at the same
+     * time. The number of simultaneous requests sent to the server is
+     * limited by the connections per host of the transport, other requests
+     * wait for a free connection.
+     *
+     * @param serverUrl GeoNetwork server url.
+     * @param transport transport used to send the requests.
+     */
+    public GeoNetworkClient(URL serverUrl, HttpTransport transport) {
         this.serverUrl = serverUrl.toString();
-        this.request = new XmlRequest(serverUrl);
+        this.transport = transport;
+    }
+
+    /**
+     * @param url request url.
+     * @return a new request that uses the pooled connections.
+     */
+    private XmlRequest newRequest(URL url) {
+        XmlRequest request = new XmlRequest(url, transport);
+        request.setTransferCounter(transferCounter);
+        return request;
+    }
+
+    /**
+     * @param transferCounter counts the bytes of the responses of the
+     * requests sent by this client.
+     */
+    public void setTransferCounter(TransferCounter transferCounter) {
+        this.transferCounter = transferCounter;
+    }
+
+    /**
+     * @param metrics metrics where the searches and metadata retrievals are
+     * timed, tagged with the ingest that sends them.
+     */
+    public void setMetrics(IngestMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
@@ -70,7 +135,7 @@ public class GeoNetworkClient {
     public List<AbstractMap.SimpleEntry<String, String>> getSources() throws Exception {
         List<AbstractMap.SimpleEntry<String, String>> sources = new ArrayList<AbstractMap.SimpleEntry<String, String>>();
 
-        request.setUrl(new URL(serverUrl + "/srv/eng/xml.info?type=sources"));
+        XmlRequest request = newRequest(new URL(serverUrl + "/srv/eng/xml.info?type=sources"));
 
         Element xmlResponse = request.execute();
         /* Response xml example:
@@ -95,10 +160,26 @@ public class GeoNetworkClient {
         return sources;
     }
 
+    /**
+     * Retrieves a metadata from the GeoNetwork server. This method is thread
+     * safe.
+     *
+     * @param metadataId metadata identifier.
+     * @return the metadata document.
+     * @throws Exception
+     */
     public org.w3c.dom.Document retrieveMetadata(int metadataId) throws Exception {
-        request.setUrl(new URL(serverUrl + "/srv/eng/xml.metadata.get"));
+        Timer.Context timer = metrics.timer("geonetwork.retrieveMetadata").time();
+        try {
+            return requestMetadata(metadataId);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private org.w3c.dom.Document requestMetadata(int metadataId) throws Exception {
+        XmlRequest request = newRequest(new URL(serverUrl + "/srv/eng/xml.metadata.get"));
 
-        request.clearParams();
         request.addParam("id", metadataId);
 
         Element md = request.execute();
@@ -116,11 +197,20 @@ public class GeoNetworkClient {
         return document;
     }
 
-    @SuppressWarnings("unchecked")
     public GeoNetworkSearchResponse search(GeoNetworkSearchParams searchParams) throws Exception {
+        Timer.Context timer = metrics.timer("geonetwork.search").time();
+        try {
+            return requestSearch(searchParams);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private GeoNetworkSearchResponse requestSearch(GeoNetworkSearchParams searchParams) throws Exception {
         GeoNetworkSearchResponse response = new GeoNetworkSearchResponse();
 
-        request.setUrl(new URL(serverUrl + "/srv/eng/xml.search"));
+        XmlRequest request = newRequest(new URL(serverUrl + "/srv/eng/xml.search"));
 
         Element xmlResponse = request.execute(searchParams.toXml());
 
@@ -24,13 +24,16 @@ import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.opengeoportal.harvester.api.client.geonetwork.exception.BadSoapResponseEx;
 import org.opengeoportal.harvester.api.client.geonetwork.exception.BadXmlResponseEx;
+import org.opengeoportal.harvester.api.client.http.HttpTransport;
+import org.opengeoportal.harvester.api.client.http.TransferCounter;
+
+import com.google.common.io.ByteStreams;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -65,21 +68,24 @@ public class XmlRequest {
 	}
 
 	public XmlRequest(String host, int port, String protocol) {
+		this(host, port, protocol, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Build a {@link XmlRequest} that sends its requests through the
+	 * {@link HttpTransport} passed. Host configuration and state are kept in
+	 * the request, so requests sharing a transport can be executed
+	 * concurrently.
+	 */
+	public XmlRequest(String host, int port, String protocol,
+			HttpTransport transport) {
 		this.host = host;
 		this.port = port;
 		this.protocol = protocol;
+		this.transport = transport;
 
 		setMethod(Method.GET);
 		state.addCookie(cookie);
-		client.setState(state);
-		client.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
-		client.setHostConfiguration(config);
-		List<String> authPrefs = new ArrayList<String>(2);
-		authPrefs.add(AuthPolicy.DIGEST);
-		authPrefs.add(AuthPolicy.BASIC);
-		// This will exclude the NTLM authentication scheme
-		client.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY,
-				authPrefs);
 	}
 
 	/**
@@ -87,8 +93,18 @@ public class XmlRequest {
 	 * @param url the URL to be requested.
 	 */
 	public XmlRequest(URL url) {
+		this(url, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Build a {@link XmlRequest} based on the URL passed that uses a shared
+	 * {@link HttpTransport}.
+	 * @param url the URL to be requested.
+	 * @param transport the transport used to send the request.
+	 */
+	public XmlRequest(URL url, HttpTransport transport) {
 		this(url.getHost(), url.getPort() == -1 ? url.getDefaultPort() : url
-				.getPort(), url.getProtocol());
+				.getPort(), url.getProtocol(), transport);
 
 		address = url.getPath();
 		query = url.getQuery();
@@ -168,7 +184,7 @@ public class XmlRequest {
 		AuthScope scope = new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT,
 				AuthScope.ANY_REALM);
 
-		client.getState().setProxyCredentials(scope, cred);
+		state.setProxyCredentials(scope, cred);
 
 		proxyAuthent = true;
 	}
@@ -239,6 +255,7 @@ public class XmlRequest {
 				: "application/soap+xml");
 		post.setPath(address);
 		post.setDoAuthentication(useAuthent());
+		configureMethod(post);
 
 		// --- execute request
 
@@ -250,13 +267,21 @@ public class XmlRequest {
 		return response;
 	}
 
+	/**
+	 * @param transferCounter
+	 *            counts the bytes of the responses, can be <code>null</code>.
+	 */
+	public void setTransferCounter(TransferCounter transferCounter) {
+		this.transferCounter = transferCounter;
+	}
+
 	public void setCredentials(String username, String password) {
 		Credentials cred = new UsernamePasswordCredentials(username, password);
 		AuthScope scope = new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT,
 				AuthScope.ANY_REALM);
 
-		client.getState().setCredentials(scope, cred);
-		client.getParams().setAuthenticationPreemptive(true);
+		state.setCredentials(scope, cred);
+		state.setAuthenticationPreemptive(true);
 		serverAuthent = true;
 	}
 
@@ -270,19 +295,20 @@ public class XmlRequest {
 		byte[] data = null;
 
 		try {
-			client.executeMethod(httpMethod);
-			data = httpMethod.getResponseBody();
+			HttpTransport.Response response = transport.executeCached(config,
+					httpMethod, state, transferCounter);
+			data = readBody(response);
 
 			// HttpClient is unable to automatically handle redirects of entity
 			// enclosing methods such as POST and PUT.
 			// Get the location header and run the request against it.
 			String redirectLocation;
 			Header locationHeader = httpMethod.getResponseHeader("location");
-			if (locationHeader != null) {
+			if (!response.isFromCache() && locationHeader != null) {
 				redirectLocation = locationHeader.getValue();
 				httpMethod.setPath(redirectLocation);
-				client.executeMethod(httpMethod);
-				data = httpMethod.getResponseBody();
+				data = readBody(transport.executeCached(config, httpMethod,
+						state, transferCounter));
 			}
 			return Xml.loadStream(new ByteArrayInputStream(data));
 		}
@@ -299,6 +325,19 @@ public class XmlRequest {
 		}
 	}
 
+	/**
+	 * Read the whole body of a response, storing it in the response cache if
+	 * it is cacheable.
+	 */
+	private static byte[] readBody(HttpTransport.Response response)
+			throws IOException {
+		try {
+			return ByteStreams.toByteArray(response.getBody());
+		} finally {
+			response.close();
+		}
+	}
+
 	private HttpMethodBase setupHttpMethod()
 			throws UnsupportedEncodingException {
 		HttpMethodBase httpMethod;
@@ -335,10 +374,26 @@ public class XmlRequest {
 
 		httpMethod.setPath(address);
 		httpMethod.setDoAuthentication(useAuthent());
+		configureMethod(httpMethod);
 
 		return httpMethod;
 	}
 
+	/**
+	 * Set the cookie and authentication policies in the method, the
+	 * transport client is shared and its parameters must not be changed.
+	 */
+	private void configureMethod(HttpMethodBase httpMethod) {
+		httpMethod.getParams().setCookiePolicy(
+				CookiePolicy.BROWSER_COMPATIBILITY);
+		List<String> authPrefs = new ArrayList<String>(2);
+		authPrefs.add(AuthPolicy.DIGEST);
+		authPrefs.add(AuthPolicy.BASIC);
+		// This will exclude the NTLM authentication scheme
+		httpMethod.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY,
+				authPrefs);
+	}
+
 	private String getSentData(HttpMethodBase httpMethod) {
 		String sentData = httpMethod.getName() + " " + httpMethod.getPath();
 
@@ -426,7 +481,8 @@ public class XmlRequest {
 	private int proxyPort;
 	private boolean proxyAuthent;
 
-	private HttpClient client = new HttpClient();
+	private final HttpTransport transport;
+	private TransferCounter transferCounter;
 	private HttpState state = new HttpState();
 	private Cookie cookie = new Cookie();
 
@@ -0,0 +1,729 @@
+package org.opengeoportal.harvester.api.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Cookie;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * HTTP transport shared by the clients of the remote catalogues.
+ * <p>
+ * Connections are pooled by host and kept alive between requests, so
+ * consecutive requests to the same server do not pay the TCP and TLS setup.
+ * The transport is thread safe: requests pass their own
+ * {@link HostConfiguration} and {@link HttpState} and can be executed
+ * concurrently from several threads. When all the connections to a host are
+ * leased new requests wait for a free one.
+ * </p>
+ * <p>
+ * Requests advertise gzip and deflate support. Response bodies must be read
+ * with {@link #getResponseBodyAsStream(HttpMethod, TransferCounter)} or
+ * {@link #getResponseBody(HttpMethod, TransferCounter)}, that decompress them
+ * while they are read and count the transferred bytes.
+ * </p>
+ */
+public class HttpTransport {
+
+    /**
+     * Transport used by the clients that are not given one.
+     */
+    private static final HttpTransport DEFAULT = new HttpTransport();
+
+    /**
+     * Max time a connection can stay idle in the pool before being closed.
+     */
+    private static final long IDLE_CONNECTION_TIMEOUT_MS = 60000;
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String AUTHORIZATION = "Authorization";
+
+    private final MeasuredConnectionManager connectionManager;
+    private final HttpClient client;
+    private final IdleConnectionTimeoutThread idleConnectionsCloser;
+    /**
+     * Bytes transferred by all the requests.
+     */
+    private final TransferCounter totals = new TransferCounter();
+    private volatile boolean compressionEnabled = true;
+    private volatile ResponseCache responseCache;
+
+    /**
+     * Create a transport with default settings: 4 connections by host, 64 in
+     * total, 30 s connect timeout, 2 minutes read timeout and waiting at most
+     * 1 minute for a free connection.
+     */
+    public HttpTransport() {
+        connectionManager = new MeasuredConnectionManager();
+        client = new HttpClient(connectionManager);
+        setMaxConnectionsPerHost(4);
+        setMaxTotalConnections(64);
+        setConnectTimeoutMs(30000);
+        setReadTimeoutMs(120000);
+        setConnectionWaitTimeoutMs(60000);
+
+        idleConnectionsCloser = new IdleConnectionTimeoutThread();
+        idleConnectionsCloser.setName("http-transport-idle-connections");
+        idleConnectionsCloser.setConnectionTimeout(IDLE_CONNECTION_TIMEOUT_MS);
+        idleConnectionsCloser.setTimeoutInterval(IDLE_CONNECTION_TIMEOUT_MS / 2);
+        idleConnectionsCloser.addConnectionManager(connectionManager);
+        idleConnectionsCloser.start();
+    }
+
+    /**
+     * @return the transport shared by the whole application.
+     */
+    public static HttpTransport getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Execute a request. The caller must release the connection calling
+     * {@link HttpMethod#releaseConnection()} when the response has been read.
+     *
+     * @param hostConfiguration the host the request is sent to.
+     * @param method the request.
+     * @param state the request cookies and credentials.
+     * @return the response status code.
+     * @throws IOException if the request fails or no connection becomes free
+     * in time.
+     */
+    public int execute(HostConfiguration hostConfiguration, HttpMethod method,
+            HttpState state) throws IOException {
+        if (compressionEnabled && method.getRequestHeader(ACCEPT_ENCODING) == null) {
+            method.addRequestHeader(ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
+        }
+        return client.executeMethod(hostConfiguration, method, state);
+    }
+
+    /**
+     * Get the response body of an executed request as a stream, decompressed
+     * according to its <code>Content-Encoding</code>. The body is decoded
+     * while it is read, it is never loaded in memory.
+     *
+     * @param method the executed request.
+     * @param counter counts the bytes read, can be <code>null</code>.
+     * @return the decoded response body, empty if the response has no body.
+     * @throws IOException if the body cannot be read or the encoding is not
+     * supported.
+     */
+    public InputStream getResponseBodyAsStream(HttpMethod method,
+            TransferCounter counter) throws IOException {
+        InputStream body = method.getResponseBodyAsStream();
+        if (body == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        Header contentEncoding = method.getResponseHeader(CONTENT_ENCODING);
+        String encoding = contentEncoding == null ? "" : contentEncoding
+                .getValue().trim().toLowerCase();
+        boolean compressed = !(encoding.length() == 0
+                || "identity".equals(encoding));
+        totals.countResponse(compressed);
+        if (counter != null) {
+            counter.countResponse(compressed);
+        }
+
+        InputStream received = new CountingInputStream(body, false, totals,
+                counter);
+        if (!compressed) {
+            return new CountingInputStream(received, true, totals, counter);
+        }
+
+        InputStream decoded;
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            decoded = new GZIPInputStream(received);
+        } else if ("deflate".equals(encoding)) {
+            decoded = inflate(received);
+        } else {
+            throw new IOException("Unsupported response Content-Encoding: "
+                    + contentEncoding.getValue());
+        }
+        return new CountingInputStream(decoded, true, totals, counter);
+    }
+
+    /**
+     * Read the whole response body of an executed request, decompressed
+     * according to its <code>Content-Encoding</code>.
+     *
+     * @param method the executed request.
+     * @param counter counts the bytes read, can be <code>null</code>.
+     * @return the decoded response body.
+     * @throws IOException if the body cannot be read or the encoding is not
+     * supported.
+     */
+    public byte[] getResponseBody(HttpMethod method, TransferCounter counter)
+            throws IOException {
+        return ByteStreams.toByteArray(getResponseBodyAsStream(method,
+                counter));
+    }
+
+    /**
+     * Execute a request that can be answered from the response cache. If the
+     * same request has been cached it is sent as a conditional request, and
+     * when the server answers that the response has not been modified the
+     * cached body is returned with a 200 status code. Cacheable responses
+     * (with <code>ETag</code> or <code>Last-Modified</code>) are stored in
+     * the cache while their body is read until the end.
+     * <p>
+     * Requests with a body other than a string or a byte array, and requests
+     * carrying credentials, are not cached. The cookies of the request are
+     * part of the cache key, so a response is only reused by requests of the
+     * same session. The caller must close the response and release the connection
+     * calling {@link HttpMethod#releaseConnection()} when the body has been
+     * read.
+     * </p>
+     *
+     * @param hostConfiguration the host the request is sent to.
+     * @param method the request.
+     * @param state the request cookies and credentials.
+     * @param counter counts the bytes read and the cache hits, can be
+     * <code>null</code>.
+     * @return the response.
+     * @throws IOException if the request fails or no connection becomes free
+     * in time.
+     */
+    public Response executeCached(HostConfiguration hostConfiguration,
+            HttpMethod method, HttpState state, TransferCounter counter)
+            throws IOException {
+        ResponseCache cache = responseCache;
+        String url = null;
+        String key = null;
+        if (cache != null && cache.isEnabled()) {
+            url = requestUrl(hostConfiguration, method);
+            String body = requestBody(method);
+            if (url != null
+                    && (body != null || !(method instanceof EntityEnclosingMethod))
+                    && !hasCredentials(method, state)) {
+                key = ResponseCache.key(url, body, cookies(state));
+            }
+        }
+        if (key == null) {
+            int status = execute(hostConfiguration, method, state);
+            return new Response(status, getResponseBodyAsStream(method,
+                    counter), false);
+        }
+
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.getEtag() != null) {
+                method.setRequestHeader(IF_NONE_MATCH, entry.getEtag());
+            }
+            if (entry.getLastModified() != null) {
+                method.setRequestHeader(IF_MODIFIED_SINCE,
+                        entry.getLastModified());
+            }
+        }
+        int status = execute(hostConfiguration, method, state);
+        if (entry != null) {
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                InputStream cached = cache.open(entry);
+                if (cached != null) {
+                    if (counter != null) {
+                        counter.countCacheHit();
+                    }
+                    return new Response(HttpStatus.SC_OK, cached, true);
+                }
+            }
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                // Evicted while the request was sent, ask for the body
+                method.releaseConnection();
+                method.removeRequestHeader(IF_NONE_MATCH);
+                method.removeRequestHeader(IF_MODIFIED_SINCE);
+                status = execute(hostConfiguration, method, state);
+            }
+        }
+
+        cache.countMiss();
+        if (counter != null) {
+            counter.countCacheMiss();
+        }
+        InputStream body = getResponseBodyAsStream(method, counter);
+        Header etag = method.getResponseHeader("ETag");
+        Header lastModified = method.getResponseHeader("Last-Modified");
+        if (status == HttpStatus.SC_OK && (etag != null || lastModified != null)) {
+            body = cache.store(key, url, etag == null ? null : etag.getValue(),
+                    lastModified == null ? null : lastModified.getValue(),
+                    body);
+        }
+        return new Response(status, body, false);
+    }
+
+    /**
+     * @return the absolute URL of the request, <code>null</code> if it cannot
+     * be built.
+     */
+    private static String requestUrl(HostConfiguration hostConfiguration,
+            HttpMethod method) {
+        try {
+            URI uri = method.getURI();
+            if (uri.isAbsoluteURI()) {
+                return uri.toString();
+            }
+            return hostConfiguration.getHostURL() + uri.toString();
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the request is sent with credentials, in
+     * the state or in an <code>Authorization</code> header.
+     */
+    static boolean hasCredentials(HttpMethod method, HttpState state) {
+        if (method.getRequestHeader(AUTHORIZATION) != null) {
+            return true;
+        }
+        // AuthScope.ANY matches any credentials set in the state
+        return state != null && state.getCredentials(AuthScope.ANY) != null;
+    }
+
+    /**
+     * @return the named cookies of the state, sorted, or <code>null</code> if
+     * it has none.
+     */
+    static String cookies(HttpState state) {
+        if (state == null) {
+            return null;
+        }
+        List<String> cookies = new ArrayList<String>();
+        for (Cookie cookie : state.getCookies()) {
+            if (cookie.getName() != null && cookie.getName().length() > 0) {
+                cookies.add(cookie.getDomain() + " " + cookie.getPath() + " "
+                        + cookie.getName() + "=" + cookie.getValue());
+            }
+        }
+        if (cookies.isEmpty()) {
+            return null;
+        }
+        Collections.sort(cookies);
+        return Joiner.on('\n').join(cookies);
+    }
+
+    /**
+     * @return the body of the request if it is a string or a byte array.
+     */
+    private static String requestBody(HttpMethod method) {
+        if (!(method instanceof EntityEnclosingMethod)) {
+            return null;
+        }
+        RequestEntity entity = ((EntityEnclosingMethod) method)
+                .getRequestEntity();
+        if (entity instanceof StringRequestEntity) {
+            return ((StringRequestEntity) entity).getContent();
+        }
+        if (entity instanceof ByteArrayRequestEntity) {
+            return new String(((ByteArrayRequestEntity) entity).getContent(),
+                    Charsets.ISO_8859_1);
+        }
+        return null;
+    }
+
+    /**
+     * HTTP deflate should be a zlib stream, but some servers send raw
+     * deflate data. Check the zlib header to choose the right inflater.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int read = ByteStreams.read(pushback, header, 0, 2);
+        if (read > 0) {
+            pushback.unread(header, 0, read);
+        }
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        boolean zlib = read == 2 && (cmf & 0x0f) == 8
+                && ((cmf << 8) | flg) % 31 == 0;
+        return zlib ? new InflaterInputStream(pushback)
+                : new InflaterInputStream(pushback, new Inflater(true));
+    }
+
+    /**
+     * Close all the pooled connections. The transport cannot be used after
+     * calling this method.
+     */
+    public void shutdown() {
+        idleConnectionsCloser.shutdown();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * @return a snapshot of the pool usage.
+     */
+    public Statistics getStatistics() {
+        Statistics statistics = new Statistics();
+        statistics.leased = connectionManager.leased.get();
+        statistics.idle = Math.max(0, connectionManager.getConnectionsInPool()
+                - statistics.leased);
+        statistics.leases = connectionManager.leases.get();
+        statistics.totalWaitMs = connectionManager.totalWaitMs.get();
+        statistics.maxWaitMs = connectionManager.maxWaitMs.get();
+        statistics.waitTimeouts = connectionManager.waitTimeouts.get();
+        statistics.responses = totals.getResponses();
+        statistics.compressedResponses = totals.getCompressedResponses();
+        statistics.receivedBytes = totals.getReceivedBytes();
+        statistics.decodedBytes = totals.getDecodedBytes();
+        ResponseCache cache = responseCache;
+        statistics.cache = cache == null ? null : cache.getStatistics();
+        return statistics;
+    }
+
+    /**
+     * @param maxConnectionsPerHost max number of simultaneous connections to
+     * the same host.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+                maxConnectionsPerHost);
+    }
+
+    /**
+     * @param maxTotalConnections max number of simultaneous connections.
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        connectionManager.getParams().setMaxTotalConnections(
+                maxTotalConnections);
+    }
+
+    /**
+     * @param connectTimeoutMs max time to establish a connection, in
+     * milliseconds.
+     */
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        connectionManager.getParams().setConnectionTimeout(connectTimeoutMs);
+    }
+
+    /**
+     * @param readTimeoutMs max time waiting for data from the server, in
+     * milliseconds.
+     */
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        connectionManager.getParams().setSoTimeout(readTimeoutMs);
+        client.getParams().setSoTimeout(readTimeoutMs);
+    }
+
+    /**
+     * @param connectionWaitTimeoutMs max time waiting for a free pooled
+     * connection, in milliseconds. 0 waits forever.
+     */
+    public void setConnectionWaitTimeoutMs(long connectionWaitTimeoutMs) {
+        client.getParams().setConnectionManagerTimeout(connectionWaitTimeoutMs);
+    }
+
+    /**
+     * @param compressionEnabled <code>false</code> to stop asking the servers
+     * for compressed responses.
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * @param responseCache cache used by
+     * {@link #executeCached(HostConfiguration, HttpMethod, HttpState, TransferCounter)}
+     * , <code>null</code> to disable it.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Response returned by
+     * {@link HttpTransport#executeCached(HostConfiguration, HttpMethod, HttpState, TransferCounter)}
+     * .
+     */
+    public static final class Response {
+        private final int statusCode;
+        private final InputStream body;
+        private final boolean fromCache;
+
+        private Response(int statusCode, InputStream body, boolean fromCache) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.fromCache = fromCache;
+        }
+
+        /**
+         * @return the status code, 200 when the body comes from the cache.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return the decoded response body.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * @return <code>true</code> if the server confirmed the cached body
+         * has not changed.
+         */
+        public boolean isFromCache() {
+            return fromCache;
+        }
+
+        /**
+         * Close the body. Bodies not read until the end are not cached.
+         */
+        public void close() {
+            try {
+                Closeables.close(body, true);
+            } catch (IOException e) {
+                // swallowed
+            }
+        }
+    }
+
+    /**
+     * Stream adding the bytes read to the received or decoded bytes of the
+     * counters.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final boolean decoded;
+        private final TransferCounter[] counters;
+
+        CountingInputStream(InputStream in, boolean decoded,
+                TransferCounter... counters) {
+            super(in);
+            this.decoded = decoded;
+            this.counters = counters;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long bytes) {
+            for (TransferCounter counter : counters) {
+                if (counter == null) {
+                    continue;
+                }
+                if (decoded) {
+                    counter.addDecodedBytes(bytes);
+                } else {
+                    counter.addReceivedBytes(bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection manager recording how long requests wait for a connection.
+     */
+    private static class MeasuredConnectionManager extends
+            MultiThreadedHttpConnectionManager {
+        private final AtomicInteger leased = new AtomicInteger();
+        private final AtomicLong leases = new AtomicLong();
+        private final AtomicLong totalWaitMs = new AtomicLong();
+        private final AtomicLong maxWaitMs = new AtomicLong();
+        private final AtomicLong waitTimeouts = new AtomicLong();
+
+        @Override
+        public HttpConnection getConnectionWithTimeout(
+                HostConfiguration hostConfiguration, long timeout)
+                throws ConnectionPoolTimeoutException {
+            long start = System.currentTimeMillis();
+            try {
+                HttpConnection connection = super.getConnectionWithTimeout(
+                        hostConfiguration, timeout);
+                long waited = System.currentTimeMillis() - start;
+                leased.incrementAndGet();
+                leases.incrementAndGet();
+                totalWaitMs.addAndGet(waited);
+                long max = maxWaitMs.get();
+                while (waited > max && !maxWaitMs.compareAndSet(max, waited)) {
+                    max = maxWaitMs.get();
+                }
+                return connection;
+            } catch (ConnectionPoolTimeoutException e) {
+                waitTimeouts.incrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        public void releaseConnection(HttpConnection connection) {
+            leased.decrementAndGet();
+            super.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Snapshot of the pool usage returned by
+     * {@link HttpTransport#getStatistics()}.
+     */
+    public static final class Statistics {
+        private int leased;
+        private int idle;
+        private long leases;
+        private long totalWaitMs;
+        private long maxWaitMs;
+        private long waitTimeouts;
+        private long responses;
+        private long compressedResponses;
+        private long receivedBytes;
+        private long decodedBytes;
+        private ResponseCache.Statistics cache;
+
+        private Statistics() {
+        }
+
+        /**
+         * @return the number of connections in use.
+         */
+        public int getLeased() {
+            return leased;
+        }
+
+        /**
+         * @return the number of open connections waiting to be reused.
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return the number of times a connection has been taken from the
+         * pool.
+         */
+        public long getLeases() {
+            return leases;
+        }
+
+        /**
+         * @return the total time requests have waited for a connection, in
+         * milliseconds.
+         */
+        public long getTotalWaitMs() {
+            return totalWaitMs;
+        }
+
+        /**
+         * @return the average time requests have waited for a connection, in
+         * milliseconds.
+         */
+        public long getAverageWaitMs() {
+            return leases == 0 ? 0 : totalWaitMs / leases;
+        }
+
+        /**
+         * @return the longest time a request has waited for a connection, in
+         * milliseconds.
+         */
+        public long getMaxWaitMs() {
+            return maxWaitMs;
+        }
+
+        /**
+         * @return the number of requests that failed because no connection
+         * became free in time.
+         */
+        public long getWaitTimeouts() {
+            return waitTimeouts;
+        }
+
+        /**
+         * @return the number of response bodies read.
+         */
+        public long getResponses() {
+            return responses;
+        }
+
+        /**
+         * @return the number of response bodies the servers sent compressed.
+         */
+        public long getCompressedResponses() {
+            return compressedResponses;
+        }
+
+        /**
+         * @return the response body bytes received over the wire.
+         */
+        public long getReceivedBytes() {
+            return receivedBytes;
+        }
+
+        /**
+         * @return the response body bytes after decompressing them.
+         */
+        public long getDecodedBytes() {
+            return decodedBytes;
+        }
+
+        /**
+         * @return the response cache usage, <code>null</code> if there is no
+         * cache.
+         */
+        public ResponseCache.Statistics getCache() {
+            return cache;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package org.opengeoportal.harvester.api.client.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+
+/**
+ * On-disk cache of HTTP responses used to send conditional requests.
+ * <p>
+ * Responses carrying an <code>ETag</code> or a <code>Last-Modified</code>
+ * header are stored in a directory, keyed by the request URL, body and
+ * session cookies. The next time the same request is sent the validators are added as
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code> headers, and
+ * when the server answers <code>304 Not Modified</code> the stored body is
+ * used instead of downloading it again.
+ * </p>
+ * <p>
+ * The cache is bounded by the size of the stored bodies; the least recently
+ * used entries are evicted first. The index is kept in memory and rebuilt
+ * from the directory when the cache is created, so entries survive restarts.
+ * A cache with a max size of 0 is disabled and never stores anything.
+ * </p>
+ */
+public class ResponseCache {
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String URL_PROPERTY = "url";
+    private static final String ETAG_PROPERTY = "etag";
+    private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * Entries by key, in access order.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long tmpSequence;
+
+    /**
+     * Create a cache stored in the directory passed, loading the entries
+     * already stored in it.
+     *
+     * @param directory cache directory, created if it does not exist.
+     * @param maxBytes max size of the stored response bodies. 0 disables the
+     * cache.
+     * @throws IOException if the directory cannot be created.
+     */
+    public ResponseCache(File directory, long maxBytes) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (maxBytes > 0) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create cache directory "
+                        + directory);
+            }
+            load();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the cache can store responses.
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Build the key of a request sent without cookies.
+     *
+     * @param url request URL, including the query string.
+     * @param body request body, <code>null</code> if it has no body.
+     * @return the cache key.
+     */
+    public static String key(String url, String body) {
+        return key(url, body, null);
+    }
+
+    /**
+     * Build the key of a request. Requests sent with different cookies get
+     * different keys, so the responses of a session are never served to
+     * another session.
+     *
+     * @param url request URL, including the query string.
+     * @param body request body, <code>null</code> if it has no body.
+     * @param cookies the cookies sent with the request, <code>null</code> if
+     * it has none.
+     * @return the cache key.
+     */
+    public static String key(String url, String body, String cookies) {
+        return Hashing.sha1()
+                .hashString(url + "\n" + (body == null ? "" : body) + "\n"
+                        + (cookies == null ? "" : cookies), Charsets.UTF_8)
+                .toString();
+    }
+
+    /**
+     * Get the entry stored for a request.
+     *
+     * @param key request key, see {@link #key(String, String)}.
+     * @return the entry or <code>null</code> if the request is not cached.
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Open the stored body of an entry after the server has confirmed it has
+     * not changed.
+     *
+     * @param entry the entry.
+     * @return the body or <code>null</code> if the entry has been evicted.
+     */
+    public InputStream open(Entry entry) {
+        InputStream body;
+        synchronized (this) {
+            if (entries.get(entry.key) != entry) {
+                return null;
+            }
+            try {
+                body = new FileInputStream(bodyFile(entry.key));
+            } catch (IOException e) {
+                logger.warn("Cache file of " + entry.url + " not found", e);
+                return null;
+            }
+            hits++;
+            // Keep the access order when the index is rebuilt
+            metaFile(entry.key).setLastModified(System.currentTimeMillis());
+        }
+        return body;
+    }
+
+    /**
+     * Count a cacheable request that could not be answered from the cache.
+     */
+    public synchronized void countMiss() {
+        misses++;
+    }
+
+    /**
+     * Wrap a response body so it is stored in the cache while it is read.
+     * The entry is added when the body has been read until the end; bodies
+     * closed before the end are discarded.
+     *
+     * @param key request key.
+     * @param url request URL, stored to help debugging.
+     * @param etag response <code>ETag</code>, can be <code>null</code>.
+     * @param lastModified response <code>Last-Modified</code>, can be
+     * <code>null</code>.
+     * @param body the decoded response body.
+     * @return the stream to be read instead of <code>body</code>.
+     */
+    public InputStream store(String key, String url, String etag,
+            String lastModified, InputStream body) {
+        if (!isEnabled()) {
+            return body;
+        }
+        File tmp;
+        OutputStream out;
+        synchronized (this) {
+            tmp = new File(directory, key + "." + (tmpSequence++) + TMP_SUFFIX);
+        }
+        try {
+            out = new FileOutputStream(tmp);
+        } catch (IOException e) {
+            logger.warn("Cannot write cache file " + tmp, e);
+            return body;
+        }
+        Entry entry = new Entry(key, url, etag, lastModified);
+        return new StoringInputStream(body, out, tmp, entry);
+    }
+
+    /**
+     * @return a snapshot of the cache usage.
+     */
+    public synchronized Statistics getStatistics() {
+        Statistics statistics = new Statistics();
+        statistics.entries = entries.size();
+        statistics.bytes = bytes;
+        statistics.maxBytes = maxBytes;
+        statistics.hits = hits;
+        statistics.misses = misses;
+        statistics.evictions = evictions;
+        return statistics;
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private File metaFile(String key) {
+        return new File(directory, key + META_SUFFIX);
+    }
+
+    /**
+     * Add an entry whose body has been written to a temporary file.
+     */
+    private void commit(Entry entry, File tmp) throws IOException {
+        entry.size = tmp.length();
+        if (entry.size > maxBytes) {
+            delete(tmp);
+            return;
+        }
+        Properties meta = new Properties();
+        meta.setProperty(URL_PROPERTY, entry.url);
+        if (entry.etag != null) {
+            meta.setProperty(ETAG_PROPERTY, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            meta.setProperty(LAST_MODIFIED_PROPERTY, entry.lastModified);
+        }
+
+        synchronized (this) {
+            Entry previous = entries.remove(entry.key);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            File body = bodyFile(entry.key);
+            delete(body);
+            if (!tmp.renameTo(body)) {
+                delete(tmp);
+                delete(metaFile(entry.key));
+                throw new IOException("Cannot rename cache file " + tmp);
+            }
+            OutputStream out = new FileOutputStream(metaFile(entry.key));
+            try {
+                meta.store(out, null);
+            } finally {
+                Closeables.close(out, true);
+            }
+            entries.put(entry.key, entry);
+            bytes += entry.size;
+            evict();
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits in its max
+     * size.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.size;
+            evictions++;
+            delete(bodyFile(eldest.key));
+            delete(metaFile(eldest.key));
+        }
+    }
+
+    /**
+     * Rebuild the index from the directory, oldest files first.
+     */
+    private void load() {
+        File[] metaFiles = directory.listFiles();
+        if (metaFiles == null) {
+            return;
+        }
+        List<File> files = new ArrayList<File>();
+        for (File file : metaFiles) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                delete(file);
+            } else if (file.getName().endsWith(META_SUFFIX)) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long diff = o1.lastModified() - o2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            String name = file.getName();
+            String key = name.substring(0, name.length()
+                    - META_SUFFIX.length());
+            File body = bodyFile(key);
+            Properties meta = new Properties();
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    meta.load(in);
+                } finally {
+                    Closeables.close(in, true);
+                }
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable cache entry " + file, e);
+                continue;
+            }
+            if (!body.isFile()) {
+                delete(file);
+                continue;
+            }
+            Entry entry = new Entry(key, meta.getProperty(URL_PROPERTY),
+                    meta.getProperty(ETAG_PROPERTY),
+                    meta.getProperty(LAST_MODIFIED_PROPERTY));
+            entry.size = body.length();
+            entries.put(key, entry);
+            bytes += entry.size;
+        }
+        evict();
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format(
+                    "Response cache %s loaded: %d entries, %d bytes",
+                    directory, entries.size(), bytes));
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Cannot delete cache file " + file);
+        }
+    }
+
+    /**
+     * Stored response.
+     */
+    public static final class Entry {
+        private final String key;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private long size;
+
+        private Entry(String key, String url, String etag, String lastModified) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the <code>ETag</code> of the stored response or
+         * <code>null</code>.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the <code>Last-Modified</code> of the stored response or
+         * <code>null</code>.
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Copies the bytes read to a temporary file and adds the entry when the
+     * end of the stream is reached.
+     */
+    private class StoringInputStream extends FilterInputStream {
+        private final OutputStream out;
+        private final File tmp;
+        private final Entry entry;
+        private boolean finished;
+
+        StoringInputStream(InputStream in, OutputStream out, File tmp,
+                Entry entry) {
+            super(in);
+            this.out = out;
+            this.tmp = tmp;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result == -1) {
+                finish(true);
+            } else if (!finished) {
+                write(new byte[] { (byte) result }, 0, 1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result == -1) {
+                finish(true);
+            } else if (result > 0 && !finished) {
+                write(b, off, result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes cannot be stored
+            finish(false);
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish(false);
+            super.close();
+        }
+
+        private void write(byte[] b, int off, int len) {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                logger.warn("Cannot write cache file " + tmp, e);
+                finish(false);
+            }
+        }
+
+        private void finish(boolean complete) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+                if (complete) {
+                    commit(entry, tmp);
+                } else {
+                    delete(tmp);
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot store response of " + entry.url
+                        + " in the cache", e);
+                delete(tmp);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the cache usage returned by
+     * {@link ResponseCache#getStatistics()}.
+     */
+    public static final class Statistics {
+        private int entries;
+        private long bytes;
+        private long maxBytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Statistics() {
+        }
+
+        /**
+         * @return the number of stored responses.
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the size of the stored response bodies.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the max size of the stored response bodies.
+         */
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * @return the number of responses served from the cache.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of cacheable requests downloaded again.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the fraction of the cacheable requests served from the
+         * cache, between 0 and 1.
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        /**
+         * @return the number of entries removed to keep the cache under its
+         * max size.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+}
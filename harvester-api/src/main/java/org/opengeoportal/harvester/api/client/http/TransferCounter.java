@@ -0,0 +1,92 @@
+package org.opengeoportal.harvester.api.client.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes transferred by a set of requests, for example the requests of an
+ * ingest. The counters are updated while the responses are read, so a
+ * counter can be shared by requests running in different threads.
+ */
+public class TransferCounter {
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Count a response.
+     *
+     * @param compressed <code>true</code> if the server compressed the
+     * response body.
+     */
+    void countResponse(boolean compressed) {
+        responses.incrementAndGet();
+        if (compressed) {
+            compressedResponses.incrementAndGet();
+        }
+    }
+
+    void countCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    void countCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    void addReceivedBytes(long bytes) {
+        receivedBytes.addAndGet(bytes);
+    }
+
+    void addDecodedBytes(long bytes) {
+        decodedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return the number of responses read.
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * @return the number of responses the server sent compressed.
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return the response body bytes received from the servers, as sent
+     * over the wire.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return the response body bytes after decompressing them. Equal to
+     * {@link #getReceivedBytes()} when no response was compressed.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /**
+     * @return the number of cacheable requests answered with the body stored
+     * in the response cache.
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of cacheable requests whose body has been
+     * downloaded.
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * In this package you can find the HTTP transport shared by the clients of
+ * the remote catalogues (CSW, GeoNetwork).
+ */
+package org.opengeoportal.harvester.api.client.http;
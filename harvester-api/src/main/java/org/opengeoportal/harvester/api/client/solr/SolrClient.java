@@ -12,10 +12,28 @@ public interface SolrClient {
 
 	public Boolean commit();
 
+	/**
+	 * Commit the pending changes.
+	 * 
+	 * @param softCommit
+	 *            if <code>true</code> the changes are made visible without
+	 *            flushing them to stable storage.
+	 * @return <code>true</code> if the commit has been successful.
+	 */
+	public Boolean commit(boolean softCommit);
+
 	public String delete(String[] layerIds) throws Exception;
 
 	public Boolean verifyIngest(String layerId) throws Exception;
 
+	/**
+	 * Add a record. Changes are not committed.
+	 * 
+	 * @param solrRecord
+	 *            the record.
+	 * @return the response status, <code>0</code> if the record has been
+	 *         added and <code>-1</code> if the request failed.
+	 */
 	public int add(SolrRecord solrRecord);
 
 	/**
@@ -24,14 +42,41 @@ public interface SolrClient {
 	 * @return the list of institutions with metadata indexed in the server.
 	 */
 	public List<String> getInstitutions();
-	
+
+	/**
+	 * Query the server for a page of records.
+	 * 
+	 * @param params
+	 *            the query and the page.
+	 * @return the server response.
+	 * @throws org.opengeoportal.harvester.api.exception.OgpSolrException
+	 *             if the request fails or the server returns an error.
+	 */
 	public QueryResponse search(SolrSearchParams params);
 
 	/**
+	 * Add a batch of records. Changes are not committed.
+	 * 
 	 * @param records
 	 * @param report 
 	 * @return
 	 */
 	boolean add(Collection<SolrRecord> records, IngestReport report);
 
+	/**
+	 * Add a batch of records asking the server to commit them within the
+	 * given time.
+	 * 
+	 * @param records
+	 *            the records.
+	 * @param report
+	 *            report where errors are added.
+	 * @param commitWithinMs
+	 *            max milliseconds before the records are committed. Non
+	 *            positive values do not set any limit.
+	 * @return <code>true</code> if the records have been added.
+	 */
+	boolean add(Collection<SolrRecord> records, IngestReport report,
+			int commitWithinMs);
+
 }
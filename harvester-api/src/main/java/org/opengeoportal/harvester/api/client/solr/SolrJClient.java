@@ -6,10 +6,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.http.HttpStatus;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.response.TermsResponse.Term;
@@ -18,7 +18,11 @@ import org.apache.solr.common.SolrException;
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
 import org.opengeoportal.harvester.api.exception.OgpSolrException;
+import org.opengeoportal.harvester.api.metrics.IngestMetrics;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,18 +46,49 @@ public class SolrJClient implements SolrClient {
 
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	/**
+	 * Times the searches, adds and commits.
+	 */
+	private IngestMetrics metrics = MetricsRegistry.getDefault().forIngest(
+			null, InstanceType.SOLR.name());
+
 	public SolrJClient(String solrUrl) {
 		HttpSolrServer solr = new HttpSolrServer(solrUrl);
 		this.solrServer = solr;
 	}
 
+	/**
+	 * @param metrics
+	 *            metrics where the searches, adds and commits are timed,
+	 *            tagged with the ingest or the instance that uses this
+	 *            client.
+	 */
+	public void setMetrics(IngestMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public HttpSolrServer getSolrServer() {
 		return solrServer;
 	}
 
 	public Boolean commit() {
+		return commit(false);
+	}
+
+	@Override
+	public Boolean commit(boolean softCommit) {
+		Timer.Context timer = metrics.timer("solr.commit").time();
 		try {
-			UpdateResponse updateResponse = solrServer.commit();
+			return doCommit(softCommit);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private Boolean doCommit(boolean softCommit) {
+		try {
+			UpdateResponse updateResponse = solrServer.commit(true, true,
+					softCommit);
 			return successResponse(updateResponse);
 		} catch (SolrServerException e) {
 			logger.error("Error in Solr commit", e);
@@ -69,7 +104,9 @@ public class SolrJClient implements SolrClient {
 	}
 
 	private Boolean successResponse(UpdateResponse updateResponse) {
-		if (updateResponse.getStatus() == HttpStatus.SC_OK) {
+		// Status of the Solr response header, not the HTTP status: 0 when
+		// the request succeeded
+		if (updateResponse.getStatus() == 0) {
 			return true;
 		} else {
 			return false;
@@ -80,7 +117,8 @@ public class SolrJClient implements SolrClient {
 		// List<String> ids = Arrays.asList(layerIds);
 		String query = "";
 		for (String layerId : layerIds) {
-			query += "LayerId:" + layerId.trim();
+			query += "LayerId:"
+					+ ClientUtils.escapeQueryChars(layerId.trim());
 			query += " OR ";
 		}
 		if (query.length() > 0) {
@@ -114,8 +152,9 @@ public class SolrJClient implements SolrClient {
 	}
 
 	public int add(SolrRecord solrRecord) {
-		int status = 0;
+		int status = -1;
 		UpdateResponse updateResponse = null;
+		Timer.Context timer = metrics.timer("solr.add").time();
 		try {
 			logger.debug("begin adding solr record");
 			updateResponse = solrServer.addBean(solrRecord);
@@ -133,21 +172,28 @@ public class SolrJClient implements SolrClient {
 		} catch (Exception e) {
 			logger.error("Unknown Exception trying to add Bean", e);
 		}
-		logger.info("committing add to Solr");
-		commit();
+		timer.stop();
+		metrics.histogram("solr.add.documents").update(1);
 		return status;
 	}
 	
 	@Override
 	public boolean add(Collection<SolrRecord> records, IngestReport report) {
+		return add(records, report, -1);
+	}
+
+	@Override
+	public boolean add(Collection<SolrRecord> records, IngestReport report,
+			int commitWithinMs) {
 		int status = 0;
 		boolean result = false;
 		UpdateResponse updateResponse = null;
 		String errMessage = "";
 
+		Timer.Context timer = metrics.timer("solr.add").time();
 		try {
 			logger.debug("Begin adding solr record batch");
-			updateResponse = solrServer.addBeans(records);
+			updateResponse = solrServer.addBeans(records, commitWithinMs);
 			result = true;
 			logger.debug("Status code: " + updateResponse.getStatus());
 		} catch (IOException e) {
@@ -164,15 +210,14 @@ public class SolrJClient implements SolrClient {
 			errMessage = "Unknown Exception trying to add Bean to Solr.";
 			logger.error(errMessage, e);
 		}
+		timer.stop();
+		metrics.histogram("solr.add.documents").update(records.size());
 		
 		if (!result){
 			IngestReportError ire = new IngestReportError();
 			ire.setType(IngestReportErrorType.SYSTEM_ERROR);
 			ire.setMessage(errMessage);
 			report.addError(ire);
-		} else {
-			logger.info("committing add to Solr");
-			commit();
 		}
 		
 		return result;
@@ -217,6 +262,15 @@ public class SolrJClient implements SolrClient {
 	 */
 	@Override
 	public QueryResponse search(SolrSearchParams params) {
+		Timer.Context timer = metrics.timer("solr.search").time();
+		try {
+			return query(params);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private QueryResponse query(SolrSearchParams params) {
 		SolrQuery query = params.toSolrQuery();
 		QueryResponse response = null;
 		try {
@@ -228,6 +282,14 @@ public class SolrJClient implements SolrClient {
 			throw new OgpSolrException(
 					"Error getting Solr records for this query: "
 							+ query.getQuery(), e);
+		} catch (SolrException e) {
+			// Error responses, like HTTP 400 for a rejected cursor mark
+			logger.error(
+					"Error getting Solr records for this query: "
+							+ query.getQuery(), e);
+			throw new OgpSolrException(
+					"Error getting Solr records for this query: "
+							+ query.getQuery(), e);
 		}
 		return response;
 	}
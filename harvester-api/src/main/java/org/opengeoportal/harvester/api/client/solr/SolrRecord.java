@@ -19,6 +19,9 @@ import org.opengeoportal.harvester.api.metadata.model.Metadata;
  * 
  */
 public class SolrRecord {
+	/** Layer identifier field name, the unique key of OGP indexes. */
+	public static final String LAYER_ID = "LayerId";
+
 	/** Name Theme Keywords field. */
 	public static final String THEME_KEYWORDS = "ThemeKeywords";
 
@@ -57,7 +60,7 @@ public class SolrRecord {
 	
 	private String originalXmlMetadata;
 
-	@Field("LayerId")
+	@Field(LAYER_ID)
 	private String layerId;
 	@Field("Name")
 	private String name;
@@ -682,6 +685,24 @@ public class SolrRecord {
 	}
 
 
+    /**
+     * Calculates the LayerId of a metadata record if it does not change
+     * between ingests.
+     *
+     * @param metadata the record.
+     * @return the LayerId or <code>null</code> if the record has no
+     * institution, or neither identifier nor layer name, so it gets a random
+     * LayerId each time it is ingested.
+     */
+    public static String calculateStableLayerId(Metadata metadata) {
+        if (metadata.getInstitution() == null
+                || (StringUtils.isEmpty(metadata.getId()) && StringUtils
+                        .isEmpty(metadata.getOwsName()))) {
+            return null;
+        }
+        return calculateLayerId(metadata);
+    }
+
     /**
      * Calculates the value of SolrRecord LayerId based on the related Metadata instance.
      *
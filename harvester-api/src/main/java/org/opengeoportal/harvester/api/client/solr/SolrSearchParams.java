@@ -80,12 +80,29 @@ public class SolrSearchParams {
 	 * Number of result records requested per page.
 	 */
 	public static final int NUMBER_OF_RESULTS_PER_PAGE = 40;
+	/**
+	 * Cursor mark of the first page when paging with cursors.
+	 */
+	public static final String CURSOR_MARK_START = "*";
+	/**
+	 * Request parameter with the cursor mark (Solr 4.7+).
+	 */
+	public static final String CURSOR_MARK_PARAM = "cursorMark";
+	/**
+	 * Response field with the cursor mark of the next page (Solr 4.7+).
+	 */
+	public static final String NEXT_CURSOR_MARK = "nextCursorMark";
 	/** Content range date page. */
 	private Date dateFrom;
 	/** Content range date to. */
 	private Date dateTo;
 	/** Number of the page to retrieve (zero based). */
 	private int page = 0;
+	/**
+	 * Cursor mark of the page to retrieve. If it is <code>null</code> pages
+	 * are requested by offset using {@link #page}.
+	 */
+	private String cursorMark;
 	/** Data originator. */
 	private String originator;
 	/** Number of elements in one page. */
@@ -275,8 +292,15 @@ public class SolrSearchParams {
 		}
 
 		solrQuery.setRows(pageSize);
-		solrQuery.setStart(page * pageSize);
-		solrQuery.addSort(SortClause.desc("score"));
+		if (cursorMark != null) {
+			// Cursors need a sort on the unique key, which also keeps the
+			// pages stable if the index changes while paging
+			solrQuery.setParam(CURSOR_MARK_PARAM, cursorMark);
+			solrQuery.addSort(SortClause.asc(SolrRecord.LAYER_ID));
+		} else {
+			solrQuery.setStart(page * pageSize);
+			solrQuery.addSort(SortClause.desc("score"));
+		}
 
 		return solrQuery;
 	}
@@ -440,6 +464,14 @@ public class SolrSearchParams {
 		return page;
 	}
 
+	/**
+	 * @return the cursor mark of the page to retrieve, or <code>null</code>
+	 *         if pages are requested by offset.
+	 */
+	public String getCursorMark() {
+		return cursorMark;
+	}
+
 	/**
 	 * @return the originator
 	 */
@@ -499,6 +531,16 @@ public class SolrSearchParams {
 		this.page = from;
 	}
 
+	/**
+	 * @param cursorMark
+	 *            the cursor mark of the page to retrieve. Use
+	 *            {@link #CURSOR_MARK_START} for the first page and
+	 *            <code>null</code> to request pages by offset.
+	 */
+	public void setCursorMark(String cursorMark) {
+		this.cursorMark = cursorMark;
+	}
+
 	/**
 	 * @param originator
 	 *            the originator to set
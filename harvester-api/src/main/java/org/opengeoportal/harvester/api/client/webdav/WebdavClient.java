@@ -0,0 +1,78 @@
+package org.opengeoportal.harvester.api.client.webdav;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+import com.github.sardine.DavResource;
+import com.github.sardine.impl.SardineImpl;
+import com.github.sardine.impl.handler.MultiStatusResponseHandler;
+import com.github.sardine.impl.methods.HttpPropFind;
+import com.github.sardine.model.Allprop;
+import com.github.sardine.model.Multistatus;
+import com.github.sardine.model.Propfind;
+import com.github.sardine.model.Response;
+import com.github.sardine.util.SardineUtil;
+
+/**
+ * Sardine client that can be used from several threads at the same time and
+ * can list a whole tree with a single <code>Depth: infinity</code> PROPFIND.
+ */
+public class WebdavClient extends SardineImpl {
+    /**
+     * Max number of simultaneous connections to the same server. Callers
+     * limit the concurrency with their own thread pools, this only has to be
+     * above them (the default of the HTTP client is 2).
+     */
+    public static final int MAX_CONNECTIONS_PER_HOST = 32;
+
+    private static final String DEPTH_INFINITY = "infinity";
+
+    @Override
+    protected ClientConnectionManager createDefaultConnectionManager(
+            SchemeRegistry schemeRegistry) {
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(
+                schemeRegistry);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_HOST);
+        return connectionManager;
+    }
+
+    /**
+     * List a folder and all its descendants with a single request. Servers
+     * can refuse it (usually with a 403 status code), in that case the
+     * folders must be listed one by one with {@link #list(String)}.
+     *
+     * @param url folder URL.
+     * @return the folder, its subfolders and all their files.
+     * @throws IOException if the server refuses or fails the request.
+     */
+    public List<DavResource> listAll(String url) throws IOException {
+        HttpPropFind propfind = new HttpPropFind(url);
+        propfind.setDepth(DEPTH_INFINITY);
+        Propfind body = new Propfind();
+        body.setAllprop(new Allprop());
+        propfind.setEntity(new StringEntity(SardineUtil.toXml(body), "UTF-8"));
+
+        Multistatus multistatus = execute(propfind,
+                new MultiStatusResponseHandler());
+        List<Response> responses = multistatus.getResponse();
+        List<DavResource> resources = new ArrayList<DavResource>(
+                responses.size());
+        for (Response response : responses) {
+            try {
+                resources.add(new DavResource(response));
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid resource href in the response of "
+                        + url, e);
+            }
+        }
+        return resources;
+    }
+}
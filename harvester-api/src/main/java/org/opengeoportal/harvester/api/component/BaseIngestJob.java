@@ -1,25 +1,52 @@
 package org.opengeoportal.harvester.api.component;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.opengeoportal.harvester.api.client.http.TransferCounter;
 import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
 import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
+import org.opengeoportal.harvester.api.metadata.parser.MetadataParser;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParserProvider;
+import org.opengeoportal.harvester.api.metadata.parser.MetadataParserResponse;
 import org.opengeoportal.harvester.api.metadata.parser.XmlMetadataParserProvider;
+import org.opengeoportal.harvester.api.service.IngestHighWaterMarkService;
+import org.opengeoportal.harvester.api.service.IngestJobCheckpointService;
 import org.opengeoportal.harvester.api.service.IngestJobStatusService;
 import org.opengeoportal.harvester.api.service.IngestReportErrorService;
 import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.opengeoportal.harvester.api.service.IngestReportSummary;
+import org.opengeoportal.harvester.api.service.IngestReportSummaryService;
 import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.opengeoportal.harvester.api.metrics.IngestMetrics;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.Timer;
 import org.opengeoportal.harvester.api.service.ExceptionTranslator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 /**
  * Base class for ingest jobs.
  *
@@ -28,6 +55,28 @@ import org.w3c.dom.Document;
  */
 public abstract class BaseIngestJob implements Runnable {
 
+    /**
+     * Number of valid records sent together to the metadata ingester by
+     * {@link #runPipeline(IngestPipeline.Stages)}.
+     */
+    protected static final int INDEX_BATCH_SIZE = 40;
+
+    /**
+     * Minimum time between two saves of the summary of a running job.
+     */
+    protected static final long SUMMARY_SAVE_INTERVAL_MS = 5000L;
+
+    /**
+     * Minimum time between two checkpoints of a running job. A checkpoint
+     * sends the pending records to Solr without committing them.
+     */
+    protected static final long CHECKPOINT_INTERVAL_MS = 60000L;
+
+    /**
+     * Logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(BaseIngestJob.class);
+
     /**
      * The ingest to be performed.
      */
@@ -71,12 +120,138 @@ public abstract class BaseIngestJob implements Runnable {
     private IngestReportErrorService errorService;
 
     private IngestReportWarningsService warningService;
+
+    /**
+     * Destination of the validation errors and warnings. If
+     * <code>null</code> they are saved directly with the error and warning
+     * services.
+     */
+    private IngestReportSink reportSink;
+
+    /**
+     * Report summary service. If <code>null</code> the summary is computed
+     * the first time the report details are requested.
+     */
+    private IngestReportSummaryService summaryService;
+
+    /**
+     * Errors and warnings found until now, saved periodically while the job
+     * runs.
+     */
+    private final IngestReportSummary summary = new IngestReportSummary();
+
+    /**
+     * Last time the summary was saved.
+     */
+    private long summarySavedAt;
+
+    /**
+     * Unrequired field warnings already saved. The validator only keeps the
+     * ones counted since the last save.
+     */
+    private final Map<String, Long> savedUnrequiredFieldWarnings = Maps
+            .newTreeMap();
+
+    /**
+     * Checkpoint service. If <code>null</code> the job cannot be resumed.
+     */
+    private IngestJobCheckpointService checkpointService;
+
+    /**
+     * Last checkpoint of the execution, or the one it has been resumed from.
+     */
+    private IngestJobCheckpoint checkpoint;
+
+    /**
+     * <code>true</code> if the job continues an interrupted execution.
+     */
+    private boolean resumed;
+
+    /**
+     * Position from which a resumed execution continues.
+     */
+    private String resumePosition;
+
+    /**
+     * Records retrieved by the previous runs of a resumed execution.
+     */
+    private long resumedRecords;
+
+    /**
+     * Position reached by the fetch stage and records retrieved until then,
+     * if the job can be resumed from it when the pipeline ends.
+     */
+    private String endPosition;
+    private long endRecords;
+
+    /**
+     * Bytes and cache counts of {@link #transferCounter} already added to the
+     * report.
+     */
+    private long receivedBytesAdded;
+    private long decodedBytesAdded;
+    private long cacheHitsAdded;
+    private long cacheMissesAdded;
+
+    /**
+     * Live progress of the job, created by
+     * {@link #init(UUID, Ingest, MetadataIngester)}.
+     */
+    private IngestProgress progress;
     private ExceptionTranslator exceptionTranslatorService;
 
+    /**
+     * High-water mark service, used by incremental ingests.
+     */
+    private IngestHighWaterMarkService highWaterMarkService;
+
+    /**
+     * Records modified before this date are not retrieved. If
+     * <code>null</code> all the records are retrieved.
+     */
+    private Date incrementalFrom;
+
+    /**
+     * <code>true</code> if the fetch stage could not retrieve all the records.
+     */
+    private boolean fetchFailed;
+
+    /**
+     * <code>true</code> if some record could not be retrieved, parsed or
+     * sent to Solr. The high-water mark is not moved, so they are retrieved
+     * again by the next execution.
+     */
+    private boolean recordsFailed;
+
+    /**
+     * LayerIds of the records retrieved by a full execution of an
+     * incremental ingest. The records of the ingest that are not retrieved
+     * are deleted when the execution ends, see
+     * {@link #deleteMissingRecords()}. <code>null</code> in incremental and
+     * resumed executions, which do not retrieve all the records.
+     */
+    private Set<String> retrievedLayerIds;
+
+    /**
+     * Bytes transferred by the requests of this job.
+     */
+    private final TransferCounter transferCounter = new TransferCounter();
+
+    /**
+     * Registry where the job metrics are stored.
+     */
+    private MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+
+    /**
+     * Metrics tagged with the ingest and its source type, created by
+     * {@link #init(UUID, Ingest, MetadataIngester)}.
+     */
+    private IngestMetrics metrics;
+
     /**
      * If <code>true</code>, job must be interrupted when possible.
      */
-    private boolean interruptRequest;
+    private volatile boolean interruptRequest;
 
     /**
      * Create a new instance.
@@ -96,10 +271,11 @@ public abstract class BaseIngestJob implements Runnable {
      */
     public void init(UUID jobId, Ingest ingest,
             MetadataIngester metadataIngester) {
-        this.jobId = jobId;
-        this.ingest = ingest;
-        this.metadataIngester = metadataIngester;
-        this.metadataValidator = new MetadataValidator(ingest, errorService, warningService);
+        prepare(jobId, ingest, metadataIngester);
+        if (checkpointService != null) {
+            // A new execution replaces the interrupted one
+            checkpointService.deleteByIngestId(ingest.getId());
+        }
         this.jobStatus = new IngestJobStatus();
         jobStatus.setStatus(IngestJobStatusValue.NOT_STARTED_YET);
         jobStatus.setJobExecutionIdentifier(jobId);
@@ -110,6 +286,94 @@ public abstract class BaseIngestJob implements Runnable {
         jobStatus.setIngestReport(report);
     }
 
+    /**
+     * Prepare the IngestJob to continue an interrupted execution from its
+     * last checkpoint. The execution keeps its status and report, the errors
+     * and warnings saved after the checkpoint are discarded and the report
+     * counters are set back to the checkpoint values.
+     *
+     * @param jobId job identifier.
+     * @param ingest ingest to be executed.
+     * @param checkpoint the checkpoint of the interrupted execution.
+     * @param metadataIngester the ingester in charge to store the metadata.
+     */
+    public void init(UUID jobId, Ingest ingest,
+            IngestJobCheckpoint checkpoint, MetadataIngester metadataIngester) {
+        if (checkpointService == null) {
+            throw new IllegalStateException(
+                    "checkpointService must be set to resume a job");
+        }
+        prepare(jobId, ingest, metadataIngester);
+        this.checkpoint = checkpoint;
+        this.resumed = true;
+        this.resumePosition = checkpoint.getPosition();
+        this.resumedRecords = checkpoint.getRecords();
+        this.incrementalFrom = checkpoint.getIncrementalFrom();
+        this.recordsFailed = checkpoint.isRecordsFailed();
+        checkpointService.discardEntriesAfter(checkpoint);
+
+        this.report = checkpoint.getReport();
+        // Errors saved by previous runs are not loaded
+        report.setErrors(new ArrayList<IngestReportError>());
+        report.setSummaryComplete(false);
+        checkpoint.restoreCounters(report);
+        this.jobStatus = checkpoint.getJobStatus();
+        jobStatus.setJobExecutionIdentifier(jobId);
+        jobStatus.setIngestReport(report);
+        report.setJobStatus(jobStatus);
+
+        if (summaryService != null) {
+            IngestReportSummary saved = summaryService.summarize(report);
+            report.setSummaryComplete(false);
+            for (IngestReportErrorType errorType : IngestReportErrorType
+                    .values()) {
+                for (Map.Entry<String, Long> count : saved
+                        .getErrorCountsByField(errorType).entrySet()) {
+                    summary.addError(errorType, count.getKey(),
+                            count.getValue());
+                }
+            }
+            for (IngestReportWarningType warningType : IngestReportWarningType
+                    .values()) {
+                Map<String, Long> counts = saved
+                        .getWarningCountsByField(warningType);
+                if (warningType == IngestReportWarningType.UNREQUIRED_FIELD_WARNING) {
+                    savedUnrequiredFieldWarnings.putAll(counts);
+                    continue;
+                }
+                for (Map.Entry<String, Long> count : counts.entrySet()) {
+                    summary.addWarning(warningType, count.getKey(),
+                            count.getValue());
+                }
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Resuming ingest " + ingest.getId() + " after "
+                    + checkpoint.getRecords() + " records from position "
+                    + checkpoint.getPosition());
+        }
+    }
+
+    /**
+     * Set up the job components shared by new and resumed executions.
+     */
+    private void prepare(UUID jobId, Ingest ingest,
+            MetadataIngester metadataIngester) {
+        this.jobId = jobId;
+        this.ingest = ingest;
+        this.metadataIngester = metadataIngester;
+        this.metrics = metricsRegistry.forIngest(ingest.getId(),
+                getSourceType().name());
+        if (reportSink == null) {
+            reportSink = new DirectIngestReportSink(errorService,
+                    warningService);
+        }
+        this.metadataValidator = new MetadataValidator(ingest,
+                new SummarizingReportSink(reportSink));
+        this.progress = new IngestProgress(ingest.getId(), ingest.getName(),
+                jobId);
+    }
+
     /**
      * @return the ingest report.
      */
@@ -117,6 +381,31 @@ public abstract class BaseIngestJob implements Runnable {
         return report;
     }
 
+    /**
+     * @return the counter of the bytes transferred by the job requests. Jobs
+     * pass it to their remote clients, it is added to the report when the
+     * job finishes.
+     */
+    public TransferCounter getTransferCounter() {
+        return transferCounter;
+    }
+
+    /**
+     * @return the metrics of the job, tagged with the ingest and its source
+     * type. Jobs pass them to their remote clients.
+     */
+    public IngestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the live progress of the job. Child classes report the pages
+     * fetched and the number of records of the remote server on it.
+     */
+    public IngestProgress getProgress() {
+        return progress;
+    }
+
     /**
      * @return the jobId
      */
@@ -134,23 +423,291 @@ public abstract class BaseIngestJob implements Runnable {
             throw new IllegalStateException(
                     "init method must be called before a run can be performed");
         }
+        boolean ingesterFinished = false;
         try {
-            jobStatus.setStartTime(Calendar.getInstance().getTime());
+            Date startTime = Calendar.getInstance().getTime();
+            progress.start();
+            if (resumed) {
+                // The records modified since the first run started are
+                // retrieved by the next execution
+                startTime = jobStatus.getStartTime();
+                jobStatus.setEndTime(null);
+            } else {
+                jobStatus.setStartTime(startTime);
+            }
             jobStatus.setStatus(IngestJobStatusValue.PROCESSING);
             jobStatus = jobStatusService.save(jobStatus);
+            if (highWaterMarkService != null && !resumed) {
+                incrementalFrom = highWaterMarkService.getIncrementalFrom(
+                        ingest, startTime);
+                if (incrementalFrom == null
+                        && Boolean.TRUE.equals(ingest.isIncremental())) {
+                    retrievedLayerIds = new HashSet<String>();
+                }
+            }
             ingest();
+            ingesterFinished = true;
+            // The mark can only be moved once the records are durable
+            boolean durable = finishIngester();
             if (!isInterruptRequested()) {
                 jobStatus.setStatus(IngestJobStatusValue.SUCCESSED);
+                if (highWaterMarkService != null && durable && !fetchFailed
+                        && !isRecordsFailed()) {
+                    highWaterMarkService.update(ingest, startTime,
+                            incrementalFrom == null);
+                    deleteMissingRecords();
+                }
             } else {
                 jobStatus.setStatus(IngestJobStatusValue.CANCELLED);
             }
         } catch (Exception e) {
             jobStatus.setStatus(IngestJobStatusValue.FAILED);
         } finally {
+            if (!ingesterFinished) {
+                finishIngester();
+            }
+            // The job is not finished until its errors and warnings are saved
+            Timer.Context timer = metrics.timer("report.flush").time();
+            try {
+                reportSink.flush(report);
+            } finally {
+                timer.stop();
+            }
+            saveWarningCounts();
+            summarize();
+            addTransferCounts();
             jobStatus.setEndTime(Calendar.getInstance().getTime());
             jobStatus = jobStatusService.save(jobStatus);
             report = reportService.save(report);
+            finishCheckpoint();
+        }
+    }
+
+    /**
+     * Make durable the records ingested until now. A failure is saved as a
+     * system error of the report.
+     *
+     * @return <code>true</code> if the records are durable.
+     */
+    private boolean finishIngester() {
+        try {
+            metadataIngester.finish(report);
+            return true;
+        } catch (Exception e) {
+            logger.error("Error finishing the ingest of job " + jobId, e);
+            try {
+                saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+            } catch (Exception saveException) {
+                logger.error("Error saving the error of job " + jobId,
+                        saveException);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Delete the records of the ingest that a full execution has not
+     * retrieved, because they have been removed from the remote server or no
+     * longer match the ingest filters. A failure is saved as a system error
+     * of the report.
+     */
+    private void deleteMissingRecords() {
+        if (retrievedLayerIds == null) {
+            return;
+        }
+        try {
+            long deleted = metadataIngester.deleteMissing(ingest.getId(),
+                    retrievedLayerIds);
+            report.setDeletedRecords(report.getDeletedRecords() + deleted);
+        } catch (Exception e) {
+            logger.error("Error deleting the missing records of job " + jobId,
+                    e);
+            try {
+                saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+            } catch (Exception saveException) {
+                logger.error("Error saving the error of job " + jobId,
+                        saveException);
+            }
+        } finally {
+            retrievedLayerIds = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if some record could not be retrieved or
+     * parsed, or if the report has system errors, like the ones added by the
+     * metadata ingester for the records Solr did not accept.
+     */
+    private boolean isRecordsFailed() {
+        if (recordsFailed) {
+            return true;
+        }
+        for (IngestReportError error : report.getErrors()) {
+            if (error.getType() == IngestReportErrorType.SYSTEM_ERROR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the bytes and cache counts of the requests made since the last call
+     * to the report.
+     */
+    private void addTransferCounts() {
+        long receivedBytes = transferCounter.getReceivedBytes();
+        long decodedBytes = transferCounter.getDecodedBytes();
+        long cacheHits = transferCounter.getCacheHits();
+        long cacheMisses = transferCounter.getCacheMisses();
+        report.setReceivedBytes(report.getReceivedBytes() + receivedBytes
+                - receivedBytesAdded);
+        report.setDecodedBytes(report.getDecodedBytes() + decodedBytes
+                - decodedBytesAdded);
+        report.setCacheHits(report.getCacheHits() + cacheHits - cacheHitsAdded);
+        report.setCacheMisses(report.getCacheMisses() + cacheMisses
+                - cacheMissesAdded);
+        receivedBytesAdded = receivedBytes;
+        decodedBytesAdded = decodedBytes;
+        cacheHitsAdded = cacheHits;
+        cacheMissesAdded = cacheMisses;
+    }
+
+    /**
+     * Send to Solr the records of the pages retrieved until now, save the
+     * report entries and save a checkpoint from where the job can be resumed.
+     * The records are not committed: a global hard commit per job and
+     * interval would slow down every ingest, so the records sent before a
+     * checkpoint rely on the Solr update log until the next commit of the
+     * metadata ingester. Failures are logged, the job goes on.
+     *
+     * @param position position of the next page.
+     * @param records records retrieved before the position.
+     */
+    private void saveCheckpoint(String position, long records) {
+        Timer.Context timer = metrics.timer("checkpoint.save").time();
+        try {
+            metadataIngester.flush(report);
+            reportSink.flush(report);
+            saveWarningCounts();
+            addTransferCounts();
+            reportService.save(report);
+            storeCheckpoint(position, records);
+        } catch (Exception e) {
+            logger.warn("Error saving the checkpoint of job " + jobId, e);
+        } finally {
+            timer.stop();
+        }
+    }
 
+    /**
+     * Save a checkpoint with the current report counters. The records and
+     * the report entries must have been saved before.
+     */
+    private void storeCheckpoint(String position, long records) {
+        if (checkpoint == null) {
+            checkpoint = new IngestJobCheckpoint();
+            checkpoint.setIngest(ingest);
+            checkpoint.setJobStatus(jobStatus);
+            checkpoint.setReport(report);
+            checkpoint.setIncrementalFrom(incrementalFrom);
+        }
+        checkpoint.setPosition(position);
+        checkpoint.setRecords(records);
+        // The errors of the report are not loaded when the job is resumed
+        checkpoint.setRecordsFailed(isRecordsFailed());
+        checkpoint.saveCounters(report);
+        checkpoint = checkpointService.save(checkpoint);
+    }
+
+    /**
+     * Once the job has finished, remove its checkpoint if all the records
+     * have been retrieved. Otherwise keep it, moving it to the position where
+     * the fetch stage stopped when no record was retrieved after it.
+     */
+    private void finishCheckpoint() {
+        if (checkpointService == null) {
+            return;
+        }
+        try {
+            if (jobStatus.getStatus() == IngestJobStatusValue.SUCCESSED
+                    && !fetchFailed) {
+                checkpointService.deleteByIngestId(ingest.getId());
+            } else if (endPosition != null) {
+                storeCheckpoint(endPosition, endRecords);
+            }
+        } catch (Exception e) {
+            logger.warn("Error saving the checkpoint of job " + jobId, e);
+        }
+    }
+
+    /**
+     * Save the warnings counted by the validator since the last call.
+     */
+    private void saveWarningCounts() {
+        Map<String, Long> counts = metadataValidator
+                .getUnrequiredFieldWarnings();
+        if (warningService == null || counts.isEmpty()) {
+            return;
+        }
+        Timer.Context timer = metrics.timer("warningService.saveWarningCounts")
+                .time();
+        try {
+            warningService.saveWarningCounts(report,
+                    IngestReportWarningType.UNREQUIRED_FIELD_WARNING, counts);
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                Long saved = savedUnrequiredFieldWarnings.get(count.getKey());
+                savedUnrequiredFieldWarnings.put(count.getKey(),
+                        saved == null ? count.getValue() : saved
+                                + count.getValue());
+            }
+            counts.clear();
+        } catch (Exception e) {
+            logger.error("Error saving the warnings of job " + jobId, e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Store the final summary of the report, once all its errors and warnings
+     * have been saved.
+     */
+    private void summarize() {
+        if (summaryService == null) {
+            return;
+        }
+        try {
+            summaryService.summarize(report);
+        } catch (Exception e) {
+            logger.error("Error saving the report summary of job " + jobId, e);
+        }
+    }
+
+    /**
+     * Save the summary of the errors and warnings found until now, if it has
+     * not been saved in the last {@link #SUMMARY_SAVE_INTERVAL_MS}.
+     */
+    private void saveSummary() {
+        long now = System.currentTimeMillis();
+        if (summaryService == null
+                || now - summarySavedAt < SUMMARY_SAVE_INTERVAL_MS) {
+            return;
+        }
+        summarySavedAt = now;
+        Map<String, Long> unrequiredFieldWarnings = Maps.newTreeMap();
+        unrequiredFieldWarnings.putAll(savedUnrequiredFieldWarnings);
+        for (Map.Entry<String, Long> count : metadataValidator
+                .getUnrequiredFieldWarnings().entrySet()) {
+            Long saved = unrequiredFieldWarnings.get(count.getKey());
+            unrequiredFieldWarnings.put(count.getKey(), saved == null ? count
+                    .getValue() : saved + count.getValue());
+        }
+        summary.setWarnings(IngestReportWarningType.UNREQUIRED_FIELD_WARNING,
+                unrequiredFieldWarnings);
+        try {
+            summaryService.saveSummary(report, summary);
+        } catch (Exception e) {
+            logger.warn("Error saving the report summary of job " + jobId, e);
         }
     }
 
@@ -162,6 +719,162 @@ public abstract class BaseIngestJob implements Runnable {
      */
     protected abstract void ingest();
 
+    /**
+     * @return the type of the remote source, used to tag the job metrics.
+     */
+    protected abstract InstanceType getSourceType();
+
+    /**
+     * Parse a metadata document, timing the parser.
+     *
+     * @param parser the parser.
+     * @param document the document.
+     * @return the parser response.
+     */
+    protected MetadataParserResponse parse(MetadataParser parser,
+            Document document) {
+        Timer.Context timer = metrics.timer("parser.parse").time();
+        try {
+            return parser.parse(document);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Run the ingest as a fetch/parse/index pipeline. Records are fetched and
+     * parsed in background threads while the current thread validates them and
+     * sends them to the metadata ingester in batches of
+     * {@link #INDEX_BATCH_SIZE} records. Queue sizes and number of parser
+     * threads are taken from the ingest.
+     * <p>
+     * The fetch stage must check {@link #isInterruptRequested()} and stop
+     * fetching when it returns <code>true</code>; records already fetched are
+     * still parsed and ingested.
+     * </p>
+     * <p>
+     * If the fetch stage reports its position, a checkpoint is saved at most
+     * every {@link #CHECKPOINT_INTERVAL_MS} so the job can be resumed from
+     * it, see {@link #getResumePosition()}.
+     * </p>
+     * <p>
+     * In a full execution of an incremental ingest, the LayerIds of the
+     * parsed records are kept in memory until the end of the execution, when
+     * the records of the ingest that were not retrieved are deleted.
+     * </p>
+     *
+     * @param stages fetch and parse stages of the ingest.
+     * @param <T> type of the fetched records.
+     */
+    protected <T> void runPipeline(IngestPipeline.Stages<T> stages) {
+        IngestPipeline<T> pipeline = new IngestPipeline<T>("ingest-"
+                + ingest.getId(), stages, toInt(ingest.getFetchQueueSize()),
+                toInt(ingest.getIndexQueueSize()),
+                toInt(ingest.getParserThreads()));
+        pipeline.setProgress(progress);
+        if (checkpointService != null) {
+            pipeline.setCheckpointInterval(CHECKPOINT_INTERVAL_MS);
+        }
+        long failedRecordsCount = report.getFailedRecordsCount();
+        List<Metadata> metadataList = Lists
+                .newArrayListWithCapacity(INDEX_BATCH_SIZE);
+
+        pipeline.start();
+        try {
+            PipelineRecord<T> record = pipeline.take();
+            while (record != null) {
+                if (record.isCheckpoint()) {
+                    report.setFailedRecordsCount(failedRecordsCount);
+                    if (!metadataList.isEmpty()) {
+                        metadataIngester.ingest(metadataList, report);
+                        progress.recordsIndexed(metadataList.size());
+                        metadataList = Lists
+                                .newArrayListWithCapacity(INDEX_BATCH_SIZE);
+                    }
+                    saveCheckpoint(record.getCheckpointPosition(),
+                            resumedRecords + record.getCheckpointRecords());
+                } else if (record.isFetchError()) {
+                    fetchFailed = true;
+                    saveException(record.getException(),
+                            IngestReportErrorType.SYSTEM_ERROR);
+                } else if (record.getException() != null) {
+                    recordsFailed = true;
+                    failedRecordsCount++;
+                    progress.recordFailed();
+                    handleParseError(record);
+                } else {
+                    retrieved(record.getMetadata());
+                    if (validate(record.getMetadata())) {
+                        metadataList.add(record.getMetadata());
+                    } else {
+                        failedRecordsCount++;
+                        progress.recordFailed();
+                    }
+                }
+
+                if (metadataList.size() >= INDEX_BATCH_SIZE) {
+                    report.setFailedRecordsCount(failedRecordsCount);
+                    metadataIngester.ingest(metadataList, report);
+                    progress.recordsIndexed(metadataList.size());
+                    metadataList = Lists
+                            .newArrayListWithCapacity(INDEX_BATCH_SIZE);
+                    saveSummary();
+                }
+                record = pipeline.take();
+            }
+            endPosition = pipeline.getEndPosition();
+            endRecords = resumedRecords + pipeline.getRecordsFetched();
+            report.setFailedRecordsCount(failedRecordsCount);
+            if (!metadataList.isEmpty()) {
+                metadataIngester.ingest(metadataList, report);
+                progress.recordsIndexed(metadataList.size());
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Ingest " + ingest.getName() + " interrupted", e);
+            Thread.currentThread().interrupt();
+            report.setFailedRecordsCount(failedRecordsCount);
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    /**
+     * Remember the LayerId of a record retrieved by a full execution, valid
+     * or not, so it is not deleted when the execution ends.
+     */
+    private void retrieved(Metadata metadata) {
+        if (retrievedLayerIds != null) {
+            String layerId = SolrRecord.calculateStableLayerId(metadata);
+            if (layerId != null) {
+                retrievedLayerIds.add(layerId);
+            }
+        }
+    }
+
+    private boolean validate(Metadata metadata) {
+        Timer.Context timer = metrics.timer("validator.validate").time();
+        try {
+            return metadataValidator.validate(metadata, report);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Store the error thrown while parsing a record. Child classes can
+     * override it to use a more specific error type.
+     *
+     * @param record the record that could not be parsed.
+     */
+    protected void handleParseError(PipelineRecord<?> record) {
+        saveException(record.getException(),
+                IngestReportErrorType.SYSTEM_ERROR, record.getDocument());
+    }
+
+    private static int toInt(Integer value) {
+        return value == null ? 0 : value;
+    }
+
     /**
      * @return the jobStatusService
      */
@@ -218,6 +931,112 @@ public abstract class BaseIngestJob implements Runnable {
         this.warningService = warningService;
     }
 
+    /**
+     * @return the reportSink
+     */
+    public IngestReportSink getReportSink() {
+        return reportSink;
+    }
+
+    /**
+     * @param reportSink the reportSink to set. It must be set before calling
+     * {@link #init(UUID, Ingest, MetadataIngester)}.
+     */
+    public void setReportSink(IngestReportSink reportSink) {
+        this.reportSink = reportSink;
+    }
+
+    /**
+     * @return the summaryService
+     */
+    public IngestReportSummaryService getSummaryService() {
+        return summaryService;
+    }
+
+    /**
+     * @param summaryService the summaryService to set
+     */
+    public void setSummaryService(IngestReportSummaryService summaryService) {
+        this.summaryService = summaryService;
+    }
+
+    /**
+     * @return the errors and warnings found until now. Errors returned by
+     * the metadata ingester are only counted in the final summary.
+     */
+    public IngestReportSummary getReportSummary() {
+        return summary;
+    }
+
+    /**
+     * @return the metricsRegistry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * @param metricsRegistry the metricsRegistry to set. It must be set before
+     * calling {@link #init(UUID, Ingest, MetadataIngester)}.
+     */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * @return the highWaterMarkService
+     */
+    public IngestHighWaterMarkService getHighWaterMarkService() {
+        return highWaterMarkService;
+    }
+
+    /**
+     * @param highWaterMarkService the highWaterMarkService to set
+     */
+    public void setHighWaterMarkService(
+            IngestHighWaterMarkService highWaterMarkService) {
+        this.highWaterMarkService = highWaterMarkService;
+    }
+
+    /**
+     * Get the high-water mark of an incremental execution. Child classes must
+     * use it to retrieve only the records modified since this date.
+     *
+     * @return the high-water mark or <code>null</code> if all the records must
+     * be retrieved.
+     */
+    protected Date getIncrementalFrom() {
+        return incrementalFrom;
+    }
+
+    /**
+     * Get the position from which a resumed execution continues. Child
+     * classes reporting their position with
+     * {@link IngestPipeline.RecordCollector#checkpoint(String)} must start
+     * fetching from it.
+     *
+     * @return the position of the checkpoint or <code>null</code> if the
+     * execution starts from the beginning.
+     */
+    protected String getResumePosition() {
+        return resumePosition;
+    }
+
+    /**
+     * @return the checkpointService
+     */
+    public IngestJobCheckpointService getCheckpointService() {
+        return checkpointService;
+    }
+
+    /**
+     * @param checkpointService the checkpointService to set
+     */
+    public void setCheckpointService(
+            IngestJobCheckpointService checkpointService) {
+        this.checkpointService = checkpointService;
+    }
+
     public ExceptionTranslator getExceptionTranslatorService() {
         return exceptionTranslatorService;
     }
@@ -249,23 +1068,65 @@ public abstract class BaseIngestJob implements Runnable {
      * @param errorType type of error.
      */
     protected void saveException(Exception e, IngestReportErrorType errorType, Document document) {
-        IngestReportError error = exceptionTranslatorService.translateException(e, errorType, document);
-        error.setReport(report);
-        getErrorService().save(error);
-        report.addError(error);
+        saveError(exceptionTranslatorService.translateException(e, errorType, document));
     }
 
     protected void saveException(Exception e, IngestReportErrorType errorType, SolrRecord record) {
-        IngestReportError error = exceptionTranslatorService.translateException(e, errorType, record);
-        error.setReport(report);
-        getErrorService().save(error);
-        report.addError(error);
+        saveError(exceptionTranslatorService.translateException(e, errorType, record));
     }
 
     protected void saveException(Exception e, IngestReportErrorType errorType) {
-        IngestReportError error = exceptionTranslatorService.translateException(e, errorType);
+        saveError(exceptionTranslatorService.translateException(e, errorType));
+    }
+
+    private void saveError(IngestReportError error) {
         error.setReport(report);
-        getErrorService().save(error);
+        Timer.Context timer = metrics.timer("errorService.save").time();
+        try {
+            getErrorService().save(error);
+        } finally {
+            timer.stop();
+        }
         report.addError(error);
+        summary.addError(error.getType(), error.getField(), 1L);
+    }
+
+    /**
+     * Counts the validation errors in the summary before passing them to
+     * the report sink, and times the sink.
+     */
+    private class SummarizingReportSink implements IngestReportSink {
+        private final IngestReportSink delegate;
+
+        SummarizingReportSink(IngestReportSink delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void add(IngestReportError error) {
+            summary.addError(error.getType(), error.getField(), 1L);
+            Timer.Context timer = metrics.timer("report.addError").time();
+            try {
+                delegate.add(error);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        @Override
+        public void add(IngestReportWarning warning) {
+            summary.addWarning(warning.getType(), warning.getField(), 1L);
+            Timer.Context timer = metrics.timer("report.addWarning").time();
+            try {
+                delegate.add(warning);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        @Override
+        public void flush(IngestReport report) {
+            delegate.flush(report);
+        }
     }
 }
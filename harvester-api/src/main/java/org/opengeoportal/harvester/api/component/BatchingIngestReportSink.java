@@ -0,0 +1,506 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningRepository;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.metrics.IngestMetrics;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * {@link IngestReportSink} that accumulates the errors and warnings of all
+ * the jobs and saves them in big transactions from a background thread, so
+ * they are inserted in JDBC batches instead of one transaction per entry.
+ * Each batch is saved with a single repository call, that runs in its own
+ * transaction.
+ * <p>
+ * A batch is saved when the buffer reaches {@link #getMaxEntries()} entries,
+ * {@link #getMaxBytes()} estimated bytes, or when its oldest entry has been
+ * waiting for {@link #getMaxDelayMs()} milliseconds. At most
+ * {@link #getMaxPendingBatches()} batches wait to be saved; when the queue is
+ * full the jobs adding entries wait. {@link #flush(IngestReport)} waits until
+ * all the entries of the report have been saved.
+ * </p>
+ */
+public class BatchingIngestReportSink implements IngestReportSink {
+	/**
+	 * Default max number of entries per batch.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	/**
+	 * Default max estimated size of a batch.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+	/**
+	 * Default max time an entry waits in the buffer.
+	 */
+	public static final int DEFAULT_MAX_DELAY_MS = 2000;
+	/**
+	 * Default number of batches waiting to be saved.
+	 */
+	public static final int DEFAULT_MAX_PENDING_BATCHES = 4;
+
+	/**
+	 * Fixed size added to the estimated size of each entry.
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final IngestReportErrorRepository errorRepository;
+	private final IngestReportWarningRepository warningRepository;
+
+	/**
+	 * Times the batches. Batches mix the entries of several jobs, so the
+	 * metrics are not tagged.
+	 */
+	private IngestMetrics metrics = MetricsRegistry.getDefault().forIngest(
+			null, null);
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private int maxDelayMs = DEFAULT_MAX_DELAY_MS;
+	private int maxPendingBatches = DEFAULT_MAX_PENDING_BATCHES;
+
+	/**
+	 * Guards the buffer and the report states.
+	 */
+	private final Object bufferLock = new Object();
+	/**
+	 * Entries waiting to be grouped in a batch.
+	 */
+	private List<BufferedEntry> buffer = Lists.newArrayList();
+	/**
+	 * Estimated size of the entries in the buffer.
+	 */
+	private long bufferBytes;
+	/**
+	 * Time when the oldest entry in the buffer was added.
+	 */
+	private long bufferStart;
+	/**
+	 * Entries pending to be saved of each report.
+	 */
+	private final Map<IngestReport, ReportState> reportStates = new IdentityHashMap<IngestReport, ReportState>();
+
+	/**
+	 * Batches waiting to be saved.
+	 */
+	private BlockingQueue<List<BufferedEntry>> batches;
+	/**
+	 * Background thread saving the batches.
+	 */
+	private Thread flusher;
+	private volatile boolean running;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param errorRepository
+	 *            repository used to save the errors.
+	 * @param warningRepository
+	 *            repository used to save the warnings.
+	 */
+	public BatchingIngestReportSink(
+			IngestReportErrorRepository errorRepository,
+			IngestReportWarningRepository warningRepository) {
+		this.errorRepository = errorRepository;
+		this.warningRepository = warningRepository;
+	}
+
+	/**
+	 * Start the background thread. Called automatically with the first entry
+	 * if not called before.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		batches = new ArrayBlockingQueue<List<BufferedEntry>>(Math.max(1,
+				maxPendingBatches));
+		running = true;
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "ingest-report-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Stop the background thread after saving the buffered entries.
+	 */
+	public synchronized void shutdown() {
+		if (!running) {
+			return;
+		}
+		List<BufferedEntry> batch = null;
+		synchronized (bufferLock) {
+			if (!buffer.isEmpty()) {
+				batch = cutBuffer();
+			}
+		}
+		if (batch != null) {
+			enqueue(batch);
+		}
+		running = false;
+		try {
+			flusher.join(TimeUnit.SECONDS.toMillis(30));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flusher.interrupt();
+	}
+
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maxEntries to set
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return the maxBytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the maxBytes to set
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the maxDelayMs
+	 */
+	public int getMaxDelayMs() {
+		return maxDelayMs;
+	}
+
+	/**
+	 * @param maxDelayMs
+	 *            the maxDelayMs to set
+	 */
+	public void setMaxDelayMs(int maxDelayMs) {
+		this.maxDelayMs = maxDelayMs;
+	}
+
+	/**
+	 * @return the maxPendingBatches
+	 */
+	public int getMaxPendingBatches() {
+		return maxPendingBatches;
+	}
+
+	/**
+	 * @param maxPendingBatches
+	 *            the maxPendingBatches to set. It must be set before
+	 *            {@link #start()}.
+	 */
+	public void setMaxPendingBatches(int maxPendingBatches) {
+		this.maxPendingBatches = maxPendingBatches;
+	}
+
+	/**
+	 * @param metricsRegistry
+	 *            registry where the batches are timed. It must be set before
+	 *            {@link #start()}.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metrics = metricsRegistry.forIngest(null, null);
+	}
+
+	@Override
+	public void add(IngestReportError error) {
+		String metadata = error.getMetadata();
+		add(new BufferedEntry(error, error.getReport()),
+				metadata == null ? 0 : metadata.length());
+	}
+
+	@Override
+	public void add(IngestReportWarning warning) {
+		add(new BufferedEntry(warning, warning.getReport()), 0);
+	}
+
+	private void add(BufferedEntry entry, int size) {
+		if (!running) {
+			start();
+		}
+		List<BufferedEntry> fullBatch = null;
+		synchronized (bufferLock) {
+			ReportState state = reportStates.get(entry.report);
+			if (state == null) {
+				state = new ReportState();
+				reportStates.put(entry.report, state);
+			}
+			state.added(1);
+			entry.state = state;
+			if (buffer.isEmpty()) {
+				bufferStart = System.currentTimeMillis();
+			}
+			buffer.add(entry);
+			bufferBytes += ENTRY_OVERHEAD_BYTES + size;
+			if (buffer.size() >= maxEntries || bufferBytes >= maxBytes) {
+				fullBatch = cutBuffer();
+			}
+		}
+		if (fullBatch != null) {
+			enqueue(fullBatch);
+		}
+	}
+
+	@Override
+	public void flush(IngestReport report) {
+		ReportState state;
+		List<BufferedEntry> batch = null;
+		synchronized (bufferLock) {
+			state = reportStates.get(report);
+			if (state != null && !buffer.isEmpty()) {
+				batch = cutBuffer();
+			}
+		}
+		if (state == null) {
+			return;
+		}
+		if (batch != null) {
+			enqueue(batch);
+		}
+		try {
+			state.awaitSaved();
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for the report errors and "
+					+ "warnings to be saved");
+			Thread.currentThread().interrupt();
+		}
+		synchronized (bufferLock) {
+			reportStates.remove(report);
+		}
+	}
+
+	/**
+	 * Take all the entries in the buffer. Must be called holding bufferLock.
+	 *
+	 * @return the entries.
+	 */
+	private List<BufferedEntry> cutBuffer() {
+		List<BufferedEntry> batch = buffer;
+		buffer = Lists.newArrayListWithCapacity(maxEntries);
+		bufferBytes = 0L;
+		return batch;
+	}
+
+	/**
+	 * Queue a batch, waiting while the queue is full. If the background
+	 * thread is not running or the current thread is interrupted the batch is
+	 * saved from the current thread.
+	 *
+	 * @param batch
+	 *            the batch.
+	 */
+	private void enqueue(List<BufferedEntry> batch) {
+		try {
+			while (running) {
+				if (batches.offer(batch, 1, TimeUnit.SECONDS)) {
+					return;
+				}
+				logger.debug("Waiting for report batches to be saved");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		save(batch);
+	}
+
+	/**
+	 * Background thread body.
+	 */
+	private void flushLoop() {
+		long pollMs = Math.max(10, maxDelayMs / 4);
+		while (running || !batches.isEmpty()) {
+			try {
+				List<BufferedEntry> batch = batches.poll(pollMs,
+						TimeUnit.MILLISECONDS);
+				if (batch == null) {
+					synchronized (bufferLock) {
+						if (!buffer.isEmpty()
+								&& System.currentTimeMillis() - bufferStart >= maxDelayMs) {
+							batch = cutBuffer();
+						}
+					}
+				}
+				if (batch != null) {
+					save(batch);
+				}
+			} catch (InterruptedException e) {
+				logger.debug("Ingest report flusher interrupted");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Save a batch and mark its entries as saved.
+	 *
+	 * @param batch
+	 *            the batch.
+	 */
+	private void save(List<BufferedEntry> batch) {
+		List<IngestReportError> errors = Lists.newArrayList();
+		List<IngestReportWarning> warnings = Lists.newArrayList();
+		Map<ReportState, Integer> entriesByState = Maps.newIdentityHashMap();
+		for (BufferedEntry entry : batch) {
+			if (entry.error != null) {
+				errors.add(entry.error);
+			} else {
+				warnings.add(entry.warning);
+			}
+			Integer count = entriesByState.get(entry.state);
+			entriesByState.put(entry.state, count == null ? 1 : count + 1);
+		}
+
+		try {
+			logger.debug("Saving a batch of " + errors.size() + " errors and "
+					+ warnings.size() + " warnings");
+			metrics.histogram("report.batch.entries").update(batch.size());
+			if (!errors.isEmpty()) {
+				Timer.Context timer = metrics.timer("report.saveErrors")
+						.time();
+				try {
+					saveErrors(errors);
+				} finally {
+					timer.stop();
+				}
+			}
+			if (!warnings.isEmpty()) {
+				Timer.Context timer = metrics.timer("report.saveWarnings")
+						.time();
+				try {
+					saveWarnings(warnings);
+				} finally {
+					timer.stop();
+				}
+			}
+		} finally {
+			for (Map.Entry<ReportState, Integer> entry : entriesByState
+					.entrySet()) {
+				entry.getKey().saved(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Save the errors of a batch. If the batch fails they are saved one by
+	 * one, so only the invalid ones are lost.
+	 */
+	private void saveErrors(List<IngestReportError> errors) {
+		try {
+			errorRepository.saveWithMetadata(errors);
+		} catch (RuntimeException e) {
+			logger.warn("Error saving a batch of " + errors.size()
+					+ " report errors, saving them one by one", e);
+			for (IngestReportError error : errors) {
+				try {
+					errorRepository.saveWithMetadata(error);
+				} catch (RuntimeException ex) {
+					logger.error("Error saving report error: "
+							+ error.getMessage(), ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save the warnings of a batch. If the batch fails they are saved one by
+	 * one, so only the invalid ones are lost.
+	 */
+	private void saveWarnings(List<IngestReportWarning> warnings) {
+		try {
+			warningRepository.save(warnings);
+		} catch (RuntimeException e) {
+			logger.warn("Error saving a batch of " + warnings.size()
+					+ " report warnings, saving them one by one", e);
+			for (IngestReportWarning warning : warnings) {
+				try {
+					warningRepository.save(warning);
+				} catch (RuntimeException ex) {
+					logger.error("Error saving report warning: "
+							+ warning.getMessage(), ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An error or a warning waiting in the buffer.
+	 */
+	private static class BufferedEntry {
+		private final IngestReportError error;
+		private final IngestReportWarning warning;
+		private final IngestReport report;
+		private ReportState state;
+
+		BufferedEntry(IngestReportError error, IngestReport report) {
+			this.error = error;
+			this.warning = null;
+			this.report = report;
+		}
+
+		BufferedEntry(IngestReportWarning warning, IngestReport report) {
+			this.error = null;
+			this.warning = warning;
+			this.report = report;
+		}
+	}
+
+	/**
+	 * Entries of a report not saved yet.
+	 */
+	private static class ReportState {
+		private int pending;
+
+		synchronized void added(int count) {
+			pending += count;
+		}
+
+		synchronized void saved(int count) {
+			pending -= count;
+			if (pending <= 0) {
+				notifyAll();
+			}
+		}
+
+		synchronized void awaitSaved() throws InterruptedException {
+			while (pending > 0) {
+				wait();
+			}
+		}
+	}
+}
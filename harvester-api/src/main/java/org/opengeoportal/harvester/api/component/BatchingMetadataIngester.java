@@ -0,0 +1,514 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * {@link MetadataIngester} that accumulates the records received from all the
+ * jobs and sends them to Solr in big batches from a background thread.
+ * <p>
+ * A batch is sent when the buffer reaches {@link #getMaxDocuments()} records,
+ * {@link #getMaxBytes()} estimated bytes, or when its oldest record has been
+ * waiting for {@link #getMaxDelayMs()} milliseconds. At most
+ * {@link #getMaxPendingBatches()} batches wait to be sent; when the queue is
+ * full the jobs calling {@link #ingest(List, IngestReport)} wait.
+ * </p>
+ * <p>
+ * The background thread never touches the {@link IngestReport}s: the results
+ * of each record are accumulated in {@link IngestReportCounters} and moved to
+ * the report by the job thread in the next call to
+ * {@link #ingest(List, IngestReport)}, or in {@link #flush(IngestReport)} and
+ * {@link #finish(IngestReport)}, that wait until all the records of the
+ * report have been sent.
+ * </p>
+ */
+public class BatchingMetadataIngester implements MetadataIngester {
+	/**
+	 * Default max number of records per batch.
+	 */
+	public static final int DEFAULT_MAX_DOCUMENTS = 500;
+	/**
+	 * Default max estimated size of a batch.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+	/**
+	 * Default max time a record waits in the buffer.
+	 */
+	public static final int DEFAULT_MAX_DELAY_MS = 5000;
+	/**
+	 * Default number of batches waiting to be sent.
+	 */
+	public static final int DEFAULT_MAX_PENDING_BATCHES = 2;
+
+	/**
+	 * Fixed size added to the estimated size of each record.
+	 */
+	private static final int RECORD_OVERHEAD_BYTES = 1024;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * Ingester that actually sends the batches.
+	 */
+	private final SolrMetadataIngester delegate;
+
+	private int maxDocuments = DEFAULT_MAX_DOCUMENTS;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private int maxDelayMs = DEFAULT_MAX_DELAY_MS;
+	private int maxPendingBatches = DEFAULT_MAX_PENDING_BATCHES;
+
+	/**
+	 * Guards the buffer and the report states.
+	 */
+	private final Object bufferLock = new Object();
+	/**
+	 * Records waiting to be grouped in a batch.
+	 */
+	private List<BufferedRecord> buffer = Lists.newArrayList();
+	/**
+	 * Estimated size of the records in the buffer.
+	 */
+	private long bufferBytes;
+	/**
+	 * Time when the oldest record in the buffer was added.
+	 */
+	private long bufferStart;
+	/**
+	 * State of the reports with records not finished yet.
+	 */
+	private final Map<IngestReport, ReportState> reportStates = new IdentityHashMap<IngestReport, ReportState>();
+
+	/**
+	 * Batches waiting to be sent.
+	 */
+	private BlockingQueue<List<BufferedRecord>> batches;
+	/**
+	 * Background thread sending the batches.
+	 */
+	private Thread flusher;
+	private volatile boolean running;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param delegate
+	 *            ingester used for sending the batches to Solr.
+	 */
+	public BatchingMetadataIngester(SolrMetadataIngester delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Start the background thread. Called automatically with the first
+	 * records if not called before.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		batches = new ArrayBlockingQueue<List<BufferedRecord>>(Math.max(1,
+				maxPendingBatches));
+		running = true;
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "metadata-ingester-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Stop the background thread after sending the buffered records.
+	 */
+	public synchronized void shutdown() {
+		if (!running) {
+			return;
+		}
+		List<BufferedRecord> batch = null;
+		synchronized (bufferLock) {
+			if (!buffer.isEmpty()) {
+				batch = cutBuffer();
+			}
+		}
+		if (batch != null) {
+			enqueue(batch);
+		}
+		running = false;
+		try {
+			flusher.join(TimeUnit.SECONDS.toMillis(30));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flusher.interrupt();
+	}
+
+	/**
+	 * @return the maxDocuments
+	 */
+	public int getMaxDocuments() {
+		return maxDocuments;
+	}
+
+	/**
+	 * @param maxDocuments
+	 *            the maxDocuments to set
+	 */
+	public void setMaxDocuments(int maxDocuments) {
+		this.maxDocuments = maxDocuments;
+	}
+
+	/**
+	 * @return the maxBytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the maxBytes to set
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the maxDelayMs
+	 */
+	public int getMaxDelayMs() {
+		return maxDelayMs;
+	}
+
+	/**
+	 * @param maxDelayMs
+	 *            the maxDelayMs to set
+	 */
+	public void setMaxDelayMs(int maxDelayMs) {
+		this.maxDelayMs = maxDelayMs;
+	}
+
+	/**
+	 * @return the maxPendingBatches
+	 */
+	public int getMaxPendingBatches() {
+		return maxPendingBatches;
+	}
+
+	/**
+	 * @param maxPendingBatches
+	 *            the maxPendingBatches to set. It must be set before
+	 *            {@link #start()}.
+	 */
+	public void setMaxPendingBatches(int maxPendingBatches) {
+		this.maxPendingBatches = maxPendingBatches;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#ingest(org
+	 * .opengeoportal.harvester.api.metadata.model.Metadata)
+	 */
+	@Override
+	public void ingest(Metadata metadata) {
+		delegate.ingest(metadata);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#ingest(java
+	 * .util.List, org.opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	public void ingest(List<Metadata> metadataList, IngestReport report) {
+		if (!running) {
+			start();
+		}
+		ReportState state;
+		List<List<BufferedRecord>> fullBatches = Lists.newArrayList();
+		synchronized (bufferLock) {
+			state = reportStates.get(report);
+			if (state == null) {
+				state = new ReportState(report);
+				reportStates.put(report, state);
+			}
+			state.added(metadataList.size());
+			for (Metadata metadata : metadataList) {
+				if (buffer.isEmpty()) {
+					bufferStart = System.currentTimeMillis();
+				}
+				buffer.add(new BufferedRecord(metadata, state));
+				bufferBytes += estimateSize(metadata);
+				if (buffer.size() >= maxDocuments || bufferBytes >= maxBytes) {
+					fullBatches.add(cutBuffer());
+				}
+			}
+		}
+		for (List<BufferedRecord> batch : fullBatches) {
+			enqueue(batch);
+		}
+		state.counters.addTo(report);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#finish(org
+	 * .opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	public void finish(IngestReport report) {
+		ReportState state = send(report);
+		if (state != null) {
+			synchronized (bufferLock) {
+				reportStates.remove(report);
+			}
+			state.counters.addTo(report);
+		}
+		delegate.finish(report);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#flush(org
+	 * .opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	public void flush(IngestReport report) {
+		ReportState state = send(report);
+		if (state != null) {
+			state.counters.addTo(report);
+		}
+		delegate.flush(report);
+	}
+
+	/**
+	 * Send the buffered records and wait until all the records of the report
+	 * have been sent.
+	 *
+	 * @param report
+	 *            the report.
+	 * @return the state of the report, or <code>null</code> if it has no
+	 *         records.
+	 */
+	private ReportState send(IngestReport report) {
+		ReportState state;
+		List<BufferedRecord> batch = null;
+		synchronized (bufferLock) {
+			state = reportStates.get(report);
+			if (state != null && !buffer.isEmpty()) {
+				batch = cutBuffer();
+			}
+		}
+		if (state != null) {
+			if (batch != null) {
+				enqueue(batch);
+			}
+			try {
+				state.awaitSent();
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while waiting for the records to be "
+						+ "sent to Solr");
+				Thread.currentThread().interrupt();
+			}
+		}
+		return state;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#deleteMissing
+	 * (java.lang.Long, java.util.Set)
+	 */
+	@Override
+	public long deleteMissing(Long ingestId, Set<String> retrievedLayerIds) {
+		return delegate.deleteMissing(ingestId, retrievedLayerIds);
+	}
+
+	/**
+	 * Take all the records in the buffer. Must be called holding bufferLock.
+	 *
+	 * @return the records.
+	 */
+	private List<BufferedRecord> cutBuffer() {
+		List<BufferedRecord> batch = buffer;
+		buffer = Lists.newArrayListWithCapacity(maxDocuments);
+		bufferBytes = 0L;
+		return batch;
+	}
+
+	/**
+	 * Queue a batch, waiting while the queue is full. If the background
+	 * thread is not running or the current thread is interrupted the batch is
+	 * sent from the current thread.
+	 *
+	 * @param batch
+	 *            the batch.
+	 */
+	private void enqueue(List<BufferedRecord> batch) {
+		try {
+			while (running) {
+				if (batches.offer(batch, 1, TimeUnit.SECONDS)) {
+					return;
+				}
+				logger.debug("Waiting for Solr batches to be sent");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		send(batch);
+	}
+
+	/**
+	 * Background thread body.
+	 */
+	private void flushLoop() {
+		long pollMs = Math.max(10, maxDelayMs / 4);
+		while (running || !batches.isEmpty()) {
+			try {
+				List<BufferedRecord> batch = batches.poll(pollMs,
+						TimeUnit.MILLISECONDS);
+				if (batch == null) {
+					synchronized (bufferLock) {
+						if (!buffer.isEmpty()
+								&& System.currentTimeMillis() - bufferStart >= maxDelayMs) {
+							batch = cutBuffer();
+						}
+					}
+				}
+				if (batch != null) {
+					send(batch);
+				}
+			} catch (InterruptedException e) {
+				logger.debug("Metadata ingester flusher interrupted");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Send a batch to Solr and mark its records as sent.
+	 *
+	 * @param batch
+	 *            the batch.
+	 */
+	private void send(List<BufferedRecord> batch) {
+		List<Metadata> metadataList = Lists.newArrayListWithCapacity(batch
+				.size());
+		List<IngestReportCounters> countersList = Lists
+				.newArrayListWithCapacity(batch.size());
+		Map<ReportState, Integer> recordsByState = Maps.newIdentityHashMap();
+		for (BufferedRecord record : batch) {
+			metadataList.add(record.metadata);
+			countersList.add(record.state.counters);
+			Integer count = recordsByState.get(record.state);
+			recordsByState.put(record.state, count == null ? 1 : count + 1);
+		}
+
+		try {
+			logger.debug("Sending a batch of " + batch.size()
+					+ " records to Solr");
+			delegate.index(metadataList, countersList);
+		} catch (Exception e) {
+			logger.error("Error sending a batch of records to Solr", e);
+			for (ReportState state : recordsByState.keySet()) {
+				IngestReportError error = new IngestReportError();
+				error.setType(IngestReportErrorType.SYSTEM_ERROR);
+				error.setMessage("Error sending records to Solr: "
+						+ e.getMessage());
+				state.counters.addError(error);
+			}
+		} finally {
+			for (Map.Entry<ReportState, Integer> entry : recordsByState
+					.entrySet()) {
+				entry.getKey().sent(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Estimate the size of a record once serialized for Solr.
+	 *
+	 * @param metadata
+	 *            the record.
+	 * @return the estimated size in bytes.
+	 */
+	private static long estimateSize(Metadata metadata) {
+		long size = RECORD_OVERHEAD_BYTES;
+		size += length(metadata.getFullText());
+		size += length(metadata.getDescription());
+		size += length(metadata.getTitle());
+		return size;
+	}
+
+	private static int length(String value) {
+		return value == null ? 0 : value.length();
+	}
+
+	/**
+	 * A record waiting in the buffer.
+	 */
+	private static class BufferedRecord {
+		private final Metadata metadata;
+		private final ReportState state;
+
+		BufferedRecord(Metadata metadata, ReportState state) {
+			this.metadata = metadata;
+			this.state = state;
+		}
+	}
+
+	/**
+	 * Records of a report not sent yet and results of the ones already sent.
+	 */
+	private static class ReportState {
+		private final IngestReportCounters counters;
+		private int pending;
+
+		ReportState(IngestReport report) {
+			this.counters = new IngestReportCounters(report);
+		}
+
+		synchronized void added(int count) {
+			pending += count;
+		}
+
+		synchronized void sent(int count) {
+			pending -= count;
+			if (pending <= 0) {
+				notifyAll();
+			}
+		}
+
+		synchronized void awaitSent() throws InterruptedException {
+			while (pending > 0) {
+				wait();
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.opengeoportal.harvester.api.component;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.service.IngestReportErrorService;
+import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
+
+/**
+ * {@link IngestReportSink} that stores each entry as soon as it is added.
+ */
+public class DirectIngestReportSink implements IngestReportSink {
+	private final IngestReportErrorService errorService;
+	private final IngestReportWarningsService warningService;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param errorService
+	 *            service used to save the errors.
+	 * @param warningService
+	 *            service used to save the warnings.
+	 */
+	public DirectIngestReportSink(IngestReportErrorService errorService,
+			IngestReportWarningsService warningService) {
+		this.errorService = errorService;
+		this.warningService = warningService;
+	}
+
+	@Override
+	public void add(IngestReportError error) {
+		errorService.save(error);
+	}
+
+	@Override
+	public void add(IngestReportWarning warning) {
+		warningService.save(warning);
+	}
+
+	@Override
+	public void flush(IngestReport report) {
+		// Nothing pending
+	}
+}
@@ -0,0 +1,628 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Staged fetch/parse/index pipeline used by {@link BaseIngestJob}.
+ * <p>
+ * A fetcher thread retrieves the remote records and hands them to a pool of
+ * parser threads. Parsed records are queued for the indexer, that is the
+ * thread that calls {@link #take()} (the job thread). Both queues are bounded,
+ * so a slow stage makes the previous ones wait instead of buffering the whole
+ * remote catalogue in memory.
+ * </p>
+ * <p>
+ * The fetch stage reports the position of the next page with
+ * {@link RecordCollector#checkpoint(String)}. At most once every
+ * {@link #setCheckpointInterval(long) checkpoint interval} the pipeline waits
+ * for the records of the previous pages to be parsed and queues a checkpoint
+ * mark after them, so when the indexer takes it all the records fetched
+ * before have already been taken and none fetched after.
+ * </p>
+ * <p>
+ * Fetch and parse stages must not touch the database nor the ingest report:
+ * errors are carried inside the {@link PipelineRecord} and handled by the
+ * indexer, so the report is only modified from the job thread.
+ * </p>
+ *
+ * @param <T> type of the records produced by the fetch stage.
+ */
+public class IngestPipeline<T> {
+
+    /**
+     * Default number of fetched records waiting to be parsed.
+     */
+    public static final int DEFAULT_FETCH_QUEUE_SIZE = 200;
+    /**
+     * Default number of parsed records waiting to be indexed.
+     */
+    public static final int DEFAULT_INDEX_QUEUE_SIZE = 200;
+    /**
+     * Default number of parser threads.
+     */
+    public static final int DEFAULT_PARSER_THREADS = Math.max(1, Runtime
+            .getRuntime().availableProcessors());
+
+    /**
+     * Logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Stages implementation.
+     */
+    private final Stages<T> stages;
+    /**
+     * Name used for the pipeline threads.
+     */
+    private final String name;
+    /**
+     * Number of parser threads.
+     */
+    private final int parserThreads;
+    /**
+     * Limits the records fetched but not yet parsed.
+     */
+    private final Semaphore fetchQueuePermits;
+    /**
+     * Parsed records waiting to be indexed.
+     */
+    private final BlockingQueue<PipelineRecord<T>> indexQueue;
+    /**
+     * Parser pool.
+     */
+    private ExecutorService parserPool;
+    /**
+     * Fetcher thread.
+     */
+    private Thread fetcher;
+    /**
+     * <code>true</code> when the pipeline has been shut down before the end.
+     */
+    private volatile boolean aborted;
+    /**
+     * <code>true</code> when the end of the pipeline has been reached.
+     */
+    private boolean finished;
+    /**
+     * Progress where fetched and parsed records are counted, can be
+     * <code>null</code>.
+     */
+    private IngestProgress progress;
+    /**
+     * Minimum time between two checkpoint marks, in milliseconds. If it is
+     * not positive no checkpoint mark is queued.
+     */
+    private long checkpointInterval;
+    /**
+     * Guards {@link #recordsInFlight}.
+     */
+    private final Object inFlightLock = new Object();
+    /**
+     * Records sent to the parser pool and not queued for the indexer yet.
+     */
+    private int recordsInFlight;
+    /**
+     * Records fetched until now. Only used by the fetcher thread.
+     */
+    private long recordsFetched;
+    /**
+     * Records fetched when the last position was reported. Only used by the
+     * fetcher thread.
+     */
+    private long recordsAtPosition;
+    /**
+     * Last position reported by the fetch stage. Only used by the fetcher
+     * thread.
+     */
+    private String position;
+    /**
+     * Time of the last checkpoint mark. Only used by the fetcher thread.
+     */
+    private long lastCheckpointTime;
+    /**
+     * Position reached by the fetch stage when it ended, or <code>null</code>
+     * if records were fetched after the last position reported. Published
+     * by the end mark.
+     */
+    private String endPosition;
+
+    /**
+     * Create a new pipeline. Non positive sizes are replaced by the default
+     * values.
+     *
+     * @param name name of the pipeline, used for naming the threads.
+     * @param stages fetch and parse stages implementation.
+     * @param fetchQueueSize max number of records fetched pending to be
+     * parsed.
+     * @param indexQueueSize max number of records parsed pending to be
+     * indexed.
+     * @param parserThreads number of parser threads.
+     */
+    public IngestPipeline(String name, Stages<T> stages, int fetchQueueSize,
+            int indexQueueSize, int parserThreads) {
+        this.name = name;
+        this.stages = stages;
+        this.parserThreads = parserThreads > 0 ? parserThreads
+                : DEFAULT_PARSER_THREADS;
+        this.fetchQueuePermits = new Semaphore(
+                fetchQueueSize > 0 ? fetchQueueSize : DEFAULT_FETCH_QUEUE_SIZE);
+        this.indexQueue = new ArrayBlockingQueue<PipelineRecord<T>>(
+                indexQueueSize > 0 ? indexQueueSize : DEFAULT_INDEX_QUEUE_SIZE);
+    }
+
+    /**
+     * @param progress progress where the fetched and parsed records are
+     * counted. It must be set before calling {@link #start()}.
+     */
+    public void setProgress(IngestProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @param checkpointInterval minimum time between two checkpoint marks, in
+     * milliseconds. It must be set before calling {@link #start()}.
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Start the fetcher and the parser threads.
+     */
+    public void start() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        parserPool = new ThreadPoolExecutor(parserThreads, parserThreads, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, name + "-parser-"
+                                + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        lastCheckpointTime = System.currentTimeMillis();
+        fetcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fetch();
+            }
+        }, name + "-fetcher");
+        fetcher.setDaemon(true);
+        fetcher.start();
+    }
+
+    /**
+     * Retrieves the next parsed record, waiting if necessary.
+     *
+     * @return the next record, that can be a
+     * {@link PipelineRecord#isCheckpoint() checkpoint mark}, or
+     * <code>null</code> if all the fetched records have been returned.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public PipelineRecord<T> take() throws InterruptedException {
+        if (finished) {
+            return null;
+        }
+        PipelineRecord<T> record = indexQueue.take();
+        if (record.isEndMark()) {
+            finished = true;
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * @return the position reached by the fetch stage, if all the records it
+     * fetched were fetched before reporting it; <code>null</code> otherwise.
+     * It is only available once {@link #take()} has returned
+     * <code>null</code>.
+     */
+    public String getEndPosition() {
+        return finished ? endPosition : null;
+    }
+
+    /**
+     * @return the number of records fetched. It is only accurate once
+     * {@link #take()} has returned <code>null</code>.
+     */
+    public long getRecordsFetched() {
+        return recordsFetched;
+    }
+
+    /**
+     * Stop all the pipeline threads. Records not taken yet are discarded.
+     */
+    public void shutdown() {
+        if (finished) {
+            return;
+        }
+        aborted = true;
+        if (fetcher != null) {
+            fetcher.interrupt();
+        }
+        if (parserPool != null) {
+            parserPool.shutdownNow();
+        }
+        indexQueue.clear();
+    }
+
+    /**
+     * Fetcher thread body. When the fetch stage ends waits for the parsers to
+     * finish and then queues the end mark.
+     */
+    private void fetch() {
+        try {
+            stages.fetch(new RecordCollector<T>() {
+                @Override
+                public void collect(T record) throws InterruptedException {
+                    if (progress != null) {
+                        progress.recordFetched();
+                    }
+                    recordsFetched++;
+                    submit(record);
+                }
+
+                @Override
+                public void failed(T record, Exception e)
+                        throws InterruptedException {
+                    if (progress != null) {
+                        progress.recordFetched();
+                    }
+                    recordsFetched++;
+                    PipelineRecord<T> result = new PipelineRecord<T>(record);
+                    result.setException(e);
+                    put(result);
+                }
+
+                @Override
+                public void error(Exception e) throws InterruptedException {
+                    put(PipelineRecord.<T>fetchError(e));
+                }
+
+                @Override
+                public void checkpoint(String nextPosition)
+                        throws InterruptedException {
+                    position = nextPosition;
+                    recordsAtPosition = recordsFetched;
+                    long now = System.currentTimeMillis();
+                    if (checkpointInterval > 0
+                            && now - lastCheckpointTime >= checkpointInterval) {
+                        lastCheckpointTime = now;
+                        awaitRecordsInFlight();
+                        put(PipelineRecord.<T>checkpoint(nextPosition,
+                                recordsFetched));
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            logger.debug("Fetcher of " + name + " interrupted");
+        } catch (Exception e) {
+            logger.error("Error fetching records in " + name, e);
+            try {
+                put(PipelineRecord.<T>fetchError(e));
+            } catch (InterruptedException ie) {
+                logger.debug("Fetcher of " + name + " interrupted");
+            }
+        } finally {
+            parserPool.shutdown();
+            try {
+                while (!aborted
+                        && !parserPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logger.trace("Waiting for " + name + " parsers to finish");
+                }
+                if (recordsFetched == recordsAtPosition) {
+                    endPosition = position;
+                }
+                put(PipelineRecord.<T>endMark());
+            } catch (InterruptedException e) {
+                logger.debug("Fetcher of " + name + " interrupted");
+            }
+        }
+    }
+
+    /**
+     * Send a fetched record to the parser pool, waiting while the fetch queue
+     * is full.
+     *
+     * @param record fetched record.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void submit(final T record) throws InterruptedException {
+        fetchQueuePermits.acquire();
+        synchronized (inFlightLock) {
+            recordsInFlight++;
+        }
+        parserPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                PipelineRecord<T> result = new PipelineRecord<T>(record);
+                try {
+                    result.setMetadata(stages.parse(result));
+                    if (progress != null) {
+                        progress.recordParsed();
+                    }
+                } catch (Exception e) {
+                    result.setException(e);
+                } finally {
+                    fetchQueuePermits.release();
+                }
+                try {
+                    put(result);
+                } catch (InterruptedException e) {
+                    logger.debug("Parser of " + name + " interrupted");
+                } finally {
+                    synchronized (inFlightLock) {
+                        recordsInFlight--;
+                        inFlightLock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until all the records sent to the parser pool have been queued for
+     * the indexer. Gives up if the pipeline is aborted.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void awaitRecordsInFlight() throws InterruptedException {
+        synchronized (inFlightLock) {
+            while (!aborted && recordsInFlight > 0) {
+                inFlightLock.wait(1000L);
+            }
+        }
+    }
+
+    /**
+     * Queue a record for the indexer, waiting while the index queue is full.
+     * Gives up if the pipeline is aborted.
+     *
+     * @param record the record.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void put(PipelineRecord<T> record) throws InterruptedException {
+        while (!aborted && !indexQueue.offer(record, 1, TimeUnit.SECONDS)) {
+            logger.trace("Index queue of " + name + " is full");
+        }
+    }
+
+    /**
+     * Fetch and parse stages of an ingest pipeline.
+     *
+     * @param <T> type of the fetched records.
+     */
+    public interface Stages<T> {
+        /**
+         * Retrieve all the records and pass them to the collector. Runs in the
+         * fetcher thread.
+         *
+         * @param collector the record collector.
+         * @throws Exception if an unrecoverable error occurs.
+         */
+        void fetch(RecordCollector<T> collector) throws Exception;
+
+        /**
+         * Parse a fetched record. Runs in a parser thread, so it must be
+         * thread safe and must not access the database.
+         *
+         * @param record the fetched record. The parsed XML document can be
+         * stored in it to be used in the error reports.
+         * @return the parsed metadata.
+         * @throws Exception if the record cannot be parsed.
+         */
+        Metadata parse(PipelineRecord<T> record) throws Exception;
+    }
+
+    /**
+     * Receives the fetched records. It is not thread safe: it must only be
+     * called from the fetcher thread, fetch stages using other threads have
+     * to hand their results back to it.
+     *
+     * @param <T> type of the fetched records.
+     */
+    public interface RecordCollector<T> {
+        /**
+         * Queue a record to be parsed, waiting while the queue is full.
+         *
+         * @param record the fetched record.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void collect(T record) throws InterruptedException;
+
+        /**
+         * Report a record that could not be fetched. It is counted as a failed
+         * record.
+         *
+         * @param record the record, can be <code>null</code>.
+         * @param e the error.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void failed(T record, Exception e) throws InterruptedException;
+
+        /**
+         * Report a fetch error that does not stop the fetch stage.
+         *
+         * @param e the error.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void error(Exception e) throws InterruptedException;
+
+        /**
+         * Report the position from which the fetch stage would continue if
+         * the job was resumed. Must be called once all the records before it
+         * have been passed to the collector, usually after each page.
+         *
+         * @param position the position of the next page.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void checkpoint(String position) throws InterruptedException;
+    }
+
+    /**
+     * A record going through the pipeline together with the result of the
+     * parse stage.
+     *
+     * @param <T> type of the fetched record.
+     */
+    public static class PipelineRecord<T> {
+        /**
+         * The fetched record.
+         */
+        private final T record;
+        /**
+         * XML document built in the parse stage, if any.
+         */
+        private Document document;
+        /**
+         * Parsed metadata.
+         */
+        private Metadata metadata;
+        /**
+         * Error thrown while fetching or parsing.
+         */
+        private Exception exception;
+        /**
+         * <code>true</code> if the error is not related to a concrete record.
+         */
+        private boolean fetchError;
+        /**
+         * Marks the end of the pipeline.
+         */
+        private boolean endMark;
+        /**
+         * Position of a checkpoint mark.
+         */
+        private String checkpointPosition;
+        /**
+         * Records fetched before a checkpoint mark.
+         */
+        private long checkpointRecords;
+
+        public PipelineRecord(T record) {
+            this.record = record;
+        }
+
+        private static <T> PipelineRecord<T> fetchError(Exception e) {
+            PipelineRecord<T> result = new PipelineRecord<T>(null);
+            result.setException(e);
+            result.fetchError = true;
+            return result;
+        }
+
+        private static <T> PipelineRecord<T> checkpoint(String position,
+                long records) {
+            PipelineRecord<T> result = new PipelineRecord<T>(null);
+            result.checkpointPosition = position;
+            result.checkpointRecords = records;
+            return result;
+        }
+
+        private static <T> PipelineRecord<T> endMark() {
+            PipelineRecord<T> result = new PipelineRecord<T>(null);
+            result.endMark = true;
+            return result;
+        }
+
+        /**
+         * @return the fetched record.
+         */
+        public T getRecord() {
+            return record;
+        }
+
+        /**
+         * @return the XML document.
+         */
+        public Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @param document the XML document to set.
+         */
+        public void setDocument(Document document) {
+            this.document = document;
+        }
+
+        /**
+         * @return the parsed metadata.
+         */
+        public Metadata getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * @param metadata the parsed metadata to set.
+         */
+        public void setMetadata(Metadata metadata) {
+            this.metadata = metadata;
+        }
+
+        /**
+         * @return the error thrown while fetching or parsing the record.
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         * @param exception the error to set.
+         */
+        public void setException(Exception exception) {
+            this.exception = exception;
+        }
+
+        /**
+         * @return <code>true</code> if the error was thrown by the fetch stage
+         * and it is not related to a concrete record.
+         */
+        public boolean isFetchError() {
+            return fetchError;
+        }
+
+        /**
+         * @return <code>true</code> if it is a checkpoint mark: it does not
+         * carry a record and all the records fetched before the checkpoint
+         * have already been taken.
+         */
+        public boolean isCheckpoint() {
+            return checkpointPosition != null;
+        }
+
+        /**
+         * @return the position of the checkpoint.
+         */
+        public String getCheckpointPosition() {
+            return checkpointPosition;
+        }
+
+        /**
+         * @return the number of records fetched before the checkpoint.
+         */
+        public long getCheckpointRecords() {
+            return checkpointRecords;
+        }
+
+        private boolean isEndMark() {
+            return endMark;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of a running ingest job. The fetcher, parser and job threads
+ * update it without locks and it can be read at any time from other threads;
+ * values read together may belong to slightly different moments.
+ */
+public class IngestProgress {
+	/** Value of {@link #getTotalRecords()} when the total is not known. */
+	public static final long UNKNOWN = -1L;
+
+	private final Long ingestId;
+	private final String ingestName;
+	private final UUID jobId;
+	private volatile long startTime;
+	private final AtomicLong pagesFetched = new AtomicLong();
+	private final AtomicLong recordsFetched = new AtomicLong();
+	private final AtomicLong recordsParsed = new AtomicLong();
+	private final AtomicLong recordsIndexed = new AtomicLong();
+	private final AtomicLong recordsFailed = new AtomicLong();
+	private volatile long totalRecords = UNKNOWN;
+
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 * @param ingestName
+	 *            the ingest name.
+	 * @param jobId
+	 *            the job execution identifier.
+	 */
+	public IngestProgress(Long ingestId, String ingestName, UUID jobId) {
+		this.ingestId = ingestId;
+		this.ingestName = ingestName;
+		this.jobId = jobId;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Set the start time to the current time.
+	 */
+	public void start() {
+		startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Count a page of results received from the remote server.
+	 */
+	public void pageFetched() {
+		pagesFetched.incrementAndGet();
+	}
+
+	/**
+	 * Count a record received from the remote server.
+	 */
+	public void recordFetched() {
+		recordsFetched.incrementAndGet();
+	}
+
+	/**
+	 * Count a record parsed.
+	 */
+	public void recordParsed() {
+		recordsParsed.incrementAndGet();
+	}
+
+	/**
+	 * Count records sent to the metadata ingester.
+	 * 
+	 * @param count
+	 *            number of records.
+	 */
+	public void recordsIndexed(int count) {
+		recordsIndexed.addAndGet(count);
+	}
+
+	/**
+	 * Count a record that could not be parsed or is not valid.
+	 */
+	public void recordFailed() {
+		recordsFailed.incrementAndGet();
+	}
+
+	/**
+	 * @param totalRecords
+	 *            number of records the remote server reports for the ingest
+	 *            query.
+	 */
+	public void setTotalRecords(long totalRecords) {
+		this.totalRecords = totalRecords;
+	}
+
+	/**
+	 * @return the ingestId
+	 */
+	public Long getIngestId() {
+		return ingestId;
+	}
+
+	/**
+	 * @return the ingestName
+	 */
+	public String getIngestName() {
+		return ingestName;
+	}
+
+	/**
+	 * @return the jobId
+	 */
+	public UUID getJobId() {
+		return jobId;
+	}
+
+	/**
+	 * @return the startTime, in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the pagesFetched
+	 */
+	public long getPagesFetched() {
+		return pagesFetched.get();
+	}
+
+	/**
+	 * @return the recordsFetched
+	 */
+	public long getRecordsFetched() {
+		return recordsFetched.get();
+	}
+
+	/**
+	 * @return the recordsParsed
+	 */
+	public long getRecordsParsed() {
+		return recordsParsed.get();
+	}
+
+	/**
+	 * @return the recordsIndexed
+	 */
+	public long getRecordsIndexed() {
+		return recordsIndexed.get();
+	}
+
+	/**
+	 * @return the recordsFailed
+	 */
+	public long getRecordsFailed() {
+		return recordsFailed.get();
+	}
+
+	/**
+	 * @return the number of records reported by the remote server or
+	 *         {@link #UNKNOWN}.
+	 */
+	public long getTotalRecords() {
+		return totalRecords;
+	}
+
+	/**
+	 * @return the records indexed or failed.
+	 */
+	public long getRecordsProcessed() {
+		return recordsIndexed.get() + recordsFailed.get();
+	}
+
+	/**
+	 * @param now
+	 *            current time in milliseconds.
+	 * @return the records processed per second since the job started.
+	 */
+	public double getRecordsPerSecond(long now) {
+		long elapsed = now - startTime;
+		if (elapsed <= 0) {
+			return 0.0;
+		}
+		return getRecordsProcessed() * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Estimate the time needed to process the remaining records at the
+	 * current rate.
+	 * 
+	 * @param now
+	 *            current time in milliseconds.
+	 * @return the estimated seconds or {@link #UNKNOWN} if the total is not
+	 *         known or nothing has been processed yet.
+	 */
+	public long getEtaSeconds(long now) {
+		long total = totalRecords;
+		double rate = getRecordsPerSecond(now);
+		if (total == UNKNOWN || rate <= 0.0) {
+			return UNKNOWN;
+		}
+		long remaining = Math.max(0L, total - getRecordsProcessed());
+		return (long) Math.ceil(remaining / rate);
+	}
+}
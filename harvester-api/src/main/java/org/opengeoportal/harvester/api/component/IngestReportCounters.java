@@ -0,0 +1,116 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.List;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.metadata.model.AccessLevel;
+import org.opengeoportal.harvester.api.metadata.model.GeometryType;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Counters of the records sent to Solr, accumulated apart from the
+ * {@link IngestReport} so they can be updated from any thread. The job thread
+ * moves them to the report calling {@link #addTo(IngestReport)}.
+ */
+public class IngestReportCounters {
+	/**
+	 * Ingest whose records are counted, stored with their fingerprints.
+	 */
+	private final Long ingestId;
+	private long publicRecords;
+	private long restrictedRecords;
+	private long rasterRecords;
+	private long vectorRecords;
+	private long unchangedRecords;
+	private List<IngestReportError> errors = Lists.newArrayList();
+
+	/**
+	 * Create the counters of the records of a report.
+	 * 
+	 * @param report
+	 *            the report. The ingest is taken from its job status, if
+	 *            set.
+	 */
+	public IngestReportCounters(IngestReport report) {
+		if (report.getJobStatus() != null
+				&& report.getJobStatus().getIngest() != null) {
+			this.ingestId = report.getJobStatus().getIngest().getId();
+		} else {
+			this.ingestId = null;
+		}
+	}
+
+	/**
+	 * @return the ingest whose records are counted or <code>null</code> if it
+	 *         is not known.
+	 */
+	public Long getIngestId() {
+		return ingestId;
+	}
+
+	/**
+	 * Count a record sent to Solr.
+	 * 
+	 * @param metadata
+	 *            the record.
+	 */
+	public synchronized void count(Metadata metadata) {
+		if (metadata.getAccess() == AccessLevel.Restricted) {
+			restrictedRecords++;
+		} else if (metadata.getAccess() == AccessLevel.Public) {
+			publicRecords++;
+		}
+
+		if (GeometryType.isRaster(metadata.getGeometryType())) {
+			rasterRecords++;
+		} else if (GeometryType.isVector(metadata.getGeometryType())) {
+			vectorRecords++;
+		}
+	}
+
+	/**
+	 * Count a record not sent because it has not changed.
+	 */
+	public synchronized void countUnchanged() {
+		unchangedRecords++;
+	}
+
+	/**
+	 * @param error
+	 *            error to add to the report.
+	 */
+	public synchronized void addError(IngestReportError error) {
+		errors.add(error);
+	}
+
+	/**
+	 * Add the counters and errors to the report and reset them.
+	 * 
+	 * @param report
+	 *            the report.
+	 */
+	public synchronized void addTo(IngestReport report) {
+		report.setRestrictedRecords(report.getRestrictedRecords()
+				+ restrictedRecords);
+		report.setPublicRecords(report.getPublicRecords() + publicRecords);
+		report.setRasterRecords(report.getRasterRecords() + rasterRecords);
+		report.setVectorRecords(report.getVectorRecords() + vectorRecords);
+		if (unchangedRecords > 0) {
+			report.setUnchangedRecords(report.getUnchangedRecords()
+					+ unchangedRecords);
+		}
+		for (IngestReportError error : errors) {
+			report.addError(error);
+		}
+
+		publicRecords = 0L;
+		restrictedRecords = 0L;
+		rasterRecords = 0L;
+		vectorRecords = 0L;
+		unchangedRecords = 0L;
+		errors = Lists.newArrayList();
+	}
+}
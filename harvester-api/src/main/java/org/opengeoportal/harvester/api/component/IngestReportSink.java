@@ -0,0 +1,37 @@
+package org.opengeoportal.harvester.api.component;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+
+/**
+ * Destination of the errors and warnings found while validating the records
+ * of an ingest. Implementations can store them later, but all the entries of a
+ * report must be stored when {@link #flush(IngestReport)} returns.
+ */
+public interface IngestReportSink {
+
+	/**
+	 * Store an error. The error must reference its report.
+	 *
+	 * @param error
+	 *            the error.
+	 */
+	void add(IngestReportError error);
+
+	/**
+	 * Store a warning. The warning must reference its report.
+	 *
+	 * @param warning
+	 *            the warning.
+	 */
+	void add(IngestReportWarning warning);
+
+	/**
+	 * Wait until all the errors and warnings of a report have been stored.
+	 *
+	 * @param report
+	 *            the report.
+	 */
+	void flush(IngestReport report);
+}
@@ -1,8 +1,10 @@
 package org.opengeoportal.harvester.api.component;
 
 import java.util.List;
+import java.util.Set;
 
 import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.exception.MetadataRepositoryException;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 
 /**
@@ -28,4 +30,44 @@ public interface MetadataIngester {
 	 * @param ingestReport 
 	 */
 	void ingest(List<Metadata> metadataList, IngestReport ingestReport);
+
+	/**
+	 * Called when an ingest job ends. Makes durable all the metadata ingested
+	 * until now.
+	 * 
+	 * @param ingestReport
+	 *            report where errors are added.
+	 * @throws MetadataRepositoryException
+	 *             if the metadata cannot be made durable. The caller saves it
+	 *             as an error of the report.
+	 */
+	void finish(IngestReport ingestReport);
+
+	/**
+	 * Send to the destination server the metadata of the report ingested
+	 * until now, without making it durable. Used by the checkpoints of a
+	 * job, which rely on the destination server keeping the records received
+	 * until the next commit (the update log of Solr) instead of forcing a
+	 * commit.
+	 * 
+	 * @param ingestReport
+	 *            report where errors are added.
+	 */
+	void flush(IngestReport ingestReport);
+
+	/**
+	 * Delete the records of an ingest that are not in the remote server any
+	 * more. Called after a full execution that retrieved all the records,
+	 * once {@link #finish(IngestReport)} has made them durable.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 * @param retrievedLayerIds
+	 *            LayerIds of all the records retrieved by the execution.
+	 * @return the number of records deleted.
+	 * @throws MetadataRepositoryException
+	 *             if the records cannot be deleted. The caller saves it as an
+	 *             error of the report.
+	 */
+	long deleteMissing(Long ingestId, Set<String> retrievedLayerIds);
 }
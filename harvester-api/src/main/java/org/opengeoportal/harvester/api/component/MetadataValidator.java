@@ -1,32 +1,42 @@
 package org.opengeoportal.harvester.api.component;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.opengeoportal.harvester.api.domain.Ingest;
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
-import org.opengeoportal.harvester.api.domain.IngestReportWarning;
-import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 import org.opengeoportal.harvester.api.service.IngestReportErrorService;
 import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
 
+import com.google.common.collect.Maps;
+
 public class MetadataValidator {
 
     private Ingest ingest;
 
     /**
-     * Report error service.
+     * Destination of the errors and warnings found.
      */
-    private IngestReportErrorService reportErrorService;
+    private IngestReportSink reportSink;
 
-    private IngestReportWarningsService reportWarningsService;
+    /**
+     * Number of records with no value in each optional field. Counted here
+     * instead of saving a warning per record, the job saves them when it
+     * finishes.
+     */
+    private final Map<String, Long> unrequiredFieldWarnings = Maps.newTreeMap();
 
     public MetadataValidator(Ingest ingest, IngestReportErrorService reportErrorService, IngestReportWarningsService reportWarningService) {
+        this(ingest, new DirectIngestReportSink(reportErrorService,
+                reportWarningService));
+    }
+
+    public MetadataValidator(Ingest ingest, IngestReportSink reportSink) {
         this.ingest = ingest;
-        this.reportErrorService = reportErrorService;
-        this.reportWarningsService = reportWarningService;
+        this.reportSink = reportSink;
     }
 
     public boolean validate(Metadata metadata, IngestReport report) {
@@ -46,26 +56,26 @@ public class MetadataValidator {
                             + ") has no value.");
                     error.setReport(report);
                     error.setMetadata(metadata.getOriginalMetadata());
-                    error = reportErrorService.save(error);
+                    reportSink.add(error);
 
                     isValid = false;
                 } else {
 					// Track a warning if the field is not required, but it's
                     // empty
-                    //TODO: the warnings section should be analogous to the errors section
-                    // Add required empty field error
-                    IngestReportWarning warning = new IngestReportWarning();
-                    warning.setField(field);
-                    warning.setType(IngestReportWarningType.UNREQUIRED_FIELD_WARNING);
-                    warning.setMessage("Required field (" + field
-                            + ") has no value.");
-                    warning.setReport(report);
-                    warning = reportWarningsService.save(warning);
-                    //report.increaseUnrequiredFieldWarnings();
+                    Long count = unrequiredFieldWarnings.get(field);
+                    unrequiredFieldWarnings.put(field, count == null ? 1L
+                            : count + 1);
                 }
             }
         }
 
         return isValid;
     }
+
+    /**
+     * @return the number of records with no value in each optional field.
+     */
+    public Map<String, Long> getUnrequiredFieldWarnings() {
+        return unrequiredFieldWarnings;
+    }
 }
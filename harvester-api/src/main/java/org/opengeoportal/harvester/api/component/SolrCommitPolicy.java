@@ -0,0 +1,25 @@
+package org.opengeoportal.harvester.api.component;
+
+/**
+ * When {@link SolrMetadataIngester} commits the records sent to Solr.
+ */
+public enum SolrCommitPolicy {
+	/**
+	 * Hard commit after every batch.
+	 */
+	EVERY_BATCH,
+	/**
+	 * Records are sent with commitWithin and Solr decides when to commit. A
+	 * hard commit is done when the job finishes.
+	 */
+	COMMIT_WITHIN,
+	/**
+	 * Soft commit every N documents or T seconds (or after every batch if
+	 * none is set) and hard commit when the job finishes.
+	 */
+	SOFT_COMMIT,
+	/**
+	 * Hard commit every N documents or T seconds and when the job finishes.
+	 */
+	PERIODIC
+}
@@ -1,21 +1,112 @@
 package org.opengeoportal.harvester.api.component;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
 
 import org.hibernate.mapping.MetadataSource;
 import org.opengeoportal.harvester.api.client.solr.SolrClient;
 import org.opengeoportal.harvester.api.client.solr.SolrJClient;
 import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.dao.RecordFingerprintRepository;
 import org.opengeoportal.harvester.api.domain.IngestReport;
-import org.opengeoportal.harvester.api.metadata.model.AccessLevel;
-import org.opengeoportal.harvester.api.metadata.model.GeometryType;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.RecordFingerprint;
+import org.opengeoportal.harvester.api.exception.OgpSolrException;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 public class SolrMetadataIngester implements MetadataIngester {
+	/**
+	 * Source tag of the metrics of the local Solr, shared by all the ingests.
+	 */
+	public static final String METRICS_SOURCE = "LOCAL_SOLR";
+
+	/**
+	 * Max number of records deleted with a single request.
+	 */
+	private static final int DELETE_BATCH_SIZE = 500;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
 	private SolrClient solrClient;
 
+	/**
+	 * When the records are committed.
+	 */
+	private SolrCommitPolicy commitPolicy = SolrCommitPolicy.EVERY_BATCH;
+	/**
+	 * commitWithin in milliseconds used by
+	 * {@link SolrCommitPolicy#COMMIT_WITHIN}.
+	 */
+	private int commitWithinMs = 10000;
+	/**
+	 * Commit when this number of documents have been added since the last
+	 * commit. Non positive values disable the limit.
+	 */
+	private int commitEveryDocuments;
+	/**
+	 * Commit when this number of seconds have passed since the last commit.
+	 * Non positive values disable the limit.
+	 */
+	private int commitEverySeconds;
+
+	/**
+	 * Guards the commit counters, the ingester is shared by all the jobs.
+	 */
+	private final Object commitLock = new Object();
+	/**
+	 * Documents added since the last commit (hard or soft).
+	 */
+	private long documentsSinceCommit;
+	/**
+	 * Documents added since the last hard commit.
+	 */
+	private long documentsSinceHardCommit;
+	/**
+	 * Time of the last commit (hard or soft).
+	 */
+	private long lastCommitTime = System.currentTimeMillis();
+
+	/**
+	 * Fingerprints of the records already committed to Solr. If
+	 * <code>null</code> all the records are sent.
+	 */
+	private RecordFingerprintRepository fingerprintRepository;
+
+	/**
+	 * Fingerprints of the records added since the last hard commit, indexed
+	 * by LayerId. They are stored only when the records are committed, so
+	 * the records lost by a failed commit are sent again. Guarded by
+	 * commitLock.
+	 */
+	private final Map<String, RecordFingerprint> pendingFingerprints = Maps
+			.newHashMap();
+
+	/**
+	 * Converts the {@link SolrRecord} beans to the documents sent to Solr.
+	 */
+	private final DocumentObjectBinder binder = new DocumentObjectBinder();
+
 	/**
 	 * Create a new instance of SolrMetadataIngester.
 	 * 
@@ -23,15 +114,113 @@ public class SolrMetadataIngester implements MetadataIngester {
 	 *            destination server where metadata will be stored.
 	 */
 	public SolrMetadataIngester(String solrUrl) {
-		this.solrClient = new SolrJClient(solrUrl);
+		this(newLocalClient(solrUrl));
+	}
+
+	/**
+	 * Create a new instance of SolrMetadataIngester.
+	 * 
+	 * @param solrClient
+	 *            client of the server where metadata will be stored.
+	 */
+	public SolrMetadataIngester(SolrClient solrClient) {
+		this.solrClient = solrClient;
+	}
 
+	private static SolrClient newLocalClient(String solrUrl) {
+		SolrJClient client = new SolrJClient(solrUrl);
+		client.setMetrics(MetricsRegistry.getDefault().forIngest(null,
+				METRICS_SOURCE));
+		return client;
+	}
+
+	/**
+	 * @return the fingerprintRepository
+	 */
+	public RecordFingerprintRepository getFingerprintRepository() {
+		return fingerprintRepository;
+	}
+
+	/**
+	 * Set the repository used for skipping unchanged records. If it is not
+	 * set every record is sent to Solr.
+	 * 
+	 * @param fingerprintRepository
+	 *            the fingerprintRepository to set
+	 */
+	public void setFingerprintRepository(
+			RecordFingerprintRepository fingerprintRepository) {
+		this.fingerprintRepository = fingerprintRepository;
+	}
+
+	/**
+	 * @return the commitPolicy
+	 */
+	public SolrCommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
+	/**
+	 * @param commitPolicy
+	 *            the commitPolicy to set
+	 */
+	public void setCommitPolicy(SolrCommitPolicy commitPolicy) {
+		this.commitPolicy = commitPolicy;
+	}
+
+	/**
+	 * @return the commitWithinMs
+	 */
+	public int getCommitWithinMs() {
+		return commitWithinMs;
+	}
+
+	/**
+	 * @param commitWithinMs
+	 *            the commitWithinMs to set
+	 */
+	public void setCommitWithinMs(int commitWithinMs) {
+		this.commitWithinMs = commitWithinMs;
+	}
+
+	/**
+	 * @return the commitEveryDocuments
+	 */
+	public int getCommitEveryDocuments() {
+		return commitEveryDocuments;
+	}
+
+	/**
+	 * @param commitEveryDocuments
+	 *            the commitEveryDocuments to set
+	 */
+	public void setCommitEveryDocuments(int commitEveryDocuments) {
+		this.commitEveryDocuments = commitEveryDocuments;
+	}
+
+	/**
+	 * @return the commitEverySeconds
+	 */
+	public int getCommitEverySeconds() {
+		return commitEverySeconds;
+	}
+
+	/**
+	 * @param commitEverySeconds
+	 *            the commitEverySeconds to set
+	 */
+	public void setCommitEverySeconds(int commitEverySeconds) {
+		this.commitEverySeconds = commitEverySeconds;
 	}
 
 	@Override
 	public void ingest(Metadata metadata) {
 		SolrRecord solrRecord = SolrRecord.build(metadata);
 
-		solrClient.add(solrRecord);
+		// Only the records accepted by Solr are waiting for a commit
+		if (solrClient.add(solrRecord) == 0) {
+			added(1);
+		}
 	}
 
 	/*
@@ -43,41 +232,426 @@ public class SolrMetadataIngester implements MetadataIngester {
 	 */
 	@Override
 	public void ingest(List<Metadata> metadataList, IngestReport report) {
+		if (metadataList.size() > 0) {
+			IngestReportCounters counters = new IngestReportCounters(report);
+			index(metadataList,
+					Collections.nCopies(metadataList.size(), counters));
+			counters.addTo(report);
+		}
+	}
+
+	/**
+	 * Send a batch of records to Solr. It does not modify any
+	 * {@link IngestReport}, so it can be called from any thread; the results
+	 * are stored in the counters of each record.
+	 * 
+	 * @param metadataList
+	 *            the records.
+	 * @param countersList
+	 *            counters where each record is counted, in the same order
+	 *            than metadataList. Records from different reports can be
+	 *            sent in the same batch.
+	 */
+	public void index(List<Metadata> metadataList,
+			List<IngestReportCounters> countersList) {
 		List<SolrRecord> solrRecordList = Lists
 				.newArrayListWithCapacity(metadataList.size());
-		if (metadataList.size() > 0) {
-			long publicRecords = 0L;
-			long restrictedRecords = 0L;
-			long rasterRecords = 0L;
-			long vectorRecords = 0L;
-
-			for (Metadata metadata : metadataList) {
-				if (metadata.getAccess() == AccessLevel.Restricted) {
-					restrictedRecords++;
-				} else if (metadata.getAccess() == AccessLevel.Public) {
-					publicRecords++;
+		List<Integer> sentIndexes = Lists
+				.newArrayListWithCapacity(metadataList.size());
+
+		List<SolrRecord> builtRecords = Lists
+				.newArrayListWithCapacity(metadataList.size());
+		for (Metadata metadata : metadataList) {
+			builtRecords.add(SolrRecord.build(metadata));
+		}
+		Map<String, String> fingerprints = Maps.newHashMap();
+		Map<String, Long> owners = Maps.newHashMap();
+		List<RecordFingerprint> adopted = Lists.newArrayList();
+		Map<String, RecordFingerprint> stored = findFingerprints(metadataList,
+				builtRecords);
+
+		for (int i = 0; i < metadataList.size(); i++) {
+			Metadata metadata = metadataList.get(i);
+			SolrRecord solrRecord = builtRecords.get(i);
+
+			if (stored != null && hasStableLayerId(metadata)) {
+				String fingerprint = fingerprint(solrRecord);
+				RecordFingerprint previous = stored.get(solrRecord
+						.getLayerId());
+				if (previous != null
+						&& fingerprint.equals(previous.getFingerprint())
+						&& !fingerprints.containsKey(solrRecord.getLayerId())) {
+					countersList.get(i).countUnchanged();
+					Long ingestId = countersList.get(i).getIngestId();
+					if (ingestId != null
+							&& !ingestId.equals(previous.getIngestId())) {
+						previous.setIngestId(ingestId);
+						adopted.add(previous);
+					}
+					continue;
+				}
+				fingerprints.put(solrRecord.getLayerId(), fingerprint);
+				owners.put(solrRecord.getLayerId(), countersList.get(i)
+						.getIngestId());
+			}
+
+			solrRecordList.add(solrRecord);
+			sentIndexes.add(i);
+		}
+		saveOwners(adopted);
+		if (solrRecordList.isEmpty()) {
+			return;
+		}
+
+		// Errors are added by the client to a report not attached to any job
+		// and copied from there to the counters of the records in the batch
+		IngestReport batchReport = new IngestReport();
+		boolean added;
+		if (commitPolicy == SolrCommitPolicy.COMMIT_WITHIN) {
+			added = solrClient.add(solrRecordList, batchReport,
+					commitWithinMs);
+		} else {
+			added = solrClient.add(solrRecordList, batchReport);
+		}
+		if (added) {
+			for (Integer i : sentIndexes) {
+				countersList.get(i).count(metadataList.get(i));
+			}
+			synchronized (commitLock) {
+				queueFingerprints(fingerprints, owners, stored);
+				added(solrRecordList.size());
+			}
+		} else {
+			Set<IngestReportCounters> batchCounters = Sets
+					.newIdentityHashSet();
+			for (Integer i : sentIndexes) {
+				batchCounters.add(countersList.get(i));
+			}
+			for (IngestReportCounters counters : batchCounters) {
+				for (IngestReportError error : batchReport.getErrors()) {
+					IngestReportError copy = new IngestReportError();
+					copy.setType(error.getType());
+					copy.setMessage(error.getMessage());
+					counters.addError(copy);
 				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.opengeoportal.harvester.api.component.MetadataIngester#finish(org
+	 * .opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	public void finish(IngestReport report) {
+		synchronized (commitLock) {
+			if (documentsSinceHardCommit == 0) {
+				return;
+			}
+			logger.info("Committing " + documentsSinceHardCommit
+					+ " documents to Solr");
+			if (commit(false)) {
+				return;
+			}
+			// The records are sent again by the next ingest
+			pendingFingerprints.clear();
+		}
+		throw new OgpSolrException(
+				"Error committing the ingested records to Solr.");
+	}
 
-				if (GeometryType.isRaster(metadata.getGeometryType())) {
-					rasterRecords++;
-				} else if (GeometryType.isVector(metadata.getGeometryType())) {
-					vectorRecords++;
+	/**
+	 * Nothing to do, the records are sent to Solr as soon as they are
+	 * ingested.
+	 * 
+	 * @see org.opengeoportal.harvester.api.component.MetadataIngester#flush(org.opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	public void flush(IngestReport report) {
+	}
+
+	/**
+	 * Delete from Solr the records last sent by the ingest that are not in
+	 * the retrieved ones, and their fingerprints. Only the records with a
+	 * fingerprint are known, so nothing is deleted if unchanged records
+	 * detection is disabled.
+	 * 
+	 * @see org.opengeoportal.harvester.api.component.MetadataIngester#deleteMissing(java.lang.Long,
+	 *      java.util.Set)
+	 */
+	@Override
+	public long deleteMissing(Long ingestId, Set<String> retrievedLayerIds) {
+		if (fingerprintRepository == null || ingestId == null) {
+			return 0L;
+		}
+		List<String> missing = Lists.newArrayList();
+		for (String layerId : fingerprintRepository
+				.findLayerIdsByIngestId(ingestId)) {
+			if (!retrievedLayerIds.contains(layerId)) {
+				missing.add(layerId);
+			}
+		}
+		if (missing.isEmpty()) {
+			return 0L;
+		}
+		logger.info("Deleting " + missing.size() + " records of ingest "
+				+ ingestId + " not found in the remote server");
+		List<List<String>> chunks = Lists.partition(missing,
+				DELETE_BATCH_SIZE);
+		synchronized (commitLock) {
+			for (List<String> chunk : chunks) {
+				String response;
+				try {
+					response = solrClient.delete(chunk.toArray(new String[chunk
+							.size()]));
+				} catch (Exception e) {
+					throw new OgpSolrException(
+							"Error deleting the records removed from the remote server.",
+							e);
 				}
+				if (StringUtils.isEmpty(response)) {
+					throw new OgpSolrException(
+							"Error deleting the records removed from the remote server.");
+				}
+			}
+			if (!commit(false)) {
+				throw new OgpSolrException(
+						"Error committing the records deleted from Solr.");
+			}
+		}
+		for (List<String> chunk : chunks) {
+			fingerprintRepository.deleteInBatch(fingerprintRepository
+					.findByLayerIdIn(chunk));
+		}
+		return missing.size();
+	}
 
-				solrRecordList.add(SolrRecord.build(metadata));
+	/**
+	 * Apply the commit policy after adding documents to Solr.
+	 * 
+	 * @param count
+	 *            number of documents added.
+	 */
+	private void added(int count) {
+		synchronized (commitLock) {
+			documentsSinceCommit += count;
+			documentsSinceHardCommit += count;
+
+			switch (commitPolicy) {
+			case COMMIT_WITHIN:
+				break;
+			case SOFT_COMMIT:
+				if (isCommitDue()) {
+					commit(true);
+				}
+				break;
+			case PERIODIC:
+				if (isCommitDue()) {
+					commit(false);
+				}
+				break;
+			default:
+				commit(false);
+				break;
 			}
-			boolean added = solrClient.add(solrRecordList, report);
-			if (added) {
-				report.setRestrictedRecords(report.getRestrictedRecords()
-						+ restrictedRecords);
-				report.setPublicRecords(report.getPublicRecords()
-						+ publicRecords);
-				report.setRasterRecords(report.getRasterRecords()
-						+ rasterRecords);
-				report.setVectorRecords(report.getVectorRecords()
-						+ vectorRecords);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the document or time limits since the last
+	 *         commit have been reached, or if there are no limits.
+	 */
+	private boolean isCommitDue() {
+		if (commitEveryDocuments <= 0 && commitEverySeconds <= 0) {
+			return true;
+		}
+		if (commitEveryDocuments > 0
+				&& documentsSinceCommit >= commitEveryDocuments) {
+			return true;
+		}
+		return commitEverySeconds > 0
+				&& System.currentTimeMillis() - lastCommitTime >= commitEverySeconds * 1000L;
+	}
+
+	/**
+	 * Commit and reset the counters. A successful hard commit stores the
+	 * pending fingerprints. Must be called holding commitLock.
+	 * 
+	 * @param softCommit
+	 *            <code>true</code> for a soft commit.
+	 * @return <code>true</code> if the commit has been successful.
+	 */
+	private boolean commit(boolean softCommit) {
+		Boolean result = solrClient.commit(softCommit);
+		if (result != null && result) {
+			documentsSinceCommit = 0;
+			if (!softCommit) {
+				documentsSinceHardCommit = 0;
+				savePendingFingerprints();
+			}
+			lastCommitTime = System.currentTimeMillis();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieve the stored fingerprints of a batch of records.
+	 * 
+	 * @param metadataList
+	 *            the records.
+	 * @param solrRecords
+	 *            the Solr records built from metadataList, in the same order.
+	 * @return the fingerprints indexed by LayerId or <code>null</code> if
+	 *         unchanged records detection is disabled.
+	 */
+	private Map<String, RecordFingerprint> findFingerprints(
+			List<Metadata> metadataList, List<SolrRecord> solrRecords) {
+		if (fingerprintRepository == null) {
+			return null;
+		}
+		Collection<String> layerIds = Lists
+				.newArrayListWithCapacity(metadataList.size());
+		for (int i = 0; i < metadataList.size(); i++) {
+			if (hasStableLayerId(metadataList.get(i))) {
+				layerIds.add(solrRecords.get(i).getLayerId());
+			}
+		}
+		Map<String, RecordFingerprint> result = Maps.newHashMap();
+		if (!layerIds.isEmpty()) {
+			for (RecordFingerprint fingerprint : fingerprintRepository
+					.findByLayerIdIn(layerIds)) {
+				result.put(fingerprint.getLayerId(), fingerprint);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Keep the fingerprints of the records sent to Solr until they are
+	 * committed. Must be called holding commitLock.
+	 * 
+	 * @param fingerprints
+	 *            new fingerprints indexed by LayerId.
+	 * @param owners
+	 *            ingests that sent the records indexed by LayerId.
+	 * @param stored
+	 *            previous fingerprints indexed by LayerId.
+	 */
+	private void queueFingerprints(Map<String, String> fingerprints,
+			Map<String, Long> owners, Map<String, RecordFingerprint> stored) {
+		for (Entry<String, String> entry : fingerprints.entrySet()) {
+			RecordFingerprint fingerprint = pendingFingerprints.get(entry
+					.getKey());
+			if (fingerprint == null) {
+				fingerprint = stored.get(entry.getKey());
+			}
+			if (fingerprint == null) {
+				fingerprint = new RecordFingerprint();
+				fingerprint.setLayerId(entry.getKey());
+			}
+			fingerprint.setFingerprint(entry.getValue());
+			Long ingestId = owners.get(entry.getKey());
+			if (ingestId != null) {
+				fingerprint.setIngestId(ingestId);
+			}
+			pendingFingerprints.put(entry.getKey(), fingerprint);
+		}
+	}
+
+	/**
+	 * Store the ingest that has sent again an unchanged record, so the
+	 * records stored before the fingerprints had an owner, or sent by
+	 * another ingest, are deleted by its next full execution if they
+	 * disappear. Failures are logged, the record just keeps its owner.
+	 * 
+	 * @param adopted
+	 *            fingerprints of the unchanged records with a new owner.
+	 */
+	private void saveOwners(List<RecordFingerprint> adopted) {
+		if (adopted.isEmpty()) {
+			return;
+		}
+		try {
+			fingerprintRepository.save(adopted);
+		} catch (RuntimeException e) {
+			logger.warn("Error saving the ingest of " + adopted.size()
+					+ " unchanged records", e);
+		}
+	}
+
+	/**
+	 * Store the fingerprints of the records committed. If they cannot be
+	 * stored the records are sent again by the next ingest. Must be called
+	 * holding commitLock.
+	 */
+	private void savePendingFingerprints() {
+		if (pendingFingerprints.isEmpty()) {
+			return;
+		}
+		Date now = new Date();
+		List<RecordFingerprint> toSave = Lists
+				.newArrayList(pendingFingerprints.values());
+		pendingFingerprints.clear();
+		for (RecordFingerprint fingerprint : toSave) {
+			fingerprint.setUpdated(now);
+		}
+		try {
+			fingerprintRepository.save(toSave);
+		} catch (RuntimeException e) {
+			logger.warn("Error saving the fingerprints of " + toSave.size()
+					+ " records", e);
+		}
+	}
+
+	/**
+	 * Records without identifier nor layer name get a random LayerId each
+	 * time they are ingested, so they cannot be compared with the previous
+	 * version.
+	 * 
+	 * @param metadata
+	 *            the record.
+	 * @return <code>true</code> if the LayerId does not change between
+	 *         ingests.
+	 */
+	private boolean hasStableLayerId(Metadata metadata) {
+		return StringUtils.isNotEmpty(metadata.getId())
+				|| StringUtils.isNotEmpty(metadata.getOwsName());
+	}
+
+	/**
+	 * Calculate a hash of the fields that will be sent to Solr.
+	 * <p>
+	 * The hash is computed over the bound Solr document instead of the
+	 * normalized {@link Metadata} on purpose: a record is skipped only when
+	 * Solr would receive exactly the same document. Changes of the metadata
+	 * not mapped to Solr do not resend the record, and a change in the
+	 * mapping from {@link Metadata} to {@link SolrRecord} resends all the
+	 * records it affects.
+	 * </p>
+	 * 
+	 * @param solrRecord
+	 *            the record.
+	 * @return SHA-1 of the field names and values in hexadecimal.
+	 */
+	String fingerprint(SolrRecord solrRecord) {
+		SolrInputDocument document = binder.toSolrInputDocument(solrRecord);
+		Map<String, SolrInputField> fields = new TreeMap<String, SolrInputField>(
+				document);
+		Hasher hasher = Hashing.sha1().newHasher();
+		for (Entry<String, SolrInputField> field : fields.entrySet()) {
+			hasher.putString(field.getKey(), Charsets.UTF_8);
+			hasher.putChar('=');
+			for (Object value : field.getValue()) {
+				hasher.putString(String.valueOf(value), Charsets.UTF_8);
+				hasher.putChar('\u0000');
 			}
+			hasher.putChar('\n');
 		}
+		return hasher.hash().toString();
 	}
 
 }
@@ -1,23 +1,22 @@
 package org.opengeoportal.harvester.api.component.csw;
 
-import com.google.common.collect.Lists;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.output.DOMOutputter;
+import org.w3c.dom.Document;
 import org.opengeoportal.harvester.api.client.csw.*;
 import org.opengeoportal.harvester.api.client.csw.request.*;
 import org.opengeoportal.harvester.api.client.csw.response.GetRecordsResponse;
 import org.opengeoportal.harvester.api.component.BaseIngestJob;
+import org.opengeoportal.harvester.api.component.IngestPipeline;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
 import org.opengeoportal.harvester.api.domain.IngestCsw;
-import org.opengeoportal.harvester.api.domain.IngestReportError;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParser;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParserResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import org.jdom.JDOMException;
 import org.opengeoportal.harvester.api.exception.UnsupportedMetadataType;
 
@@ -28,88 +27,109 @@ import org.opengeoportal.harvester.api.exception.UnsupportedMetadataType;
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  *
  */
-public class CswIngestJob extends BaseIngestJob {
+public class CswIngestJob extends BaseIngestJob implements
+        IngestPipeline.Stages<Document> {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Override
     public void ingest() {
+        runPipeline(this);
+    }
+
+    @Override
+    protected InstanceType getSourceType() {
+        return InstanceType.CSW;
+    }
+
+    /**
+     * Request the CSW server pages of results until all the records have been
+     * retrieved or the job is interrupted. Responses are read as a stream and
+     * each record is handed to the parsers as soon as it is read. The start
+     * position of the next page is reported after each page, so a resumed
+     * job continues from it.
+     *
+     * @param collector the record collector.
+     * @throws Exception if the CSW server cannot be queried.
+     */
+    @Override
+    public void fetch(final RecordCollector<Document> collector) throws Exception {
         try {
             CswClient cswClient = new CswClient(ingest.getActualUrl());
+            cswClient.setTransferCounter(getTransferCounter());
+            cswClient.setMetrics(getMetrics());
             IngestCsw ingestCsw = (IngestCsw) ingest;
 
             GetRecordsRequest request = cswClient.setupGetRecordsRequest(
-                    ingestCsw.getCqlConstraint(),
-                    ingestCsw.getFilterConstraint());
+                    ingestCsw.getCqlConstraint(getIncrementalFrom()),
+                    ingestCsw.getFilterConstraint(getIncrementalFrom()));
 
             int start = 1;
+            if (getResumePosition() != null) {
+                start = Integer.parseInt(getResumePosition());
+            }
             boolean processFinished = false;
-            long failedRecordsCount = 0;
 
             while (!(isInterruptRequested() || processFinished)) {
                 request.setStartPosition(start + "");
 
                 GetRecordsResponse response = cswClient.getRecords(request,
-                        start, CswClient.GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
-
-                List<Metadata> metadataList = Lists
-                        .newArrayListWithCapacity(response.getResults().size());
-
-                for (Element record : response.getResults()) {
-                    org.w3c.dom.Document document = null;
-                    try {
-                        Document doc = new Document((Element) record.clone());
-
-                        DOMOutputter domOutputter = new DOMOutputter();
-                        document = domOutputter
-                                .output(doc);
-
-                        MetadataParser parser = parserProvider
-                                .getMetadataParser(document);
-                        MetadataParserResponse parserResult = parser
-                                .parse(document);
-
-                        Metadata metadata = parserResult.getMetadata();
-                        metadata.setInstitution(ingest.getNameOgpRepository());
-
-                        boolean valid = metadataValidator.validate(metadata,
-                                report);
-                        if (valid) {
-                            metadataList.add(metadata);
-                        } else {
-                            failedRecordsCount++;
-                        }
-                    } catch (JDOMException e) {
-                        failedRecordsCount++;
-                        saveException(e,
-                                IngestReportErrorType.WEB_SERVICE_ERROR, document);
-                    } catch (UnsupportedMetadataType e) {
-                        failedRecordsCount++;
-                        saveException(e,
-                                IngestReportErrorType.WEB_SERVICE_ERROR, document);
-                    }
-                    catch (Exception e) {
-                        failedRecordsCount++;
-                        saveException(e,
-                                IngestReportErrorType.SYSTEM_ERROR, document);
-                    }
-                }
-
-                report.setFailedRecordsCount(failedRecordsCount);
-                metadataIngester.ingest(metadataList, report);
+                        start, CswClient.GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE,
+                        new GetRecordsStreamParser.RecordHandler() {
+                            @Override
+                            public void record(Document record)
+                                    throws Exception {
+                                collector.collect(record);
+                            }
+                        });
 
                 // --- check to see if we have to perform other searches
                 int recCount = response.getNumberOfRecordsMatched();
+                getProgress().pageFetched();
+                getProgress().setTotalRecords(recCount);
 
                 processFinished = (start
                         + CswClient.GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE > recCount);
 
                 start += CswClient.GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+                collector.checkpoint(String.valueOf(start));
             }
 
         } catch (Exception e) {
             logger.error("Error in CSW Ingest: " + this.ingest.getName(), e);
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+            throw e;
+        }
+    }
+
+    /**
+     * Parse a CSW record.
+     *
+     * @param record CSW record as a standalone DOM document.
+     * @return the parsed metadata.
+     * @throws Exception if the record cannot be parsed.
+     */
+    @Override
+    public Metadata parse(PipelineRecord<Document> record) throws Exception {
+        Document document = record.getRecord();
+        record.setDocument(document);
+
+        MetadataParser parser = parserProvider.getMetadataParser(document);
+        MetadataParserResponse parserResult = parse(parser, document);
+
+        Metadata metadata = parserResult.getMetadata();
+        metadata.setInstitution(ingest.getNameOgpRepository());
+        return metadata;
+    }
+
+    @Override
+    protected void handleParseError(PipelineRecord<?> record) {
+        Exception e = record.getException();
+        if (e instanceof JDOMException || e instanceof UnsupportedMetadataType) {
+            saveException(e, IngestReportErrorType.WEB_SERVICE_ERROR,
+                    record.getDocument());
+        } else {
+            saveException(e, IngestReportErrorType.SYSTEM_ERROR,
+                    record.getDocument());
         }
     }
 }
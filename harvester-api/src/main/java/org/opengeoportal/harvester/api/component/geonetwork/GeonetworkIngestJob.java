@@ -2,14 +2,25 @@ package org.opengeoportal.harvester.api.component.geonetwork;
 
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkClient;
 import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchParams;
 import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchResponse;
 import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchResult;
 import org.opengeoportal.harvester.api.component.BaseIngestJob;
+import org.opengeoportal.harvester.api.component.IngestPipeline;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
 import org.opengeoportal.harvester.api.domain.IngestGeonetwork;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParser;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParserResponse;
@@ -25,7 +36,8 @@ import com.google.common.collect.Lists;
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  *
  */
-public class GeonetworkIngestJob extends BaseIngestJob {
+public class GeonetworkIngestJob extends BaseIngestJob implements
+        IngestPipeline.Stages<Document> {
 
     /**
      * Logger.
@@ -39,17 +51,62 @@ public class GeonetworkIngestJob extends BaseIngestJob {
      */
     @Override
     public void ingest() {
+        runPipeline(this);
+    }
+
+    @Override
+    protected InstanceType getSourceType() {
+        return InstanceType.GEONETWORK;
+    }
+
+    /**
+     * Search the remote GeoNetwork page by page and retrieve the metadata of
+     * each result, until all the results have been retrieved or the job is
+     * interrupted. The metadata of a page are retrieved concurrently, with at
+     * most {@link IngestGeonetwork#getMaxConcurrentRetrievals()} requests in
+     * flight, and collected in the page order. The number of the next page is
+     * reported after each page, so a resumed job continues from it.
+     *
+     * @param collector the record collector.
+     * @throws Exception if the GeoNetwork server cannot be queried.
+     */
+    @Override
+    public void fetch(RecordCollector<Document> collector) throws Exception {
+        IngestGeonetwork ingestGn = (IngestGeonetwork) ingest;
+        int maxConcurrentRetrievals = GeoNetworkClient.DEFAULT_MAX_CONNECTIONS;
+        if (ingestGn.getMaxConcurrentRetrievals() != null
+                && ingestGn.getMaxConcurrentRetrievals() > 0) {
+            maxConcurrentRetrievals = ingestGn.getMaxConcurrentRetrievals();
+        }
+        GeoNetworkClient gnClient = null;
+        ExecutorService retrievalPool = null;
         try {
             boolean processFinished = false;
             int page = 0;
-            long failedRecordsCount = 0;
+            if (getResumePosition() != null) {
+                page = Integer.parseInt(getResumePosition());
+            }
 
             URL geonetworkURL = new URL(ingest.getActualUrl());
 
-            GeoNetworkClient gnClient = new GeoNetworkClient(geonetworkURL);
+            gnClient = createClient(geonetworkURL);
+            gnClient.setTransferCounter(getTransferCounter());
+            gnClient.setMetrics(getMetrics());
+            final String name = "ingest-" + ingest.getId() + "-geonetwork-";
+            final AtomicInteger threadCount = new AtomicInteger();
+            retrievalPool = Executors.newFixedThreadPool(
+                    maxConcurrentRetrievals, new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, name
+                                    + threadCount.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
 
             GeoNetworkSearchParams searchParameters = new GeoNetworkSearchParams(
-                    (IngestGeonetwork) ingest);
+                    ingestGn);
             logger.info("GeonetworkIngestJob: search parameters "
                     + searchParameters.toString());
 
@@ -66,55 +123,91 @@ public class GeonetworkIngestJob extends BaseIngestJob {
                 searchParameters.setPage(page++);
                 GeoNetworkSearchResponse searchResponse = gnClient
                         .search(searchParameters);
+                getProgress().pageFetched();
+                getProgress().setTotalRecords(searchResponse.getTotal());
 
-                List<Metadata> metadataList = Lists
+                List<Future<Document>> retrievals = Lists
                         .newArrayListWithCapacity(searchResponse
                                 .getMetadataSearchResults().size());
-
                 for (GeoNetworkSearchResult record : searchResponse
                         .getMetadataSearchResults()) {
-                    Document document = null;
-                    try {
-                        document = gnClient.retrieveMetadata(record
-                                .getId());
-
-                        MetadataParser parser = parserProvider
-                                .getMetadataParser(document);
-                        MetadataParserResponse parserResult = parser
-                                .parse(document);
-
-                        Metadata metadata = parserResult.getMetadata();
-                        metadata.setInstitution(ingest.getNameOgpRepository());
-
-                        boolean valid = metadataValidator.validate(metadata,
-                                report);
-                        if (valid) {
-                            metadataList.add(metadata);
-                        } else {
-                            failedRecordsCount++;
-                        }
-
-                    } catch (Exception ex) {
-                        failedRecordsCount++;
-                        saveException(ex,
-                                IngestReportErrorType.SYSTEM_ERROR, document);
+                    retrievals.add(retrievalPool.submit(new MetadataRetrieval(
+                            gnClient, record.getId())));
+                }
 
+                for (Future<Document> retrieval : retrievals) {
+                    try {
+                        collector.collect(retrieval.get());
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        collector.failed(null,
+                                cause instanceof Exception ? (Exception) cause
+                                        : ex);
                     }
                 }
-                report.setFailedRecordsCount(failedRecordsCount);
-                metadataIngester.ingest(metadataList, report);
 
                 // --- check to see if we have to perform additional searches
                 processFinished = (searchParameters.getFrom() + searchParameters.getPageSize() > searchResponse
                         .getTotal());
+                collector.checkpoint(String.valueOf(page));
 
             }
 
         } catch (Exception e) {
             logger.error(
                     "Error in Geonetwork Ingest: " + this.ingest.getName(), e);
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+            throw e;
+        } finally {
+            if (retrievalPool != null) {
+                retrievalPool.shutdownNow();
+            }
         }
+    }
+
+    /**
+     * @param geonetworkURL GeoNetwork server url.
+     * @return a new client for searching and retrieving the metadata. It is
+     * used from several threads at the same time.
+     */
+    protected GeoNetworkClient createClient(URL geonetworkURL) {
+        return new GeoNetworkClient(geonetworkURL);
+    }
+
+    /**
+     * Parse a metadata document retrieved from GeoNetwork.
+     *
+     * @param record the metadata document.
+     * @return the parsed metadata.
+     * @throws Exception if the document cannot be parsed.
+     */
+    @Override
+    public Metadata parse(PipelineRecord<Document> record) throws Exception {
+        Document document = record.getRecord();
+        record.setDocument(document);
 
+        MetadataParser parser = parserProvider.getMetadataParser(document);
+        MetadataParserResponse parserResult = parse(parser, document);
+
+        Metadata metadata = parserResult.getMetadata();
+        metadata.setInstitution(ingest.getNameOgpRepository());
+        return metadata;
+    }
+
+    /**
+     * Retrieves a metadata document from GeoNetwork.
+     */
+    private static class MetadataRetrieval implements Callable<Document> {
+        private final GeoNetworkClient gnClient;
+        private final int metadataId;
+
+        MetadataRetrieval(GeoNetworkClient gnClient, int metadataId) {
+            this.gnClient = gnClient;
+            this.metadataId = metadataId;
+        }
+
+        @Override
+        public Document call() throws Exception {
+            return gnClient.retrieveMetadata(metadataId);
+        }
     }
 }
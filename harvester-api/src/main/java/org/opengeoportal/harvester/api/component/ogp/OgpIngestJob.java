@@ -1,5 +1,6 @@
 package org.opengeoportal.harvester.api.component.ogp;
 
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -9,37 +10,76 @@ import org.opengeoportal.harvester.api.client.solr.SolrJClient;
 import org.opengeoportal.harvester.api.client.solr.SolrRecord;
 import org.opengeoportal.harvester.api.client.solr.SolrSearchParams;
 import org.opengeoportal.harvester.api.component.BaseIngestJob;
+import org.opengeoportal.harvester.api.component.IngestPipeline;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
 import org.opengeoportal.harvester.api.domain.IngestOGP;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
+import org.opengeoportal.harvester.api.exception.OgpSolrException;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParserResponse;
 import org.opengeoportal.harvester.api.metadata.parser.OgpMetadataParser;
+import org.opengeoportal.harvester.api.metrics.Timer;
 import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
-import org.opengeoportal.harvester.api.domain.IngestReport;
-
 /**
  *
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  *
  */
-public class OgpIngestJob extends BaseIngestJob {
+public class OgpIngestJob extends BaseIngestJob implements
+        IngestPipeline.Stages<SolrRecord> {
 
     /**
      * Logger.
      */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * Prefix of the checkpoint positions of pages requested with cursor
+     * marks, followed by the cursor mark of the next page.
+     */
+    private static final String CURSOR_POSITION = "cursor:";
+
+    /**
+     * Prefix of the checkpoint positions of pages requested by offset,
+     * followed by the number of the next page.
+     */
+    private static final String OFFSET_POSITION = "offset:";
+
     @Override
     public void ingest() {
+        runPipeline(this);
+    }
+
+    @Override
+    protected InstanceType getSourceType() {
+        return InstanceType.SOLR;
+    }
+
+    /**
+     * Query the remote OGP Solr page by page until an empty page is returned
+     * or the job is interrupted.
+     * <p>
+     * Pages are requested with cursor marks, which cost the same for every
+     * page and are not affected by changes in the remote index during the
+     * harvest. If the remote Solr does not support them (before 4.7) it falls
+     * back to requesting pages by offset.
+     * </p>
+     * <p>
+     * The cursor mark or the number of the next page is reported after each
+     * page, so a resumed job continues from it with the same paging.
+     * </p>
+     *
+     * @param collector the record collector.
+     * @throws Exception if the remote Solr cannot be queried.
+     */
+    @Override
+    public void fetch(RecordCollector<SolrRecord> collector) throws Exception {
         try {
-            boolean processFinished = false;
-            int startPage = 0;
-            long failedRecordsCount = 0;
-            IngestReport currentReport = getIngestReport();
             String url = ingest.getActualUrl();
             if (StringUtils.isBlank(url)) {
                 throw new SchedulerException("Ingest " + ingest.getId()
@@ -47,58 +87,158 @@ public class OgpIngestJob extends BaseIngestJob {
                         + " associated");
             }
 
-            SolrClient client = new SolrJClient(url);
+            SolrJClient client = createClient(url);
+            client.setMetrics(getMetrics());
             SolrSearchParams searchParams = new SolrSearchParams(
                     (IngestOGP) ingest);
+            Date incrementalFrom = getIncrementalFrom();
+            if (incrementalFrom != null
+                    && (searchParams.getFromSolrTimestamp() == null || searchParams
+                            .getFromSolrTimestamp().before(incrementalFrom))) {
+                searchParams.setFromSolrTimestamp(incrementalFrom);
+            }
             if (logger.isInfoEnabled()) {
                 logger.info("OgpIngestJob: search parameters "
                         + searchParams.toString());
             }
 
-            while (!isInterruptRequested() && !processFinished) {
-                searchParams.setPage(startPage);
-                QueryResponse searchResponse = client.search(searchParams);
+            String resumePosition = getResumePosition();
+            if (resumePosition != null
+                    && resumePosition.startsWith(OFFSET_POSITION)) {
+                fetchWithOffset(client, searchParams, collector,
+                        Integer.parseInt(resumePosition
+                                .substring(OFFSET_POSITION.length())));
+            } else if (!fetchWithCursor(client, searchParams, collector,
+                    resumePosition == null ? SolrSearchParams.CURSOR_MARK_START
+                            : resumePosition.substring(CURSOR_POSITION
+                                    .length()))) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("OgpIngestJob: " + url + " does not support "
+                            + "cursor paging, requesting pages by offset");
+                }
+                searchParams.setCursorMark(null);
+                fetchWithOffset(client, searchParams, collector, 0);
+            }
+        } catch (Exception e) {
+            logger.error("Error in OGP Ingest: " + this.ingest.getName(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param url URL of the remote OGP Solr.
+     * @return a new client for querying the remote OGP Solr.
+     */
+    protected SolrJClient createClient(String url) {
+        return new SolrJClient(url);
+    }
 
-                List<SolrRecord> records = searchResponse
-                        .getBeans(SolrRecord.class);
-                for (SolrRecord record : records) {
-                    record.setOriginalXmlMetadata(record.getFgdcText());
+    /**
+     * Request the pages with cursor marks, starting from the passed one.
+     *
+     * @return <code>false</code> if the remote Solr does not support cursor
+     *         marks. Nothing has been collected in that case.
+     */
+    private boolean fetchWithCursor(SolrClient client,
+            SolrSearchParams searchParams,
+            RecordCollector<SolrRecord> collector, String cursorMark)
+            throws InterruptedException {
+        boolean processFinished = false;
+        while (!isInterruptRequested() && !processFinished) {
+            searchParams.setCursorMark(cursorMark);
+            QueryResponse searchResponse;
+            try {
+                searchResponse = client.search(searchParams);
+            } catch (OgpSolrException e) {
+                if (SolrSearchParams.CURSOR_MARK_START.equals(cursorMark)) {
+                    // e.g. the schema cannot sort on the unique key
+                    logger.warn("OgpIngestJob: cursor paging request failed", e);
+                    return false;
                 }
-                if (records.size() > 0) {
-                    OgpMetadataParser parser = new OgpMetadataParser();
-                    List<Metadata> metadataList = Lists
-                            .newArrayListWithCapacity(records.size());
-                    for (SolrRecord record : records) {
-                        try {
-                            MetadataParserResponse parseResult = parser
-                                    .parse(record);
-                            Metadata metadata = parseResult.getMetadata();
-                            boolean valid = metadataValidator.validate(
-                                    metadata, currentReport);
-                            if (valid) {
-                                metadataList.add(metadata);
-                            } else {
-                                failedRecordsCount++;
-                            }
-                        } catch (Exception e) {
-                            failedRecordsCount++;
-                            saveException(e,
-                                    IngestReportErrorType.SYSTEM_ERROR, record);
-                        }
-                    }
-                    currentReport.setFailedRecordsCount(failedRecordsCount);
-                    metadataIngester.ingest(metadataList, currentReport);
-
-                } else {
-                    processFinished = true;
+                throw e;
+            }
+
+            String nextCursorMark = (String) searchResponse.getResponse().get(
+                    SolrSearchParams.NEXT_CURSOR_MARK);
+            if (nextCursorMark == null) {
+                if (SolrSearchParams.CURSOR_MARK_START.equals(cursorMark)) {
+                    // Cursor mark ignored by the remote Solr
+                    return false;
                 }
+                throw new OgpSolrException("Remote Solr stopped returning "
+                        + SolrSearchParams.NEXT_CURSOR_MARK);
+            }
 
-                startPage++;
+            int collected = collect(searchResponse, collector);
+            // The last page returns the same cursor mark it received
+            processFinished = collected == 0
+                    || nextCursorMark.equals(cursorMark);
+            cursorMark = nextCursorMark;
+            collector.checkpoint(CURSOR_POSITION + cursorMark);
+        }
+        return true;
+    }
 
-            }
-        } catch (Exception e) {
-            logger.error("Error in OGP Ingest: " + this.ingest.getName(), e);
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+    /**
+     * Request the pages by offset, starting from the passed page.
+     */
+    private void fetchWithOffset(SolrClient client,
+            SolrSearchParams searchParams,
+            RecordCollector<SolrRecord> collector, int startPage)
+            throws InterruptedException {
+        boolean processFinished = false;
+        while (!isInterruptRequested() && !processFinished) {
+            searchParams.setPage(startPage);
+            QueryResponse searchResponse = client.search(searchParams);
+            processFinished = collect(searchResponse, collector) == 0;
+            startPage++;
+            collector.checkpoint(OFFSET_POSITION + startPage);
         }
     }
+
+    /**
+     * Pass the records of a page to the collector.
+     *
+     * @return the number of records in the page.
+     */
+    private int collect(QueryResponse searchResponse,
+            RecordCollector<SolrRecord> collector) throws InterruptedException {
+        List<SolrRecord> records = searchResponse.getBeans(SolrRecord.class);
+        getProgress().pageFetched();
+        if (searchResponse.getResults() != null) {
+            getProgress().setTotalRecords(
+                    searchResponse.getResults().getNumFound());
+        }
+        for (SolrRecord record : records) {
+            record.setOriginalXmlMetadata(record.getFgdcText());
+            collector.collect(record);
+        }
+        return records.size();
+    }
+
+    /**
+     * Transform a remote OGP record into metadata.
+     *
+     * @param record the Solr record.
+     * @return the parsed metadata.
+     */
+    @Override
+    public Metadata parse(PipelineRecord<SolrRecord> record) {
+        OgpMetadataParser parser = new OgpMetadataParser();
+        Timer.Context timer = getMetrics().timer("parser.parse").time();
+        try {
+            MetadataParserResponse parseResult = parser.parse(record
+                    .getRecord());
+            return parseResult.getMetadata();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    protected void handleParseError(PipelineRecord<?> record) {
+        saveException(record.getException(),
+                IngestReportErrorType.SYSTEM_ERROR,
+                (SolrRecord) record.getRecord());
+    }
 }
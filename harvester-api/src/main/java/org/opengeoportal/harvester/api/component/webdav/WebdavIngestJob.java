@@ -1,17 +1,38 @@
 package org.opengeoportal.harvester.api.component.webdav;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.opengeoportal.harvester.api.client.http.HttpTransport;
+import org.opengeoportal.harvester.api.client.webdav.WebdavClient;
 import org.opengeoportal.harvester.api.component.BaseIngestJob;
-import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.component.IngestPipeline;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
 import org.opengeoportal.harvester.api.domain.IngestWebDav;
+import org.opengeoportal.harvester.api.domain.InstanceType;
 import org.opengeoportal.harvester.api.metadata.model.Metadata;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParser;
 import org.opengeoportal.harvester.api.metadata.parser.MetadataParserResponse;
+import org.opengeoportal.harvester.api.metadata.parser.MetadataType;
+import org.opengeoportal.harvester.api.metadata.parser.MetadataTypeSniffer;
 import org.opengeoportal.harvester.api.util.XmlUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,8 +40,7 @@ import org.w3c.dom.Document;
 
 import com.github.sardine.DavResource;
 import com.github.sardine.Sardine;
-import com.github.sardine.SardineFactory;
-import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 
 /**
  * Ingest Job capable of process a remote WebDAV folder.
@@ -29,7 +49,16 @@ import com.google.common.collect.ImmutableList;
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  *
  */
-public class WebdavIngestJob extends BaseIngestJob {
+public class WebdavIngestJob extends BaseIngestJob implements
+        IngestPipeline.Stages<String> {
+
+    /**
+     * Folders listed at the same time when the server does not allow
+     * <code>Depth: infinity</code> and the ingest does not set a value.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_LISTINGS = 4;
+
+    private static final MetadataTypeSniffer METADATA_TYPE_SNIFFER = new MetadataTypeSniffer();
 
     /**
      * Logger.
@@ -38,133 +67,333 @@ public class WebdavIngestJob extends BaseIngestJob {
 
     @Override
     public void ingest() {
-        long failedRecordsCount = 0;
-        Sardine sardine = null;
+        runPipeline(this);
+    }
+
+    @Override
+    protected InstanceType getSourceType() {
+        return InstanceType.WEBDAV;
+    }
+
+    /**
+     * Traverse the remote WebDAV folder collecting the URLs of the files to be
+     * processed. The whole tree is listed with a single
+     * <code>Depth: infinity</code> request when the server allows it;
+     * otherwise the folders are listed concurrently, with at most
+     * {@link IngestWebDav#getMaxConcurrentListings()} requests in flight.
+     * The files found are always collected from the calling (fetcher)
+     * thread, and downloaded and parsed by the pipeline parser threads.
+     *
+     * @param collector the record collector.
+     * @throws Exception if the WebDAV client cannot be created.
+     */
+    @Override
+    public void fetch(RecordCollector<String> collector) throws Exception {
+        WebdavClient sardine = null;
         try {
-            sardine = SardineFactory.begin();
-            failedRecordsCount = processWebdavFolder(sardine, ingest.getActualUrl());
-        } catch (Exception e) {
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR);
+            sardine = createWebdavClient();
+            String url = folderUrl(ingest.getActualUrl());
+            if (!listTree(sardine, url, collector)) {
+                listFolders(sardine, url, collector);
+            }
         } finally {
             if (sardine != null) {
                 sardine.shutdown();
             }
         }
-        report.setFailedRecordsCount(failedRecordsCount);
     }
 
     /**
-     * Process the metadata files in the webdav server, recursing the
-     * subfolders.
+     * @return a new client for listing the remote folder. It is shut down
+     * when the fetch stage ends.
+     */
+    protected WebdavClient createWebdavClient() {
+        return new WebdavClient();
+    }
+
+    /**
+     * List the whole tree with a single request.
      *
-     * @param sardine {@link Sardine} instance.
-     * @param url WebDAV folder URL.
-     * @return count of invalid records processed.
+     * @return <code>false</code> if the server does not allow it.
      */
-    private long processWebdavFolder(Sardine sardine, String url) {
-        long failedRecordsCount = 0;
-        if (isInterruptRequested()) {
-            return failedRecordsCount;
-        }
-        if (!url.endsWith("/")) {
-            url += "/";
-        }
+    private boolean listTree(WebdavClient sardine, String url,
+            RecordCollector<String> collector) throws InterruptedException {
         List<DavResource> resources;
         try {
-            resources = sardine.list(url);
+            resources = sardine.listAll(url);
         } catch (IOException e) {
-            logger.error("Error in Webdav Ingest " + this.ingest.getName()
-                    + " (getting resources)", e);
-
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR);
-            return failedRecordsCount;
+            logger.info("Webdav Ingest " + this.ingest.getName()
+                    + ": cannot list " + url
+                    + " with Depth: infinity, listing folder by folder ("
+                    + e.getMessage() + ")");
+            return false;
         }
-
+        if (logger.isDebugEnabled()) {
+            logger.debug("Listed " + resources.size() + " resources in "
+                    + url);
+        }
+        getProgress().pageFetched();
         for (DavResource res : resources) {
             if (isInterruptRequested()) {
-                return failedRecordsCount;
+                return true;
             }
-            if (res.isDirectory()) {
-                // If it's not the current folder, process the files inside
-                if (!url.endsWith(res.getPath())) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Processing webdav folder resource: "
-                                + res.toString());
-                    } 
-                    try {
-                        String absoluteHrefPath = getResourceAbsoluteUrl(res,
-                                url);
-                        failedRecordsCount += processWebdavFolder(sardine, absoluteHrefPath);
-
-                    } catch (MalformedURLException e) {
-                        logger.error(
-                                "Error in Webdav Ingest: "
-                                + this.ingest.getName()
-                                + " (malformed url)", e);
-                        saveException(e,
-                                IngestReportErrorType.SYSTEM_ERROR);
-                    }
-                }
-            } else {
-                if (hasToProcessFile(res)) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Processing webdav resource: "
-                                + res.toString());
-                    }
-                    failedRecordsCount += processFile(res, url);
-                } else {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Ignoring webdav resource: "
-                                + res.toString());
+            collectFile(res, url, collector);
+        }
+        return true;
+    }
+
+    /**
+     * List the folders one by one in a pool of threads, until all of them
+     * have been listed or the job is interrupted.
+     */
+    private void listFolders(Sardine sardine, String url,
+            RecordCollector<String> collector) throws InterruptedException {
+        Integer maxListings = ((IngestWebDav) ingest)
+                .getMaxConcurrentListings();
+        int threads = DEFAULT_MAX_CONCURRENT_LISTINGS;
+        if (maxListings != null && maxListings > 0) {
+            threads = Math.min(maxListings, WebdavClient.MAX_CONNECTIONS_PER_HOST);
+        }
+        final String name = "ingest-" + ingest.getId() + "-webdav-";
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService listingPool = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, name
+                                + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
                     }
-                }
-            }
+                });
+        try {
+            new FolderTraversal(sardine, listingPool, collector)
+                    .traverse(url);
+        } finally {
+            listingPool.shutdownNow();
         }
-        return failedRecordsCount;
     }
 
     /**
-     * Process the remote WebDav file, validating it and ingesting in the
-     * system.
+     * Download and parse a remote WebDAV file.
      *
-     * @param res WebDav resource.
-     * @param baseUrl Base url of the WebDav resource.
-     * @return count of invalid records processed.
+     * @param record absolute URL of the file.
+     * @return the parsed metadata.
+     * @throws Exception if the file cannot be retrieved or parsed.
      */
-    private long processFile(DavResource res, String baseUrl) {
-        long failedRecordsCount = 0;
-        Document document = null;
+    @Override
+    public Metadata parse(PipelineRecord<String> record) throws Exception {
         try {
-            // Retrieve file content
-            String absoluteHrefPath = getResourceAbsoluteUrl(res, baseUrl);
-
-            document = XmlUtil.load(absoluteHrefPath);
-            MetadataParser parser = parserProvider.getMetadataParser(document);
-            MetadataParserResponse parserResult = parser.parse(document);
+            String url = record.getRecord();
+            byte[] content = download(url);
+            // Files without metadata in their first bytes are rejected here,
+            // without building their DOM
+            MetadataType metadataType = METADATA_TYPE_SNIFFER.sniff(content);
+            Document document = XmlUtil.load(
+                    new ByteArrayInputStream(content), url);
+            record.setDocument(document);
+            MetadataParser parser = metadataType != null ? parserProvider
+                    .getMetadataParser(metadataType) : parserProvider
+                    .getMetadataParser(document);
+            MetadataParserResponse parserResult = parse(parser, document);
 
             Metadata metadata = parserResult.getMetadata();
             metadata.setInstitution(ingest.getNameOgpRepository());
+            return metadata;
+        } catch (Exception e) {
+            logger.error("Error in Webdav Ingest: " + this.ingest.getName()
+                    + " (processing file:" + record.getRecord() + ")", e);
+            throw e;
+        }
+    }
 
-            boolean valid = metadataValidator.validate(metadata, report);
-            if (valid) {
-                metadataIngester.ingest(ImmutableList.of(metadata),
-                        getIngestReport());
-            } else {
-                failedRecordsCount++;
+    /**
+     * Download a file through the shared HTTP transport, so unchanged files
+     * are served from the response cache.
+     *
+     * @param url absolute URL of the file.
+     * @return the file content.
+     * @throws IOException if the file cannot be retrieved.
+     */
+    private byte[] download(String url) throws IOException {
+        GetMethod get = new GetMethod(url);
+        HttpTransport.Response response = null;
+        try {
+            response = HttpTransport.getDefault().executeCached(
+                    new HostConfiguration(), get, new HttpState(),
+                    getTransferCounter());
+            if (response.getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("Cannot retrieve " + url + ": HTTP "
+                        + response.getStatusCode() + " "
+                        + get.getStatusText());
+            }
+            // Read the whole body so it is cached, the sniffer and the
+            // parser can stop before the end
+            return ByteStreams.toByteArray(response.getBody());
+        } finally {
+            if (response != null) {
+                response.close();
             }
+            get.releaseConnection();
+        }
+    }
 
-        } catch (Exception e) {
-            failedRecordsCount++;
-            logger.error("Error in Webdav Ingest: " + this.ingest.getName()
-                    + " (processing file:" + baseUrl + ")", e);
-            saveException(e, IngestReportErrorType.SYSTEM_ERROR, document);
+    /**
+     * Lists folders in a thread pool. The listings run concurrently, but
+     * their results are processed in the fetcher thread in the order the
+     * folders were found: the subfolders are submitted and the files are
+     * passed to the collector from there.
+     */
+    private class FolderTraversal {
+        private final Sardine sardine;
+        private final ExecutorService listingPool;
+        private final RecordCollector<String> collector;
+        /**
+         * Folders submitted and not processed yet, in submission order.
+         */
+        private final Queue<FolderListing> pending = new ArrayDeque<FolderListing>();
+
+        FolderTraversal(Sardine sardine, ExecutorService listingPool,
+                RecordCollector<String> collector) {
+            this.sardine = sardine;
+            this.listingPool = listingPool;
+            this.collector = collector;
+        }
+
+        /**
+         * List the folder and all its subfolders, collecting their files.
+         *
+         * @param url WebDAV folder URL.
+         * @throws InterruptedException if interrupted while waiting for a
+         * listing or for the collector.
+         */
+        void traverse(String url) throws InterruptedException {
+            submit(url);
+            while (!pending.isEmpty()) {
+                if (isInterruptRequested()) {
+                    return;
+                }
+                FolderListing listing = pending.remove();
+                List<DavResource> resources;
+                try {
+                    resources = listing.resources.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    Exception error = cause instanceof Exception ? (Exception) cause
+                            : e;
+                    logger.error("Error in Webdav Ingest "
+                            + WebdavIngestJob.this.ingest.getName()
+                            + " (getting resources)", error);
+                    collector.error(error);
+                    continue;
+                }
+                getProgress().pageFetched();
+                processWebdavFolder(listing.url, resources);
+            }
+        }
+
+        private void submit(String url) {
+            final String folderUrl = folderUrl(url);
+            Future<List<DavResource>> resources = listingPool
+                    .submit(new Callable<List<DavResource>>() {
+                        @Override
+                        public List<DavResource> call() throws IOException {
+                            return sardine.list(folderUrl);
+                        }
+                    });
+            pending.add(new FolderListing(folderUrl, resources));
+        }
+
+        /**
+         * Process the metadata files in a webdav folder, submitting the
+         * subfolders to the pool.
+         *
+         * @param url WebDAV folder URL.
+         * @param resources the resources listed in the folder.
+         * @throws InterruptedException if interrupted while waiting for the
+         * collector.
+         */
+        private void processWebdavFolder(String url,
+                List<DavResource> resources) throws InterruptedException {
+            for (DavResource res : resources) {
+                if (isInterruptRequested()) {
+                    return;
+                }
+                if (res.isDirectory()) {
+                    // If it's not the current folder, process the files
+                    // inside
+                    if (!url.endsWith(res.getPath())) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Processing webdav folder resource: "
+                                    + res.toString());
+                        }
+                        try {
+                            submit(getResourceAbsoluteUrl(res, url));
+                        } catch (MalformedURLException e) {
+                            logger.error("Error in Webdav Ingest: "
+                                    + WebdavIngestJob.this.ingest.getName()
+                                    + " (malformed url)", e);
+                            collector.error(e);
+                        }
+                    }
+                } else {
+                    collectFile(res, url, collector);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listing of a folder, running or finished.
+     */
+    private static class FolderListing {
+        private final String url;
+        private final Future<List<DavResource>> resources;
+
+        FolderListing(String url, Future<List<DavResource>> resources) {
+            this.url = url;
+            this.resources = resources;
         }
-        return failedRecordsCount;
+    }
+
+    /**
+     * Collect a file if it has to be processed.
+     *
+     * @param res WebDAV resource.
+     * @param url URL of the listed folder.
+     * @param collector collector of the files to be processed.
+     * @throws InterruptedException if interrupted while waiting for the
+     * collector.
+     */
+    private void collectFile(DavResource res, String url,
+            RecordCollector<String> collector) throws InterruptedException {
+        if (hasToProcessFile(res)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Processing webdav resource: " + res.toString());
+            }
+            try {
+                collector.collect(getResourceAbsoluteUrl(res, url));
+            } catch (MalformedURLException e) {
+                logger.error("Error in Webdav Ingest: "
+                        + this.ingest.getName() + " (processing file:" + url
+                        + ")", e);
+                collector.failed(null, e);
+            }
+        } else {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Ignoring webdav resource: " + res.toString());
+            }
+        }
+    }
+
+    private static String folderUrl(String url) {
+        return url.endsWith("/") ? url : url + "/";
     }
 
     /**
      * Checks if the file has to be processed, verifying the content type
-     * (application/xml) and the date filter configured in the the Ingest.
+     * (application/xml), the date filter configured in the the Ingest and, for
+     * incremental ingests, the last modification date.
      *
      * @param res WebDav resource.
      * @return <code>true</code> is the file has to be processed,
@@ -186,7 +415,13 @@ public class WebdavIngestJob extends BaseIngestJob {
         if ((beginFilterDate != null) && (resourceDate.before(beginFilterDate))) {
             return false;
         }
-        return (endFilterDate == null) || (resourceDate.after(endFilterDate));
+        // Incremental ingest: skip files not modified since last execution
+        Date incrementalFrom = getIncrementalFrom();
+        if ((incrementalFrom != null) && (resourceDate != null)
+                && (!resourceDate.after(incrementalFrom))) {
+            return false;
+        }
+        return (endFilterDate == null) || (!resourceDate.after(endFilterDate));
     }
 
     /**
@@ -29,12 +29,16 @@
  */
 package org.opengeoportal.harvester.api.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * 
@@ -58,7 +62,29 @@ public interface IngestJobStatusRepository extends
 	 * @param page
 	 * @return
 	 */
-	Page<IngestJobStatus> findByIngestIdAndEndTimeNotNullOrderByEndTimeDesc(
+	Page<IngestJobStatus> findByIngestIdAndEndTimeNotNullOrderByEndTimeDescIdDesc(
 			Long id, Pageable page);
 
+	/**
+	 * Get the status of the last finished execution of several ingests.
+	 * 
+	 * @param ingestIds
+	 *            the ingest identifiers.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the ingest identifier.</li>
+	 *         <li>Object[1]: the {@link IngestJobStatusValue} of its last
+	 *         finished execution.</li>
+	 *         </ul>
+	 *         Ingests never executed are not returned. When several
+	 *         executions ended at the same time the last one saved wins.
+	 */
+	@Query(value = "select s.ingest.id, s.status from IngestJobStatus s where "
+			+ "s.ingest.id in (:ids) and s.id = (select max(l.id) "
+			+ "from IngestJobStatus l where l.ingest.id = s.ingest.id "
+			+ "and l.endTime = (select max(m.endTime) from IngestJobStatus m "
+			+ "where m.ingest.id = s.ingest.id))")
+	List<Object[]> findLastStatusValuesByIngestIds(
+			@Param("ids") Collection<Long> ingestIds);
+
 }
@@ -33,19 +33,23 @@ import java.util.List;
 
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorMetadata;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  * 
  */
 public interface IngestReportErrorRepository extends
-		JpaRepository<IngestReportError, Long> {
+		JpaRepository<IngestReportError, Long>,
+		IngestReportErrorRepositoryCustom {
 
 	/**
 	 * Gets the count of each errors group by error type for a given
@@ -91,4 +95,98 @@ public interface IngestReportErrorRepository extends
 			IngestReportErrorType requiredFieldError, String requiredField,
 			Pageable pageRequest);
 
+	/**
+	 * Return the metadata of the next errors of a report, type and field in
+	 * ascending identifier order. All the errors can be read starting with
+	 * <code>afterId = 0</code> and then passing the last identifier read,
+	 * without offsets nor count queries.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @param errorType
+	 *            the error type.
+	 * @param field
+	 *            the field or error subcategory.
+	 * @param afterId
+	 *            only errors with a greater identifier are returned.
+	 * @param pageRequest
+	 *            max number of errors returned, in its page size.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the error identifier.</li>
+	 *         <li>Object[1]: the metadata of errors saved before the metadata
+	 *         was stored apart, or <code>null</code>.</li>
+	 *         <li>Object[2]: the {@link IngestReportErrorMetadata}, or
+	 *         <code>null</code>.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select r.id, r.metadata, m from IngestReportError r "
+			+ "left join r.metadataBlob m where r.report.id=:reportId and "
+			+ "r.type=:errorType and r.field=:field and r.id>:afterId "
+			+ "order by r.id")
+	List<Object[]> findMetadataAfterId(@Param("reportId") Long reportId,
+			@Param("errorType") IngestReportErrorType errorType,
+			@Param("field") String field, @Param("afterId") Long afterId,
+			Pageable pageRequest);
+
+	/**
+	 * Return the count of errors of a report grouped by error type and field.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the error type.</li>
+	 *         <li>Object[1]: the field name.</li>
+	 *         <li>Object[2]: errors count for that type and field.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select r.type, r.field, count(r) from IngestReportError r "
+			+ "where r.report.id=:id group by r.type, r.field")
+	List<Object[]> getCountErrorsByTypeAndField(@Param("id") Long reportId);
+
+	/**
+	 * Return the identifier of the last error saved for a report.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return the greatest identifier or <code>null</code> if the report has
+	 *         no errors.
+	 */
+	@Query(value = "select max(r.id) from IngestReportError r where "
+			+ "r.report.id=?1")
+	Long findLastIdByReportId(Long reportId);
+
+	/**
+	 * Return the hashes of the metadata of the errors of a report saved after
+	 * the passed one.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @param lastId
+	 *            identifier of the last error to keep.
+	 * @return the metadata hashes.
+	 */
+	@Query(value = "select distinct r.metadataBlob.hash from IngestReportError r "
+			+ "where r.report.id=?1 and r.id>?2")
+	List<String> findMetadataHashesByReportIdAndIdGreaterThan(Long reportId,
+			Long lastId);
+
+	/**
+	 * Delete the errors of a report saved after the passed one. Their
+	 * metadata must be removed with
+	 * {@link #deleteUnreferencedMetadata(java.util.Collection)}.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @param lastId
+	 *            identifier of the last error to keep.
+	 * @return deleted errors count.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "delete from IngestReportError r where r.report.id=?1 and "
+			+ "r.id>?2")
+	int deleteByReportIdAndIdGreaterThan(Long reportId, Long lastId);
+
 }
@@ -0,0 +1,73 @@
+/**
+ * IngestReportErrorRepositoryCustom.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorMetadata;
+
+/**
+ * Custom methods of {@link IngestReportErrorRepository}.
+ */
+public interface IngestReportErrorRepositoryCustom {
+
+	/**
+	 * Save an error and its metadata. The metadata is only inserted if there
+	 * is not an {@link IngestReportErrorMetadata} with the same hash yet,
+	 * also when another transaction is inserting it at the same time.
+	 * 
+	 * @param error
+	 *            the error.
+	 * @return the saved error.
+	 */
+	IngestReportError saveWithMetadata(IngestReportError error);
+
+	/**
+	 * Save several errors and their metadata in a single transaction. The
+	 * metadata is only inserted if there is not an
+	 * {@link IngestReportErrorMetadata} with the same hash yet.
+	 * 
+	 * @param errors
+	 *            the errors.
+	 * @return the saved errors.
+	 */
+	List<IngestReportError> saveWithMetadata(Iterable<IngestReportError> errors);
+
+	/**
+	 * Delete the metadata with the passed hashes that are no longer
+	 * referenced by any error. It must be called in the transaction that
+	 * deletes the errors, passing the hashes of their metadata.
+	 * 
+	 * @param hashes
+	 *            hashes of the metadata of the deleted errors.
+	 * @return deleted metadata count.
+	 */
+	int deleteUnreferencedMetadata(Collection<String> hashes);
+}
@@ -0,0 +1,203 @@
+/**
+ * IngestReportErrorRepositoryImpl.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.dao;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorMetadata;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Implementation of the custom methods of
+ * {@link IngestReportErrorRepository}.
+ */
+public class IngestReportErrorRepositoryImpl implements
+		IngestReportErrorRepositoryCustom {
+	/**
+	 * Max number of hashes looked up with a single query.
+	 */
+	private static final int MAX_HASHES_PER_QUERY = 500;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Resource
+	private PlatformTransactionManager transactionManager;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.dao.IngestReportErrorRepositoryCustom
+	 * #saveWithMetadata(org.opengeoportal.harvester.api.domain.IngestReportError)
+	 */
+	@Override
+	@Transactional
+	public IngestReportError saveWithMetadata(IngestReportError error) {
+		return saveWithMetadata(Collections.singletonList(error)).get(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.dao.IngestReportErrorRepositoryCustom
+	 * #saveWithMetadata(java.lang.Iterable)
+	 */
+	@Override
+	@Transactional
+	public List<IngestReportError> saveWithMetadata(
+			Iterable<IngestReportError> errors) {
+		Set<String> hashes = Sets.newHashSet();
+		for (IngestReportError error : errors) {
+			if (error.getMetadataBlob() != null) {
+				hashes.add(error.getMetadataBlob().getHash());
+			}
+		}
+		Map<String, IngestReportErrorMetadata> blobs = findMetadata(hashes);
+
+		List<IngestReportError> result = Lists.newArrayList();
+		for (IngestReportError error : errors) {
+			IngestReportErrorMetadata blob = error.getMetadataBlob();
+			if (blob != null) {
+				IngestReportErrorMetadata stored = blobs.get(blob.getHash());
+				if (stored == null) {
+					stored = insertMetadata(blob);
+					blobs.put(blob.getHash(), stored);
+				}
+				error.setMetadataBlob(stored);
+			}
+			if (error.isNew()) {
+				entityManager.persist(error);
+				result.add(error);
+			} else {
+				result.add(entityManager.merge(error));
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.dao.IngestReportErrorRepositoryCustom
+	 * #deleteUnreferencedMetadata(java.util.Collection)
+	 */
+	@Override
+	@Transactional
+	public int deleteUnreferencedMetadata(Collection<String> hashes) {
+		int deleted = 0;
+		for (List<String> chunk : Iterables.partition(hashes,
+				MAX_HASHES_PER_QUERY)) {
+			deleted += entityManager
+					.createQuery(
+							"delete from IngestReportErrorMetadata m where m.hash in :hashes "
+									+ "and not exists (select r.id from IngestReportError r "
+									+ "where r.metadataBlob.hash = m.hash)")
+					.setParameter("hashes", chunk).executeUpdate();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Insert a metadata in its own transaction. If a concurrent transaction
+	 * has inserted the same hash in the meanwhile the insert fails without
+	 * rolling back the errors being saved, and the stored metadata is used.
+	 * 
+	 * @param blob
+	 *            the metadata, not stored yet when it was looked up.
+	 * @return the stored metadata, managed by the current transaction.
+	 */
+	private IngestReportErrorMetadata insertMetadata(
+			final IngestReportErrorMetadata blob) {
+		TransactionTemplate newTransaction = new TransactionTemplate(
+				transactionManager);
+		newTransaction
+				.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		try {
+			newTransaction.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(
+						TransactionStatus status) {
+					entityManager.persist(blob);
+					entityManager.flush();
+				}
+			});
+		} catch (RuntimeException e) {
+			IngestReportErrorMetadata stored = entityManager.find(
+					IngestReportErrorMetadata.class, blob.getHash());
+			if (stored == null) {
+				throw e;
+			}
+			return stored;
+		}
+		return entityManager.find(IngestReportErrorMetadata.class,
+				blob.getHash());
+	}
+
+	/**
+	 * Load the stored metadata with the passed hashes.
+	 * 
+	 * @param hashes
+	 *            the hashes.
+	 * @return the metadata found by hash.
+	 */
+	private Map<String, IngestReportErrorMetadata> findMetadata(
+			Set<String> hashes) {
+		Map<String, IngestReportErrorMetadata> blobs = Maps.newHashMap();
+		for (List<String> chunk : Iterables.partition(hashes,
+				MAX_HASHES_PER_QUERY)) {
+			List<IngestReportErrorMetadata> found = entityManager
+					.createQuery(
+							"select m from IngestReportErrorMetadata m where m.hash in :hashes",
+							IngestReportErrorMetadata.class)
+					.setParameter("hashes", chunk).getResultList();
+			for (IngestReportErrorMetadata blob : found) {
+				blobs.put(blob.getHash(), blob);
+			}
+		}
+		return blobs;
+	}
+}
@@ -32,6 +32,9 @@ package org.opengeoportal.harvester.api.dao;
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
@@ -51,4 +54,18 @@ public interface IngestReportRepository extends
 	 */
 	IngestReport findByJobStatusId(Long id);
 
+	/**
+	 * Mark the summary of a report as complete without saving the rest of
+	 * the report.
+	 * 
+	 * @param id
+	 *            the ingest report identifier.
+	 * @return modified reports count.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "update IngestReport r set r.summaryComplete=true where "
+			+ "r.id=?1")
+	int setSummaryComplete(Long id);
+
 }
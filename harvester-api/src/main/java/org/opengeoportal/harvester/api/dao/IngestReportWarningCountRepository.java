@@ -0,0 +1,121 @@
+/**
+ * IngestReportWarningCountRepository.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.dao;
+
+import java.util.List;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningCount;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface IngestReportWarningCountRepository extends
+		JpaRepository<IngestReportWarningCount, Long> {
+
+	/**
+	 * Gets the count of warnings grouped by warning type for a given
+	 * {@link IngestReport}.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the warning type.</li>
+	 *         <li>Object[1]: warnings count for that type.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select c.type, sum(c.occurrences) from IngestReportWarningCount c "
+			+ "where c.report.id=:id group by c.type")
+	List<Object[]> getCountWarningTypesByReportId(@Param("id") Long reportId);
+
+	/**
+	 * Return the count of warnings of the passed type categorized by field
+	 * for a given ingest report.
+	 * 
+	 * @param id
+	 *            the ingest report identifier.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the field name.</li>
+	 *         <li>Object[1]: warnings count for that field.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select c.field, sum(c.occurrences) from IngestReportWarningCount c "
+			+ "where c.report.id=:id and c.type=:warningType group by c.field")
+	List<Object[]> getCountWarningsByReportId(@Param("id") Long id,
+			@Param("warningType") IngestReportWarningType warningType);
+
+	/**
+	 * Return the count of warnings of a report grouped by warning type and
+	 * field.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the warning type.</li>
+	 *         <li>Object[1]: the field name.</li>
+	 *         <li>Object[2]: warnings count for that type and field.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select c.type, c.field, sum(c.occurrences) from IngestReportWarningCount c "
+			+ "where c.report.id=:id group by c.type, c.field")
+	List<Object[]> getCountWarningsByTypeAndField(@Param("id") Long reportId);
+
+	/**
+	 * Return the identifier of the last warning counter saved for a report.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return the greatest identifier or <code>null</code> if the report has
+	 *         no warning counters.
+	 */
+	@Query(value = "select max(c.id) from IngestReportWarningCount c where "
+			+ "c.report.id=?1")
+	Long findLastIdByReportId(Long reportId);
+
+	/**
+	 * Delete the warning counters of a report saved after the passed one.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @param lastId
+	 *            identifier of the last warning counter to keep.
+	 * @return deleted warning counters count.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "delete from IngestReportWarningCount c where c.report.id=?1 and "
+			+ "c.id>?2")
+	int deleteByReportIdAndIdGreaterThan(Long reportId, Long lastId);
+
+}
@@ -37,8 +37,10 @@ import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
@@ -91,4 +93,48 @@ public interface IngestReportWarningRepository extends
 			IngestReportWarningType requiredFieldWarning, String requiredField,
 			Pageable pageRequest);
 
+	/**
+	 * Return the count of warnings of a report grouped by warning type and
+	 * field.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return A list of Object[]. Each Object[] has these elements:
+	 *         <ul>
+	 *         <li>Object[0]: the warning type.</li>
+	 *         <li>Object[1]: the field name.</li>
+	 *         <li>Object[2]: warnings count for that type and field.</li>
+	 *         </ul>
+	 */
+	@Query(value = "select r.type, r.field, count(r) from IngestReportWarning r "
+			+ "where r.report.id=:id group by r.type, r.field")
+	List<Object[]> getCountWarningsByTypeAndField(@Param("id") Long reportId);
+
+	/**
+	 * Return the identifier of the last warning saved for a report.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @return the greatest identifier or <code>null</code> if the report has
+	 *         no warnings.
+	 */
+	@Query(value = "select max(r.id) from IngestReportWarning r where "
+			+ "r.report.id=?1")
+	Long findLastIdByReportId(Long reportId);
+
+	/**
+	 * Delete the warnings of a report saved after the passed one.
+	 * 
+	 * @param reportId
+	 *            the ingest report identifier.
+	 * @param lastId
+	 *            identifier of the last warning to keep.
+	 * @return deleted warnings count.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "delete from IngestReportWarning r where r.report.id=?1 and "
+			+ "r.id>?2")
+	int deleteByReportIdAndIdGreaterThan(Long reportId, Long lastId);
+
 }
@@ -125,6 +125,51 @@ public abstract class Ingest extends AbstractPersistable<Long> {
 	@JoinColumn(name = "ingest_id")
 	private List<IngestJobStatus> ingestJobStatuses = new ArrayList<IngestJobStatus>();
 
+	/**
+	 * Max number of fetched records waiting to be parsed. If <code>null</code>
+	 * the default value is used.
+	 */
+	@Column
+	private Integer fetchQueueSize;
+
+	/**
+	 * Max number of parsed records waiting to be indexed. If <code>null</code>
+	 * the default value is used.
+	 */
+	@Column
+	private Integer indexQueueSize;
+
+	/**
+	 * Number of threads parsing the fetched records. If <code>null</code> the
+	 * default value is used.
+	 */
+	@Column
+	private Integer parserThreads;
+
+	/**
+	 * If <code>true</code>, executions only retrieve the records modified
+	 * since the last successful execution.
+	 */
+	@Column
+	private Boolean incremental;
+
+	/**
+	 * Number of days between full executions of an incremental ingest. Full
+	 * executions retrieve all the remote records again. If <code>null</code>
+	 * only the first execution is a full one.
+	 */
+	@Column
+	private Integer fullRunInterval;
+
+	/**
+	 * Minutes subtracted from the high-water mark of an incremental ingest,
+	 * so records stamped by a remote clock behind ours, or stamped with a
+	 * slightly older date, are retrieved again. If <code>null</code> the
+	 * default value is used.
+	 */
+	@Column
+	private Integer incrementalOverlap;
+
 	/**
 	 * Sets the attribute with the given name to the given value.
 	 * 
@@ -296,6 +341,89 @@ public abstract class Ingest extends AbstractPersistable<Long> {
 		return scheduled;
 	}
 
+	/**
+	 * @return the fetchQueueSize
+	 */
+	public Integer getFetchQueueSize() {
+		return fetchQueueSize;
+	}
+
+	/**
+	 * @param fetchQueueSize
+	 *            the fetchQueueSize to set
+	 */
+	public void setFetchQueueSize(Integer fetchQueueSize) {
+		this.fetchQueueSize = fetchQueueSize;
+	}
+
+	/**
+	 * @return the indexQueueSize
+	 */
+	public Integer getIndexQueueSize() {
+		return indexQueueSize;
+	}
+
+	/**
+	 * @param indexQueueSize
+	 *            the indexQueueSize to set
+	 */
+	public void setIndexQueueSize(Integer indexQueueSize) {
+		this.indexQueueSize = indexQueueSize;
+	}
+
+	/**
+	 * @return the parserThreads
+	 */
+	public Integer getParserThreads() {
+		return parserThreads;
+	}
+
+	/**
+	 * @param parserThreads
+	 *            the parserThreads to set
+	 */
+	public void setParserThreads(Integer parserThreads) {
+		this.parserThreads = parserThreads;
+	}
+
+	public Boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(Boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return the fullRunInterval in days
+	 */
+	public Integer getFullRunInterval() {
+		return fullRunInterval;
+	}
+
+	/**
+	 * @param fullRunInterval
+	 *            the fullRunInterval in days to set
+	 */
+	public void setFullRunInterval(Integer fullRunInterval) {
+		this.fullRunInterval = fullRunInterval;
+	}
+
+	/**
+	 * @return the incrementalOverlap in minutes
+	 */
+	public Integer getIncrementalOverlap() {
+		return incrementalOverlap;
+	}
+
+	/**
+	 * @param incrementalOverlap
+	 *            the incrementalOverlap in minutes to set
+	 */
+	public void setIncrementalOverlap(Integer incrementalOverlap) {
+		this.incrementalOverlap = incrementalOverlap;
+	}
+
 	/**
 	 * Return the actual Ingest URL. This can be the URL of the associated
 	 * {@link CustomRepository} or the one stored in {@link Ingest#url}
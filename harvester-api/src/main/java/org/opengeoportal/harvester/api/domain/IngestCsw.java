@@ -182,6 +182,18 @@ public class IngestCsw extends Ingest {
 
 
     public String getCqlConstraint() {
+        return getCqlConstraint(null);
+    }
+
+    /**
+     * Build the CQL constraint of the ingest, restricting the results to the
+     * records modified since <code>modifiedFrom</code>.
+     *
+     * @param modifiedFrom high-water mark of an incremental ingest, can be
+     * <code>null</code>.
+     * @return the CQL constraint.
+     */
+    public String getCqlConstraint(Date modifiedFrom) {
         StringBuffer filter = new StringBuffer();
 
         List<String> propertyCqlFilters = new ArrayList<String>();
@@ -190,7 +202,7 @@ public class IngestCsw extends Ingest {
         buildCqlQueryable(propertyCqlFilters, "anytext", this.freeText);
         buildCqlQueryable(propertyCqlFilters, "title", this.title);
         buildCqlQueryable(propertyCqlFilters, "subject", this.subject);
-        buildDateQueryCql(propertyCqlFilters, "modified", this.dateFrom, this.dateTo);
+        buildDateQueryCql(propertyCqlFilters, "modified", getModifiedFrom(modifiedFrom), this.dateTo);
         buildBBOXCql(propertyCqlFilters, "BoundingBox");
 
         if (propertyCqlFilters.size() > 0) {
@@ -204,6 +216,18 @@ public class IngestCsw extends Ingest {
     }
 
     public String getFilterConstraint() {
+        return getFilterConstraint(null);
+    }
+
+    /**
+     * Build the OGC filter constraint of the ingest, restricting the results
+     * to the records modified since <code>modifiedFrom</code>.
+     *
+     * @param modifiedFrom high-water mark of an incremental ingest, can be
+     * <code>null</code>.
+     * @return the filter constraint.
+     */
+    public String getFilterConstraint(Date modifiedFrom) {
         StringBuffer filter = new StringBuffer();
 
         List<String> propertyFilters = new ArrayList<String>();
@@ -214,7 +238,7 @@ public class IngestCsw extends Ingest {
         buildPropertyFilter(propertyFilters, "anytext", this.freeText);
         buildPropertyFilter(propertyFilters, "title", this.title);
         buildPropertyFilter(propertyFilters, "subject", this.subject);
-        buildDateQueryFilter(propertyFilters, "modified", this.dateFrom, this.dateTo);
+        buildDateQueryFilter(propertyFilters, "modified", getModifiedFrom(modifiedFrom), this.dateTo);
         buildBBOXFilter(propertyFilters, "BoundingBox");
 
         if (propertyFilters.size() > 0) {
@@ -232,6 +256,18 @@ public class IngestCsw extends Ingest {
         return filter.toString();
     }
 
+    /**
+     * @param modifiedFrom high-water mark, can be <code>null</code>.
+     * @return the most restrictive of dateFrom and modifiedFrom.
+     */
+    private Date getModifiedFrom(Date modifiedFrom) {
+        if (modifiedFrom == null
+                || (this.dateFrom != null && this.dateFrom.after(modifiedFrom))) {
+            return this.dateFrom;
+        }
+        return modifiedFrom;
+    }
+
     private void buildPropertyFilter(List<String> propertyFilters, String property, String value) {
         if (StringUtils.isEmpty(value)) return;
 
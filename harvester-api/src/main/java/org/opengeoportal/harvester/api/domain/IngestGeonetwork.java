@@ -65,6 +65,13 @@ public class IngestGeonetwork extends Ingest {
 	@Column
 	private List<String> geonetworkSources = Lists.newArrayList();
 
+	/**
+	 * Max number of metadata retrieved at the same time from the remote
+	 * GeoNetwork. If <code>null</code> the default value is used.
+	 */
+	@Column
+	private Integer maxConcurrentRetrievals;
+
 	public IngestGeonetwork() {
 		super();
 		validRequiredFields = new HashSet<String>(Arrays.asList(new String[] {
@@ -111,4 +118,12 @@ public class IngestGeonetwork extends Ingest {
 	public void setGeonetworkSource(List<String> geonetworkSource) {
 		this.geonetworkSources = geonetworkSource;
 	}
+
+	public Integer getMaxConcurrentRetrievals() {
+		return maxConcurrentRetrievals;
+	}
+
+	public void setMaxConcurrentRetrievals(Integer maxConcurrentRetrievals) {
+		this.maxConcurrentRetrievals = maxConcurrentRetrievals;
+	}
 }
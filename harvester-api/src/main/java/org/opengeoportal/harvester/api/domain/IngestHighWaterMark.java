@@ -0,0 +1,118 @@
+/**
+ * IngestHighWaterMark.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/**
+ * High-water mark of an {@link Ingest}, used by incremental ingests to
+ * retrieve only the records modified since the last successful execution.
+ */
+@Entity
+public class IngestHighWaterMark extends AbstractPersistable<Long> {
+	/** Unique identifier for serialization. */
+	private static final long serialVersionUID = 2797052484624946226L;
+
+	/**
+	 * The ingest.
+	 */
+	@OneToOne(fetch = FetchType.EAGER)
+	@JoinColumn(name = "ingest_id", unique = true, nullable = false)
+	private Ingest ingest;
+
+	/**
+	 * Start time of the last successful execution. Next incremental
+	 * executions only retrieve records modified after this date.
+	 */
+	@Column
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date highWaterMark;
+
+	/**
+	 * Start time of the last successful full (not incremental) execution.
+	 */
+	@Column
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date lastFullRun;
+
+	/**
+	 * @return the ingest
+	 */
+	public Ingest getIngest() {
+		return ingest;
+	}
+
+	/**
+	 * @param ingest
+	 *            the ingest to set
+	 */
+	public void setIngest(Ingest ingest) {
+		this.ingest = ingest;
+	}
+
+	/**
+	 * @return the highWaterMark
+	 */
+	public Date getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * @param highWaterMark
+	 *            the highWaterMark to set
+	 */
+	public void setHighWaterMark(Date highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
+	/**
+	 * @return the lastFullRun
+	 */
+	public Date getLastFullRun() {
+		return lastFullRun;
+	}
+
+	/**
+	 * @param lastFullRun
+	 *            the lastFullRun to set
+	 */
+	public void setLastFullRun(Date lastFullRun) {
+		this.lastFullRun = lastFullRun;
+	}
+
+}
@@ -0,0 +1,360 @@
+/**
+ * IngestJobCheckpoint.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/**
+ * Last point of an interrupted {@link Ingest} execution from which it can be
+ * resumed: the position of the next page in the remote server and the
+ * counters of its {@link IngestReport} at that point. Errors and warnings
+ * saved after the checkpoint are discarded when the execution is resumed.
+ */
+@Entity
+public class IngestJobCheckpoint extends AbstractPersistable<Long> {
+	/** Unique identifier for serialization. */
+	private static final long serialVersionUID = 4416395286925640711L;
+
+	/**
+	 * The ingest. An ingest has at most one checkpoint, the one of its last
+	 * execution.
+	 */
+	@OneToOne(fetch = FetchType.EAGER)
+	@JoinColumn(name = "ingest_id", unique = true, nullable = false)
+	private Ingest ingest;
+
+	/**
+	 * Status of the execution to be resumed.
+	 */
+	@OneToOne(fetch = FetchType.EAGER)
+	@JoinColumn(name = "job_status_id", nullable = false)
+	private IngestJobStatus jobStatus;
+
+	/**
+	 * Report of the execution to be resumed.
+	 */
+	@OneToOne(fetch = FetchType.EAGER)
+	@JoinColumn(name = "report_id", nullable = false)
+	private IngestReport report;
+
+	/**
+	 * Position of the next page in the remote server, in the format of the
+	 * ingest job: a start position, a page number or a cursor mark.
+	 */
+	@Column(length = 2048)
+	private String position;
+
+	/**
+	 * Records retrieved before the checkpoint.
+	 */
+	@Column
+	private long records;
+
+	/**
+	 * High-water mark used by the execution, <code>null</code> if it was a
+	 * full one.
+	 */
+	@Column
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date incrementalFrom;
+
+	/**
+	 * <code>true</code> if some record before the checkpoint could not be
+	 * retrieved or parsed.
+	 */
+	@Column
+	private boolean recordsFailed;
+
+	/**
+	 * Identifiers of the last error, warning and warning counter of the
+	 * report saved before the checkpoint, <code>null</code> if there was
+	 * none.
+	 */
+	@Column
+	private Long lastErrorId;
+
+	@Column
+	private Long lastWarningId;
+
+	@Column
+	private Long lastWarningCountId;
+
+	/**
+	 * Report counters at the checkpoint.
+	 */
+	@Column
+	private long restrictedRecords;
+
+	@Column
+	private long publicRecords;
+
+	@Column
+	private long vectorRecords;
+
+	@Column
+	private long rasterRecords;
+
+	@Column
+	private long unchangedRecords;
+
+	@Column
+	private long failedRecordsCount;
+
+	@Column
+	private long receivedBytes;
+
+	@Column
+	private long decodedBytes;
+
+	@Column
+	private long cacheHits;
+
+	@Column
+	private long cacheMisses;
+
+	/**
+	 * Time the checkpoint was saved.
+	 */
+	@Column
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date checkpointTime;
+
+	/**
+	 * Copy the counters of a report into the checkpoint.
+	 * 
+	 * @param source
+	 *            the report.
+	 */
+	public void saveCounters(IngestReport source) {
+		restrictedRecords = source.getRestrictedRecords();
+		publicRecords = source.getPublicRecords();
+		vectorRecords = source.getVectorRecords();
+		rasterRecords = source.getRasterRecords();
+		unchangedRecords = source.getUnchangedRecords();
+		failedRecordsCount = source.getFailedRecordsCount();
+		receivedBytes = source.getReceivedBytes();
+		decodedBytes = source.getDecodedBytes();
+		cacheHits = source.getCacheHits();
+		cacheMisses = source.getCacheMisses();
+	}
+
+	/**
+	 * Set the counters of a report back to the values of the checkpoint.
+	 * 
+	 * @param target
+	 *            the report.
+	 */
+	public void restoreCounters(IngestReport target) {
+		target.setRestrictedRecords(restrictedRecords);
+		target.setPublicRecords(publicRecords);
+		target.setVectorRecords(vectorRecords);
+		target.setRasterRecords(rasterRecords);
+		target.setUnchangedRecords(unchangedRecords);
+		target.setFailedRecordsCount(failedRecordsCount);
+		target.setReceivedBytes(receivedBytes);
+		target.setDecodedBytes(decodedBytes);
+		target.setCacheHits(cacheHits);
+		target.setCacheMisses(cacheMisses);
+	}
+
+	/**
+	 * @return the ingest
+	 */
+	public Ingest getIngest() {
+		return ingest;
+	}
+
+	/**
+	 * @param ingest
+	 *            the ingest to set
+	 */
+	public void setIngest(Ingest ingest) {
+		this.ingest = ingest;
+	}
+
+	/**
+	 * @return the jobStatus
+	 */
+	public IngestJobStatus getJobStatus() {
+		return jobStatus;
+	}
+
+	/**
+	 * @param jobStatus
+	 *            the jobStatus to set
+	 */
+	public void setJobStatus(IngestJobStatus jobStatus) {
+		this.jobStatus = jobStatus;
+	}
+
+	/**
+	 * @return the report
+	 */
+	public IngestReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @param report
+	 *            the report to set
+	 */
+	public void setReport(IngestReport report) {
+		this.report = report;
+	}
+
+	/**
+	 * @return the position
+	 */
+	public String getPosition() {
+		return position;
+	}
+
+	/**
+	 * @param position
+	 *            the position to set
+	 */
+	public void setPosition(String position) {
+		this.position = position;
+	}
+
+	/**
+	 * @return the records
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @param records
+	 *            the records to set
+	 */
+	public void setRecords(long records) {
+		this.records = records;
+	}
+
+	/**
+	 * @return the incrementalFrom
+	 */
+	public Date getIncrementalFrom() {
+		return incrementalFrom;
+	}
+
+	/**
+	 * @param incrementalFrom
+	 *            the incrementalFrom to set
+	 */
+	public void setIncrementalFrom(Date incrementalFrom) {
+		this.incrementalFrom = incrementalFrom;
+	}
+
+	/**
+	 * @return the recordsFailed
+	 */
+	public boolean isRecordsFailed() {
+		return recordsFailed;
+	}
+
+	/**
+	 * @param recordsFailed
+	 *            the recordsFailed to set
+	 */
+	public void setRecordsFailed(boolean recordsFailed) {
+		this.recordsFailed = recordsFailed;
+	}
+
+	/**
+	 * @return the lastErrorId
+	 */
+	public Long getLastErrorId() {
+		return lastErrorId;
+	}
+
+	/**
+	 * @param lastErrorId
+	 *            the lastErrorId to set
+	 */
+	public void setLastErrorId(Long lastErrorId) {
+		this.lastErrorId = lastErrorId;
+	}
+
+	/**
+	 * @return the lastWarningId
+	 */
+	public Long getLastWarningId() {
+		return lastWarningId;
+	}
+
+	/**
+	 * @param lastWarningId
+	 *            the lastWarningId to set
+	 */
+	public void setLastWarningId(Long lastWarningId) {
+		this.lastWarningId = lastWarningId;
+	}
+
+	/**
+	 * @return the lastWarningCountId
+	 */
+	public Long getLastWarningCountId() {
+		return lastWarningCountId;
+	}
+
+	/**
+	 * @param lastWarningCountId
+	 *            the lastWarningCountId to set
+	 */
+	public void setLastWarningCountId(Long lastWarningCountId) {
+		this.lastWarningCountId = lastWarningCountId;
+	}
+
+	/**
+	 * @return the checkpointTime
+	 */
+	public Date getCheckpointTime() {
+		return checkpointTime;
+	}
+
+	/**
+	 * @param checkpointTime
+	 *            the checkpointTime to set
+	 */
+	public void setCheckpointTime(Date checkpointTime) {
+		this.checkpointTime = checkpointTime;
+	}
+
+}
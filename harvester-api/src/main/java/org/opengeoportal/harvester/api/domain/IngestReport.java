@@ -34,7 +34,6 @@ import java.util.List;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 
@@ -66,11 +65,64 @@ public class IngestReport extends AbstractPersistable<Long> {
     @Column(nullable = false)
     private long failedRecordsCount;
 
+    /**
+     * Records skipped because they have not changed since the last time they
+     * were sent to Solr. Nullable so the column can be added to existing
+     * reports.
+     */
+    @Column
+    private Long unchangedRecords;
+
+    /**
+     * Records deleted from Solr because a full execution did not find them
+     * in the remote server. Nullable so the column can be added to existing
+     * reports.
+     */
+    @Column
+    private Long deletedRecords;
+
+    /**
+     * Bytes of the responses received from the remote server, as sent over
+     * the wire. Nullable so the column can be added to existing reports.
+     */
+    @Column
+    private Long receivedBytes;
+
+    /**
+     * Bytes of the responses received from the remote server once
+     * decompressed. Nullable so the column can be added to existing reports.
+     */
+    @Column
+    private Long decodedBytes;
+
+    /**
+     * Remote responses served from the response cache because they had not
+     * changed, and cacheable responses downloaded. Nullable so the columns
+     * can be added to existing reports.
+     */
+    @Column
+    private Long cacheHits;
+
+    @Column
+    private Long cacheMisses;
+
+    /**
+     * <code>true</code> when the error and warning counts of the finished job
+     * have been stored as {@link IngestReportSummaryEntry} rows. Nullable so
+     * the column can be added to existing reports.
+     */
+    @Column
+    private Boolean summaryComplete;
+
     @OneToOne
     private IngestJobStatus jobStatus;
 
-    @OneToMany
-    @JoinColumn(name = "report_id")
+    /**
+     * Errors added while the job runs. They are linked to the report by
+     * {@link IngestReportError#getReport()}, so saving the report does not
+     * modify the errors already stored.
+     */
+    @OneToMany(mappedBy = "report")
     private List<IngestReportError> errors = new ArrayList<IngestReportError>();
 
     public long getRestrictedRecords() {
@@ -159,4 +211,60 @@ public class IngestReport extends AbstractPersistable<Long> {
         this.failedRecordsCount = failedRecordsCount;
     }
 
+    public long getUnchangedRecords() {
+        return unchangedRecords != null ? unchangedRecords : 0L;
+    }
+
+    public void setUnchangedRecords(long unchangedRecords) {
+        this.unchangedRecords = unchangedRecords;
+    }
+
+    public long getDeletedRecords() {
+        return deletedRecords != null ? deletedRecords : 0L;
+    }
+
+    public void setDeletedRecords(long deletedRecords) {
+        this.deletedRecords = deletedRecords;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes != null ? receivedBytes : 0L;
+    }
+
+    public void setReceivedBytes(long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes != null ? decodedBytes : 0L;
+    }
+
+    public void setDecodedBytes(long decodedBytes) {
+        this.decodedBytes = decodedBytes;
+    }
+
+    public long getCacheHits() {
+        return cacheHits != null ? cacheHits : 0L;
+    }
+
+    public void setCacheHits(long cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses != null ? cacheMisses : 0L;
+    }
+
+    public void setCacheMisses(long cacheMisses) {
+        this.cacheMisses = cacheMisses;
+    }
+
+    public boolean isSummaryComplete() {
+        return summaryComplete != null && summaryComplete;
+    }
+
+    public void setSummaryComplete(boolean summaryComplete) {
+        this.summaryComplete = summaryComplete;
+    }
+
 }
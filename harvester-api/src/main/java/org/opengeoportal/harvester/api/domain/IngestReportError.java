@@ -55,11 +55,18 @@ public class IngestReportError extends AbstractPersistable<Long> {
 	@Column
 	private String message;
 
-	/** Original metadata. */
+	/**
+	 * Original metadata of the errors saved before the metadata was stored
+	 * apart in {@link #metadataBlob}.
+	 */
 	@Column
 	@Lob
 	private String metadata;
 
+	/** Original metadata, shared by the errors with the same metadata. */
+	@ManyToOne
+	private IngestReportErrorMetadata metadataBlob;
+
 	/** Report where the error was detected. */
 	@ManyToOne
 	private IngestReport report;
@@ -113,6 +120,9 @@ public class IngestReportError extends AbstractPersistable<Long> {
 	 * @return the metadata
 	 */
 	public String getMetadata() {
+		if (metadataBlob != null) {
+			return metadataBlob.getText();
+		}
 		return metadata;
 	}
 
@@ -121,7 +131,25 @@ public class IngestReportError extends AbstractPersistable<Long> {
 	 *            the metadata to set
 	 */
 	public void setMetadata(String metadata) {
-		this.metadata = metadata;
+		this.metadata = null;
+		this.metadataBlob = metadata == null ? null
+				: new IngestReportErrorMetadata(metadata);
+	}
+
+	/**
+	 * @return the stored metadata. Errors with the same metadata share the
+	 *         same instance once saved.
+	 */
+	public IngestReportErrorMetadata getMetadataBlob() {
+		return metadataBlob;
+	}
+
+	/**
+	 * @param metadataBlob
+	 *            the metadataBlob to set
+	 */
+	public void setMetadataBlob(IngestReportErrorMetadata metadataBlob) {
+		this.metadataBlob = metadataBlob;
 	}
 
 	/**
@@ -0,0 +1,146 @@
+/**
+ * IngestReportErrorMetadata.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Transient;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Original document or stack trace of one or more {@link IngestReportError}s,
+ * stored gzip compressed. It is identified by the SHA-256 of its text, so a
+ * record failing the same way in every execution is stored only once.
+ */
+@Entity
+public class IngestReportErrorMetadata implements Serializable {
+	private static final long serialVersionUID = -5209917651305187314L;
+
+	/** Hex SHA-256 of the UTF-8 text. */
+	@Id
+	@Column(length = 64)
+	private String hash;
+
+	/** Gzip compressed UTF-8 text. */
+	@Column(nullable = false, length = Integer.MAX_VALUE)
+	private byte[] content;
+
+	/** Size of the text before compressing it, in bytes. */
+	@Column(name = "textLength", nullable = false)
+	private long length;
+
+	/** Uncompressed text, once known. */
+	@Transient
+	private String text;
+
+	/**
+	 * Constructor used by JPA.
+	 */
+	protected IngestReportErrorMetadata() {
+	}
+
+	/**
+	 * Create a new instance for a text.
+	 * 
+	 * @param text
+	 *            the text.
+	 */
+	public IngestReportErrorMetadata(String text) {
+		byte[] bytes = text.getBytes(Charsets.UTF_8);
+		this.hash = Hashing.sha256().hashBytes(bytes).toString();
+		this.content = compress(bytes);
+		this.length = bytes.length;
+		this.text = text;
+	}
+
+	private static byte[] compress(byte[] bytes) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					bytes.length / 4 + 64);
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(bytes);
+			gzip.close();
+			return out.toByteArray();
+		} catch (IOException e) {
+			// Not thrown by in-memory streams
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decompress(byte[] content) {
+		try {
+			GZIPInputStream gzip = new GZIPInputStream(
+					new ByteArrayInputStream(content));
+			return new String(ByteStreams.toByteArray(gzip), Charsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException("Corrupted error metadata", e);
+		}
+	}
+
+	/**
+	 * @return the hash
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the compressed content
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @return the size of the text before compressing it, in bytes.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the uncompressed text.
+	 */
+	public String getText() {
+		if (text == null) {
+			text = decompress(content);
+		}
+		return text;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * IngestReportSummaryEntry.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.ManyToOne;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/**
+ * Number of errors or warnings of a type found in a field during an ingest,
+ * precomputed so the report details can be shown without counting the error
+ * and warning tables. Each entry has either an error type or a warning type.
+ */
+@Entity
+public class IngestReportSummaryEntry extends AbstractPersistable<Long> {
+	private static final long serialVersionUID = -4217553081096519604L;
+
+	/** Error type, <code>null</code> for warnings. */
+	@Column
+	@Enumerated(EnumType.STRING)
+	private IngestReportErrorType errorType;
+
+	/** Warning type, <code>null</code> for errors. */
+	@Column
+	@Enumerated(EnumType.STRING)
+	private IngestReportWarningType warningType;
+
+	/** Field name or error subcategory. */
+	@Column
+	private String field;
+
+	/** Number of errors or warnings. */
+	@Column(nullable = false)
+	private long occurrences;
+
+	/** Summarized report. */
+	@ManyToOne
+	private IngestReport report;
+
+	/**
+	 * @return the errorType
+	 */
+	public IngestReportErrorType getErrorType() {
+		return errorType;
+	}
+
+	/**
+	 * @param errorType
+	 *            the errorType to set
+	 */
+	public void setErrorType(IngestReportErrorType errorType) {
+		this.errorType = errorType;
+	}
+
+	/**
+	 * @return the warningType
+	 */
+	public IngestReportWarningType getWarningType() {
+		return warningType;
+	}
+
+	/**
+	 * @param warningType
+	 *            the warningType to set
+	 */
+	public void setWarningType(IngestReportWarningType warningType) {
+		this.warningType = warningType;
+	}
+
+	/**
+	 * @return the field
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @param field
+	 *            the field to set
+	 */
+	public void setField(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return the occurrences
+	 */
+	public long getOccurrences() {
+		return occurrences;
+	}
+
+	/**
+	 * @param occurrences
+	 *            the occurrences to set
+	 */
+	public void setOccurrences(long occurrences) {
+		this.occurrences = occurrences;
+	}
+
+	/**
+	 * @return the report
+	 */
+	public IngestReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @param report
+	 *            the report to set
+	 */
+	public void setReport(IngestReport report) {
+		this.report = report;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * IngestReportWarningCount.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.ManyToOne;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/**
+ * Number of warnings of a type found in a field during an ingest. Warnings
+ * without payload are counted in memory while the job runs and stored once,
+ * instead of storing one {@link IngestReportWarning} per record.
+ */
+@Entity
+public class IngestReportWarningCount extends AbstractPersistable<Long> {
+	private static final long serialVersionUID = 3521776420896645427L;
+
+	/** Warning type. */
+	@Column
+	@Enumerated(EnumType.STRING)
+	private IngestReportWarningType type;
+
+	/** Field name where the warnings exist. */
+	@Column
+	private String field;
+
+	/** Number of warnings. */
+	@Column(nullable = false)
+	private long occurrences;
+
+	/** Report where the warnings were detected. */
+	@ManyToOne
+	private IngestReport report;
+
+	/**
+	 * @return the type
+	 */
+	public IngestReportWarningType getType() {
+		return type;
+	}
+
+	/**
+	 * @param type
+	 *            the type to set
+	 */
+	public void setType(IngestReportWarningType type) {
+		this.type = type;
+	}
+
+	/**
+	 * @return the field
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @param field
+	 *            the field to set
+	 */
+	public void setField(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return the occurrences
+	 */
+	public long getOccurrences() {
+		return occurrences;
+	}
+
+	/**
+	 * @param occurrences
+	 *            the occurrences to set
+	 */
+	public void setOccurrences(long occurrences) {
+		this.occurrences = occurrences;
+	}
+
+	/**
+	 * @return the report
+	 */
+	public IngestReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @param report
+	 *            the report to set
+	 */
+	public void setReport(IngestReport report) {
+		this.report = report;
+	}
+}
@@ -53,6 +53,14 @@ public class IngestWebDav extends Ingest {
 	@Temporal(TemporalType.DATE)
 	private Date dateTo;
 
+	/**
+	 * Max number of folders listed at the same time when the server does not
+	 * allow listing the whole tree at once. If <code>null</code> the default
+	 * value is used.
+	 */
+	@Column
+	private Integer maxConcurrentListings;
+
 	public IngestWebDav() {
 		super();
 		validRequiredFields = new HashSet<String>(Arrays.asList(new String[] {
@@ -75,4 +83,12 @@ public class IngestWebDav extends Ingest {
 	public void setDateTo(Date dateTo) {
 		this.dateTo = dateTo;
 	}
+
+	public Integer getMaxConcurrentListings() {
+		return maxConcurrentListings;
+	}
+
+	public void setMaxConcurrentListings(Integer maxConcurrentListings) {
+		this.maxConcurrentListings = maxConcurrentListings;
+	}
 }
@@ -0,0 +1,137 @@
+/**
+ * RecordFingerprint.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.domain;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/**
+ * Content hash of the last version of a record committed to the local Solr.
+ * It is used for skipping the records that have not changed since the
+ * previous ingest.
+ */
+@Entity
+public class RecordFingerprint extends AbstractPersistable<Long> {
+	/** Unique identifier for serialization. */
+	private static final long serialVersionUID = -3305872394016367717L;
+
+	/**
+	 * Solr LayerId of the record.
+	 */
+	@Column(unique = true, nullable = false)
+	private String layerId;
+
+	/**
+	 * Hash of the fields of the Solr document sent, not of the parsed
+	 * metadata.
+	 */
+	@Column(nullable = false, length = 64)
+	private String fingerprint;
+
+	/**
+	 * Identifier of the last ingest that sent the record. The records of an
+	 * ingest not retrieved by its full executions are deleted. Nullable so
+	 * the column can be added to existing fingerprints.
+	 */
+	@Column
+	private Long ingestId;
+
+	/**
+	 * Last time the record was committed to Solr.
+	 */
+	@Column
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date updated;
+
+	/**
+	 * @return the layerId
+	 */
+	public String getLayerId() {
+		return layerId;
+	}
+
+	/**
+	 * @param layerId
+	 *            the layerId to set
+	 */
+	public void setLayerId(String layerId) {
+		this.layerId = layerId;
+	}
+
+	/**
+	 * @return the fingerprint
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint to set
+	 */
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return the ingestId
+	 */
+	public Long getIngestId() {
+		return ingestId;
+	}
+
+	/**
+	 * @param ingestId
+	 *            the ingestId to set
+	 */
+	public void setIngestId(Long ingestId) {
+		this.ingestId = ingestId;
+	}
+
+	/**
+	 * @return the updated
+	 */
+	public Date getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * @param updated
+	 *            the updated to set
+	 */
+	public void setUpdated(Date updated) {
+		this.updated = updated;
+	}
+
+}
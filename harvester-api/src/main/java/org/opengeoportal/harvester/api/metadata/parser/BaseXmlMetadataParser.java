@@ -4,15 +4,9 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.opengeoportal.harvester.api.metadata.model.LocationLink;
@@ -20,6 +14,7 @@ import org.opengeoportal.harvester.api.metadata.model.LocationLink.LocationType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
 
 import com.google.common.collect.Multimap;
 import org.opengeoportal.harvester.api.util.XmlUtil;
@@ -37,8 +32,6 @@ public abstract class BaseXmlMetadataParser extends BaseMetadataParser
      */
     protected Document document;
 
-    protected XPath xPath;
-
     protected MetadataParserResponse metadataParserResponse;
 
     public interface Tag {
@@ -54,13 +47,6 @@ public abstract class BaseXmlMetadataParser extends BaseMetadataParser
             logger.error("document is null");
         }
 
-        XPathFactory factory = XPathFactory.newInstance();
-        xPath = factory.newXPath();
-
-        HashMap<String, String> prefMap = getNamespaces();
-        SimpleNamespaceContext namespaces = new SimpleNamespaceContext(prefMap);
-        xPath.setNamespaceContext(namespaces);
-
         this.document = document;
         this.metadataParserResponse = new MetadataParserResponse();
         handleId();
@@ -80,7 +66,10 @@ public abstract class BaseXmlMetadataParser extends BaseMetadataParser
         return metadataParserResponse;
     }
 
-    protected abstract HashMap<String, String> getNamespaces();
+    /**
+     * @return the pre-compiled XPath expressions of the metadata standard.
+     */
+    protected abstract XPathRegistry getXPathRegistry();
 
     protected abstract void handleId();
 
@@ -109,8 +98,35 @@ public abstract class BaseXmlMetadataParser extends BaseMetadataParser
     protected abstract LocationResolver getLocationResolver();
 
     public String getDocumentValue(Tag tag) throws Exception {
-        return (String) xPath.evaluate(tag.getXPathName(), document,
-                XPathConstants.STRING);
+        return getXPathRegistry().evaluateString(tag.getXPathName(), document);
+    }
+
+    /**
+     * Evaluate an XPath expression as a string.
+     *
+     * @param expression the expression, preferably registered in
+     * {@link #getXPathRegistry()}.
+     * @param item context node.
+     * @return the result.
+     * @throws XPathExpressionException if the expression cannot be evaluated.
+     */
+    protected String evaluateString(String expression, Object item)
+            throws XPathExpressionException {
+        return getXPathRegistry().evaluateString(expression, item);
+    }
+
+    /**
+     * Evaluate an XPath expression as a node set.
+     *
+     * @param expression the expression, preferably registered in
+     * {@link #getXPathRegistry()}.
+     * @param item context node.
+     * @return the result.
+     * @throws XPathExpressionException if the expression cannot be evaluated.
+     */
+    protected NodeList evaluateNodeSet(String expression, Object item)
+            throws XPathExpressionException {
+        return getXPathRegistry().evaluateNodeSet(expression, item);
     }
 
     protected String getFullText() {
@@ -159,29 +175,4 @@ public abstract class BaseXmlMetadataParser extends BaseMetadataParser
         this.metadataParserResponse.getMetadata().setLocation(locationJson);
 
     }
-
-    private class SimpleNamespaceContext implements NamespaceContext {
-
-        private final Map<String, String> PREF_MAP = new HashMap<String, String>();
-
-        public SimpleNamespaceContext(final Map<String, String> prefMap) {
-            PREF_MAP.putAll(prefMap);
-        }
-
-        @Override
-        public String getNamespaceURI(String prefix) {
-            return PREF_MAP.get(prefix);
-        }
-
-        @Override
-        public String getPrefix(String uri) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public Iterator getPrefixes(String uri) {
-            throw new UnsupportedOperationException();
-        }
-
-    }
 }
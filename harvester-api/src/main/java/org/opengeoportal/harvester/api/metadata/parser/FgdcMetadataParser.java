@@ -2,8 +2,6 @@ package org.opengeoportal.harvester.api.metadata.parser;
 
 import java.util.*;
 
-import javax.xml.xpath.XPathConstants;
-
 import org.apache.commons.lang3.StringUtils;
 import org.opengeoportal.harvester.api.metadata.model.AccessLevel;
 import org.opengeoportal.harvester.api.metadata.model.GeometryType;
@@ -88,9 +86,15 @@ public class FgdcMetadataParser extends BaseXmlMetadataParser {
         }
     }
 
+    /**
+     * Compiled XPath expressions shared by all the FGDC parsers.
+     */
+    private static final XPathRegistry XPATH_REGISTRY = new XPathRegistry(
+            new HashMap<String, String>(), FgdcTag.values());
+
     @Override
-    protected HashMap<String, String> getNamespaces() {
-        return new HashMap<String, String>();
+    protected XPathRegistry getXPathRegistry() {
+        return XPATH_REGISTRY;
     }
 
     @Override
@@ -326,20 +330,17 @@ public class FgdcMetadataParser extends BaseXmlMetadataParser {
 			// Theme keywords
             //if there is an ISO topic keyword set it the value on the Metadata object
             String isoTopic = "";
-            NodeList themeKeywordNodes = (NodeList) xPath.evaluate(
-                    FgdcTag.ThemeKeywordsHeader.getXPathName(), document,
-                    XPathConstants.NODESET);
+            NodeList themeKeywordNodes = evaluateNodeSet(
+                    FgdcTag.ThemeKeywordsHeader.getXPathName(), document);
 
             for (int i = 0; i < themeKeywordNodes.getLength(); i++) {
                 Node keyword = themeKeywordNodes.item(i);
 
-                NodeList keywordValueNodes = (NodeList) xPath.evaluate(
-                        FgdcTag.ThemeKeywords.getXPathName(), keyword,
-                        XPathConstants.NODESET);
+                NodeList keywordValueNodes = evaluateNodeSet(
+                        FgdcTag.ThemeKeywords.getXPathName(), keyword);
                 if (keywordValueNodes.getLength() > 0) {
-                    String keywordThesaurus = (String) xPath.evaluate(
-                            FgdcTag.ThemeKeywordsThesaurus.getXPathName(),
-                            keyword, XPathConstants.STRING);
+                    String keywordThesaurus = evaluateString(
+                            FgdcTag.ThemeKeywordsThesaurus.getXPathName(), keyword);
 
                     ThemeKeywords themeKeyword = new ThemeKeywords();
                     themeKeyword.setThesaurus(keywordThesaurus);
@@ -356,20 +357,17 @@ public class FgdcMetadataParser extends BaseXmlMetadataParser {
             }
 
             // place keywords
-            NodeList placeKeywordNodes = (NodeList) xPath.evaluate(
-                    FgdcTag.PlaceKeywordsHeader.getXPathName(), document,
-                    XPathConstants.NODESET);
+            NodeList placeKeywordNodes = evaluateNodeSet(
+                    FgdcTag.PlaceKeywordsHeader.getXPathName(), document);
 
             for (int i = 0; i < placeKeywordNodes.getLength(); i++) {
                 Node keyword = placeKeywordNodes.item(i);
 
-                NodeList keywordValueNodes = (NodeList) xPath.evaluate(
-                        FgdcTag.PlaceKeywords.getXPathName(), keyword,
-                        XPathConstants.NODESET);
+                NodeList keywordValueNodes = evaluateNodeSet(
+                        FgdcTag.PlaceKeywords.getXPathName(), keyword);
                 if (keywordValueNodes.getLength() > 0) {
-                    String keywordThesaurus = (String) xPath.evaluate(
-                            FgdcTag.PlaceKeywordsThesaurus.getXPathName(),
-                            keyword, XPathConstants.STRING);
+                    String keywordThesaurus = evaluateString(
+                            FgdcTag.PlaceKeywordsThesaurus.getXPathName(), keyword);
 
                     PlaceKeywords placeKeyword = new PlaceKeywords();
                     placeKeyword.setThesaurus(keywordThesaurus);
@@ -2,8 +2,6 @@ package org.opengeoportal.harvester.api.metadata.parser;
 
 import java.util.*;
 
-import javax.xml.xpath.XPathConstants;
-
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang3.StringUtils;
 import org.opengeoportal.harvester.api.metadata.model.*;
@@ -22,6 +20,17 @@ public class Iso19139MetadataParser extends BaseXmlMetadataParser {
      */
     private final LocationResolver locationResolver = new Iso19139LocationResolver();
 
+    /**
+     * Contact roles.
+     */
+    private static final String CONTACTS_ROLE_XPATH = "/gmd:MD_Metadata/gmd:contact/gmd:CI_ResponsibleParty/gmd:role/gmd:CI_RoleCode";
+    /**
+     * Keyword groups and their values and types, relative to each group.
+     */
+    private static final String KEYWORDS_XPATH = "/gmd:MD_Metadata/gmd:identificationInfo/gmd:MD_DataIdentification/gmd:descriptiveKeywords/gmd:MD_Keywords";
+    private static final String KEYWORD_VALUE_XPATH = "gmd:keyword/gco:CharacterString";
+    private static final String KEYWORD_TYPE_XPATH = "gmd:type/gmd:MD_KeywordTypeCode/@codeListValue";
+
     List<String> preferredOriginatorKey = new ArrayList<String>();
     List<String> preferredPublisherKey = new ArrayList<String>();
 
@@ -56,6 +65,13 @@ public class Iso19139MetadataParser extends BaseXmlMetadataParser {
         }
     }
 
+    /**
+     * Compiled XPath expressions shared by all the ISO 19139 parsers.
+     */
+    private static final XPathRegistry XPATH_REGISTRY = new XPathRegistry(
+            namespaces(), Iso19139Tag.values(), CONTACTS_ROLE_XPATH,
+            KEYWORDS_XPATH, KEYWORD_VALUE_XPATH, KEYWORD_TYPE_XPATH);
+
     public Iso19139MetadataParser() {
         List<String> originatorKeys = new ArrayList<String>();
         List<String> publisherKeys = new ArrayList<String>();
@@ -78,14 +94,18 @@ public class Iso19139MetadataParser extends BaseXmlMetadataParser {
         preferredPublisherKey.addAll(publisherKeys);
     }
 
-    @Override
-    protected HashMap<String, String> getNamespaces() {
-        HashMap<String, String> namespacesMap = Maps.newHashMap();
+    private static Map<String, String> namespaces() {
+        Map<String, String> namespacesMap = Maps.newHashMap();
         namespacesMap.put("gmd", "http://www.isotc211.org/2005/gmd");
         namespacesMap.put("gco", "http://www.isotc211.org/2005/gco");
         return namespacesMap;
     }
 
+    @Override
+    protected XPathRegistry getXPathRegistry() {
+        return XPATH_REGISTRY;
+    }
+
     @Override
     protected void handleOriginator() {
 
@@ -144,10 +164,9 @@ public class Iso19139MetadataParser extends BaseXmlMetadataParser {
          </gmd:contact>
          */
         Map<String, Node> originatorsTable = new HashMap<String, Node>();
-        String contactsRoleXPath = "/gmd:MD_Metadata/gmd:contact/gmd:CI_ResponsibleParty/gmd:role/gmd:CI_RoleCode";
 
         try {
-            NodeList roleNodes = (NodeList) xPath.evaluate(contactsRoleXPath, document, XPathConstants.NODESET);
+            NodeList roleNodes = evaluateNodeSet(CONTACTS_ROLE_XPATH, document);
 
             for (int i = 0; i < roleNodes.getLength(); i++) {
                 Node roleNode = roleNodes.item(i);
@@ -505,20 +524,15 @@ public class Iso19139MetadataParser extends BaseXmlMetadataParser {
         }
 
         try {
-            String keywordsXPath = "/gmd:MD_Metadata/gmd:identificationInfo/gmd:MD_DataIdentification/gmd:descriptiveKeywords/gmd:MD_Keywords";
-
-            NodeList keywordNodes = (NodeList) xPath.evaluate(keywordsXPath,
-                    document, XPathConstants.NODESET);
+            NodeList keywordNodes = evaluateNodeSet(KEYWORDS_XPATH, document);
 
             for (int i = 0; i < keywordNodes.getLength(); i++) {
                 Node keyword = keywordNodes.item(i);
 
-                String keywordVal = (String) xPath.evaluate(
-                        "gmd:keyword/gco:CharacterString", keyword,
-                        XPathConstants.STRING);
-                String keywordType = (String) xPath.evaluate(
-                        "gmd:type/gmd:MD_KeywordTypeCode/@codeListValue",
-                        keyword, XPathConstants.STRING);
+                String keywordVal = evaluateString(KEYWORD_VALUE_XPATH,
+                        keyword);
+                String keywordType = evaluateString(KEYWORD_TYPE_XPATH,
+                        keyword);
                 if (keywordType.equals("place")) {
                     PlaceKeywords placeKeyword = new PlaceKeywords();
                     placeKeyword.addKeyword(keywordVal);
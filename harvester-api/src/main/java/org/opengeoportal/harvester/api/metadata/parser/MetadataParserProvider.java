@@ -21,6 +21,15 @@ public interface MetadataParserProvider {
      */
     MetadataParser getMetadataParser(Document document) throws UnsupportedMetadataType;
 
+    /**
+     * Create a new MetadataParser for an already detected metadata type.
+     *
+     * @param metadataType the type of the documents to parse.
+     * @return a new instance of MetadataParser.
+     * @throws UnsupportedMetadataType if Metadata Type is not supported.
+     */
+    MetadataParser getMetadataParser(MetadataType metadataType) throws UnsupportedMetadataType;
+
     /**
      * Create a new MetadataParser capable of read Solr records.
      *
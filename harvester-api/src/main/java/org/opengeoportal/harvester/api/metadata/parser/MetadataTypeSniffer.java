@@ -0,0 +1,262 @@
+package org.opengeoportal.harvester.api.metadata.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opengeoportal.harvester.api.exception.UnsupportedMetadataType;
+
+/**
+ * Detects the metadata standard of a raw XML document reading only its first
+ * bytes, so documents that are not metadata can be rejected before building
+ * a DOM.
+ * <p>
+ * The first metadata element decides the candidate standard:
+ * <code>metadata</code> without namespace for FGDC and an element of the ISO
+ * 19139 namespaces (<code>gmd:MD_Metadata</code>,
+ * <code>gmi:MI_Metadata</code>) for ISO. It is usually the root element, but
+ * it can be wrapped, like the record of a
+ * <code>csw:GetRecordByIdResponse</code>. A document with no metadata
+ * element nor standard name in the bytes read is rejected. The standard name
+ * (<code>metstdn</code>, <code>metadataStandardName</code>) confirms the
+ * standard with the same rules as
+ * {@link org.opengeoportal.harvester.api.util.XmlUtil#getMetadataType(org.w3c.dom.Document)}
+ * when it is found in the bytes read; otherwise the standard is undecided and
+ * must be detected in the DOM.
+ * </p>
+ */
+public class MetadataTypeSniffer {
+    /**
+     * Default number of bytes read from the documents.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8192;
+
+    private static final String GMD_NAMESPACE = "http://www.isotc211.org/2005/gmd";
+    private static final String GMI_NAMESPACE = "http://www.isotc211.org/2005/gmi";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final int windowSize;
+
+    public MetadataTypeSniffer() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize max number of bytes read from the documents.
+     */
+    public MetadataTypeSniffer(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        return factory;
+    }
+
+    /**
+     * Detect the standard of a document.
+     *
+     * @param content the raw document.
+     * @return the standard or <code>null</code> if it cannot be decided from
+     * the first bytes of the document.
+     * @throws UnsupportedMetadataType if the first bytes of the document
+     * contain no metadata or an ISO record of other standard than ISO 19139.
+     */
+    public MetadataType sniff(byte[] content) throws UnsupportedMetadataType {
+        return sniff(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Detect the standard of a document. At most the window size bytes are
+     * read from the stream.
+     *
+     * @param in the raw document.
+     * @return the standard or <code>null</code> if it cannot be decided from
+     * the first bytes of the document, for example because they are not well
+     * formed.
+     * @throws UnsupportedMetadataType if the first bytes of the document
+     * contain no metadata or an ISO record of other standard than ISO 19139.
+     */
+    public MetadataType sniff(InputStream in) throws UnsupportedMetadataType {
+        WindowInputStream window = new WindowInputStream(in, windowSize);
+        Candidate candidate = null;
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(window);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String localName = reader.getLocalName();
+                if (candidate != Candidate.ISO && "metstdn".equals(localName)) {
+                    String name = reader.getElementText();
+                    // metstdn can be anything, the DOM detection decides
+                    return name.toLowerCase().contains("fgdc") ? MetadataType.FGDC
+                            : null;
+                }
+                if (candidate != Candidate.FGDC
+                        && "metadataStandardName".equals(localName)) {
+                    String name = textContent(reader);
+                    if (name.contains("19139")) {
+                        return MetadataType.ISO_19139;
+                    }
+                    throw new UnsupportedMetadataType("Metadata Type ["
+                            + name.trim() + "] is not supported.");
+                }
+                if (candidate == null) {
+                    candidate = candidate(reader);
+                }
+            }
+        } catch (XMLStreamException e) {
+            if (!window.isExhausted()) {
+                // Not well formed, let the DOM parser report the error
+                return null;
+            }
+        } finally {
+            close(reader);
+        }
+        if (candidate == null) {
+            throw new UnsupportedMetadataType("No metadata found in the first "
+                    + windowSize + " bytes of the document.");
+        }
+        return null;
+    }
+
+    /**
+     * Decide the candidate standard from an element.
+     *
+     * @return the candidate or <code>null</code> if the element is not a
+     * metadata element.
+     */
+    private static Candidate candidate(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        String localName = reader.getLocalName();
+        if ((namespace == null || namespace.length() == 0)
+                && "metadata".equals(localName)) {
+            return Candidate.FGDC;
+        }
+        if (GMD_NAMESPACE.equals(namespace) || GMI_NAMESPACE.equals(namespace)) {
+            return Candidate.ISO;
+        }
+        return null;
+    }
+
+    /**
+     * Text of an element with children, like
+     * <code>gmd:metadataStandardName/gco:CharacterString</code>. Leaves the
+     * reader at the element end.
+     */
+    private static String textContent(XMLStreamReader reader)
+            throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                text.append(reader.getText());
+                break;
+            default:
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // swallowed
+            }
+        }
+    }
+
+    private enum Candidate {
+        FGDC, ISO
+    }
+
+    /**
+     * Stream ending after a number of bytes.
+     */
+    private static class WindowInputStream extends FilterInputStream {
+        private int remaining;
+        private boolean exhausted;
+
+        WindowInputStream(InputStream in, int size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        /**
+         * @return <code>true</code> if the stream has ended because the
+         * window size has been reached.
+         */
+        boolean isExhausted() {
+            return exhausted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                exhausted = true;
+                return -1;
+            }
+            int result = super.read();
+            if (result != -1) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                exhausted = true;
+                return -1;
+            }
+            int result = super.read(b, off, Math.min(len, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(Math.min(n, remaining));
+            remaining -= result;
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the stream
+        }
+    }
+}
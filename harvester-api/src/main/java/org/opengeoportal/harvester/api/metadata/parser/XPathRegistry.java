@@ -0,0 +1,170 @@
+package org.opengeoportal.harvester.api.metadata.parser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.opengeoportal.harvester.api.metadata.parser.BaseXmlMetadataParser.Tag;
+import org.w3c.dom.NodeList;
+
+/**
+ * Pre-compiled XPath expressions of a metadata standard, shared by all the
+ * parsers of that standard.
+ * <p>
+ * The expressions are registered and validated when the registry is created.
+ * {@link XPathExpression} instances are not thread safe, so every thread gets
+ * its own compiled copy the first time it uses an expression and reuses it for
+ * all the following documents. Expressions not registered are compiled and
+ * cached the same way the first time they are used.
+ * </p>
+ */
+public class XPathRegistry {
+
+    /**
+     * Namespace prefixes used in the expressions.
+     */
+    private final Map<String, String> namespaces;
+    /**
+     * Registered expressions.
+     */
+    private final Set<String> expressions;
+    /**
+     * Compiled expressions of each thread.
+     */
+    private final ThreadLocal<Map<String, XPathExpression>> compiled = new ThreadLocal<Map<String, XPathExpression>>() {
+        @Override
+        protected Map<String, XPathExpression> initialValue() {
+            return compileAll();
+        }
+    };
+
+    /**
+     * Create a registry.
+     *
+     * @param namespaces namespace prefixes used in the expressions.
+     * @param tags tags whose XPath expressions are registered.
+     * @param extraExpressions other expressions used by the parser.
+     * @throws IllegalArgumentException if an expression is not valid.
+     */
+    public XPathRegistry(Map<String, String> namespaces, Tag[] tags,
+            String... extraExpressions) {
+        this.namespaces = Collections
+                .unmodifiableMap(new HashMap<String, String>(namespaces));
+        Set<String> all = new LinkedHashSet<String>();
+        for (Tag tag : tags) {
+            all.add(tag.getXPathName());
+        }
+        Collections.addAll(all, extraExpressions);
+        this.expressions = Collections.unmodifiableSet(all);
+
+        // Fail at startup instead of in the first document
+        compiled.get();
+    }
+
+    /**
+     * @return the namespace prefixes used in the expressions.
+     */
+    public Map<String, String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * Get the compiled expression for the current thread.
+     *
+     * @param expression the XPath expression.
+     * @return the compiled expression.
+     * @throws XPathExpressionException if the expression is not valid.
+     */
+    public XPathExpression get(String expression)
+            throws XPathExpressionException {
+        Map<String, XPathExpression> threadExpressions = compiled.get();
+        XPathExpression result = threadExpressions.get(expression);
+        if (result == null) {
+            result = newXPath().compile(expression);
+            threadExpressions.put(expression, result);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate an expression as a string.
+     *
+     * @param expression the XPath expression.
+     * @param item context node.
+     * @return the result.
+     * @throws XPathExpressionException if the expression cannot be evaluated.
+     */
+    public String evaluateString(String expression, Object item)
+            throws XPathExpressionException {
+        return (String) get(expression).evaluate(item, XPathConstants.STRING);
+    }
+
+    /**
+     * Evaluate an expression as a node set.
+     *
+     * @param expression the XPath expression.
+     * @param item context node.
+     * @return the result.
+     * @throws XPathExpressionException if the expression cannot be evaluated.
+     */
+    public NodeList evaluateNodeSet(String expression, Object item)
+            throws XPathExpressionException {
+        return (NodeList) get(expression).evaluate(item,
+                XPathConstants.NODESET);
+    }
+
+    private Map<String, XPathExpression> compileAll() {
+        Map<String, XPathExpression> result = new HashMap<String, XPathExpression>();
+        XPath xPath = newXPath();
+        for (String expression : expressions) {
+            try {
+                result.put(expression, xPath.compile(expression));
+            } catch (XPathExpressionException e) {
+                throw new IllegalArgumentException("Invalid XPath expression "
+                        + expression, e);
+            }
+        }
+        return result;
+    }
+
+    private XPath newXPath() {
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.setNamespaceContext(new SimpleNamespaceContext(namespaces));
+        return xPath;
+    }
+
+    private static class SimpleNamespaceContext implements NamespaceContext {
+
+        private final Map<String, String> prefMap;
+
+        public SimpleNamespaceContext(final Map<String, String> prefMap) {
+            this.prefMap = prefMap;
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            return prefMap.get(prefix);
+        }
+
+        @Override
+        public String getPrefix(String uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator getPrefixes(String uri) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+}
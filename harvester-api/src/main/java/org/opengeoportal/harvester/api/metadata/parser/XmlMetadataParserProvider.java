@@ -9,12 +9,18 @@ public class XmlMetadataParserProvider implements MetadataParserProvider {
 
 	@Override
 	public MetadataParser getMetadataParser(Document document) throws UnsupportedMetadataType {
-		MetadataType metadataType = XmlUtil.getMetadataType(document);
+		return getMetadataParser(XmlUtil.getMetadataType(document));
+	}
 
+	@Override
+	public MetadataParser getMetadataParser(MetadataType metadataType) throws UnsupportedMetadataType {
 		if (metadataType.equals(MetadataType.ISO_19139)) {
 			return new Iso19139MetadataParser();
-		} else {
+		} else if (metadataType.equals(MetadataType.FGDC)) {
 			return new FgdcMetadataParser();
+		} else {
+			throw new UnsupportedMetadataType("Metadata Type [" + metadataType
+					+ "] is not supported.");
 		}
 	}
 
@@ -0,0 +1,138 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of a set of values, counted in fixed buckets. Updates do not
+ * take locks, so a histogram can be shared by all the threads of the
+ * harvester.
+ */
+public class Histogram {
+
+    /**
+     * Bucket upper bounds used for sizes, like the number of records of a
+     * page or a batch.
+     */
+    public static final long[] SIZE_BOUNDS = { 1, 2, 5, 10, 20, 50, 100,
+            200, 500, 1000, 2000, 5000, 10000 };
+
+    /**
+     * Inclusive upper bounds of the buckets, in ascending order. Values
+     * greater than the last bound are counted in an extra bucket.
+     */
+    private final long[] bounds;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create a new histogram.
+     *
+     * @param bounds inclusive upper bounds of the buckets, in ascending
+     * order.
+     */
+    public Histogram(long[] bounds) {
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value the value, negative values are counted as 0.
+     */
+    public void update(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values added.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the values added.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the largest value added, 0 if there are none.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values added, 0 if there are none.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @return a copy of the inclusive upper bounds of the buckets.
+     */
+    public long[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return the number of values of each bucket, with one more element
+     * than {@link #getBounds()} for the values greater than the last bound.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Estimate a percentile as the upper bound of the bucket where it falls.
+     * Values over the last bound are estimated with the max value.
+     *
+     * @param quantile quantile between 0 and 1, for example 0.95.
+     * @return the estimation, 0 if there are no values.
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bounds[i], getMax());
+            }
+        }
+        return getMax();
+    }
+}
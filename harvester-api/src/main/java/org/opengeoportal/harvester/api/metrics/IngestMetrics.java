@@ -0,0 +1,55 @@
+package org.opengeoportal.harvester.api.metrics;
+
+/**
+ * Metrics of a registry tagged with an ingest and a source type. Jobs pass it
+ * to their remote clients, like the transfer counter.
+ */
+public class IngestMetrics {
+    private final MetricsRegistry registry;
+    private final Long ingestId;
+    private final String source;
+
+    /**
+     * Create a new instance.
+     *
+     * @param registry registry where the metrics are stored.
+     * @param ingestId ingest tag, can be <code>null</code>.
+     * @param source source type tag, can be <code>null</code>.
+     */
+    public IngestMetrics(MetricsRegistry registry, Long ingestId,
+            String source) {
+        this.registry = registry;
+        this.ingestId = ingestId;
+        this.source = source;
+    }
+
+    /**
+     * @param name metric name.
+     * @return the timer with this name and the tags of this instance.
+     */
+    public Timer timer(String name) {
+        return registry.timer(name, ingestId, source);
+    }
+
+    /**
+     * @param name metric name.
+     * @return the histogram with this name and the tags of this instance.
+     */
+    public Histogram histogram(String name) {
+        return registry.histogram(name, ingestId, source);
+    }
+
+    /**
+     * @return the ingest tag.
+     */
+    public Long getIngestId() {
+        return ingestId;
+    }
+
+    /**
+     * @return the source type tag.
+     */
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,27 @@
+package org.opengeoportal.harvester.api.metrics;
+
+/**
+ * JMX view of a {@link Histogram} or a {@link Timer}. Timer values are
+ * returned in milliseconds.
+ */
+public interface MetricMXBean {
+
+    /**
+     * @return <code>ms</code> for timers, an empty string for histograms.
+     */
+    String getUnit();
+
+    long getCount();
+
+    double getSum();
+
+    double getMean();
+
+    double getMax();
+
+    double get50thPercentile();
+
+    double get95thPercentile();
+
+    double get99thPercentile();
+}
@@ -0,0 +1,89 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Ordering;
+
+/**
+ * Name of a metric and its tags: the ingest and the source type.
+ */
+public final class MetricName implements Comparable<MetricName> {
+    private static final Ordering<String> SOURCE_ORDER = Ordering
+            .<String> natural().nullsFirst();
+    private static final Ordering<Long> INGEST_ORDER = Ordering
+            .<Long> natural().nullsFirst();
+
+    private final String name;
+    private final Long ingestId;
+    private final String source;
+
+    /**
+     * Create a new name.
+     *
+     * @param name metric name, for example <code>csw.getRecords</code>.
+     * @param ingestId ingest tag, <code>null</code> if the metric is not
+     * related to an ingest.
+     * @param source source type tag, <code>null</code> if the metric is not
+     * related to a source.
+     */
+    public MetricName(String name, Long ingestId, String source) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        this.name = name;
+        this.ingestId = ingestId;
+        this.source = source;
+    }
+
+    /**
+     * @return the metric name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the ingest tag or <code>null</code>.
+     */
+    public Long getIngestId() {
+        return ingestId;
+    }
+
+    /**
+     * @return the source type tag or <code>null</code>.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public int compareTo(MetricName other) {
+        return ComparisonChain.start().compare(name, other.name)
+                .compare(source, other.source, SOURCE_ORDER)
+                .compare(ingestId, other.ingestId, INGEST_ORDER).result();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MetricName)) {
+            return false;
+        }
+        MetricName other = (MetricName) obj;
+        return name.equals(other.name)
+                && Objects.equal(ingestId, other.ingestId)
+                && Objects.equal(source, other.source);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name, ingestId, source);
+    }
+
+    @Override
+    public String toString() {
+        return name + "{ingest=" + ingestId + ", source=" + source + "}";
+    }
+}
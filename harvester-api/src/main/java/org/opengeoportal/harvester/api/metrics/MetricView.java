@@ -0,0 +1,60 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MetricMXBean} that reads the values of a metric when they are
+ * requested.
+ */
+class MetricView implements MetricMXBean {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS
+            .toNanos(1);
+
+    private final Histogram metric;
+    private final double scale;
+
+    MetricView(Histogram metric) {
+        this.metric = metric;
+        this.scale = metric instanceof Timer ? NANOS_PER_MILLI : 1;
+    }
+
+    @Override
+    public String getUnit() {
+        return metric instanceof Timer ? "ms" : "";
+    }
+
+    @Override
+    public long getCount() {
+        return metric.getCount();
+    }
+
+    @Override
+    public double getSum() {
+        return metric.getSum() / scale;
+    }
+
+    @Override
+    public double getMean() {
+        return metric.getMean() / scale;
+    }
+
+    @Override
+    public double getMax() {
+        return metric.getMax() / scale;
+    }
+
+    @Override
+    public double get50thPercentile() {
+        return metric.getPercentile(0.5) / scale;
+    }
+
+    @Override
+    public double get95thPercentile() {
+        return metric.getPercentile(0.95) / scale;
+    }
+
+    @Override
+    public double get99thPercentile() {
+        return metric.getPercentile(0.99) / scale;
+    }
+}
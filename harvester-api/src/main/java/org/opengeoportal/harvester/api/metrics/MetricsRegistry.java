@@ -0,0 +1,288 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Timers and histograms of the harvester, identified by a
+ * {@link MetricName}. Metrics are created the first time they are requested
+ * and live until the application stops, except the ones tagged with an
+ * ingest, that are removed with {@link #removeIngest(Long)} when the ingest
+ * is deleted or unscheduled.
+ * <p>
+ * When JMX is started each metric is registered in the platform MBean server
+ * as a {@link MetricMXBean} named
+ * <code>domain:type=Timer,name=csw.getRecords,source=CSW,ingest=12</code>.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    /**
+     * Registry used by the clients and jobs that are not given one.
+     */
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentMap<MetricName, Histogram> metrics = new ConcurrentHashMap<MetricName, Histogram>();
+
+    /**
+     * Guards the MBean server.
+     */
+    private final Object jmxLock = new Object();
+
+    /**
+     * Server where the metrics are registered, <code>null</code> when JMX is
+     * not started.
+     */
+    private MBeanServer mbeanServer;
+
+    private String jmxDomain = "org.opengeoportal.harvester.metrics";
+
+    private boolean jmxEnabled = true;
+
+    /**
+     * @return the registry shared by the clients and jobs that are not given
+     * one.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get a timer, creating it if it does not exist.
+     *
+     * @param name metric name.
+     * @param ingestId ingest tag, can be <code>null</code>.
+     * @param source source type tag, can be <code>null</code>.
+     * @return the timer.
+     * @throws IllegalArgumentException if a histogram with the same name and
+     * tags exists.
+     */
+    public Timer timer(String name, Long ingestId, String source) {
+        MetricName metricName = new MetricName(name, ingestId, source);
+        Histogram metric = metrics.get(metricName);
+        if (metric == null) {
+            metric = register(metricName, new Timer());
+        }
+        if (!(metric instanceof Timer)) {
+            throw new IllegalArgumentException(metricName
+                    + " is not a timer");
+        }
+        return (Timer) metric;
+    }
+
+    /**
+     * Get a histogram of sizes (see {@link Histogram#SIZE_BOUNDS}), creating
+     * it if it does not exist.
+     *
+     * @param name metric name.
+     * @param ingestId ingest tag, can be <code>null</code>.
+     * @param source source type tag, can be <code>null</code>.
+     * @return the histogram.
+     * @throws IllegalArgumentException if a timer with the same name and tags
+     * exists.
+     */
+    public Histogram histogram(String name, Long ingestId, String source) {
+        MetricName metricName = new MetricName(name, ingestId, source);
+        Histogram metric = metrics.get(metricName);
+        if (metric == null) {
+            metric = register(metricName, new Histogram(
+                    Histogram.SIZE_BOUNDS));
+        }
+        if (metric instanceof Timer) {
+            throw new IllegalArgumentException(metricName
+                    + " is not a histogram");
+        }
+        return metric;
+    }
+
+    /**
+     * @param ingestId ingest tag, can be <code>null</code>.
+     * @param source source type tag, can be <code>null</code>.
+     * @return the metrics of this registry with these tags.
+     */
+    public IngestMetrics forIngest(Long ingestId, String source) {
+        return new IngestMetrics(this, ingestId, source);
+    }
+
+    /**
+     * Remove the metrics tagged with an ingest and unregister them from the
+     * MBean server. They are created again if the ingest keeps running.
+     *
+     * @param ingestId the ingest identifier.
+     * @return the number of metrics removed.
+     */
+    public int removeIngest(Long ingestId) {
+        if (ingestId == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (Map.Entry<MetricName, Histogram> entry : metrics.entrySet()) {
+            if (!ingestId.equals(entry.getKey().getIngestId())
+                    || !metrics.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            removed++;
+            synchronized (jmxLock) {
+                if (mbeanServer != null) {
+                    unexport(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the metrics sorted by name and tags.
+     */
+    public SortedMap<MetricName, Histogram> getMetrics() {
+        return ImmutableSortedMap.copyOf(metrics);
+    }
+
+    /**
+     * Register all the metrics, and the ones created later, in the platform
+     * MBean server. Does nothing if JMX is disabled.
+     */
+    public void startJmx() {
+        if (!jmxEnabled) {
+            return;
+        }
+        synchronized (jmxLock) {
+            if (mbeanServer != null) {
+                return;
+            }
+            mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            for (Map.Entry<MetricName, Histogram> entry : metrics.entrySet()) {
+                export(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Unregister the metrics from the MBean server.
+     */
+    public void stopJmx() {
+        synchronized (jmxLock) {
+            if (mbeanServer == null) {
+                return;
+            }
+            for (Map.Entry<MetricName, Histogram> entry : metrics.entrySet()) {
+                unexport(entry.getKey(), entry.getValue());
+            }
+            mbeanServer = null;
+        }
+    }
+
+    private Histogram register(MetricName name, Histogram metric) {
+        Histogram previous = metrics.putIfAbsent(name, metric);
+        if (previous != null) {
+            return previous;
+        }
+        synchronized (jmxLock) {
+            // Not exported if it has been removed in the meanwhile
+            if (mbeanServer != null && metrics.get(name) == metric) {
+                export(name, metric);
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * Register a metric in the MBean server. Must be called holding jmxLock.
+     */
+    private void export(MetricName name, Histogram metric) {
+        try {
+            ObjectName objectName = objectName(name, metric);
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(new StandardMBean(
+                        new MetricView(metric), MetricMXBean.class, true),
+                        objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Error registering metric " + name, e);
+        }
+    }
+
+    /**
+     * Unregister a metric from the MBean server. Must be called holding
+     * jmxLock.
+     */
+    private void unexport(MetricName name, Histogram metric) {
+        try {
+            ObjectName objectName = objectName(name, metric);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Error unregistering metric " + name, e);
+        }
+    }
+
+    private ObjectName objectName(MetricName name, Histogram metric)
+            throws JMException {
+        StringBuilder sb = new StringBuilder(jmxDomain);
+        sb.append(":type=").append(
+                metric instanceof Timer ? "Timer" : "Histogram");
+        sb.append(",name=").append(quoteIfNeeded(name.getName()));
+        if (name.getSource() != null) {
+            sb.append(",source=").append(quoteIfNeeded(name.getSource()));
+        }
+        if (name.getIngestId() != null) {
+            sb.append(",ingest=").append(name.getIngestId());
+        }
+        return new ObjectName(sb.toString());
+    }
+
+    private static String quoteIfNeeded(String value) {
+        for (char c : value.toCharArray()) {
+            if (",=:\"*?\n".indexOf(c) >= 0) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the JMX domain of the metrics.
+     */
+    public String getJmxDomain() {
+        return jmxDomain;
+    }
+
+    /**
+     * @param jmxDomain the JMX domain of the metrics. It must be set before
+     * calling {@link #startJmx()}.
+     */
+    public void setJmxDomain(String jmxDomain) {
+        this.jmxDomain = jmxDomain;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #startJmx()} registers the metrics.
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * @param jmxEnabled <code>false</code> to keep the metrics out of the
+     * MBean server.
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+}
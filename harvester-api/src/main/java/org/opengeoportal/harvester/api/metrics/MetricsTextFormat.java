@@ -0,0 +1,146 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a registry in the Prometheus text exposition format
+ * (version 0.0.4), so they can be read by a scraper. Each metric is written
+ * as a histogram with cumulative buckets, <code>_sum</code> and
+ * <code>_count</code>. Timers are written in seconds.
+ */
+public class MetricsTextFormat {
+
+    /**
+     * Content type of the format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final String prefix;
+
+    /**
+     * Create a new instance.
+     *
+     * @param prefix prefix of the metric names, for example
+     * <code>harvester</code>.
+     */
+    public MetricsTextFormat(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Write all the metrics of a registry.
+     *
+     * @param registry the registry.
+     * @param writer destination, it is not closed.
+     * @throws IOException if the writer throws it.
+     */
+    public void write(MetricsRegistry registry, Writer writer)
+            throws IOException {
+        String lastName = null;
+        for (Map.Entry<MetricName, Histogram> entry : registry.getMetrics()
+                .entrySet()) {
+            MetricName name = entry.getKey();
+            Histogram metric = entry.getValue();
+            boolean timer = metric instanceof Timer;
+            String metricName = metricName(name.getName(), timer);
+            if (!metricName.equals(lastName)) {
+                writer.write("# TYPE " + metricName + " histogram\n");
+                lastName = metricName;
+            }
+            double scale = timer ? NANOS_PER_SECOND : 1;
+            String labels = labels(name);
+
+            // Read the buckets first, the count is never lower than them
+            long[] bounds = metric.getBounds();
+            long[] counts = metric.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts[i];
+                writeSample(writer, metricName + "_bucket", labels, "le=\""
+                        + formatDouble(bounds[i] / scale) + "\"",
+                        Long.toString(cumulative));
+            }
+            cumulative += counts[bounds.length];
+            writeSample(writer, metricName + "_bucket", labels, "le=\"+Inf\"",
+                    Long.toString(cumulative));
+            writeSample(writer, metricName + "_sum", labels, null,
+                    formatDouble(metric.getSum() / scale));
+            writeSample(writer, metricName + "_count", labels, null,
+                    Long.toString(cumulative));
+        }
+        writer.flush();
+    }
+
+    private void writeSample(Writer writer, String name, String labels,
+            String extraLabel, String value) throws IOException {
+        writer.write(name);
+        if (labels.length() > 0 || extraLabel != null) {
+            writer.write('{');
+            writer.write(labels);
+            if (extraLabel != null) {
+                if (labels.length() > 0) {
+                    writer.write(',');
+                }
+                writer.write(extraLabel);
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        writer.write(value);
+        writer.write('\n');
+    }
+
+    /**
+     * @return the name with the prefix, invalid characters replaced by
+     * underscores and the <code>_seconds</code> suffix for timers. For
+     * example <code>csw.getRecords</code> is
+     * <code>harvester_csw_getrecords_seconds</code>.
+     */
+    String metricName(String name, boolean timer) {
+        StringBuilder sb = new StringBuilder(prefix).append('_');
+        for (char c : name.toLowerCase().toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        if (timer) {
+            sb.append("_seconds");
+        }
+        return sb.toString();
+    }
+
+    private static String labels(MetricName name) {
+        StringBuilder sb = new StringBuilder();
+        if (name.getIngestId() != null) {
+            sb.append("ingest=\"").append(name.getIngestId()).append('"');
+        }
+        if (name.getSource() != null) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append("source=\"").append(escape(name.getSource()))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,89 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Histogram} of durations, stored in nanoseconds.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * Timer.Context context = timer.time();
+ * try {
+ *     // measured code
+ * } finally {
+ *     context.stop();
+ * }
+ * </pre>
+ */
+public class Timer extends Histogram {
+
+    /**
+     * Bucket upper bounds, from 1 millisecond to 2 minutes.
+     */
+    private static final long[] DURATION_BOUNDS = millisToNanos(1, 2, 5, 10,
+            25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000,
+            120000);
+
+    /**
+     * Create a new timer.
+     */
+    public Timer() {
+        super(DURATION_BOUNDS);
+    }
+
+    /**
+     * Add a duration.
+     *
+     * @param duration the duration.
+     * @param unit unit of the duration.
+     */
+    public void update(long duration, TimeUnit unit) {
+        update(unit.toNanos(duration));
+    }
+
+    /**
+     * Start measuring.
+     *
+     * @return the context that must be stopped when the measured code
+     * finishes.
+     */
+    public Context time() {
+        return new Context(this);
+    }
+
+    private static long[] millisToNanos(long... millis) {
+        long[] nanos = new long[millis.length];
+        for (int i = 0; i < millis.length; i++) {
+            nanos[i] = TimeUnit.MILLISECONDS.toNanos(millis[i]);
+        }
+        return nanos;
+    }
+
+    /**
+     * A running measure. The duration is added to the timer when the
+     * context is stopped.
+     */
+    public static class Context {
+        private final Timer timer;
+        private final long start;
+
+        Context(Timer timer) {
+            this.timer = timer;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Add the time passed since the context was created to the timer.
+         * It must be called once.
+         *
+         * @return the duration, in nanoseconds.
+         */
+        public long stop() {
+            long duration = System.nanoTime() - start;
+            timer.update(duration);
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * In this package you can find the timers and histograms measured along the
+ * harvest path (remote requests, parsing, validation, Solr and report
+ * storage), tagged by ingest and source type.
+ */
+package org.opengeoportal.harvester.api.metrics;
@@ -0,0 +1,393 @@
+/**
+ * IngestConcurrencyLimiter.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.scheduler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Limits the number of ingests executed at the same time, globally and for
+ * each remote host.
+ * <p>
+ * Jobs call {@link #acquire(Ingest)} before harvesting and wait in a FIFO
+ * queue until both limits allow them to run. A job whose host is at its limit
+ * does not delay the jobs of other hosts queued after it.
+ * </p>
+ */
+public class IngestConcurrencyLimiter {
+    /**
+     * Logger.
+     */
+    private final Logger logger = LoggerFactory
+            .getLogger(IngestConcurrencyLimiter.class);
+
+    /**
+     * Max number of ingests running at the same time.
+     */
+    private int maxConcurrentIngests = 8;
+    /**
+     * Max number of ingests running at the same time against the same host.
+     */
+    private int maxConcurrentIngestsPerHost = 2;
+
+    /**
+     * Jobs waiting to run, in arrival order. Guarded by <code>this</code>.
+     */
+    private final LinkedList<Permit> queue = new LinkedList<Permit>();
+    /**
+     * Number of jobs running for each host. Guarded by <code>this</code>.
+     */
+    private final Map<String, Integer> runningByHost = Maps.newHashMap();
+    /**
+     * Number of jobs running. Guarded by <code>this</code>.
+     */
+    private int running;
+
+    /**
+     * Number of jobs that have been allowed to run.
+     */
+    private long granted;
+    /**
+     * Sum of the time waited by the jobs that have been allowed to run.
+     */
+    private long totalWaitMs;
+    /**
+     * Longest time waited by a job.
+     */
+    private long maxWaitMs;
+
+    /**
+     * Wait until the ingest is allowed to run.
+     *
+     * @param ingest the ingest to run.
+     * @return the permit that must be passed to {@link #release(Permit)} when
+     * the ingest finishes.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting. The ingest is removed from the queue.
+     */
+    public synchronized Permit acquire(Ingest ingest)
+            throws InterruptedException {
+        Permit permit = new Permit(ingest.getId(), hostOf(ingest));
+        queue.add(permit);
+        grantPermits();
+        try {
+            while (!permit.granted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (permit.granted) {
+                release(permit);
+            } else {
+                queue.remove(permit);
+            }
+            throw e;
+        }
+
+        if (permit.waitMs > 0 && logger.isInfoEnabled()) {
+            logger.info("Ingest " + permit.ingestId + " waited "
+                    + permit.waitMs + " ms to run against " + permit.host);
+        }
+        return permit;
+    }
+
+    /**
+     * Free the slot used by an ingest so waiting ingests can run.
+     *
+     * @param permit the permit returned by {@link #acquire(Ingest)}.
+     */
+    public synchronized void release(Permit permit) {
+        if (!permit.granted || permit.released) {
+            return;
+        }
+        permit.released = true;
+        running--;
+        int hostRunning = runningByHost.get(permit.host) - 1;
+        if (hostRunning == 0) {
+            runningByHost.remove(permit.host);
+        } else {
+            runningByHost.put(permit.host, hostRunning);
+        }
+        grantPermits();
+    }
+
+    /**
+     * Let the queued jobs run, in arrival order, while the limits allow it.
+     */
+    private void grantPermits() {
+        boolean changed = false;
+        long now = System.currentTimeMillis();
+        Iterator<Permit> it = queue.iterator();
+        while (it.hasNext() && running < maxConcurrentIngests) {
+            Permit permit = it.next();
+            Integer hostRunning = runningByHost.get(permit.host);
+            int current = hostRunning == null ? 0 : hostRunning;
+            if (current < maxConcurrentIngestsPerHost) {
+                it.remove();
+                runningByHost.put(permit.host, current + 1);
+                running++;
+                permit.granted = true;
+                permit.waitMs = now - permit.queuedAt;
+                granted++;
+                totalWaitMs += permit.waitMs;
+                maxWaitMs = Math.max(maxWaitMs, permit.waitMs);
+                changed = true;
+            }
+        }
+        if (changed) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return a snapshot of the current state of the queue.
+     */
+    public synchronized Statistics getStatistics() {
+        Statistics statistics = new Statistics();
+        statistics.maxConcurrentIngests = maxConcurrentIngests;
+        statistics.maxConcurrentIngestsPerHost = maxConcurrentIngestsPerHost;
+        statistics.running = running;
+        statistics.queueDepth = queue.size();
+        statistics.runningByHost = Collections
+                .unmodifiableSortedMap(new TreeMap<String, Integer>(
+                        runningByHost));
+        SortedMap<String, Integer> waitingByHost = Maps.newTreeMap();
+        long now = System.currentTimeMillis();
+        for (Permit permit : queue) {
+            Integer waiting = waitingByHost.get(permit.host);
+            waitingByHost.put(permit.host, waiting == null ? 1 : waiting + 1);
+            statistics.longestCurrentWaitMs = Math.max(
+                    statistics.longestCurrentWaitMs, now - permit.queuedAt);
+        }
+        statistics.waitingByHost = Collections
+                .unmodifiableSortedMap(waitingByHost);
+        statistics.granted = granted;
+        statistics.averageWaitMs = granted == 0 ? 0 : totalWaitMs / granted;
+        statistics.maxWaitMs = maxWaitMs;
+        return statistics;
+    }
+
+    /**
+     * Get the key used to limit the ingests run against the same server.
+     *
+     * @param ingest the ingest.
+     * @return the lower case host name of the ingest URL, or the URL itself if
+     * it cannot be parsed.
+     */
+    public static String hostOf(Ingest ingest) {
+        String url = StringUtils.trimToEmpty(ingest.getActualUrl());
+        try {
+            String host = new URI(url).getHost();
+            if (host != null) {
+                return host.toLowerCase();
+            }
+        } catch (URISyntaxException e) {
+            // use the URL as is
+        }
+        return url;
+    }
+
+    /**
+     * @return the maxConcurrentIngests
+     */
+    public int getMaxConcurrentIngests() {
+        return maxConcurrentIngests;
+    }
+
+    /**
+     * @param maxConcurrentIngests
+     *            the maxConcurrentIngests to set
+     */
+    public synchronized void setMaxConcurrentIngests(int maxConcurrentIngests) {
+        if (maxConcurrentIngests < 1) {
+            throw new IllegalArgumentException(
+                    "maxConcurrentIngests must be greater than 0");
+        }
+        this.maxConcurrentIngests = maxConcurrentIngests;
+        grantPermits();
+    }
+
+    /**
+     * @return the maxConcurrentIngestsPerHost
+     */
+    public int getMaxConcurrentIngestsPerHost() {
+        return maxConcurrentIngestsPerHost;
+    }
+
+    /**
+     * @param maxConcurrentIngestsPerHost
+     *            the maxConcurrentIngestsPerHost to set
+     */
+    public synchronized void setMaxConcurrentIngestsPerHost(
+            int maxConcurrentIngestsPerHost) {
+        if (maxConcurrentIngestsPerHost < 1) {
+            throw new IllegalArgumentException(
+                    "maxConcurrentIngestsPerHost must be greater than 0");
+        }
+        this.maxConcurrentIngestsPerHost = maxConcurrentIngestsPerHost;
+        grantPermits();
+    }
+
+    /**
+     * Allows an ingest to run. Returned by {@link IngestConcurrencyLimiter#acquire(Ingest)}.
+     */
+    public static final class Permit {
+        private final Long ingestId;
+        private final String host;
+        private final long queuedAt = System.currentTimeMillis();
+        private boolean granted;
+        private boolean released;
+        private long waitMs;
+
+        private Permit(Long ingestId, String host) {
+            this.ingestId = ingestId;
+            this.host = host;
+        }
+
+        /**
+         * @return the host the ingest runs against.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the time the ingest waited before running, in
+         * milliseconds.
+         */
+        public long getWaitMs() {
+            return waitMs;
+        }
+    }
+
+    /**
+     * Snapshot of the queue returned by
+     * {@link IngestConcurrencyLimiter#getStatistics()}.
+     */
+    public static final class Statistics {
+        private int maxConcurrentIngests;
+        private int maxConcurrentIngestsPerHost;
+        private int running;
+        private int queueDepth;
+        private SortedMap<String, Integer> runningByHost;
+        private SortedMap<String, Integer> waitingByHost;
+        private long longestCurrentWaitMs;
+        private long granted;
+        private long averageWaitMs;
+        private long maxWaitMs;
+
+        private Statistics() {
+        }
+
+        /**
+         * @return the global limit.
+         */
+        public int getMaxConcurrentIngests() {
+            return maxConcurrentIngests;
+        }
+
+        /**
+         * @return the limit for each host.
+         */
+        public int getMaxConcurrentIngestsPerHost() {
+            return maxConcurrentIngestsPerHost;
+        }
+
+        /**
+         * @return the number of ingests running.
+         */
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * @return the number of ingests waiting to run.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the number of ingests running for each host.
+         */
+        public SortedMap<String, Integer> getRunningByHost() {
+            return runningByHost;
+        }
+
+        /**
+         * @return the number of ingests waiting for each host.
+         */
+        public SortedMap<String, Integer> getWaitingByHost() {
+            return waitingByHost;
+        }
+
+        /**
+         * @return how long the oldest queued ingest has been waiting, in
+         * milliseconds.
+         */
+        public long getLongestCurrentWaitMs() {
+            return longestCurrentWaitMs;
+        }
+
+        /**
+         * @return the number of ingests that have been allowed to run since
+         * startup.
+         */
+        public long getGranted() {
+            return granted;
+        }
+
+        /**
+         * @return the average time the ingests have waited before running, in
+         * milliseconds.
+         */
+        public long getAverageWaitMs() {
+            return averageWaitMs;
+        }
+
+        /**
+         * @return the longest time an ingest has waited before running, in
+         * milliseconds.
+         */
+        public long getMaxWaitMs() {
+            return maxWaitMs;
+        }
+    }
+}
@@ -35,14 +35,21 @@ import java.util.UUID;
 
 import org.opengeoportal.harvester.api.component.BaseIngestJob;
 import org.opengeoportal.harvester.api.component.IngestJobFactory;
+import org.opengeoportal.harvester.api.component.IngestProgress;
+import org.opengeoportal.harvester.api.component.IngestReportSink;
 import org.opengeoportal.harvester.api.component.MetadataIngester;
 import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
 import org.opengeoportal.harvester.api.exception.InstanceNotFoundException;
 import org.opengeoportal.harvester.api.exception.UnscheduledIngestException;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
 import org.opengeoportal.harvester.api.service.ExceptionTranslator;
+import org.opengeoportal.harvester.api.service.IngestHighWaterMarkService;
+import org.opengeoportal.harvester.api.service.IngestJobCheckpointService;
 import org.opengeoportal.harvester.api.service.IngestJobStatusService;
 import org.opengeoportal.harvester.api.service.IngestReportErrorService;
 import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.opengeoportal.harvester.api.service.IngestReportSummaryService;
 import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
 import org.opengeoportal.harvester.api.service.IngestService;
 import org.quartz.*;
@@ -64,6 +71,12 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 	 */
 	public static final String INGEST_ID = "ingestId";
 
+	/**
+	 * Key used to ask in the trigger JobDataMap to resume the last execution
+	 * of the ingest from its checkpoint.
+	 */
+	public static final String RESUME = "resume";
+
 	/**
 	 * Ingest service.
 	 */
@@ -90,6 +103,24 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 	@Autowired
 	private IngestReportWarningsService warningService;
 
+	/**
+	 * The report summary service.
+	 */
+	@Autowired
+	private IngestReportSummaryService summaryService;
+
+	/**
+	 * The high-water mark service.
+	 */
+	@Autowired
+	private IngestHighWaterMarkService highWaterMarkService;
+
+	/**
+	 * The checkpoint service.
+	 */
+	@Autowired
+	private IngestJobCheckpointService checkpointService;
+
 	/**
 	 * Factory that can create {@link IngestJob} instances based on an
 	 * {@link Ingest}.
@@ -105,10 +136,42 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
         @Autowired
         private ExceptionTranslator exceptionTranslator;
 
+	/**
+	 * Limits the ingests running at the same time. If <code>null</code> the
+	 * job runs as soon as Quartz fires it.
+	 */
+	@Autowired(required = false)
+	private IngestConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * Saves the validation errors and warnings in batches. If
+	 * <code>null</code> they are saved one by one.
+	 */
+	@Autowired(required = false)
+	private IngestReportSink reportSink;
+
+	/**
+	 * Publishes the progress of the running jobs. If <code>null</code> the
+	 * progress is not published.
+	 */
+	@Autowired(required = false)
+	private IngestProgressRegistry progressRegistry;
+
+	/**
+	 * Registry of the job metrics. If <code>null</code> the default one is
+	 * used.
+	 */
+	@Autowired(required = false)
+	private MetricsRegistry metricsRegistry;
+
 	/** Ingest identifier in the database. */
 	private String ingestId;
+	/** "true" if the last execution of the ingest must be resumed. */
+	private String resume;
     /** Actual job to be executed. */
     private BaseIngestJob job;
+    /** Thread waiting for the concurrency limiter, if any. */
+    private volatile Thread waitingThread;
 
     /**
 	 * Public constructor.
@@ -127,17 +190,42 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 			throws JobExecutionException {
         Date startTimestamp = Calendar.getInstance().getTime();
         Ingest ingest = null;
+        IngestConcurrencyLimiter.Permit permit = null;
+        IngestProgress progress = null;
+		// Jobs running when the application stopped are recovered by Quartz
+		boolean resuming = Boolean.parseBoolean(resume)
+				|| context.isRecovering();
 		try {
-            ingest = findAndValidateIngest();
+            ingest = findAndValidateIngest(!Boolean.parseBoolean(resume));
+            permit = waitForTurn(ingest);
             job = ingestJobFactory.newIngestJob(ingest);
 			job.setJobStatusService(jobStatusService);
 			job.setReportService(reportService);
 			job.setErrorService(errorService);
 			job.setWarningService(warningService);
+			job.setReportSink(reportSink);
+			job.setSummaryService(summaryService);
+			job.setHighWaterMarkService(highWaterMarkService);
+			job.setCheckpointService(checkpointService);
+			if (metricsRegistry != null) {
+				job.setMetricsRegistry(metricsRegistry);
+			}
                         job.setExceptionTranslatorService(exceptionTranslator);
 
 			UUID jobUuid = UUID.randomUUID();
-			job.init(jobUuid, ingest, metadataIngester);
+			IngestJobCheckpoint checkpoint = null;
+			if (resuming) {
+				checkpoint = checkpointService.findByIngestId(ingest.getId());
+			}
+			if (checkpoint != null) {
+				job.init(jobUuid, ingest, checkpoint, metadataIngester);
+			} else {
+				job.init(jobUuid, ingest, metadataIngester);
+			}
+			progress = job.getProgress();
+			if (progressRegistry != null && progress != null) {
+				progressRegistry.register(progress);
+			}
 			ingestService.save(ingest);
 			job.run();
 			ingestService.save(ingest);
@@ -145,6 +233,12 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 		} catch (Exception e) {
 			throw new JobExecutionException(e);
 		} finally {
+			if (progressRegistry != null && progress != null) {
+				progressRegistry.unregister(progress);
+			}
+			if (permit != null) {
+				concurrencyLimiter.release(permit);
+			}
 			if (ingest != null) {
 				ingest = ingestService.findById(ingest.getId());
 				ingest.setLastRun(startTimestamp);
@@ -153,14 +247,38 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 		}
 	}
 
+	/**
+	 * Wait until the concurrency limiter allows the ingest to run.
+	 * 
+	 * @param ingest the ingest.
+	 * @return the permit to be released when the job finishes, or
+	 *         <code>null</code> if there is no limiter.
+	 * @throws InterruptedException if the job is interrupted while waiting.
+	 */
+	private IngestConcurrencyLimiter.Permit waitForTurn(Ingest ingest)
+			throws InterruptedException {
+		if (concurrencyLimiter == null) {
+			return null;
+		}
+		waitingThread = Thread.currentThread();
+		try {
+			return concurrencyLimiter.acquire(ingest);
+		} finally {
+			waitingThread = null;
+		}
+	}
+
 	/**
 	 * Search ingest with ingestId in the database and check if has been
 	 * scheduled.
 	 * 
+	 * @param checkScheduled
+	 *            <code>false</code> if the ingest can be run although it is
+	 *            not scheduled.
 	 * @return the ingest with ingestId if it has been found and it is
 	 *         scheduled; otherwise, an exception is thrown.
 	 */
-	private Ingest findAndValidateIngest() {
+	private Ingest findAndValidateIngest(boolean checkScheduled) {
 		if (ingestId == null) {
 			throw new IllegalStateException(
 					"ingestId property has not been set");
@@ -170,7 +288,9 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 			throw new InstanceNotFoundException(
 					"Job cannot find Ingest with ingestId " + ingestId);
 		}
-		if (ingestFound.isScheduled() == null || !ingestFound.isScheduled()) {
+		if (checkScheduled
+				&& (ingestFound.isScheduled() == null || !ingestFound
+						.isScheduled())) {
 			throw new UnscheduledIngestException("Ingest " + ingestId
 					+ " is not scheduled (its property isScheduled is "
 					+ "not true)");
@@ -194,6 +314,23 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 		this.ingestId = ingestId;
 	}
 
+	/**
+	 * @return the resume flag
+	 */
+	public String getResume() {
+		return resume;
+	}
+
+	/**
+	 * @param resume
+	 *            "true" to resume the last execution of the ingest from its
+	 *            checkpoint. If it has no checkpoint a new execution is
+	 *            started.
+	 */
+	public void setResume(String resume) {
+		this.resume = resume;
+	}
+
 	/**
 	 * @param metadataIngester
 	 *            the metadataIngester to set
@@ -224,8 +361,21 @@ public class IngestJob implements InterruptableJob, IngestJobFactorySetter {
 		this.ingestJobFactory = ingestJobFactory;
 	}
 
+    /**
+	 * @param concurrencyLimiter the concurrencyLimiter to set
+	 */
+	public void setConcurrencyLimiter(
+			IngestConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
     @Override
     public void interrupt() throws UnableToInterruptJobException {
+        // Still queued: stop waiting
+        Thread waiting = waitingThread;
+        if (waiting != null) {
+            waiting.interrupt();
+        }
         if (job != null) {
             job.interrupt();
         }
@@ -0,0 +1,81 @@
+/**
+ * IngestProgressRegistry.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opengeoportal.harvester.api.component.IngestProgress;
+
+/**
+ * Progress of the ingests running in this host, by ingest identifier. Jobs
+ * register their progress when they start and remove it when they finish.
+ */
+public class IngestProgressRegistry {
+	private final ConcurrentMap<Long, IngestProgress> running = new ConcurrentHashMap<Long, IngestProgress>();
+
+	/**
+	 * Register the progress of a job that has started.
+	 * 
+	 * @param progress
+	 *            the job progress.
+	 */
+	public void register(IngestProgress progress) {
+		running.put(progress.getIngestId(), progress);
+	}
+
+	/**
+	 * Remove the progress of a job that has finished. Nothing is done if
+	 * another job of the same ingest has registered later.
+	 * 
+	 * @param progress
+	 *            the job progress.
+	 */
+	public void unregister(IngestProgress progress) {
+		running.remove(progress.getIngestId(), progress);
+	}
+
+	/**
+	 * @param ingestId
+	 *            the ingest identifier.
+	 * @return the progress of the running job of the ingest or
+	 *         <code>null</code> if it is not running.
+	 */
+	public IngestProgress get(Long ingestId) {
+		return running.get(ingestId);
+	}
+
+	/**
+	 * @return the progress of all the running jobs.
+	 */
+	public Collection<IngestProgress> getAll() {
+		return new ArrayList<IngestProgress>(running.values());
+	}
+}
@@ -29,10 +29,12 @@
  */
 package org.opengeoportal.harvester.api.scheduler;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.opengeoportal.harvester.api.domain.Frequency;
 import org.opengeoportal.harvester.api.domain.Ingest;
 import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,9 +47,13 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.quartz.CalendarIntervalScheduleBuilder.calendarIntervalSchedule;
 import static org.quartz.JobKey.jobKey;
@@ -63,6 +69,10 @@ public class IngestScheduler implements
      *
      */
     public static final String TRIGGER_PREFIX = "JobTrigger_for_job_";
+    /**
+     * Prefix of the one-off triggers that resume an ingest.
+     */
+    private static final String RESUME_TRIGGER_PREFIX = "ResumeTrigger_for_job_";
     /**
      *
      */
@@ -82,6 +92,21 @@ public class IngestScheduler implements
     @Autowired
     private PlatformTransactionManager transactionManager;
 
+    /**
+     * Triggers of the scheduled ingests by ingest identifier, so the next run
+     * dates can be listed without reading the job store. It is updated when
+     * ingests are scheduled or unscheduled through this class and loaded
+     * from the job store the first time it is used. Writes are done holding
+     * its lock.
+     */
+    private final ConcurrentMap<Long, Trigger> triggerIndex = new ConcurrentHashMap<Long, Trigger>();
+
+    /**
+     * <code>true</code> once the triggers in the job store have been added to
+     * {@link #triggerIndex}.
+     */
+    private volatile boolean triggerIndexLoaded;
+
     /*
      * (non-Javadoc)
      *
@@ -107,6 +132,10 @@ public class IngestScheduler implements
                     frequency, jobDetail);
 
             schedulerFactoryBean.getScheduler().scheduleJob(jobDetail, trigger);
+            // Quartz has computed the first fire time and stored a copy
+            synchronized (triggerIndex) {
+                triggerIndex.put(ingest.getId(), trigger);
+            }
         } catch (SchedulerException se) {
             if (logger.isWarnEnabled()) {
                 logger.warn("Cannot scheduled the ingest " + ingest.getId(), se);
@@ -153,6 +182,9 @@ public class IngestScheduler implements
                     .getTransaction(new DefaultTransactionDefinition());
             unscheduled = schedulerFactoryBean.getScheduler().deleteJob(
                     jobKey(JOB_PREFIX + ingest.getId()));
+            synchronized (triggerIndex) {
+                triggerIndex.remove(ingest.getId());
+            }
         } catch (SchedulerException e) {
             if (logger.isWarnEnabled()) {
                 logger.warn(
@@ -191,6 +223,56 @@ public class IngestScheduler implements
         return cancelled;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.opengeoportal.harvester.api.scheduler.Scheduler#resume(org.
+     * opengeoportal.harvester.api.domain.Ingest)
+     */
+    @Override
+    @Transactional
+    public boolean resume(Ingest ingest) throws SchedulerException {
+        boolean resumed = true;
+        TransactionStatus transactionStatus = null;
+        try {
+            transactionStatus = this.transactionManager
+                    .getTransaction(new DefaultTransactionDefinition());
+            org.quartz.Scheduler scheduler = schedulerFactoryBean
+                    .getScheduler();
+            TriggerKey triggerKey = TriggerKey.triggerKey(RESUME_TRIGGER_PREFIX
+                    + ingest.getId());
+            if (scheduler.checkExists(triggerKey)) {
+                resumed = false;
+            } else {
+                JobDetail jobDetail = scheduler.getJobDetail(jobKey(JOB_PREFIX
+                        + ingest.getId()));
+                boolean newJob = jobDetail == null;
+                if (newJob) {
+                    // ONCE ingests are removed after their run
+                    jobDetail = createJobDetail(ingest);
+                }
+                Trigger trigger = newTrigger().withIdentity(triggerKey)
+                        .forJob(jobDetail).usingJobData(IngestJob.RESUME,
+                                Boolean.TRUE.toString()).startNow().build();
+                if (newJob) {
+                    scheduler.scheduleJob(jobDetail, trigger);
+                } else {
+                    scheduler.scheduleJob(trigger);
+                }
+            }
+        } catch (SchedulerException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Cannot resume ingest with id " + ingest.getId(), e);
+            }
+            rollbackTransaction(transactionStatus, e);
+            throw e;
+        }
+        if (transactionStatus != null) {
+            this.transactionManager.commit(transactionStatus);
+        }
+        return resumed;
+    }
+
     /**
      * Create a trigger for jobDetail with the given frequency and start date.
      *
@@ -236,7 +318,9 @@ public class IngestScheduler implements
     }
 
     /**
-     * Create a {@link JobDetail} based on the ingest passed as parameter.
+     * Create a {@link JobDetail} based on the ingest passed as parameter. The
+     * job is run again if the application stops while it is running, so the
+     * execution is resumed from its checkpoint.
      *
      * @param ingest the ingest to be scheduled.
      * @return a JobDetail base on the ingest passed.
@@ -245,6 +329,7 @@ public class IngestScheduler implements
         JobDetailFactoryBean jdFactory = new JobDetailFactoryBean();
         jdFactory.setName(generateJobName(ingest));
         jdFactory.setJobClass(IngestJob.class);
+        jdFactory.setRequestsRecovery(true);
         jdFactory.getJobDataMap().put(IngestJob.INGEST_ID,
                 ingest.getId().toString());
         jdFactory.afterPropertiesSet();
@@ -263,29 +348,85 @@ public class IngestScheduler implements
      */
     @Override
     public Date getNextRun(Ingest ingest) {
-        Date nextFireTimeUtc = null;
-        org.quartz.Scheduler scheduler = schedulerFactoryBean.getScheduler();
-        String jobName = generateJobName(ingest);
-        JobKey jobKey = new JobKey(jobName, org.quartz.Scheduler.DEFAULT_GROUP);
-        TriggerKey triggerKey = new TriggerKey(
-                generateTriggerIdentity(ingest.getId()),
-                org.quartz.Scheduler.DEFAULT_GROUP);
-        boolean isTriggerExisting;
-        try {
-            isTriggerExisting = scheduler.checkExists(triggerKey);
+        loadTriggerIndex();
+        return getNextFireTime(triggerIndex.get(ingest.getId()), new Date());
+    }
 
-            if (isTriggerExisting) {
-                Trigger trigger = scheduler.getTrigger(triggerKey);
-                nextFireTimeUtc = trigger.getNextFireTime();
-            }
-        } catch (SchedulerException e) {
-            if (logger.isErrorEnabled()) {
-                logger.error("Error getting next fire time for ingest: "
-                        + ingest.getId(), e);
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.opengeoportal.harvester.api.scheduler.Scheduler#getNextRuns(java
+     * .util.Collection)
+     */
+    @Override
+    public Map<Long, Date> getNextRuns(Collection<Long> ingestIds) {
+        loadTriggerIndex();
+        Date now = new Date();
+        Map<Long, Date> nextRuns = Maps.newHashMap();
+        for (Long ingestId : ingestIds) {
+            Date nextRun = getNextFireTime(triggerIndex.get(ingestId), now);
+            if (nextRun != null) {
+                nextRuns.put(ingestId, nextRun);
             }
         }
+        return nextRuns;
+    }
 
-        return nextFireTimeUtc;
+    /**
+     * Compute the next fire time of a trigger from the index. The fire time
+     * stored in the trigger is used while it is in the future, the next one
+     * is computed from the trigger schedule once it has passed.
+     *
+     * @param trigger the trigger, can be <code>null</code>.
+     * @param now     the current date.
+     * @return the next fire time or <code>null</code> if the trigger will not
+     * fire again.
+     */
+    private Date getNextFireTime(Trigger trigger, Date now) {
+        if (trigger == null) {
+            return null;
+        }
+        Date nextFireTime = trigger.getNextFireTime();
+        if (nextFireTime == null || nextFireTime.before(now)) {
+            nextFireTime = trigger.getFireTimeAfter(now);
+        }
+        return nextFireTime;
+    }
+
+    /**
+     * Add the ingest triggers in the job store to the index, the first time
+     * it is used after the application has started.
+     */
+    private void loadTriggerIndex() {
+        if (triggerIndexLoaded) {
+            return;
+        }
+        synchronized (triggerIndex) {
+            if (triggerIndexLoaded) {
+                return;
+            }
+            org.quartz.Scheduler scheduler = schedulerFactoryBean
+                    .getScheduler();
+            try {
+                for (TriggerKey triggerKey : scheduler.getTriggerKeys(GroupMatcher
+                        .triggerGroupEquals(org.quartz.Scheduler.DEFAULT_GROUP))) {
+                    String name = triggerKey.getName();
+                    if (!name.startsWith(TRIGGER_PREFIX)) {
+                        continue;
+                    }
+                    Trigger trigger = scheduler.getTrigger(triggerKey);
+                    if (trigger != null) {
+                        triggerIndex.putIfAbsent(Long.valueOf(name
+                                .substring(TRIGGER_PREFIX.length())), trigger);
+                    }
+                }
+                triggerIndexLoaded = true;
+            } catch (SchedulerException e) {
+                if (logger.isErrorEnabled()) {
+                    logger.error("Error loading the ingest triggers", e);
+                }
+            }
+        }
     }
 
     /*
@@ -32,7 +32,9 @@ package org.opengeoportal.harvester.api.scheduler;
 import org.opengeoportal.harvester.api.domain.Ingest;
 import org.quartz.SchedulerException;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 import java.util.SortedSet;
 
 /**
@@ -67,6 +69,16 @@ public interface Scheduler {
      */
     boolean interrupt(Ingest ingest) throws SchedulerException;
 
+    /**
+     * Run the ingest now, continuing its last execution from its checkpoint.
+     *
+     * @param ingest the ingest to be resumed.
+     * @return <code>true</code> if the job has been fired, <code>false</code>
+     * if a resume of the ingest is already pending.
+     * @throws SchedulerException if there is any problem while firing the job.
+     */
+    boolean resume(Ingest ingest) throws SchedulerException;
+
     /**
      * Return the next date an ingest will be run.
      *
@@ -75,6 +87,8 @@ public interface Scheduler {
      */
     Date getNextRun(Ingest ingest);
 
+    Map<Long, Date> getNextRuns(Collection<Long> ingestIds);
+
     /**
      * @return the set of the ingest identifiers currently being executed. This
      * set is sorted in natural order.
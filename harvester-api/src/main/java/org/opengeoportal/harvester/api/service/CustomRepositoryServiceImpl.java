@@ -215,9 +215,8 @@ public class CustomRepositoryServiceImpl implements CustomRepositoryService {
 	private List<SimpleEntry<String, String>> retrieveGeoNetworkSources(URL url) {
 		List<SimpleEntry<String, String>> sources = new ArrayList<SimpleEntry<String, String>>();
 
+		GeoNetworkClient gnClient = new GeoNetworkClient(url);
 		try {
-			GeoNetworkClient gnClient = new GeoNetworkClient(url);
-
 			sources = gnClient.getSources();
 		} catch (Exception e) {
 			if (logger.isDebugEnabled()) {
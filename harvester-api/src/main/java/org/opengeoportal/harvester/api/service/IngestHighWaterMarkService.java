@@ -0,0 +1,88 @@
+/**
+ * IngestHighWaterMarkService.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Date;
+
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestHighWaterMark;
+
+/**
+ * Manages the high-water marks used by incremental ingests.
+ */
+public interface IngestHighWaterMarkService {
+
+	/**
+	 * Find the high-water mark of an ingest.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 * @return the high-water mark or <code>null</code> if it does not exist.
+	 */
+	IngestHighWaterMark findByIngestId(Long ingestId);
+
+	/**
+	 * Calculate the date from which an execution of the ingest starting at
+	 * <code>now</code> has to retrieve the records.
+	 * 
+	 * @param ingest
+	 *            the ingest.
+	 * @param now
+	 *            start time of the execution.
+	 * @return the high-water mark minus the overlap of the ingest, so the
+	 *         records stamped by a remote clock behind ours are retrieved
+	 *         again, or <code>null</code> if a full execution has to be done: the ingest is not incremental, it has never been
+	 *         executed successfully or its full run interval has expired.
+	 */
+	Date getIncrementalFrom(Ingest ingest, Date now);
+
+	/**
+	 * Store the start time of a successful execution as the new high-water
+	 * mark of the ingest. It must only be called when all the records have
+	 * been retrieved, otherwise the records that failed would not be
+	 * retrieved again until they are modified.
+	 * 
+	 * @param ingest
+	 *            the ingest.
+	 * @param startTime
+	 *            start time of the execution.
+	 * @param fullRun
+	 *            <code>true</code> if all the records were retrieved.
+	 * @return the updated high-water mark.
+	 */
+	IngestHighWaterMark update(Ingest ingest, Date startTime, boolean fullRun);
+
+	/**
+	 * Remove the high-water mark of an ingest, so next execution will be a
+	 * full one.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 */
+	void deleteByIngestId(Long ingestId);
+}
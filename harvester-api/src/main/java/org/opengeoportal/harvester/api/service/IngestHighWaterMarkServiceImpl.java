@@ -0,0 +1,143 @@
+/**
+ * IngestHighWaterMarkServiceImpl.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Date;
+
+import javax.annotation.Resource;
+
+import org.joda.time.DateTime;
+import org.opengeoportal.harvester.api.dao.IngestHighWaterMarkRepository;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestHighWaterMark;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class IngestHighWaterMarkServiceImpl implements
+		IngestHighWaterMarkService {
+
+	/**
+	 * Minutes subtracted from the high-water mark when the ingest does not
+	 * set its own overlap.
+	 */
+	public static final int DEFAULT_INCREMENTAL_OVERLAP = 60;
+
+	@Resource
+	private IngestHighWaterMarkRepository highWaterMarkRepository;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestHighWaterMarkService#
+	 * findByIngestId(java.lang.Long)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public IngestHighWaterMark findByIngestId(Long ingestId) {
+		return highWaterMarkRepository.findByIngestId(ingestId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestHighWaterMarkService#
+	 * getIncrementalFrom(org.opengeoportal.harvester.api.domain.Ingest,
+	 * java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Date getIncrementalFrom(Ingest ingest, Date now) {
+		if (ingest.isIncremental() == null || !ingest.isIncremental()
+				|| ingest.getId() == null) {
+			return null;
+		}
+		IngestHighWaterMark mark = highWaterMarkRepository
+				.findByIngestId(ingest.getId());
+		if (mark == null || mark.getHighWaterMark() == null) {
+			return null;
+		}
+
+		Integer fullRunInterval = ingest.getFullRunInterval();
+		if (fullRunInterval != null && fullRunInterval > 0) {
+			if (mark.getLastFullRun() == null
+					|| !new DateTime(mark.getLastFullRun())
+							.plusDays(fullRunInterval).isAfter(now.getTime())) {
+				return null;
+			}
+		}
+
+		Integer overlap = ingest.getIncrementalOverlap();
+		if (overlap == null || overlap < 0) {
+			overlap = DEFAULT_INCREMENTAL_OVERLAP;
+		}
+		return new DateTime(mark.getHighWaterMark()).minusMinutes(overlap)
+				.toDate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.opengeoportal.harvester.api.service.IngestHighWaterMarkService#update
+	 * (org.opengeoportal.harvester.api.domain.Ingest, java.util.Date, boolean)
+	 */
+	@Override
+	@Transactional
+	public IngestHighWaterMark update(Ingest ingest, Date startTime,
+			boolean fullRun) {
+		IngestHighWaterMark mark = highWaterMarkRepository
+				.findByIngestId(ingest.getId());
+		if (mark == null) {
+			mark = new IngestHighWaterMark();
+			mark.setIngest(ingest);
+		}
+		mark.setHighWaterMark(startTime);
+		if (fullRun) {
+			mark.setLastFullRun(startTime);
+		}
+		return highWaterMarkRepository.save(mark);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestHighWaterMarkService#
+	 * deleteByIngestId(java.lang.Long)
+	 */
+	@Override
+	@Transactional
+	public void deleteByIngestId(Long ingestId) {
+		IngestHighWaterMark mark = highWaterMarkRepository
+				.findByIngestId(ingestId);
+		if (mark != null) {
+			highWaterMarkRepository.delete(mark);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * IngestJobCheckpointService.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
+
+/**
+ * Manages the checkpoints used to resume interrupted ingest executions.
+ */
+public interface IngestJobCheckpointService {
+
+	/**
+	 * Find the checkpoint of an ingest.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 * @return the checkpoint or <code>null</code> if the last execution of
+	 *         the ingest cannot be resumed.
+	 */
+	IngestJobCheckpoint findByIngestId(Long ingestId);
+
+	/**
+	 * Save a checkpoint, recording the last errors and warnings saved for its
+	 * report. The report and its entries must have been saved before.
+	 * 
+	 * @param checkpoint
+	 *            the checkpoint.
+	 * @return the saved checkpoint.
+	 */
+	IngestJobCheckpoint save(IngestJobCheckpoint checkpoint);
+
+	/**
+	 * Delete the errors and warnings saved for the report of a checkpoint
+	 * after the checkpoint, so they are not duplicated when the records are
+	 * retrieved again. Error metadata no longer referenced by any error is
+	 * deleted too.
+	 * 
+	 * @param checkpoint
+	 *            the checkpoint.
+	 */
+	void discardEntriesAfter(IngestJobCheckpoint checkpoint);
+
+	/**
+	 * Remove the checkpoint of an ingest, so next execution will start from
+	 * the beginning.
+	 * 
+	 * @param ingestId
+	 *            the ingest identifier.
+	 */
+	void deleteByIngestId(Long ingestId);
+}
@@ -0,0 +1,139 @@
+/**
+ * IngestJobCheckpointServiceImpl.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.opengeoportal.harvester.api.dao.IngestJobCheckpointRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningCountRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningRepository;
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class IngestJobCheckpointServiceImpl implements
+		IngestJobCheckpointService {
+
+	@Resource
+	private IngestJobCheckpointRepository checkpointRepository;
+
+	@Resource
+	private IngestReportErrorRepository reportErrorRepository;
+
+	@Resource
+	private IngestReportWarningRepository reportWarningRepository;
+
+	@Resource
+	private IngestReportWarningCountRepository reportWarningCountRepository;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestJobCheckpointService#
+	 * findByIngestId(java.lang.Long)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public IngestJobCheckpoint findByIngestId(Long ingestId) {
+		return checkpointRepository.findByIngestId(ingestId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestJobCheckpointService#
+	 * save(org.opengeoportal.harvester.api.domain.IngestJobCheckpoint)
+	 */
+	@Override
+	@Transactional
+	public IngestJobCheckpoint save(IngestJobCheckpoint checkpoint) {
+		Long reportId = checkpoint.getReport().getId();
+		checkpoint.setLastErrorId(reportErrorRepository
+				.findLastIdByReportId(reportId));
+		checkpoint.setLastWarningId(reportWarningRepository
+				.findLastIdByReportId(reportId));
+		checkpoint.setLastWarningCountId(reportWarningCountRepository
+				.findLastIdByReportId(reportId));
+		checkpoint.setCheckpointTime(new Date());
+		return checkpointRepository.save(checkpoint);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestJobCheckpointService#
+	 * discardEntriesAfter
+	 * (org.opengeoportal.harvester.api.domain.IngestJobCheckpoint)
+	 */
+	@Override
+	@Transactional
+	public void discardEntriesAfter(IngestJobCheckpoint checkpoint) {
+		Long reportId = checkpoint.getReport().getId();
+		Long lastErrorId = toLastId(checkpoint.getLastErrorId());
+		List<String> hashes = reportErrorRepository
+				.findMetadataHashesByReportIdAndIdGreaterThan(reportId,
+						lastErrorId);
+		reportErrorRepository.deleteByReportIdAndIdGreaterThan(reportId,
+				lastErrorId);
+		reportErrorRepository.deleteUnreferencedMetadata(hashes);
+		reportWarningRepository.deleteByReportIdAndIdGreaterThan(reportId,
+				toLastId(checkpoint.getLastWarningId()));
+		reportWarningCountRepository.deleteByReportIdAndIdGreaterThan(
+				reportId, toLastId(checkpoint.getLastWarningCountId()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestJobCheckpointService#
+	 * deleteByIngestId(java.lang.Long)
+	 */
+	@Override
+	@Transactional
+	public void deleteByIngestId(Long ingestId) {
+		IngestJobCheckpoint checkpoint = checkpointRepository
+				.findByIngestId(ingestId);
+		if (checkpoint != null) {
+			checkpointRepository.delete(checkpoint);
+		}
+	}
+
+	/**
+	 * @return the identifier of the last entry to keep, <code>0</code> if
+	 *         there was none so all of them are discarded.
+	 */
+	private static Long toLastId(Long lastId) {
+		return lastId == null ? 0L : lastId;
+	}
+
+}
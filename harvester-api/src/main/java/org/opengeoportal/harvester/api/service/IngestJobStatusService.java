@@ -29,10 +29,13 @@
  */
 package org.opengeoportal.harvester.api.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.opengeoportal.harvester.api.domain.Ingest;
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
 
 /**
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
@@ -69,4 +72,16 @@ public interface IngestJobStatusService {
 	 */
 	IngestJobStatus findLastStatusForIngest(Long id);
 
+	/**
+	 * Find the status of the last execution of several ingests with a single
+	 * query.
+	 * 
+	 * @param ingestIds
+	 *            Ingest identifiers.
+	 * @return the status of the last finished execution of each ingest, by
+	 *         ingest identifier. Ingests never executed are not included.
+	 */
+	Map<Long, IngestJobStatusValue> findLastStatusValuesForIngests(
+			Collection<Long> ingestIds);
+
 }
@@ -29,18 +29,23 @@
  */
 package org.opengeoportal.harvester.api.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
 import org.hibernate.loader.custom.Return;
 import org.opengeoportal.harvester.api.dao.IngestJobStatusRepository;
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
+
 /**
  * @author <a href="mailto:juanluisrp@geocat.net">Juan Luis Rodríguez</a>.
  * 
@@ -87,11 +92,31 @@ public class IngestJobStatusServiceImpl implements IngestJobStatusService {
 		// asking for the first page with one element.
 		Pageable page = new PageRequest(0, 1);
 		Page<IngestJobStatus> responsePage = jobStatusRepository
-				.findByIngestIdAndEndTimeNotNullOrderByEndTimeDesc(id, page);
+				.findByIngestIdAndEndTimeNotNullOrderByEndTimeDescIdDesc(id, page);
 		IngestJobStatus result = null;
 		if (responsePage.getNumberOfElements() > 0) {
 			result = responsePage.getContent().get(0);
 		}
 		return result;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestJobStatusService#
+	 * findLastStatusValuesForIngests(java.util.Collection)
+	 */
+	@Override
+	public Map<Long, IngestJobStatusValue> findLastStatusValuesForIngests(
+			Collection<Long> ingestIds) {
+		Map<Long, IngestJobStatusValue> result = Maps.newHashMap();
+		if (ingestIds.isEmpty()) {
+			return result;
+		}
+		for (Object[] tuple : jobStatusRepository
+				.findLastStatusValuesByIngestIds(ingestIds)) {
+			result.put((Long) tuple[0], (IngestJobStatusValue) tuple[1]);
+		}
+		return result;
+	}
 }
@@ -29,6 +29,7 @@
  */
 package org.opengeoportal.harvester.api.service;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.zip.ZipOutputStream;
 
@@ -95,4 +96,37 @@ public interface IngestReportErrorService {
 			String[] requiredFieldErrors, String[] webserviceErrors,
 			String[] systemErrors);
 
+	/**
+	 * Write the errors into a zipOutputStream as they are read from the
+	 * database. Errors are read by small pages in their own transactions, so
+	 * no connection is held between pages, and the stream is flushed after
+	 * each page. When a limit is reached the export stops and a
+	 * <code>TRUNCATED.txt</code> entry is added.
+	 * 
+	 * @param reportId
+	 *            Ingest report identifier
+	 * @param zipOutputStream
+	 *            where to write errors.
+	 * @param requiredFieldErrors
+	 *            array with the name of the field errors to be written.
+	 * @param webserviceErrors
+	 *            array with the name of the webservice error subcategories to
+	 *            be written.
+	 * @param systemErrors
+	 *            array with the name of the system error subcategories to be
+	 *            written.
+	 * @param maxErrors
+	 *            max number of errors written, 0 for no limit.
+	 * @param maxMillis
+	 *            max time spent writing errors, 0 for no limit.
+	 * @return <code>true</code> if all the errors have been written,
+	 *         <code>false</code> if a limit has been reached.
+	 * @throws IOException
+	 *             if the errors cannot be written to the stream.
+	 */
+	boolean writeErrorZipForIngest(Long reportId,
+			ZipOutputStream zipOutputStream, String[] requiredFieldErrors,
+			String[] webserviceErrors, String[] systemErrors, long maxErrors,
+			long maxMillis) throws IOException;
+
 }
@@ -39,11 +39,11 @@ import java.util.zip.ZipOutputStream;
 
 import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorMetadata;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -61,6 +61,18 @@ public class IngestReportErrorServiceImpl implements IngestReportErrorService {
 	/** Logger. */
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	/**
+	 * Errors read from the database in each query of an export.
+	 */
+	private static final int EXPORT_PAGE_SIZE = 500;
+
+	/**
+	 * Entry added to the exports stopped by their limits.
+	 */
+	private static final String TRUNCATED_ENTRY = "TRUNCATED.txt";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	/** Report error repository. */
 	@Autowired
 	private IngestReportErrorRepository reportErrorRepository;
@@ -75,7 +87,7 @@ public class IngestReportErrorServiceImpl implements IngestReportErrorService {
 	@Override
 	@Transactional
 	public IngestReportError save(IngestReportError reportError) {
-		return reportErrorRepository.save(reportError);
+		return reportErrorRepository.saveWithMetadata(reportError);
 	}
 
 	/*
@@ -140,55 +152,115 @@ public class IngestReportErrorServiceImpl implements IngestReportErrorService {
 	 * java.lang.String[], java.lang.String[], java.lang.String[])
 	 */
 	@Override
-	@Transactional(readOnly = true)
 	public void writeErrorZipForIngest(Long reportId, ZipOutputStream out,
 			String[] requiredFieldErrors, String[] webserviceErrors,
 			String[] systemErrors) {
+		try {
+			writeErrorZipForIngest(reportId, out, requiredFieldErrors,
+					webserviceErrors, systemErrors, 0L, 0L);
+		} catch (IOException e) {
+			if (logger.isErrorEnabled()) {
+				logger.error("Error writing the errors of report " + reportId
+						+ " to zip file", e);
+			}
+		}
+	}
 
-		writeErrors(reportId, IngestReportErrorType.REQUIRED_FIELD_ERROR,
-				requiredFieldErrors, out);
-		writeErrors(reportId, IngestReportErrorType.WEB_SERVICE_ERROR,
-				webserviceErrors, out);
-		writeErrors(reportId, IngestReportErrorType.SYSTEM_ERROR, systemErrors,
-				out);
-
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestReportErrorService#
+	 * writeErrorZipForIngest(java.lang.Long, java.util.zip.ZipOutputStream,
+	 * java.lang.String[], java.lang.String[], java.lang.String[], long, long)
+	 */
+	@Override
+	public boolean writeErrorZipForIngest(Long reportId, ZipOutputStream out,
+			String[] requiredFieldErrors, String[] webserviceErrors,
+			String[] systemErrors, long maxErrors, long maxMillis)
+			throws IOException {
+		ExportLimits limits = new ExportLimits(maxErrors, maxMillis);
+		boolean complete = writeErrors(reportId,
+				IngestReportErrorType.REQUIRED_FIELD_ERROR,
+				requiredFieldErrors, out, limits)
+				&& writeErrors(reportId,
+						IngestReportErrorType.WEB_SERVICE_ERROR,
+						webserviceErrors, out, limits)
+				&& writeErrors(reportId, IngestReportErrorType.SYSTEM_ERROR,
+						systemErrors, out, limits);
+		if (!complete) {
+			out.putNextEntry(new ZipEntry(TRUNCATED_ENTRY));
+			out.write(("Export stopped after " + limits.written
+					+ " errors because it reached the configured limit of "
+					+ (maxErrors > 0 ? maxErrors + " errors" : "")
+					+ (maxErrors > 0 && maxMillis > 0 ? " or " : "")
+					+ (maxMillis > 0 ? maxMillis + " ms" : "") + ".\n")
+					.getBytes(UTF_8));
+		}
+		return complete;
 	}
 
-	private void writeErrors(Long reportId, IngestReportErrorType errorType,
-			String[] subcategories, ZipOutputStream out) {
-		if (subcategories != null && subcategories.length > 0) {
-			for (String subcat : subcategories) {
-				String fieldDir = errorType.toString().toLowerCase(Locale.ENGLISH) + "/" + subcat;
-				int page = 0;
-				int pageSize = 100;
-				boolean existNextPage = true;
-				while (existNextPage) {
-					Pageable pageRequest = new PageRequest(page, pageSize);
-					Page<IngestReportError> p = reportErrorRepository
-							.findByReportIdAndTypeAndField(reportId, errorType,
-									subcat, pageRequest);
-					for (IngestReportError error : p.getContent()) {
-						String metadata = error.getMetadata();
-
-						if (metadata != null) {
-							try {
-								out.putNextEntry(new ZipEntry(fieldDir
-										+ "/error_" + error.getId() + ".xml"));
-								out.write(metadata.getBytes(Charset
-										.forName("UTF-8")));
-							} catch (IOException e) {
-								if (logger.isErrorEnabled()) {
-									logger.error("Error adding entry (errorId="
-											+ error.getId() + " to zip file", e);
-								}
-							}
-						}
+	/**
+	 * Write the errors of each subcategory. Errors are read by pages of
+	 * ascending identifier, each page in its own short transaction, and
+	 * written as soon as they are read.
+	 * 
+	 * @return <code>false</code> if the limits have been reached before
+	 *         writing all the errors.
+	 */
+	private boolean writeErrors(Long reportId, IngestReportErrorType errorType,
+			String[] subcategories, ZipOutputStream out, ExportLimits limits)
+			throws IOException {
+		if (subcategories == null) {
+			return true;
+		}
+		Pageable pageRequest = new PageRequest(0, EXPORT_PAGE_SIZE);
+		for (String subcat : subcategories) {
+			String fieldDir = errorType.toString().toLowerCase(Locale.ENGLISH) + "/" + subcat;
+			long afterId = 0L;
+			List<Object[]> page;
+			do {
+				page = reportErrorRepository.findMetadataAfterId(reportId,
+						errorType, subcat, afterId, pageRequest);
+				for (Object[] row : page) {
+					if (limits.reached()) {
+						return false;
+					}
+					afterId = (Long) row[0];
+					IngestReportErrorMetadata blob = (IngestReportErrorMetadata) row[2];
+					String metadata = blob != null ? blob.getText()
+							: (String) row[1];
+					if (metadata != null) {
+						out.putNextEntry(new ZipEntry(fieldDir + "/error_"
+								+ afterId + ".xml"));
+						out.write(metadata.getBytes(UTF_8));
+						limits.written++;
 					}
-
-					page++;
-					existNextPage = page < p.getTotalPages();
 				}
-			}
+				// Send what is already compressed before reading the next
+				// page
+				out.flush();
+			} while (page.size() == EXPORT_PAGE_SIZE);
+		}
+		return true;
+	}
+
+	/**
+	 * Max number of errors and time of an export.
+	 */
+	private static class ExportLimits {
+		private final long maxErrors;
+		private final long deadline;
+		private long written;
+
+		ExportLimits(long maxErrors, long maxMillis) {
+			this.maxErrors = maxErrors;
+			this.deadline = maxMillis > 0 ? System.currentTimeMillis()
+					+ maxMillis : 0L;
+		}
+
+		boolean reached() {
+			return (maxErrors > 0 && written >= maxErrors)
+					|| (deadline > 0 && System.currentTimeMillis() >= deadline);
 		}
 	}
 
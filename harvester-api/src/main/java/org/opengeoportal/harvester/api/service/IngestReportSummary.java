@@ -0,0 +1,175 @@
+/**
+ * IngestReportSummary.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * Number of errors and warnings of an {@link IngestReport} by type and field.
+ * Running jobs update it as they find errors, so it is safe to use from
+ * several threads.
+ */
+public class IngestReportSummary {
+	/** Fields are sorted by name, errors without field go first. */
+	private static final Ordering<String> FIELD_ORDER = Ordering
+			.<String> natural().nullsFirst();
+
+	private final Map<IngestReportErrorType, Map<String, Long>> errors = new EnumMap<IngestReportErrorType, Map<String, Long>>(
+			IngestReportErrorType.class);
+	private final Map<IngestReportWarningType, Map<String, Long>> warnings = new EnumMap<IngestReportWarningType, Map<String, Long>>(
+			IngestReportWarningType.class);
+
+	/**
+	 * Count errors.
+	 * 
+	 * @param errorType
+	 *            the error type.
+	 * @param field
+	 *            the field or error subcategory.
+	 * @param count
+	 *            number of errors to add.
+	 */
+	public synchronized void addError(IngestReportErrorType errorType,
+			String field, long count) {
+		add(fields(errors, errorType), field, count);
+	}
+
+	/**
+	 * Count warnings.
+	 * 
+	 * @param warningType
+	 *            the warning type.
+	 * @param field
+	 *            the field name.
+	 * @param count
+	 *            number of warnings to add.
+	 */
+	public synchronized void addWarning(IngestReportWarningType warningType,
+			String field, long count) {
+		add(fields(warnings, warningType), field, count);
+	}
+
+	/**
+	 * Replace the warnings of a type.
+	 * 
+	 * @param warningType
+	 *            the warning type.
+	 * @param countsByField
+	 *            number of warnings of each field.
+	 */
+	public synchronized void setWarnings(IngestReportWarningType warningType,
+			Map<String, Long> countsByField) {
+		Map<String, Long> fields = fields(warnings, warningType);
+		fields.clear();
+		fields.putAll(countsByField);
+	}
+
+	/**
+	 * @param errorType
+	 *            the error type.
+	 * @return the number of errors of the type.
+	 */
+	public synchronized long getErrorCount(IngestReportErrorType errorType) {
+		return sum(errors.get(errorType));
+	}
+
+	/**
+	 * @param errorType
+	 *            the error type.
+	 * @return a copy of the number of errors of the type by field, sorted by
+	 *         field.
+	 */
+	public synchronized Map<String, Long> getErrorCountsByField(
+			IngestReportErrorType errorType) {
+		return copy(errors.get(errorType));
+	}
+
+	/**
+	 * @param warningType
+	 *            the warning type.
+	 * @return the number of warnings of the type.
+	 */
+	public synchronized long getWarningCount(
+			IngestReportWarningType warningType) {
+		return sum(warnings.get(warningType));
+	}
+
+	/**
+	 * @param warningType
+	 *            the warning type.
+	 * @return a copy of the number of warnings of the type by field, sorted
+	 *         by field.
+	 */
+	public synchronized Map<String, Long> getWarningCountsByField(
+			IngestReportWarningType warningType) {
+		return copy(warnings.get(warningType));
+	}
+
+	private static <T extends Enum<T>> Map<String, Long> fields(
+			Map<T, Map<String, Long>> counts, T type) {
+		Map<String, Long> fields = counts.get(type);
+		if (fields == null) {
+			fields = new TreeMap<String, Long>(FIELD_ORDER);
+			counts.put(type, fields);
+		}
+		return fields;
+	}
+
+	private static void add(Map<String, Long> fields, String field, long count) {
+		Long previous = fields.get(field);
+		fields.put(field, previous == null ? count : previous + count);
+	}
+
+	private static long sum(Map<String, Long> fields) {
+		long sum = 0L;
+		if (fields != null) {
+			for (Long count : fields.values()) {
+				sum += count;
+			}
+		}
+		return sum;
+	}
+
+	private static Map<String, Long> copy(Map<String, Long> fields) {
+		if (fields == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, Long> copy = new TreeMap<String, Long>(FIELD_ORDER);
+		copy.putAll(fields);
+		return copy;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * IngestReportSummaryService.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportSummaryEntry;
+
+/**
+ * Stores the number of errors and warnings of the reports by type and field,
+ * so they can be shown without counting the error and warning tables.
+ */
+public interface IngestReportSummaryService {
+
+	/**
+	 * Get the summary of a report. Reports of finished jobs without a stored
+	 * summary, such as the ones created before the summaries existed, are
+	 * summarized the first time. Reports of running jobs return the last
+	 * summary saved by the job.
+	 * 
+	 * @param report
+	 *            the report.
+	 * @return the summary of the report.
+	 */
+	IngestReportSummary getSummary(IngestReport report);
+
+	/**
+	 * Store the current summary of the report of a running job. Only the
+	 * {@link IngestReportSummaryEntry} rows that changed are written.
+	 * 
+	 * @param report
+	 *            the report.
+	 * @param summary
+	 *            the summary of the errors and warnings found until now.
+	 */
+	void saveSummary(IngestReport report, IngestReportSummary summary);
+
+	/**
+	 * Count the errors and warnings stored for a finished report, store the
+	 * summary and mark it as complete. The errors and warnings of the report
+	 * must have been saved before.
+	 * 
+	 * @param report
+	 *            the report.
+	 * @return the summary of the report.
+	 */
+	IngestReportSummary summarize(IngestReport report);
+
+}
@@ -0,0 +1,209 @@
+/**
+ * IngestReportSummaryServiceImpl.java
+ *
+ * Copyright (C) 2014
+ *
+ * This file is part of Open Geoportal Harvester.
+ *
+ * This software is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this library; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * As a special exception, if you link this library with other files to produce
+ * an executable, this library does not by itself cause the resulting executable
+ * to be covered by the GNU General Public License. This exception does not
+ * however invalidate any other reasons why the executable file might be covered
+ * by the GNU General Public License.
+ */
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportSummaryEntryRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningCountRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningRepository;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportSummaryEntry;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+@Service
+public class IngestReportSummaryServiceImpl implements
+		IngestReportSummaryService {
+
+	/** Summary entries repository. */
+	@Autowired
+	private IngestReportSummaryEntryRepository summaryEntryRepository;
+
+	/** Report repository. */
+	@Autowired
+	private IngestReportRepository reportRepository;
+
+	/** Report error repository. */
+	@Autowired
+	private IngestReportErrorRepository reportErrorRepository;
+
+	/** Report warning repository. */
+	@Autowired
+	private IngestReportWarningRepository reportWarningRepository;
+
+	/** Report warning counters repository. */
+	@Autowired
+	private IngestReportWarningCountRepository reportWarningCountRepository;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestReportSummaryService#
+	 * getSummary(org.opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	@Transactional
+	public IngestReportSummary getSummary(IngestReport report) {
+		IngestJobStatus jobStatus = report.getJobStatus();
+		boolean running = jobStatus != null && jobStatus.getEndTime() == null;
+		if (report.isSummaryComplete() || running) {
+			IngestReportSummary summary = new IngestReportSummary();
+			for (IngestReportSummaryEntry entry : summaryEntryRepository
+					.findByReportId(report.getId())) {
+				if (entry.getErrorType() != null) {
+					summary.addError(entry.getErrorType(), entry.getField(),
+							entry.getOccurrences());
+				} else {
+					summary.addWarning(entry.getWarningType(),
+							entry.getField(), entry.getOccurrences());
+				}
+			}
+			return summary;
+		}
+		return summarize(report);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestReportSummaryService#
+	 * saveSummary(org.opengeoportal.harvester.api.domain.IngestReport,
+	 * org.opengeoportal.harvester.api.service.IngestReportSummary)
+	 */
+	@Override
+	@Transactional
+	public void saveSummary(IngestReport report, IngestReportSummary summary) {
+		Map<List<Object>, IngestReportSummaryEntry> stored = Maps.newHashMap();
+		for (IngestReportSummaryEntry entry : summaryEntryRepository
+				.findByReportId(report.getId())) {
+			stored.put(key(entry.getErrorType(), entry.getWarningType(),
+					entry.getField()), entry);
+		}
+
+		// Entries are updated in place, so the summary is never seen empty
+		List<IngestReportSummaryEntry> changed = Lists.newArrayList();
+		for (IngestReportErrorType errorType : IngestReportErrorType.values()) {
+			for (Map.Entry<String, Long> count : summary.getErrorCountsByField(
+					errorType).entrySet()) {
+				IngestReportSummaryEntry entry = stored.remove(key(errorType,
+						null, count.getKey()));
+				if (entry == null) {
+					entry = new IngestReportSummaryEntry();
+					entry.setReport(report);
+					entry.setErrorType(errorType);
+					entry.setField(count.getKey());
+				} else if (entry.getOccurrences() == count.getValue()) {
+					continue;
+				}
+				entry.setOccurrences(count.getValue());
+				changed.add(entry);
+			}
+		}
+		for (IngestReportWarningType warningType : IngestReportWarningType
+				.values()) {
+			for (Map.Entry<String, Long> count : summary
+					.getWarningCountsByField(warningType).entrySet()) {
+				IngestReportSummaryEntry entry = stored.remove(key(null,
+						warningType, count.getKey()));
+				if (entry == null) {
+					entry = new IngestReportSummaryEntry();
+					entry.setReport(report);
+					entry.setWarningType(warningType);
+					entry.setField(count.getKey());
+				} else if (entry.getOccurrences() == count.getValue()) {
+					continue;
+				}
+				entry.setOccurrences(count.getValue());
+				changed.add(entry);
+			}
+		}
+
+		if (!changed.isEmpty()) {
+			summaryEntryRepository.save(changed);
+		}
+		if (!stored.isEmpty()) {
+			summaryEntryRepository.delete(stored.values());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestReportSummaryService#
+	 * summarize(org.opengeoportal.harvester.api.domain.IngestReport)
+	 */
+	@Override
+	@Transactional
+	public IngestReportSummary summarize(IngestReport report) {
+		Long reportId = report.getId();
+		IngestReportSummary summary = new IngestReportSummary();
+		for (Object[] tuple : reportErrorRepository
+				.getCountErrorsByTypeAndField(reportId)) {
+			summary.addError((IngestReportErrorType) tuple[0],
+					(String) tuple[1], ((Number) tuple[2]).longValue());
+		}
+		// Counters of the warnings without payload
+		for (Object[] tuple : reportWarningCountRepository
+				.getCountWarningsByTypeAndField(reportId)) {
+			summary.addWarning((IngestReportWarningType) tuple[0],
+					(String) tuple[1], ((Number) tuple[2]).longValue());
+		}
+		// Warnings saved one by one (reports created before the counters)
+		for (Object[] tuple : reportWarningRepository
+				.getCountWarningsByTypeAndField(reportId)) {
+			summary.addWarning((IngestReportWarningType) tuple[0],
+					(String) tuple[1], ((Number) tuple[2]).longValue());
+		}
+
+		saveSummary(report, summary);
+		reportRepository.setSummaryComplete(reportId);
+		report.setSummaryComplete(true);
+		return summary;
+	}
+
+	/**
+	 * @return the key of the summary entry with the passed type and field.
+	 */
+	private static List<Object> key(IngestReportErrorType errorType,
+			IngestReportWarningType warningType, String field) {
+		return Arrays.<Object> asList(errorType, warningType, field);
+	}
+
+}
@@ -38,10 +38,13 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningCountRepository;
 import org.opengeoportal.harvester.api.dao.IngestReportWarningRepository;
+import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportError;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
 import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningCount;
 import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +71,10 @@ public class IngestReportWarningServiceImpl implements IngestReportWarningsServi
 	@Autowired
 	private IngestReportWarningRepository reportWarningRepository;
 
+	/** Report warning counters repository. */
+	@Autowired
+	private IngestReportWarningCountRepository reportWarningCountRepository;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -81,6 +88,31 @@ public class IngestReportWarningServiceImpl implements IngestReportWarningsServi
 		return reportWarningRepository.save(reportWarning);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.opengeoportal.harvester.api.service.IngestReportWarningsService#
+	 * saveWarningCounts(org.opengeoportal.harvester.api.domain.IngestReport,
+	 * org.opengeoportal.harvester.api.domain.IngestReportWarningType,
+	 * java.util.Map)
+	 */
+	@Override
+	@Transactional
+	public void saveWarningCounts(IngestReport report,
+			IngestReportWarningType warningType, Map<String, Long> countsByField) {
+		List<IngestReportWarningCount> counts = Lists
+				.newArrayListWithCapacity(countsByField.size());
+		for (Map.Entry<String, Long> entry : countsByField.entrySet()) {
+			IngestReportWarningCount count = new IngestReportWarningCount();
+			count.setReport(report);
+			count.setType(warningType);
+			count.setField(entry.getKey());
+			count.setOccurrences(entry.getValue());
+			counts.add(count);
+		}
+		reportWarningCountRepository.save(counts);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -91,23 +123,19 @@ public class IngestReportWarningServiceImpl implements IngestReportWarningsServi
 	@Transactional(readOnly = true)
 	public Map<IngestReportWarningType, Long> getCountWarningTypesByReportId(
 			Long reportId) {
-		List<Object[]> items = reportWarningRepository
-				.getCountWarningTypesByReportId(reportId);
-		List<IngestReportWarningType> remainingTypes = Lists
-				.newArrayList(IngestReportWarningType.values());
 		Map<IngestReportWarningType, Long> result = Maps.newHashMap();
-		for (Object item : items) {
-			Object[] tuple = (Object[]) item;
-			IngestReportWarningType warningType = (IngestReportWarningType) tuple[0];
-			Long count = (Long) tuple[1];
-			result.put(warningType, count);
-			remainingTypes.remove(warningType);
-		}
-
-		// Set a default value for error types not returned by the repository
-		for (IngestReportWarningType warningType : remainingTypes) {
+		// Set a default value for warning types not returned by the
+		// repositories
+		for (IngestReportWarningType warningType : IngestReportWarningType
+				.values()) {
 			result.put(warningType, 0L);
 		}
+		// Counters of the warnings without payload
+		addCounts(result, reportWarningCountRepository
+				.getCountWarningTypesByReportId(reportId));
+		// Warnings saved one by one (reports created before the counters)
+		addCounts(result, reportWarningRepository
+				.getCountWarningTypesByReportId(reportId));
 
 		return result;
 	}
@@ -122,16 +150,32 @@ public class IngestReportWarningServiceImpl implements IngestReportWarningsServi
 	@Transactional(readOnly = true)
 	public Map<String, Long> getCountWarningsByReportId(Long id) {
 
-		List<Object[]> errorList = reportWarningRepository.getCountWarningsByReportId(id, IngestReportWarningType.UNREQUIRED_FIELD_WARNING);
 		Map<String, Long> result = Maps.newTreeMap();
-		for (Object[] fieldError : errorList) {
-			String fieldName = (String) fieldError[0];
-			Long errorCount = (Long) fieldError[1];
-
-			result.put(fieldName, errorCount);
+		addCounts(result, reportWarningCountRepository
+				.getCountWarningsByReportId(id,
+						IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+		addCounts(result, reportWarningRepository.getCountWarningsByReportId(
+				id, IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+		return result;
+	}
 
+	/**
+	 * Add the counts returned by a repository query to a map.
+	 * 
+	 * @param result
+	 *            map where the counts are added.
+	 * @param items
+	 *            list of Object[] with the key in Object[0] and the count in
+	 *            Object[1].
+	 */
+	@SuppressWarnings("unchecked")
+	private static <K> void addCounts(Map<K, Long> result, List<Object[]> items) {
+		for (Object[] tuple : items) {
+			K key = (K) tuple[0];
+			long count = ((Number) tuple[1]).longValue();
+			Long previous = result.get(key);
+			result.put(key, previous == null ? count : previous + count);
 		}
-		return result;
 	}
 
 
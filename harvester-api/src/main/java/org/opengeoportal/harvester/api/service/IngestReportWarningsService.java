@@ -31,6 +31,7 @@ package org.opengeoportal.harvester.api.service;
 
 import java.util.Map;
 
+import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
 import org.opengeoportal.harvester.api.domain.IngestReportWarning;
 import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
@@ -49,6 +50,21 @@ public interface IngestReportWarningsService {
 	 */
 	IngestReportWarning save(IngestReportWarning reportWarning);
 
+	/**
+	 * Save the number of warnings of a type found in each field of an
+	 * ingest. Warnings without payload are counted instead of being saved one
+	 * by one.
+	 * 
+	 * @param report
+	 *            the ingest report.
+	 * @param warningType
+	 *            the type of the warnings.
+	 * @param countsByField
+	 *            number of warnings found in each field.
+	 */
+	void saveWarningCounts(IngestReport report,
+			IngestReportWarningType warningType, Map<String, Long> countsByField);
+
 	/**
 	 * Return the count of type field not found warnings categorized by the name
 	 * of the field for a given ingest report.
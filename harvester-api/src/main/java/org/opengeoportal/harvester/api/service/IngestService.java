@@ -29,7 +29,9 @@
  */
 package org.opengeoportal.harvester.api.service;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 import java.util.SortedSet;
 
 import org.opengeoportal.harvester.api.domain.CustomRepository;
@@ -155,6 +157,16 @@ public interface IngestService {
 	 */
 	Date getNextRun(Ingest ingest);
 
+	/**
+	 * Return the date of the next run of several ingests.
+	 * 
+	 * @param ingestIds
+	 *            the ingest identifiers.
+	 * @return the next run date by ingest identifier. Ingests that will not be
+	 *         run more are not included.
+	 */
+	Map<Long, Date> getNextRuns(Collection<Long> ingestIds);
+
 	/**
 	 * Return the set of ingest currently being executed.
 	 * 
@@ -182,6 +194,18 @@ public interface IngestService {
 	 */
 	boolean interruptIngest(Long id);
 
+	/**
+	 * Continue the last execution of an ingest from its checkpoint. The
+	 * ingest must not be running.
+	 * 
+	 * @param id
+	 *            ingest identifier.
+	 * @return <code>true</code> if the job has been fired, <code>false</code>
+	 *         if the ingest does not exist, it has no checkpoint, it is
+	 *         running or it cannot be fired.
+	 */
+	boolean resumeIngest(Long id);
+
 	/**
 	 * Update ServerQuery field based on the rest of fields and save the ingest.
 	 * 
@@ -29,8 +29,10 @@
  */
 package org.opengeoportal.harvester.api.service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
 import javax.annotation.Resource;
@@ -44,6 +46,7 @@ import org.opengeoportal.harvester.api.domain.Ingest;
 import org.opengeoportal.harvester.api.domain.IngestOGP;
 import org.opengeoportal.harvester.api.domain.InstanceType;
 import org.opengeoportal.harvester.api.exception.InstanceNotFoundException;
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
 import org.opengeoportal.harvester.api.scheduler.Scheduler;
 import org.quartz.SchedulerException;
 import org.slf4j.Logger;
@@ -75,6 +78,15 @@ public class IngestServiceImpl implements IngestService {
 	/** The scheduler. */
 	@Resource
 	private Scheduler scheduler;
+	/** The high-water mark service. */
+	@Resource
+	private IngestHighWaterMarkService highWaterMarkService;
+	/** The checkpoint service. */
+	@Resource
+	private IngestJobCheckpointService checkpointService;
+	/** The registry of the ingest metrics. */
+	@Resource
+	private MetricsRegistry metricsRegistry;
 
 	@Override
 	@Transactional
@@ -105,6 +117,9 @@ public class IngestServiceImpl implements IngestService {
 	@Override
 	@Transactional
 	public void delete(Long id) {
+		highWaterMarkService.deleteByIngestId(id);
+		checkpointService.deleteByIngestId(id);
+		metricsRegistry.removeIngest(id);
 		ingestRepository.delete(id);
 	}
 
@@ -174,6 +189,7 @@ public class IngestServiceImpl implements IngestService {
 		for (Ingest ingest : scheduledIngests) {
 			try {
 				scheduler.unschedule(ingest);
+				metricsRegistry.removeIngest(ingest.getId());
 			} catch (SchedulerException e) {
 				if (logger.isWarnEnabled()) {
 					logger.warn(
@@ -253,6 +269,18 @@ public class IngestServiceImpl implements IngestService {
 		return nextRun;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.opengeoportal.harvester.api.service.IngestService#getNextRuns(java
+	 * .util.Collection)
+	 */
+	@Override
+	public Map<Long, Date> getNextRuns(Collection<Long> ingestIds) {
+		return scheduler.getNextRuns(ingestIds);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -280,6 +308,7 @@ public class IngestServiceImpl implements IngestService {
 		if (ingest != null) {
 			try {
 				unscheduled = scheduler.unschedule(ingest);
+				metricsRegistry.removeIngest(id);
 				ingest.setScheduled(false);
 				ingest = save(ingest);
 				unscheduled = true;
@@ -315,4 +344,32 @@ public class IngestServiceImpl implements IngestService {
 		return interrupted;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.opengeoportal.harvester.api.service.IngestService#resumeIngest(java
+	 * .lang.Long)
+	 */
+	@Override
+	@Transactional
+	public boolean resumeIngest(Long id) {
+		if (logger.isInfoEnabled()) {
+			logger.info("Resuming ingest with id " + id);
+		}
+		boolean resumed = false;
+		Ingest ingest = findById(id);
+		if (ingest != null && checkpointService.findByIngestId(id) != null
+				&& !getCurrentlyExecutingJobs().contains(id)) {
+			try {
+				resumed = scheduler.resume(ingest);
+			} catch (SchedulerException se) {
+				if (logger.isErrorEnabled()) {
+					logger.error("Cannot resume ingest id = " + id, se);
+				}
+			}
+		}
+		return resumed;
+	}
+
 }
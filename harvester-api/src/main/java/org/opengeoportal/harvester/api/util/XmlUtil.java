@@ -30,6 +30,17 @@ public class XmlUtil {
 
     }
 
+    /**
+     * @param inputStream the document.
+     * @param systemId base URI used to resolve relative URIs.
+     * @return the parsed document.
+     * @throws Exception if the document cannot be parsed.
+     */
+    public static Document load(InputStream inputStream, String systemId)
+            throws Exception {
+        return getDocumentBuilder().parse(inputStream, systemId);
+    }
+
     public static Document load(String uri) throws Exception {
         return getDocumentBuilder().parse(uri);
     }
@@ -0,0 +1,74 @@
+package org.opengeoportal.harvester.api.client.csw.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.csw.exception.CatalogException;
+import org.opengeoportal.harvester.api.client.csw.response.GetRecordsResponse;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.collect.Lists;
+
+public class GetRecordsStreamParserTest {
+    private static final String GMD = "http://www.isotc211.org/2005/gmd";
+    private static final String GCO = "http://www.isotc211.org/2005/gco";
+
+    @Test
+    public void testParse() throws Exception {
+        final List<Document> records = Lists.newArrayList();
+        InputStream is = getClass().getResourceAsStream(
+                "getRecordsResponse.xml");
+        GetRecordsResponse response;
+        try {
+            response = new GetRecordsStreamParser().parse(is,
+                    new GetRecordsStreamParser.RecordHandler() {
+                        @Override
+                        public void record(Document record) {
+                            records.add(record);
+                        }
+                    });
+        } finally {
+            is.close();
+        }
+
+        Assert.assertEquals(12, response.getNumberOfRecordsMatched());
+        Assert.assertEquals(2, response.getNumberOfRecordsReturned());
+        Assert.assertEquals(3, response.getNextRecord());
+        Assert.assertEquals("full", response.getElementSet());
+        Assert.assertTrue(response.getResults().isEmpty());
+
+        Assert.assertEquals(2, records.size());
+        Element first = records.get(0).getDocumentElement();
+        Assert.assertEquals(GMD, first.getNamespaceURI());
+        Assert.assertEquals("MD_Metadata", first.getLocalName());
+        Assert.assertEquals("first", first.getElementsByTagNameNS(GCO,
+                "CharacterString").item(0).getTextContent());
+        Element dateStamp = (Element) first.getElementsByTagNameNS(GMD,
+                "dateStamp").item(0);
+        Assert.assertEquals("2014-01-01", dateStamp.getTextContent());
+        // Namespaces declared in the response root are still in scope
+        Assert.assertEquals(GCO, dateStamp.lookupNamespaceURI("gco"));
+        Assert.assertEquals("second", records.get(1).getDocumentElement()
+                .getElementsByTagNameNS(GCO, "CharacterString").item(0)
+                .getTextContent());
+    }
+
+    @Test(expected = CatalogException.class)
+    public void testExceptionReport() throws Exception {
+        String report = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">"
+                + "<ows:Exception exceptionCode=\"NoApplicableCode\"><ows:ExceptionText>error</ows:ExceptionText></ows:Exception>"
+                + "</ows:ExceptionReport>";
+        new GetRecordsStreamParser().parse(
+                new ByteArrayInputStream(report.getBytes("UTF-8")),
+                new GetRecordsStreamParser.RecordHandler() {
+                    @Override
+                    public void record(Document record) {
+                        Assert.fail();
+                    }
+                });
+    }
+}
@@ -0,0 +1,272 @@
+package org.opengeoportal.harvester.api.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Cookie;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpTransportTest {
+    private static final String BODY = "<csw:GetRecordsResponse xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\">"
+            + "<csw:SearchResults numberOfRecordsMatched=\"0\"/>"
+            + "</csw:GetRecordsResponse>";
+
+    private HttpTransport transport;
+    /**
+     * Local server answering "ok" to every request, started by the tests
+     * that send requests.
+     */
+    private HttpServer server;
+    /**
+     * Client ports of the requests received by the server.
+     */
+    private final List<Integer> clientPorts = Collections
+            .synchronizedList(new ArrayList<Integer>());
+    /**
+     * Accept-Encoding headers of the requests received by the server.
+     */
+    private final List<String> acceptEncodings = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        transport = new HttpTransport();
+    }
+
+    @After
+    public void tearDown() {
+        transport.shutdown();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private String startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                acceptEncodings.add(exchange.getRequestHeaders().getFirst(
+                        "Accept-Encoding"));
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private GetMethod get(String url) throws IOException {
+        GetMethod get = new GetMethod(url);
+        Assert.assertEquals(200, transport.execute(new HostConfiguration(),
+                get, new HttpState()));
+        return get;
+    }
+
+    private HttpMethod mockResponse(byte[] body, String contentEncoding)
+            throws Exception {
+        HttpMethod method = EasyMock.createMock(HttpMethod.class);
+        EasyMock.expect(method.getResponseBodyAsStream()).andReturn(
+                new ByteArrayInputStream(body));
+        EasyMock.expect(method.getResponseHeader("Content-Encoding"))
+                .andReturn(contentEncoding == null ? null : new Header(
+                        "Content-Encoding", contentEncoding));
+        EasyMock.replay(method);
+        return method;
+    }
+
+    private static byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(out,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        deflate.write(data);
+        deflate.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testIdentityResponse() throws Exception {
+        byte[] body = BODY.getBytes("UTF-8");
+        TransferCounter counter = new TransferCounter();
+
+        byte[] result = transport.getResponseBody(mockResponse(body, null),
+                counter);
+
+        Assert.assertEquals(BODY, new String(result, "UTF-8"));
+        Assert.assertEquals(1, counter.getResponses());
+        Assert.assertEquals(0, counter.getCompressedResponses());
+        Assert.assertEquals(body.length, counter.getReceivedBytes());
+        Assert.assertEquals(body.length, counter.getDecodedBytes());
+    }
+
+    @Test
+    public void testGzipResponse() throws Exception {
+        byte[] body = BODY.getBytes("UTF-8");
+        byte[] compressed = gzip(body);
+        TransferCounter counter = new TransferCounter();
+
+        byte[] result = transport.getResponseBody(
+                mockResponse(compressed, "gzip"), counter);
+
+        Assert.assertEquals(BODY, new String(result, "UTF-8"));
+        Assert.assertEquals(1, counter.getCompressedResponses());
+        Assert.assertEquals(compressed.length, counter.getReceivedBytes());
+        Assert.assertEquals(body.length, counter.getDecodedBytes());
+        Assert.assertEquals(compressed.length, transport.getStatistics()
+                .getReceivedBytes());
+    }
+
+    @Test
+    public void testZlibAndRawDeflateResponses() throws Exception {
+        byte[] body = BODY.getBytes("UTF-8");
+
+        byte[] zlib = transport.getResponseBody(
+                mockResponse(deflate(body, false), "deflate"), null);
+        byte[] raw = transport.getResponseBody(
+                mockResponse(deflate(body, true), "Deflate"), null);
+
+        Assert.assertEquals(BODY, new String(zlib, "UTF-8"));
+        Assert.assertEquals(BODY, new String(raw, "UTF-8"));
+        Assert.assertEquals(2, transport.getStatistics()
+                .getCompressedResponses());
+    }
+
+    @Test
+    public void testConnectionsAreKeptAliveAndReused() throws Exception {
+        String url = startServer();
+
+        for (int i = 0; i < 3; i++) {
+            GetMethod get = get(url + "a.xml");
+            Assert.assertEquals("ok", get.getResponseBodyAsString());
+            get.releaseConnection();
+        }
+
+        // All the requests are sent through the same connection
+        Assert.assertEquals(3, clientPorts.size());
+        Assert.assertEquals(1, new HashSet<Integer>(clientPorts).size());
+        HttpTransport.Statistics statistics = transport.getStatistics();
+        Assert.assertEquals(3, statistics.getLeases());
+        Assert.assertEquals(0, statistics.getLeased());
+        Assert.assertEquals(1, statistics.getIdle());
+        Assert.assertEquals(0, statistics.getWaitTimeouts());
+    }
+
+    @Test
+    public void testRequestsWaitForAFreeConnection() throws Exception {
+        String url = startServer();
+        transport.setMaxConnectionsPerHost(1);
+        transport.setConnectionWaitTimeoutMs(200);
+
+        GetMethod leased = get(url + "a.xml");
+        try {
+            get(url + "b.xml");
+            Assert.fail("the second request must not get a connection");
+        } catch (ConnectionPoolTimeoutException e) {
+            // expected
+        } finally {
+            leased.releaseConnection();
+        }
+
+        HttpTransport.Statistics statistics = transport.getStatistics();
+        Assert.assertEquals(1, statistics.getWaitTimeouts());
+        Assert.assertEquals(1, statistics.getLeases());
+        Assert.assertEquals(0, statistics.getLeased());
+        Assert.assertEquals(1, clientPorts.size());
+
+        // The released connection is used by the next request
+        get(url + "b.xml").releaseConnection();
+        Assert.assertEquals(2, transport.getStatistics().getLeases());
+    }
+
+    @Test
+    public void testCompressedResponsesAreRequested() throws Exception {
+        String url = startServer();
+
+        get(url + "a.xml").releaseConnection();
+        transport.setCompressionEnabled(false);
+        get(url + "b.xml").releaseConnection();
+
+        Assert.assertEquals(Arrays.asList("gzip, deflate", null),
+                acceptEncodings);
+    }
+
+    @Test
+    public void testRequestsWithCredentialsAreNotCached() {
+        HttpState anonymous = new HttpState();
+        anonymous.addCookie(new Cookie());
+        HttpState authenticated = new HttpState();
+        authenticated.setCredentials(new AuthScope("host", 80),
+                new UsernamePasswordCredentials("admin", "secret"));
+        GetMethod authorization = new GetMethod("http://host/a.xml");
+        authorization.setRequestHeader("Authorization", "Basic YWRtaW46c2VjcmV0");
+
+        Assert.assertFalse(HttpTransport.hasCredentials(new GetMethod(
+                "http://host/a.xml"), anonymous));
+        Assert.assertTrue(HttpTransport.hasCredentials(new GetMethod(
+                "http://host/a.xml"), authenticated));
+        Assert.assertTrue(HttpTransport.hasCredentials(authorization,
+                anonymous));
+    }
+
+    @Test
+    public void testSessionCookiesArePartOfTheKey() {
+        HttpState anonymous = new HttpState();
+        anonymous.addCookie(new Cookie());
+        HttpState session = new HttpState();
+        session.addCookie(new Cookie("host", "JSESSIONID", "1", "/", null,
+                false));
+        HttpState otherSession = new HttpState();
+        otherSession.addCookie(new Cookie("host", "JSESSIONID", "2", "/",
+                null, false));
+
+        String url = "http://host/a.xml";
+        Assert.assertNull(HttpTransport.cookies(anonymous));
+        Assert.assertEquals(ResponseCache.key(url, null), ResponseCache.key(
+                url, null, HttpTransport.cookies(anonymous)));
+        Assert.assertFalse(ResponseCache.key(url, null).equals(
+                ResponseCache.key(url, null, HttpTransport.cookies(session))));
+        Assert.assertFalse(ResponseCache.key(url, null,
+                HttpTransport.cookies(session)).equals(
+                ResponseCache.key(url, null,
+                        HttpTransport.cookies(otherSession))));
+    }
+}
@@ -0,0 +1,126 @@
+package org.opengeoportal.harvester.api.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+public class ResponseCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void store(ResponseCache cache, String url, String body,
+            boolean readToEnd) throws Exception {
+        InputStream in = cache.store(ResponseCache.key(url, null), url,
+                "\"" + body.hashCode() + "\"", null, new ByteArrayInputStream(
+                        body.getBytes(Charsets.UTF_8)));
+        if (readToEnd) {
+            ByteStreams.toByteArray(in);
+        } else {
+            in.read();
+        }
+        in.close();
+    }
+
+    private static String read(ResponseCache cache, String url)
+            throws Exception {
+        ResponseCache.Entry entry = cache.get(ResponseCache.key(url, null));
+        if (entry == null) {
+            return null;
+        }
+        InputStream in = cache.open(entry);
+        try {
+            return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStoreAndOpen() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1000);
+        store(cache, "http://host/a.xml", "<a/>", true);
+
+        ResponseCache.Entry entry = cache.get(ResponseCache.key(
+                "http://host/a.xml", null));
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("\"" + "<a/>".hashCode() + "\"", entry.getEtag());
+        Assert.assertEquals("<a/>", read(cache, "http://host/a.xml"));
+        Assert.assertEquals(1, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void testIncompleteBodyIsNotStored() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1000);
+        store(cache, "http://host/a.xml", "<a/>", false);
+
+        Assert.assertNull(cache.get(ResponseCache.key("http://host/a.xml",
+                null)));
+        Assert.assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testRequestBodyIsPartOfTheKey() {
+        Assert.assertFalse(ResponseCache.key("http://host/csw", "<a/>")
+                .equals(ResponseCache.key("http://host/csw", "<b/>")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 10);
+        store(cache, "http://host/a.xml", "aaaa", true);
+        store(cache, "http://host/b.xml", "bbbb", true);
+        // a is used, so b is the least recently used entry
+        Assert.assertEquals("aaaa", read(cache, "http://host/a.xml"));
+        store(cache, "http://host/c.xml", "cccc", true);
+
+        Assert.assertEquals("aaaa", read(cache, "http://host/a.xml"));
+        Assert.assertNull(read(cache, "http://host/b.xml"));
+        Assert.assertEquals("cccc", read(cache, "http://host/c.xml"));
+        Assert.assertEquals(1, cache.getStatistics().getEvictions());
+        Assert.assertEquals(8, cache.getStatistics().getBytes());
+    }
+
+    @Test
+    public void testEntriesSurviveRestarts() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1000);
+        store(cache, "http://host/a.xml", "<a/>", true);
+
+        ResponseCache reloaded = new ResponseCache(directory, 1000);
+        Assert.assertEquals(1, reloaded.getStatistics().getEntries());
+        Assert.assertEquals("<a/>", read(reloaded, "http://host/a.xml"));
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 0);
+        store(cache, "http://host/a.xml", "<a/>", true);
+
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertNull(cache.get(ResponseCache.key("http://host/a.xml",
+                null)));
+    }
+}
@@ -0,0 +1,55 @@
+package org.opengeoportal.harvester.api.client.solr;
+
+import java.io.IOException;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SolrJClientTest {
+
+    /**
+     * Server answering every request with the same response header status.
+     */
+    private static class StatusSolrServer extends HttpSolrServer {
+        private final int status;
+
+        StatusSolrServer(int status) {
+            super("http://localhost/solr");
+            this.status = status;
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request)
+                throws SolrServerException, IOException {
+            NamedList<Object> header = new NamedList<Object>();
+            header.add("status", status);
+            header.add("QTime", 1);
+            NamedList<Object> response = new NamedList<Object>();
+            response.add("responseHeader", header);
+            return response;
+        }
+    }
+
+    private static SolrJClient client(int status) {
+        SolrJClient client = new SolrJClient("http://localhost/solr");
+        ReflectionTestUtils.setField(client, "solrServer",
+                new StatusSolrServer(status));
+        return client;
+    }
+
+    @Test
+    public void testCommitSucceedsWithStatusZero() {
+        Assert.assertTrue(client(0).commit(false));
+        Assert.assertTrue(client(0).commit(true));
+    }
+
+    @Test
+    public void testCommitFailsWithErrorStatus() {
+        Assert.assertFalse(client(500).commit(false));
+    }
+}
@@ -140,6 +140,21 @@ public class SolrSearchParamsTest {
 
     }
 
+    @Test
+    public void testCursorMarkQuery() {
+        IngestOGP ingest = new  IngestOGP();
+        ingest.setOriginator("originator");
+
+        SolrSearchParams solrSearchParams = new SolrSearchParams(ingest);
+        solrSearchParams.setPage(3);
+        solrSearchParams.setCursorMark(SolrSearchParams.CURSOR_MARK_START);
+        SolrQuery query = solrSearchParams.toSolrQuery();
+
+        // The page is ignored and the sort is on the unique key
+        Assert.assertEquals("q=*:*&fq=Institution:*&fq=Originator:originator&pf=Originator:originator&rows=40&" +
+                "cursorMark=*&sort=LayerId+asc", unencode(query.toString()));
+    }
+
     private String unencode(String query) {
         String result = query.replaceAll("%3A", ":");
         result = result.replaceAll("%28", "(");
@@ -0,0 +1,304 @@
+package org.opengeoportal.harvester.api.component;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
+import org.opengeoportal.harvester.api.domain.IngestOGP;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.InstanceType;
+import org.opengeoportal.harvester.api.exception.OgpSolrException;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.opengeoportal.harvester.api.service.ExceptionTranslatorImpl;
+import org.opengeoportal.harvester.api.service.IngestHighWaterMarkService;
+import org.opengeoportal.harvester.api.service.IngestJobStatusService;
+import org.opengeoportal.harvester.api.service.IngestReportErrorService;
+import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Sets;
+
+public class BaseIngestJobTest {
+
+    /**
+     * Job fetching the given records. Records starting with "!" cannot be
+     * retrieved.
+     */
+    private static class TestJob extends BaseIngestJob {
+        private final String[] records;
+
+        TestJob(String... records) {
+            this.records = records;
+        }
+
+        @Override
+        protected void ingest() {
+            runPipeline(new IngestPipeline.Stages<String>() {
+                @Override
+                public void fetch(RecordCollector<String> collector)
+                        throws Exception {
+                    for (String record : records) {
+                        if (record.startsWith("!")) {
+                            collector.failed(record, new IOException(
+                                    "cannot retrieve " + record));
+                        } else {
+                            collector.collect(record);
+                        }
+                    }
+                }
+
+                @Override
+                public Metadata parse(PipelineRecord<String> record)
+                        throws Exception {
+                    Metadata metadata = new Metadata();
+                    metadata.setId(record.getRecord());
+                    metadata.setInstitution("Test");
+                    return metadata;
+                }
+            });
+        }
+
+        @Override
+        protected InstanceType getSourceType() {
+            return InstanceType.SOLR;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IAnswer<T> firstArgument() {
+        return new IAnswer<T>() {
+            @Override
+            public T answer() throws Throwable {
+                return (T) EasyMock.getCurrentArguments()[0];
+            }
+        };
+    }
+
+    private void runJob(TestJob job,
+            IngestHighWaterMarkService highWaterMarkService) {
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        replay(errorService, metadataIngester);
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+    }
+
+    private void runJob(TestJob job,
+            IngestHighWaterMarkService highWaterMarkService,
+            IngestReportErrorService errorService,
+            MetadataIngester metadataIngester) {
+        Ingest ingest = new IngestOGP();
+        ReflectionTestUtils.setField(ingest, "id", 1L);
+        ingest.setName("test");
+        ingest.setIncremental(true);
+
+        IngestJobStatusService jobStatusService = createNiceMock(IngestJobStatusService.class);
+        expect(jobStatusService.save(anyObject(IngestJobStatus.class)))
+                .andAnswer(BaseIngestJobTest.<IngestJobStatus> firstArgument())
+                .anyTimes();
+        IngestReportService reportService = createNiceMock(IngestReportService.class);
+        expect(reportService.save(anyObject(IngestReport.class))).andAnswer(
+                BaseIngestJobTest.<IngestReport> firstArgument()).anyTimes();
+        IngestReportWarningsService warningService = createNiceMock(IngestReportWarningsService.class);
+        replay(jobStatusService, reportService, warningService);
+
+        job.setJobStatusService(jobStatusService);
+        job.setReportService(reportService);
+        job.setErrorService(errorService);
+        job.setWarningService(warningService);
+        job.setExceptionTranslatorService(new ExceptionTranslatorImpl());
+        job.setHighWaterMarkService(highWaterMarkService);
+        job.init(UUID.randomUUID(), ingest, metadataIngester);
+        job.run();
+    }
+
+    @Test
+    public void testHighWaterMarkIsMovedWhenAllRecordsAreRetrieved() {
+        IngestHighWaterMarkService highWaterMarkService = createMock(IngestHighWaterMarkService.class);
+        expect(
+                highWaterMarkService.getIncrementalFrom(anyObject(Ingest.class),
+                        anyObject(Date.class))).andReturn(null);
+        expect(
+                highWaterMarkService.update(anyObject(Ingest.class),
+                        anyObject(Date.class), eq(true))).andReturn(null);
+        replay(highWaterMarkService);
+
+        TestJob job = new TestJob("a", "b", "c");
+        runJob(job, highWaterMarkService);
+
+        Assert.assertEquals(IngestJobStatusValue.SUCCESSED, job
+                .getIngestReport().getJobStatus().getStatus());
+        verify(highWaterMarkService);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMissingRecordsAreDeletedByFullRuns() {
+        IngestHighWaterMarkService highWaterMarkService = createNiceMock(IngestHighWaterMarkService.class);
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        Capture<Set<String>> retrieved = new Capture<Set<String>>();
+        expect(metadataIngester.deleteMissing(eq(1L), capture(retrieved)))
+                .andReturn(3L);
+        replay(highWaterMarkService, metadataIngester, errorService);
+
+        TestJob job = new TestJob("a", "b");
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+
+        verify(metadataIngester);
+        Assert.assertEquals(Sets.newHashSet("Test.a", "Test.b"),
+                retrieved.getValue());
+        Assert.assertEquals(3L, job.getIngestReport().getDeletedRecords());
+    }
+
+    @Test
+    public void testIncrementalRunsDoNotDeleteRecords() {
+        IngestHighWaterMarkService highWaterMarkService = createNiceMock(IngestHighWaterMarkService.class);
+        expect(
+                highWaterMarkService.getIncrementalFrom(anyObject(Ingest.class),
+                        anyObject(Date.class))).andReturn(new Date(0L));
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        // deleteMissing must not be called
+        expect(
+                metadataIngester.deleteMissing(anyObject(Long.class),
+                        EasyMock.<Set<String>> anyObject())).andReturn(3L)
+                .anyTimes();
+        replay(highWaterMarkService, metadataIngester, errorService);
+
+        TestJob job = new TestJob("a", "b");
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+
+        Assert.assertEquals(0L, job.getIngestReport().getDeletedRecords());
+    }
+
+    @Test
+    public void testHighWaterMarkIsKeptWhenARecordFails() {
+        IngestHighWaterMarkService highWaterMarkService = createMock(IngestHighWaterMarkService.class);
+        expect(
+                highWaterMarkService.getIncrementalFrom(anyObject(Ingest.class),
+                        anyObject(Date.class))).andReturn(null);
+        // update must not be called
+        replay(highWaterMarkService);
+
+        TestJob job = new TestJob("a", "!b", "c");
+        runJob(job, highWaterMarkService);
+
+        Assert.assertEquals(IngestJobStatusValue.SUCCESSED, job
+                .getIngestReport().getJobStatus().getStatus());
+        Assert.assertEquals(1, job.getIngestReport().getFailedRecordsCount());
+        verify(highWaterMarkService);
+    }
+
+    @Test
+    public void testHighWaterMarkIsKeptWhenSolrRejectsRecords() {
+        IngestHighWaterMarkService highWaterMarkService = createMock(IngestHighWaterMarkService.class);
+        expect(
+                highWaterMarkService.getIncrementalFrom(anyObject(Ingest.class),
+                        anyObject(Date.class))).andReturn(null);
+        // update must not be called
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        metadataIngester.ingest(EasyMock.<List<Metadata>> anyObject(),
+                anyObject(IngestReport.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                // Errors added by the ingester when Solr rejects a batch
+                IngestReportError error = new IngestReportError();
+                error.setType(IngestReportErrorType.SYSTEM_ERROR);
+                error.setMessage("SolrException: ");
+                ((IngestReport) EasyMock.getCurrentArguments()[1])
+                        .addError(error);
+                return null;
+            }
+        }).anyTimes();
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        replay(highWaterMarkService, metadataIngester, errorService);
+
+        TestJob job = new TestJob("a", "b");
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+
+        Assert.assertEquals(IngestJobStatusValue.SUCCESSED, job
+                .getIngestReport().getJobStatus().getStatus());
+        verify(highWaterMarkService);
+    }
+
+    @Test
+    public void testHighWaterMarkIsKeptWhenTheCommitFails() {
+        IngestHighWaterMarkService highWaterMarkService = createMock(IngestHighWaterMarkService.class);
+        expect(
+                highWaterMarkService.getIncrementalFrom(anyObject(Ingest.class),
+                        anyObject(Date.class))).andReturn(null);
+        // update must not be called
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        metadataIngester.finish(anyObject(IngestReport.class));
+        expectLastCall().andThrow(
+                new OgpSolrException("Error committing the ingested records"));
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        replay(highWaterMarkService, metadataIngester, errorService);
+
+        TestJob job = new TestJob("a", "b");
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+
+        verify(highWaterMarkService);
+    }
+
+    @Test
+    public void testIngesterFinishErrorIsSaved() {
+        IngestHighWaterMarkService highWaterMarkService = createNiceMock(IngestHighWaterMarkService.class);
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        metadataIngester.finish(anyObject(IngestReport.class));
+        expectLastCall().andThrow(
+                new OgpSolrException("Error committing the ingested records"));
+        // Validation errors are saved through the service too
+        IngestReportErrorService errorService = createNiceMock(IngestReportErrorService.class);
+        Capture<IngestReportError> saved = new Capture<IngestReportError>(
+                CaptureType.ALL);
+        expect(errorService.save(capture(saved))).andAnswer(
+                BaseIngestJobTest.<IngestReportError> firstArgument())
+                .anyTimes();
+        replay(highWaterMarkService, metadataIngester, errorService);
+
+        TestJob job = new TestJob("a");
+        runJob(job, highWaterMarkService, errorService, metadataIngester);
+
+        List<IngestReportError> systemErrors = new ArrayList<IngestReportError>();
+        for (IngestReportError error : saved.getValues()) {
+            if (error.getType() == IngestReportErrorType.SYSTEM_ERROR) {
+                systemErrors.add(error);
+            }
+        }
+        Assert.assertEquals(1, systemErrors.size());
+        IngestReportError error = systemErrors.get(0);
+        Assert.assertEquals("Error committing the ingested records",
+                error.getMessage());
+        Assert.assertSame(job.getIngestReport(), error.getReport());
+        Assert.assertTrue(job.getIngestReport().getErrors().contains(error));
+    }
+}
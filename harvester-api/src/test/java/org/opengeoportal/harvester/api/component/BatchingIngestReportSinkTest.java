@@ -0,0 +1,94 @@
+package org.opengeoportal.harvester.api.component;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.List;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.dao.IngestReportErrorRepository;
+import org.opengeoportal.harvester.api.dao.IngestReportWarningRepository;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+
+import com.google.common.collect.Iterables;
+
+public class BatchingIngestReportSinkTest {
+
+    private IngestReportError newError(IngestReport report, String field) {
+        IngestReportError error = new IngestReportError();
+        error.setType(IngestReportErrorType.REQUIRED_FIELD_ERROR);
+        error.setField(field);
+        error.setReport(report);
+        return error;
+    }
+
+    private IngestReportWarning newWarning(IngestReport report, String field) {
+        IngestReportWarning warning = new IngestReportWarning();
+        warning.setType(IngestReportWarningType.UNREQUIRED_FIELD_WARNING);
+        warning.setField(field);
+        warning.setReport(report);
+        return warning;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testEntriesAreSavedInBatchesBeforeFlushReturns() {
+        Capture<Iterable<IngestReportError>> errorBatches = new Capture<Iterable<IngestReportError>>(
+                CaptureType.ALL);
+        Capture<Iterable<IngestReportWarning>> warningBatches = new Capture<Iterable<IngestReportWarning>>(
+                CaptureType.ALL);
+        IngestReportErrorRepository errorRepository = createMock(IngestReportErrorRepository.class);
+        IngestReportWarningRepository warningRepository = createMock(IngestReportWarningRepository.class);
+        expect(errorRepository.saveWithMetadata(capture(errorBatches))).andReturn(null)
+                .anyTimes();
+        expect(warningRepository.save(capture(warningBatches))).andReturn(
+                null).anyTimes();
+        replay(errorRepository, warningRepository);
+
+        BatchingIngestReportSink sink = new BatchingIngestReportSink(
+                errorRepository, warningRepository);
+        sink.setMaxEntries(4);
+        sink.setMaxDelayMs(60000);
+        sink.start();
+        try {
+            IngestReport report = new IngestReport();
+            IngestReport otherReport = new IngestReport();
+            for (int i = 0; i < 3; i++) {
+                sink.add(newError(report, "title"));
+                sink.add(newWarning(report, "abstract"));
+            }
+            sink.add(newWarning(otherReport, "abstract"));
+
+            sink.flush(report);
+
+            int errors = 0;
+            for (Iterable<IngestReportError> batch : errorBatches.getValues()) {
+                errors += Iterables.size(batch);
+            }
+            int warnings = 0;
+            for (Iterable<IngestReportWarning> batch : warningBatches
+                    .getValues()) {
+                warnings += Iterables.size(batch);
+            }
+            // 7 entries in batches of 4, all saved when the report is flushed
+            Assert.assertEquals(3, errors);
+            Assert.assertEquals(4, warnings);
+            List<Iterable<IngestReportWarning>> batches = warningBatches
+                    .getValues();
+            Assert.assertEquals(2, batches.size());
+        } finally {
+            sink.shutdown();
+        }
+        EasyMock.verify(errorRepository, warningRepository);
+    }
+}
@@ -0,0 +1,110 @@
+package org.opengeoportal.harvester.api.component;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.Collection;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.solr.SolrClient;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.metadata.model.AccessLevel;
+import org.opengeoportal.harvester.api.metadata.model.GeometryType;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+
+import com.google.common.collect.Lists;
+
+public class BatchingMetadataIngesterTest {
+
+    private Metadata newMetadata(String id, AccessLevel access) {
+        Metadata metadata = new Metadata();
+        metadata.setId(id);
+        metadata.setOwsName("layer" + id);
+        metadata.setInstitution("Test");
+        metadata.setTitle("Title " + id);
+        metadata.setAccess(access);
+        metadata.setGeometryType(GeometryType.Polygon);
+        return metadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCountersAreFoldedIntoEachReport() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        // 7 records in batches of 3
+        expect(solrClient.add(anyObject(Collection.class),
+                anyObject(IngestReport.class))).andReturn(true).times(3);
+        expect(solrClient.commit(anyBoolean())).andReturn(true).anyTimes();
+        replay(solrClient);
+
+        BatchingMetadataIngester ingester = new BatchingMetadataIngester(
+                new SolrMetadataIngester(solrClient));
+        ingester.setMaxDocuments(3);
+        ingester.setMaxDelayMs(60000);
+        ingester.start();
+        try {
+            IngestReport publicReport = new IngestReport();
+            IngestReport restrictedReport = new IngestReport();
+            ingester.ingest(Lists.newArrayList(
+                    newMetadata("1", AccessLevel.Public),
+                    newMetadata("2", AccessLevel.Public)), publicReport);
+            ingester.ingest(Lists.newArrayList(
+                    newMetadata("3", AccessLevel.Restricted),
+                    newMetadata("4", AccessLevel.Restricted)),
+                    restrictedReport);
+            ingester.ingest(Lists.newArrayList(
+                    newMetadata("5", AccessLevel.Public),
+                    newMetadata("6", AccessLevel.Public),
+                    newMetadata("7", AccessLevel.Public)), publicReport);
+
+            ingester.finish(publicReport);
+            ingester.finish(restrictedReport);
+
+            Assert.assertEquals(5L, publicReport.getPublicRecords());
+            Assert.assertEquals(0L, publicReport.getRestrictedRecords());
+            Assert.assertEquals(5L, publicReport.getVectorRecords());
+            Assert.assertEquals(2L, restrictedReport.getRestrictedRecords());
+            Assert.assertEquals(0L, restrictedReport.getPublicRecords());
+        } finally {
+            ingester.shutdown();
+        }
+        EasyMock.verify(solrClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFlushSendsTheRecordsWithoutCommitting() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        expect(solrClient.add(anyObject(Collection.class),
+                anyObject(IngestReport.class), anyInt())).andReturn(true);
+        // commit must not be called by flush
+        replay(solrClient);
+
+        SolrMetadataIngester delegate = new SolrMetadataIngester(solrClient);
+        delegate.setCommitPolicy(SolrCommitPolicy.COMMIT_WITHIN);
+        BatchingMetadataIngester ingester = new BatchingMetadataIngester(
+                delegate);
+        ingester.setMaxDelayMs(60000);
+        ingester.start();
+        try {
+            IngestReport report = new IngestReport();
+            ingester.ingest(Lists.newArrayList(
+                    newMetadata("1", AccessLevel.Public),
+                    newMetadata("2", AccessLevel.Restricted)), report);
+
+            ingester.flush(report);
+
+            EasyMock.verify(solrClient);
+            Assert.assertEquals(1L, report.getPublicRecords());
+            Assert.assertEquals(1L, report.getRestrictedRecords());
+        } finally {
+            ingester.shutdown();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.opengeoportal.harvester.api.component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.component.IngestPipeline.PipelineRecord;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+
+public class IngestPipelineTest {
+
+    /**
+     * Fetch stage producing the numbers from 0 to count - 1. Odd numbers fail
+     * to parse.
+     */
+    private static class NumberStages implements IngestPipeline.Stages<Integer> {
+        private final int count;
+
+        NumberStages(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void fetch(RecordCollector<Integer> collector)
+                throws Exception {
+            for (int i = 0; i < count; i++) {
+                collector.collect(i);
+            }
+            collector.error(new Exception("fetch error"));
+        }
+
+        @Override
+        public Metadata parse(PipelineRecord<Integer> record) throws Exception {
+            if (record.getRecord() % 2 != 0) {
+                throw new Exception("odd record " + record.getRecord());
+            }
+            Metadata metadata = new Metadata();
+            metadata.setId(String.valueOf(record.getRecord()));
+            return metadata;
+        }
+    }
+
+    @Test
+    public void testAllRecordsReachTheIndexer() throws Exception {
+        // Small queues to force the fetcher and the parsers to wait
+        IngestPipeline<Integer> pipeline = new IngestPipeline<Integer>(
+                "test", new NumberStages(1000), 3, 2, 4);
+        IngestProgress progress = new IngestProgress(1L, "test", null);
+        pipeline.setProgress(progress);
+        pipeline.start();
+
+        Set<String> parsed = new HashSet<String>();
+        int failed = 0;
+        int fetchErrors = 0;
+        try {
+            PipelineRecord<Integer> record = pipeline.take();
+            while (record != null) {
+                if (record.isFetchError()) {
+                    fetchErrors++;
+                } else if (record.getException() != null) {
+                    failed++;
+                } else {
+                    parsed.add(record.getMetadata().getId());
+                }
+                record = pipeline.take();
+            }
+        } finally {
+            pipeline.shutdown();
+        }
+
+        Assert.assertEquals(500, parsed.size());
+        Assert.assertEquals(500, failed);
+        Assert.assertEquals(1, fetchErrors);
+        Assert.assertNull(pipeline.take());
+        Assert.assertEquals(1000, progress.getRecordsFetched());
+        Assert.assertEquals(500, progress.getRecordsParsed());
+    }
+
+    @Test
+    public void testFetchExceptionIsReported() throws Exception {
+        IngestPipeline<Integer> pipeline = new IngestPipeline<Integer>(
+                "test", new NumberStages(0) {
+                    @Override
+                    public void fetch(RecordCollector<Integer> collector)
+                            throws Exception {
+                        throw new IllegalStateException("server down");
+                    }
+                }, 0, 0, 0);
+        pipeline.start();
+
+        PipelineRecord<Integer> record = pipeline.take();
+        Assert.assertNotNull(record);
+        Assert.assertTrue(record.isFetchError());
+        Assert.assertEquals("server down", record.getException().getMessage());
+        Assert.assertNull(pipeline.take());
+    }
+
+    @Test
+    public void testCheckpointMarksFollowTheirRecords() throws Exception {
+        IngestPipeline<Integer> pipeline = new IngestPipeline<Integer>(
+                "test", new NumberStages(0) {
+                    @Override
+                    public void fetch(RecordCollector<Integer> collector)
+                            throws Exception {
+                        for (int page = 0; page < 10; page++) {
+                            for (int i = 0; i < 50; i++) {
+                                collector.collect(page * 50 + i);
+                            }
+                            Thread.sleep(2);
+                            collector.checkpoint(String.valueOf(page + 1));
+                        }
+                    }
+                }, 3, 2, 4);
+        pipeline.setCheckpointInterval(1);
+        pipeline.start();
+
+        int taken = 0;
+        int checkpoints = 0;
+        try {
+            PipelineRecord<Integer> record = pipeline.take();
+            while (record != null) {
+                if (record.isCheckpoint()) {
+                    // All the records of the previous pages and none after
+                    checkpoints++;
+                    Assert.assertEquals(taken, record.getCheckpointRecords());
+                    Assert.assertEquals(String.valueOf(taken / 50),
+                            record.getCheckpointPosition());
+                } else {
+                    taken++;
+                }
+                record = pipeline.take();
+            }
+        } finally {
+            pipeline.shutdown();
+        }
+
+        Assert.assertEquals(500, taken);
+        Assert.assertEquals(10, checkpoints);
+        Assert.assertEquals("10", pipeline.getEndPosition());
+        Assert.assertEquals(500, pipeline.getRecordsFetched());
+    }
+}
@@ -0,0 +1,31 @@
+package org.opengeoportal.harvester.api.component;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IngestProgressTest {
+
+    @Test
+    public void testEtaFromTheProcessedRecordsRate() {
+        IngestProgress progress = new IngestProgress(1L, "test", null);
+        long start = progress.getStartTime();
+        Assert.assertEquals(IngestProgress.UNKNOWN,
+                progress.getEtaSeconds(start + 10000L));
+
+        progress.recordsIndexed(40);
+        progress.recordFailed();
+        progress.recordFailed();
+        // Total not reported by the server
+        Assert.assertEquals(IngestProgress.UNKNOWN,
+                progress.getEtaSeconds(start + 10000L));
+
+        progress.setTotalRecords(126L);
+        // 42 records in 10 seconds, 84 remaining
+        Assert.assertEquals(4.2, progress.getRecordsPerSecond(start + 10000L),
+                0.001);
+        Assert.assertEquals(20L, progress.getEtaSeconds(start + 10000L));
+
+        progress.recordsIndexed(84);
+        Assert.assertEquals(0L, progress.getEtaSeconds(start + 10000L));
+    }
+}
@@ -0,0 +1,318 @@
+package org.opengeoportal.harvester.api.component;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.solr.SolrClient;
+import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.dao.RecordFingerprintRepository;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestOGP;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.RecordFingerprint;
+import org.opengeoportal.harvester.api.exception.OgpSolrException;
+import org.opengeoportal.harvester.api.metadata.model.AccessLevel;
+import org.opengeoportal.harvester.api.metadata.model.GeometryType;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class SolrMetadataIngesterTest {
+
+    private Metadata newMetadata(String id, String title) {
+        Metadata metadata = new Metadata();
+        metadata.setId(id);
+        metadata.setInstitution("Test");
+        metadata.setTitle(title);
+        metadata.setAccess(AccessLevel.Public);
+        metadata.setGeometryType(GeometryType.Polygon);
+        metadata.setOwsName("layer" + id);
+        metadata.setBounds(-10.0, -10.0, 10.0, 10.0);
+        return metadata;
+    }
+
+    private IngestReport newReport(Long ingestId) {
+        IngestOGP ingest = new IngestOGP();
+        ReflectionTestUtils.setField(ingest, "id", ingestId);
+        IngestJobStatus jobStatus = new IngestJobStatus();
+        jobStatus.setIngest(ingest);
+        IngestReport report = new IngestReport();
+        report.setJobStatus(jobStatus);
+        return report;
+    }
+
+    @Test
+    public void testFingerprintChangesWithContent() {
+        SolrMetadataIngester ingester = new SolrMetadataIngester(
+                (SolrClient) null);
+        String first = ingester.fingerprint(SolrRecord.build(newMetadata(
+                "1", "Title")));
+        Assert.assertEquals(first, ingester.fingerprint(SolrRecord
+                .build(newMetadata("1", "Title"))));
+        Assert.assertFalse(first.equals(ingester.fingerprint(SolrRecord
+                .build(newMetadata("1", "Other title")))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUnchangedRecordsAreNotSent() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+
+        Metadata unchanged = newMetadata("1", "Unchanged");
+        Metadata changed = newMetadata("2", "Changed");
+        RecordFingerprint stored = new RecordFingerprint();
+        stored.setLayerId("Test.1");
+        stored.setFingerprint(ingester.fingerprint(SolrRecord
+                .build(unchanged)));
+        IngestReport report = new IngestReport();
+
+        expect(repository.findByLayerIdIn(anyObject(Collection.class)))
+                .andReturn(Collections.singletonList(stored));
+        Capture<Collection<SolrRecord>> sent = new Capture<Collection<SolrRecord>>();
+        expect(solrClient.add(capture(sent), anyObject(IngestReport.class))).andReturn(true);
+        Capture<List<RecordFingerprint>> saved = new Capture<List<RecordFingerprint>>();
+        expect(repository.save(capture(saved))).andReturn(null);
+        expect(solrClient.commit(false)).andReturn(true);
+        replay(solrClient, repository);
+
+        ingester.ingest(Lists.newArrayList(unchanged, changed), report);
+
+        verify(solrClient, repository);
+        Assert.assertEquals(1, sent.getValue().size());
+        Assert.assertEquals("Test.2", sent.getValue().iterator().next()
+                .getLayerId());
+        Assert.assertEquals(1, saved.getValue().size());
+        Assert.assertEquals(1L, report.getUnchangedRecords());
+        Assert.assertEquals(1L, report.getPublicRecords());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFingerprintsAreSavedWhenCommitted() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+        ingester.setCommitPolicy(SolrCommitPolicy.SOFT_COMMIT);
+        ingester.setCommitEveryDocuments(1);
+        IngestReport report = new IngestReport();
+
+        expect(repository.findByLayerIdIn(anyObject(Collection.class)))
+                .andReturn(Collections.<RecordFingerprint> emptyList());
+        expect(solrClient.add(anyObject(Collection.class), anyObject(IngestReport.class)))
+                .andReturn(true);
+        expect(solrClient.commit(true)).andReturn(true);
+        expect(solrClient.commit(false)).andReturn(true);
+        Capture<List<RecordFingerprint>> saved = new Capture<List<RecordFingerprint>>();
+        expect(repository.save(capture(saved))).andReturn(null);
+        replay(solrClient, repository);
+
+        ingester.ingest(Lists.newArrayList(newMetadata("1", "One"),
+                newMetadata("2", "Two")), report);
+        // Only soft committed
+        Assert.assertFalse(saved.hasCaptured());
+        ingester.finish(report);
+
+        verify(solrClient, repository);
+        Assert.assertEquals(2, saved.getValue().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFingerprintsAreDiscardedWhenTheCommitFails() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+        ingester.setCommitPolicy(SolrCommitPolicy.COMMIT_WITHIN);
+        IngestReport report = new IngestReport();
+
+        expect(repository.findByLayerIdIn(anyObject(Collection.class)))
+                .andReturn(Collections.<RecordFingerprint> emptyList())
+                .times(2);
+        expect(solrClient.add(anyObject(Collection.class),
+                anyObject(IngestReport.class), anyInt())).andReturn(true)
+                .times(2);
+        expect(solrClient.commit(false)).andReturn(false);
+        expect(solrClient.commit(false)).andReturn(true);
+        Capture<List<RecordFingerprint>> saved = new Capture<List<RecordFingerprint>>();
+        expect(repository.save(capture(saved))).andReturn(null);
+        replay(solrClient, repository);
+
+        ingester.ingest(Lists.newArrayList(newMetadata("1", "One")), report);
+        try {
+            ingester.finish(report);
+            Assert.fail("the commit error must be thrown");
+        } catch (OgpSolrException e) {
+            // expected
+        }
+        ingester.ingest(Lists.newArrayList(newMetadata("2", "Two")), report);
+        ingester.finish(report);
+
+        verify(solrClient, repository);
+        // The fingerprint of the first record was not committed
+        Assert.assertEquals(1, saved.getValue().size());
+        Assert.assertEquals("Test.2", saved.getValue().get(0).getLayerId());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSoftCommitPolicy() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setCommitPolicy(SolrCommitPolicy.SOFT_COMMIT);
+        ingester.setCommitEveryDocuments(3);
+        IngestReport report = new IngestReport();
+
+        expect(solrClient.add(anyObject(Collection.class), anyObject(IngestReport.class)))
+                .andReturn(true).times(2);
+        expect(solrClient.commit(true)).andReturn(true);
+        expect(solrClient.commit(false)).andReturn(true);
+        replay(solrClient);
+
+        ingester.ingest(Lists.newArrayList(newMetadata("1", "One"),
+                newMetadata("2", "Two")), report);
+        ingester.ingest(Lists.newArrayList(newMetadata("3", "Three"),
+                newMetadata("4", "Four")), report);
+        ingester.finish(report);
+        // Nothing pending, no more commits
+        ingester.finish(report);
+
+        verify(solrClient);
+        Assert.assertTrue(report.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testRecordsNotAddedAreNotCommitted() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        IngestReport report = new IngestReport();
+
+        expect(solrClient.add(anyObject(SolrRecord.class))).andReturn(-1);
+        expect(solrClient.add(anyObject(SolrRecord.class))).andReturn(0);
+        expect(solrClient.commit(false)).andReturn(true);
+        replay(solrClient);
+
+        ingester.ingest(newMetadata("1", "Failed"));
+        // Nothing added, nothing to commit
+        ingester.finish(report);
+        ingester.ingest(newMetadata("2", "Added"));
+
+        verify(solrClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected = OgpSolrException.class)
+    public void testCommitFailureIsThrown() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setCommitPolicy(SolrCommitPolicy.COMMIT_WITHIN);
+        IngestReport report = new IngestReport();
+
+        expect(solrClient.add(anyObject(Collection.class),
+                anyObject(IngestReport.class), anyInt())).andReturn(true);
+        expect(solrClient.commit(false)).andReturn(false);
+        replay(solrClient);
+
+        ingester.ingest(Lists.newArrayList(newMetadata("1", "One")), report);
+        ingester.finish(report);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUnchangedRecordsAreAdoptedByTheIngest() {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+
+        Metadata unchanged = newMetadata("1", "Unchanged");
+        RecordFingerprint stored = new RecordFingerprint();
+        stored.setLayerId("Test.1");
+        stored.setFingerprint(ingester.fingerprint(SolrRecord
+                .build(unchanged)));
+
+        expect(repository.findByLayerIdIn(anyObject(Collection.class)))
+                .andReturn(Collections.singletonList(stored));
+        expect(repository.save(eq(Collections.singletonList(stored))))
+                .andReturn(null);
+        replay(solrClient, repository);
+
+        ingester.ingest(Lists.newArrayList(unchanged), newReport(7L));
+
+        verify(solrClient, repository);
+        Assert.assertEquals(Long.valueOf(7L), stored.getIngestId());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMissingRecordsAreDeleted() throws Exception {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+        RecordFingerprint removed = new RecordFingerprint();
+        removed.setLayerId("Test.2");
+
+        expect(repository.findLayerIdsByIngestId(7L)).andReturn(
+                Arrays.asList("Test.1", "Test.2"));
+        expect(solrClient.delete(aryEq(new String[] { "Test.2" })))
+                .andReturn("0");
+        expect(solrClient.commit(false)).andReturn(true);
+        expect(repository.findByLayerIdIn(Arrays.asList("Test.2")))
+                .andReturn(Collections.singletonList(removed));
+        repository.deleteInBatch(Collections.singletonList(removed));
+        replay(solrClient, repository);
+
+        Assert.assertEquals(1L, ingester.deleteMissing(7L,
+                Sets.newHashSet("Test.1", "Test.3")));
+
+        verify(solrClient, repository);
+    }
+
+    @Test
+    public void testMissingRecordsAreKeptWhenTheDeleteFails()
+            throws Exception {
+        SolrClient solrClient = createMock(SolrClient.class);
+        RecordFingerprintRepository repository = createMock(RecordFingerprintRepository.class);
+        SolrMetadataIngester ingester = new SolrMetadataIngester(solrClient);
+        ingester.setFingerprintRepository(repository);
+
+        expect(repository.findLayerIdsByIngestId(7L)).andReturn(
+                Arrays.asList("Test.2"));
+        expect(solrClient.delete(aryEq(new String[] { "Test.2" })))
+                .andReturn("0");
+        expect(solrClient.commit(false)).andReturn(false);
+        replay(solrClient, repository);
+
+        try {
+            ingester.deleteMissing(7L, Collections.<String> emptySet());
+            Assert.fail("the commit error must be thrown");
+        } catch (OgpSolrException e) {
+            // expected, the fingerprints are not deleted
+        }
+
+        verify(solrClient, repository);
+    }
+}
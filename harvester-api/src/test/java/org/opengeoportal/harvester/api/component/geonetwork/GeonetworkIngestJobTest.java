@@ -0,0 +1,257 @@
+package org.opengeoportal.harvester.api.component.geonetwork;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkClient;
+import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchParams;
+import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchResponse;
+import org.opengeoportal.harvester.api.client.geonetwork.GeoNetworkSearchResult;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
+import org.opengeoportal.harvester.api.component.MetadataIngester;
+import org.opengeoportal.harvester.api.domain.IngestGeonetwork;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.service.IngestJobStatusService;
+import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+
+public class GeonetworkIngestJobTest {
+
+    /**
+     * Client serving the records from 1 to total. The records in failing
+     * cannot be retrieved.
+     */
+    private static class StubClient extends GeoNetworkClient {
+        private final int total;
+        private final Set<Integer> failing = new HashSet<Integer>();
+        private final Set<Thread> threads = Collections
+                .synchronizedSet(new HashSet<Thread>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        StubClient(int total, Integer... failing) throws Exception {
+            super(new URL("http://localhost/geonetwork"));
+            this.total = total;
+            this.failing.addAll(Arrays.asList(failing));
+        }
+
+        @Override
+        public GeoNetworkSearchResponse search(
+                GeoNetworkSearchParams searchParams) throws Exception {
+            GeoNetworkSearchResponse response = new GeoNetworkSearchResponse();
+            response.setTotal(total);
+            for (int id = searchParams.getFrom(); id <= Math.min(
+                    searchParams.getTo(), total); id++) {
+                GeoNetworkSearchResult result = new GeoNetworkSearchResult();
+                result.setId(id);
+                response.addMetadataSearchResult(result);
+            }
+            return response;
+        }
+
+        @Override
+        public Document retrieveMetadata(int metadataId) throws Exception {
+            threads.add(Thread.currentThread());
+            int running = inFlight.incrementAndGet();
+            try {
+                int max = maxInFlight.get();
+                while (running > max
+                        && !maxInFlight.compareAndSet(max, running)) {
+                    max = maxInFlight.get();
+                }
+                retrieving(metadataId);
+                if (failing.contains(metadataId)) {
+                    throw new IOException("cannot retrieve " + metadataId);
+                }
+                Document document = DocumentBuilderFactory.newInstance()
+                        .newDocumentBuilder().newDocument();
+                document.appendChild(document.createElement("record"))
+                        .setTextContent(String.valueOf(metadataId));
+                return document;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        /**
+         * Called before retrieving each record.
+         */
+        protected void retrieving(int metadataId) throws Exception {
+        }
+    }
+
+    /**
+     * Collector keeping the records ("!" for the failed ones) and the
+     * checkpoints in the order they are received.
+     */
+    private static class ListCollector implements RecordCollector<Document> {
+        private final List<String> records = new ArrayList<String>();
+        private final List<String> checkpoints = new ArrayList<String>();
+
+        @Override
+        public void collect(Document record) {
+            records.add(record.getDocumentElement().getTextContent());
+        }
+
+        @Override
+        public void failed(Document record, Exception e) {
+            Assert.assertTrue(e instanceof IOException);
+            records.add("!");
+        }
+
+        @Override
+        public void error(Exception e) {
+            records.add("error");
+        }
+
+        @Override
+        public void checkpoint(String position) {
+            checkpoints.add(position);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IAnswer<T> firstArgument() {
+        return new IAnswer<T>() {
+            @Override
+            public T answer() throws Throwable {
+                return (T) EasyMock.getCurrentArguments()[0];
+            }
+        };
+    }
+
+    private static GeonetworkIngestJob newJob(final GeoNetworkClient client) {
+        IngestGeonetwork ingest = new IngestGeonetwork();
+        ReflectionTestUtils.setField(ingest, "id", 1L);
+        ingest.setName("test");
+        ingest.setUrl("http://localhost/geonetwork");
+        ingest.setMaxConcurrentRetrievals(4);
+
+        GeonetworkIngestJob job = new GeonetworkIngestJob() {
+            @Override
+            protected GeoNetworkClient createClient(URL geonetworkURL) {
+                return client;
+            }
+        };
+        IngestJobStatusService jobStatusService = createNiceMock(IngestJobStatusService.class);
+        expect(jobStatusService.save(anyObject(IngestJobStatus.class)))
+                .andAnswer(GeonetworkIngestJobTest.<IngestJobStatus> firstArgument())
+                .anyTimes();
+        IngestReportService reportService = createNiceMock(IngestReportService.class);
+        expect(reportService.save(anyObject(IngestReport.class))).andAnswer(
+                GeonetworkIngestJobTest.<IngestReport> firstArgument())
+                .anyTimes();
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        replay(jobStatusService, reportService, metadataIngester);
+
+        job.setJobStatusService(jobStatusService);
+        job.setReportService(reportService);
+        job.init(UUID.randomUUID(), ingest, metadataIngester);
+        return job;
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<String>();
+        for (int id = from; id <= to; id++) {
+            ids.add(String.valueOf(id));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRecordsAreRetrievedInParallelAndCollectedInOrder()
+            throws Exception {
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+        StubClient client = new StubClient(50) {
+            @Override
+            protected void retrieving(int metadataId) throws Exception {
+                if (metadataId == 2) {
+                    secondStarted.countDown();
+                } else if (metadataId == 1) {
+                    // The first record is the last one retrieved
+                    Assert.assertTrue(secondStarted.await(10,
+                            TimeUnit.SECONDS));
+                    Thread.sleep(200);
+                }
+            }
+        };
+
+        ListCollector collector = new ListCollector();
+        GeonetworkIngestJob job = newJob(client);
+        job.fetch(collector);
+
+        Assert.assertEquals(ids(1, 50), collector.records);
+        Assert.assertEquals(Arrays.asList("1", "2"), collector.checkpoints);
+        Assert.assertTrue(client.maxInFlight.get() > 1);
+        Assert.assertTrue(client.maxInFlight.get() <= 4);
+        Assert.assertEquals(2, job.getProgress().getPagesFetched());
+    }
+
+    @Test
+    public void testFailedRetrievalsDoNotStopThePage() throws Exception {
+        StubClient client = new StubClient(5, 2, 5);
+
+        ListCollector collector = new ListCollector();
+        newJob(client).fetch(collector);
+
+        Assert.assertEquals(Arrays.asList("1", "!", "3", "4", "!"),
+                collector.records);
+        Assert.assertEquals(Arrays.asList("1"), collector.checkpoints);
+    }
+
+    @Test
+    public void testRetrievalThreadsAreNamedDaemonsStoppedOnFailure()
+            throws Exception {
+        StubClient client = new StubClient(80) {
+            @Override
+            public GeoNetworkSearchResponse search(
+                    GeoNetworkSearchParams searchParams) throws Exception {
+                if (searchParams.getPage() > 0) {
+                    throw new IOException("search failed");
+                }
+                return super.search(searchParams);
+            }
+        };
+
+        ListCollector collector = new ListCollector();
+        try {
+            newJob(client).fetch(collector);
+            Assert.fail("the search error must be thrown");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Assert.assertEquals(ids(1, 40), collector.records);
+        Assert.assertFalse(client.threads.isEmpty());
+        for (Thread thread : client.threads) {
+            Assert.assertTrue(thread.getName(), thread.getName().startsWith(
+                    "ingest-1-geonetwork-"));
+            Assert.assertTrue(thread.isDaemon());
+            thread.join(10000);
+            Assert.assertFalse(thread.isAlive());
+        }
+    }
+}
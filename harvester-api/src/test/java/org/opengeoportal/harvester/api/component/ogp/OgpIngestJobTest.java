@@ -0,0 +1,203 @@
+package org.opengeoportal.harvester.api.component.ogp;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.solr.SolrJClient;
+import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.client.solr.SolrSearchParams;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
+import org.opengeoportal.harvester.api.component.MetadataIngester;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestOGP;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.exception.OgpSolrException;
+import org.opengeoportal.harvester.api.service.IngestJobStatusService;
+import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class OgpIngestJobTest {
+
+    /**
+     * Server answering the requests with {@link #page(String, int)}.
+     */
+    private abstract static class StubSolrServer extends HttpSolrServer {
+        StubSolrServer() {
+            super("http://localhost/solr");
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request)
+                throws SolrServerException, IOException {
+            SolrParams params = request.getParams();
+            return page(params.get(SolrSearchParams.CURSOR_MARK_PARAM),
+                    params.getInt("start", 0));
+        }
+
+        /**
+         * @param cursorMark the cursor mark requested or <code>null</code>
+         *            if the page is requested by offset.
+         * @param start the offset requested.
+         */
+        protected abstract NamedList<Object> page(String cursorMark, int start);
+    }
+
+    /**
+     * Collector keeping the LayerIds and the checkpoints in the order they
+     * are received.
+     */
+    private static class ListCollector implements RecordCollector<SolrRecord> {
+        private final List<String> records = new ArrayList<String>();
+        private final List<String> checkpoints = new ArrayList<String>();
+
+        @Override
+        public void collect(SolrRecord record) {
+            records.add(record.getLayerId());
+        }
+
+        @Override
+        public void failed(SolrRecord record, Exception e) {
+            records.add("!");
+        }
+
+        @Override
+        public void error(Exception e) {
+            records.add("error");
+        }
+
+        @Override
+        public void checkpoint(String position) {
+            checkpoints.add(position);
+        }
+    }
+
+    private static NamedList<Object> response(String nextCursorMark,
+            String... layerIds) {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.setNumFound(layerIds.length);
+        for (String layerId : layerIds) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SolrRecord.LAYER_ID, layerId);
+            documents.add(document);
+        }
+        NamedList<Object> response = new NamedList<Object>();
+        response.add("response", documents);
+        if (nextCursorMark != null) {
+            response.add(SolrSearchParams.NEXT_CURSOR_MARK, nextCursorMark);
+        }
+        return response;
+    }
+
+    private static HttpSolrServer.RemoteSolrException badRequest() {
+        return new HttpSolrServer.RemoteSolrException(400,
+                "Cursor functionality requires a sort containing a uniqueKey"
+                        + " field tie breaker", null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IAnswer<T> firstArgument() {
+        return new IAnswer<T>() {
+            @Override
+            public T answer() throws Throwable {
+                return (T) EasyMock.getCurrentArguments()[0];
+            }
+        };
+    }
+
+    private static OgpIngestJob newJob(final HttpSolrServer solrServer) {
+        IngestOGP ingest = new IngestOGP();
+        ReflectionTestUtils.setField(ingest, "id", 1L);
+        ingest.setName("test");
+        ingest.setUrl("http://localhost/solr");
+
+        OgpIngestJob job = new OgpIngestJob() {
+            @Override
+            protected SolrJClient createClient(String url) {
+                SolrJClient client = new SolrJClient(url);
+                ReflectionTestUtils.setField(client, "solrServer", solrServer);
+                return client;
+            }
+        };
+        IngestJobStatusService jobStatusService = createNiceMock(IngestJobStatusService.class);
+        expect(jobStatusService.save(anyObject(IngestJobStatus.class)))
+                .andAnswer(OgpIngestJobTest.<IngestJobStatus> firstArgument())
+                .anyTimes();
+        IngestReportService reportService = createNiceMock(IngestReportService.class);
+        expect(reportService.save(anyObject(IngestReport.class))).andAnswer(
+                OgpIngestJobTest.<IngestReport> firstArgument()).anyTimes();
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        replay(jobStatusService, reportService, metadataIngester);
+
+        job.setJobStatusService(jobStatusService);
+        job.setReportService(reportService);
+        job.init(UUID.randomUUID(), ingest, metadataIngester);
+        return job;
+    }
+
+    @Test
+    public void testRejectedCursorFallsBackToOffsetPaging() throws Exception {
+        StubSolrServer solrServer = new StubSolrServer() {
+            @Override
+            protected NamedList<Object> page(String cursorMark, int start) {
+                if (cursorMark != null) {
+                    throw badRequest();
+                }
+                return start == 0 ? response(null, "layer1", "layer2")
+                        : response(null);
+            }
+        };
+
+        ListCollector collector = new ListCollector();
+        newJob(solrServer).fetch(collector);
+
+        Assert.assertEquals(Arrays.asList("layer1", "layer2"),
+                collector.records);
+        Assert.assertEquals(Arrays.asList("offset:1", "offset:2"),
+                collector.checkpoints);
+    }
+
+    @Test
+    public void testCursorErrorAfterTheFirstPageFailsTheFetch()
+            throws Exception {
+        StubSolrServer solrServer = new StubSolrServer() {
+            @Override
+            protected NamedList<Object> page(String cursorMark, int start) {
+                if (SolrSearchParams.CURSOR_MARK_START.equals(cursorMark)) {
+                    return response("AoE1", "layer1");
+                }
+                throw badRequest();
+            }
+        };
+
+        ListCollector collector = new ListCollector();
+        try {
+            newJob(solrServer).fetch(collector);
+            Assert.fail("the cursor error must be thrown");
+        } catch (OgpSolrException e) {
+            Assert.assertTrue(e.getCause() instanceof HttpSolrServer.RemoteSolrException);
+        }
+
+        Assert.assertEquals(Arrays.asList("layer1"), collector.records);
+        Assert.assertEquals(Arrays.asList("cursor:AoE1"),
+                collector.checkpoints);
+    }
+}
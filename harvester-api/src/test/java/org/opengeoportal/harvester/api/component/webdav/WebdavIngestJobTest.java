@@ -0,0 +1,284 @@
+package org.opengeoportal.harvester.api.component.webdav;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.client.webdav.WebdavClient;
+import org.opengeoportal.harvester.api.component.IngestPipeline.RecordCollector;
+import org.opengeoportal.harvester.api.component.MetadataIngester;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestWebDav;
+import org.opengeoportal.harvester.api.service.IngestJobStatusService;
+import org.opengeoportal.harvester.api.service.IngestReportService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.github.sardine.DavResource;
+
+public class WebdavIngestJobTest {
+
+    private static final String ROOT = "http://localhost/dav/";
+
+    /**
+     * Client serving a fixed tree of folders.
+     */
+    private static class TreeClient extends WebdavClient {
+        private final Map<String, List<DavResource>> folders = new LinkedHashMap<String, List<DavResource>>();
+        private final boolean depthInfinity;
+
+        TreeClient(boolean depthInfinity) {
+            this.depthInfinity = depthInfinity;
+        }
+
+        TreeClient folder(String path, DavResource... children) {
+            List<DavResource> resources = new ArrayList<DavResource>();
+            resources.add(resource(path, null));
+            resources.addAll(Arrays.asList(children));
+            folders.put("http://localhost" + path, resources);
+            return this;
+        }
+
+        @Override
+        public List<DavResource> listAll(String url) throws IOException {
+            if (!depthInfinity) {
+                throw new IOException("403 Forbidden");
+            }
+            List<DavResource> resources = new ArrayList<DavResource>();
+            for (List<DavResource> folder : folders.values()) {
+                resources.addAll(folder);
+            }
+            return resources;
+        }
+
+        @Override
+        public List<DavResource> list(String url) throws IOException {
+            List<DavResource> resources = folders.get(url);
+            if (resources == null) {
+                throw new IOException("404 Not Found: " + url);
+            }
+            return resources;
+        }
+    }
+
+    /**
+     * Collector keeping the records, the errors and the threads calling it.
+     */
+    private static class ListCollector implements RecordCollector<String> {
+        private final List<String> records = Collections
+                .synchronizedList(new ArrayList<String>());
+        private final List<Exception> errors = Collections
+                .synchronizedList(new ArrayList<Exception>());
+        private final Set<Thread> threads = Collections
+                .synchronizedSet(new HashSet<Thread>());
+
+        @Override
+        public void collect(String record) {
+            threads.add(Thread.currentThread());
+            records.add(record);
+        }
+
+        @Override
+        public void failed(String record, Exception e) {
+            threads.add(Thread.currentThread());
+            errors.add(e);
+        }
+
+        @Override
+        public void error(Exception e) {
+            threads.add(Thread.currentThread());
+            errors.add(e);
+        }
+
+        @Override
+        public void checkpoint(String position) {
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    private static DavResource resource(String path, Date modified) {
+        boolean directory = path.endsWith("/");
+        DavResource res = createNiceMock(DavResource.class);
+        expect(res.isDirectory()).andReturn(directory).anyTimes();
+        expect(res.getPath()).andReturn(path).anyTimes();
+        expect(res.getHref()).andReturn(URI.create(path)).anyTimes();
+        expect(res.getContentType()).andReturn(
+                directory ? "httpd/unix-directory" : "application/xml")
+                .anyTimes();
+        expect(res.getModified()).andReturn(modified).anyTimes();
+        replay(res);
+        return res;
+    }
+
+    private static DavResource file(String path) {
+        return resource(path, new Date());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IAnswer<T> firstArgument() {
+        return new IAnswer<T>() {
+            @Override
+            public T answer() throws Throwable {
+                return (T) EasyMock.getCurrentArguments()[0];
+            }
+        };
+    }
+
+    private static IngestWebDav newIngest() {
+        IngestWebDav ingest = new IngestWebDav();
+        ReflectionTestUtils.setField(ingest, "id", 1L);
+        ingest.setName("test");
+        ingest.setUrl(ROOT);
+        return ingest;
+    }
+
+    private static WebdavIngestJob newJob(final WebdavClient client,
+            IngestWebDav ingest) {
+        WebdavIngestJob job = new WebdavIngestJob() {
+            @Override
+            protected WebdavClient createWebdavClient() {
+                return client;
+            }
+        };
+        IngestJobStatusService jobStatusService = createNiceMock(IngestJobStatusService.class);
+        expect(jobStatusService.save(anyObject(IngestJobStatus.class)))
+                .andAnswer(WebdavIngestJobTest.<IngestJobStatus> firstArgument())
+                .anyTimes();
+        IngestReportService reportService = createNiceMock(IngestReportService.class);
+        expect(reportService.save(anyObject(IngestReport.class))).andAnswer(
+                WebdavIngestJobTest.<IngestReport> firstArgument()).anyTimes();
+        MetadataIngester metadataIngester = createNiceMock(MetadataIngester.class);
+        replay(jobStatusService, reportService, metadataIngester);
+
+        job.setJobStatusService(jobStatusService);
+        job.setReportService(reportService);
+        job.init(UUID.randomUUID(), ingest, metadataIngester);
+        return job;
+    }
+
+    @Test
+    public void testFoldersAreListedInParallelAndCollectedInOrder()
+            throws Exception {
+        final CountDownLatch bothListing = new CountDownLatch(2);
+        TreeClient client = new TreeClient(false) {
+            @Override
+            public List<DavResource> list(String url) throws IOException {
+                if (!url.equals(ROOT)) {
+                    // Both subfolders must be listed at the same time
+                    bothListing.countDown();
+                    try {
+                        if (!bothListing.await(10, TimeUnit.SECONDS)) {
+                            throw new IOException("not listed in parallel");
+                        }
+                        if (url.endsWith("/sub1/")) {
+                            // Let sub2 finish first
+                            Thread.sleep(200);
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.list(url);
+            }
+        };
+        client.folder("/dav/", file("/dav/a.xml"), resource("/dav/sub1/",
+                null), resource("/dav/sub2/", null), file("/dav/d.xml"));
+        client.folder("/dav/sub1/", file("/dav/sub1/b.xml"));
+        client.folder("/dav/sub2/", file("/dav/sub2/c.xml"));
+
+        ListCollector collector = new ListCollector();
+        WebdavIngestJob job = newJob(client, newIngest());
+        job.fetch(collector);
+
+        Assert.assertEquals(Collections.emptyList(), collector.errors);
+        Assert.assertEquals(Arrays.asList(ROOT + "a.xml", ROOT + "d.xml",
+                ROOT + "sub1/b.xml", ROOT + "sub2/c.xml"), collector.records);
+        Assert.assertEquals(Collections.singleton(Thread.currentThread()),
+                collector.threads);
+        Assert.assertEquals(3, job.getProgress().getPagesFetched());
+    }
+
+    @Test
+    public void testFolderListingErrorsDoNotStopTheTraversal()
+            throws Exception {
+        TreeClient client = new TreeClient(false);
+        // sub1 cannot be listed
+        client.folder("/dav/", resource("/dav/sub1/", null), resource(
+                "/dav/sub2/", null), file("/dav/a.xml"));
+        client.folder("/dav/sub2/", file("/dav/sub2/c.xml"),
+                resource("/dav/sub2/sub3/", null));
+        client.folder("/dav/sub2/sub3/", file("/dav/sub2/sub3/e.xml"));
+
+        ListCollector collector = new ListCollector();
+        newJob(client, newIngest()).fetch(collector);
+
+        Assert.assertEquals(1, collector.errors.size());
+        Assert.assertTrue(collector.errors.get(0) instanceof IOException);
+        Assert.assertEquals(Arrays.asList(ROOT + "a.xml",
+                ROOT + "sub2/c.xml", ROOT + "sub2/sub3/e.xml"),
+                collector.records);
+        Assert.assertEquals(Collections.singleton(Thread.currentThread()),
+                collector.threads);
+    }
+
+    @Test
+    public void testTreeIsListedWithASingleRequestWhenAllowed()
+            throws Exception {
+        TreeClient client = new TreeClient(true) {
+            @Override
+            public List<DavResource> list(String url) throws IOException {
+                throw new AssertionError("folder listed: " + url);
+            }
+        };
+        client.folder("/dav/", file("/dav/a.xml"), resource("/dav/sub1/",
+                null));
+        client.folder("/dav/sub1/", file("/dav/sub1/b.xml"));
+
+        ListCollector collector = new ListCollector();
+        newJob(client, newIngest()).fetch(collector);
+
+        Assert.assertEquals(Arrays.asList(ROOT + "a.xml", ROOT
+                + "sub1/b.xml"), collector.records);
+    }
+
+    @Test
+    public void testFilesAreFilteredByModificationDate() throws Exception {
+        IngestWebDav ingest = newIngest();
+        ingest.setDateFrom(new DateTime(2013, 3, 1, 0, 0).toDate());
+        ingest.setDateTo(new DateTime(2013, 9, 1, 0, 0).toDate());
+        TreeClient client = new TreeClient(true);
+        client.folder("/dav/", resource("/dav/before.xml", new DateTime(
+                2013, 1, 1, 0, 0).toDate()), resource("/dav/from.xml",
+                ingest.getDateFrom()), resource("/dav/between.xml",
+                new DateTime(2013, 6, 1, 0, 0).toDate()), resource(
+                "/dav/to.xml", ingest.getDateTo()), resource(
+                "/dav/after.xml", new DateTime(2014, 1, 1, 0, 0).toDate()));
+
+        ListCollector collector = new ListCollector();
+        newJob(client, ingest).fetch(collector);
+
+        Assert.assertEquals(Arrays.asList(ROOT + "from.xml", ROOT
+                + "between.xml", ROOT + "to.xml"), collector.records);
+    }
+}
@@ -0,0 +1,104 @@
+package org.opengeoportal.harvester.api.metadata.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.exception.UnsupportedMetadataType;
+import org.opengeoportal.harvester.api.util.XmlUtil;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+public class MetadataTypeSnifferTest {
+
+    private byte[] resource(String name) throws Exception {
+        InputStream in = getClass().getResourceAsStream(name);
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSniffDocuments() throws Exception {
+        MetadataTypeSniffer sniffer = new MetadataTypeSniffer();
+        Assert.assertEquals(MetadataType.FGDC,
+                sniffer.sniff(resource("fgdc.xml")));
+        Assert.assertEquals(MetadataType.ISO_19139,
+                sniffer.sniff(resource("iso19139.xml")));
+    }
+
+    @Test
+    public void testStandardNameOutsideTheWindowIsUndecided()
+            throws Exception {
+        MetadataTypeSniffer sniffer = new MetadataTypeSniffer(1024);
+        Assert.assertNull(sniffer.sniff(resource("fgdc.xml")));
+        Assert.assertNull(sniffer.sniff(resource("iso19139.xml")));
+    }
+
+    @Test(expected = UnsupportedMetadataType.class)
+    public void testDocumentWithoutMetadataIsRejected() throws Exception {
+        new MetadataTypeSniffer().sniff("<html><body/></html>"
+                .getBytes(Charsets.UTF_8));
+    }
+
+    @Test(expected = UnsupportedMetadataType.class)
+    public void testDocumentWithoutMetadataInTheWindowIsRejected()
+            throws Exception {
+        StringBuilder content = new StringBuilder("<html><body>");
+        for (int i = 0; i < 100; i++) {
+            content.append("<p>paragraph ").append(i).append("</p>");
+        }
+        content.append("<metadata/></body></html>");
+        new MetadataTypeSniffer(1024).sniff(content.toString().getBytes(
+                Charsets.UTF_8));
+    }
+
+    @Test
+    public void testWrappedRecordIsDetected() throws Exception {
+        byte[] content = ("<csw:GetRecordByIdResponse"
+                + " xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\""
+                + " xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+                + " xmlns:gco=\"http://www.isotc211.org/2005/gco\">"
+                + "<gmd:MD_Metadata><gmd:metadataStandardName>"
+                + "<gco:CharacterString>ISO 19115:2003/19139"
+                + "</gco:CharacterString></gmd:metadataStandardName>"
+                + "</gmd:MD_Metadata></csw:GetRecordByIdResponse>")
+                .getBytes(Charsets.UTF_8);
+
+        Assert.assertEquals(MetadataType.ISO_19139,
+                new MetadataTypeSniffer().sniff(content));
+        Document document = XmlUtil.load(new ByteArrayInputStream(content));
+        Assert.assertEquals(MetadataType.ISO_19139,
+                XmlUtil.getMetadataType(document));
+    }
+
+    @Test
+    public void testWrappedRecordWithoutStandardNameIsUndecided()
+            throws Exception {
+        Assert.assertNull(new MetadataTypeSniffer().sniff(("<csw:GetRecordByIdResponse"
+                + " xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\">"
+                + "<metadata><idinfo/></metadata></csw:GetRecordByIdResponse>")
+                .getBytes(Charsets.UTF_8)));
+    }
+
+    @Test(expected = UnsupportedMetadataType.class)
+    public void testUnsupportedIsoStandardName() throws Exception {
+        new MetadataTypeSniffer()
+                .sniff(("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+                        + " xmlns:gco=\"http://www.isotc211.org/2005/gco\">"
+                        + "<gmd:metadataStandardName><gco:CharacterString>ISO 19115-3"
+                        + "</gco:CharacterString></gmd:metadataStandardName>"
+                        + "</gmd:MD_Metadata>").getBytes(Charsets.UTF_8));
+    }
+
+    @Test
+    public void testMalformedDocumentIsUndecided() throws Exception {
+        Assert.assertNull(new MetadataTypeSniffer().sniff("<metadata><idinfo>"
+                .getBytes(Charsets.UTF_8)));
+    }
+}
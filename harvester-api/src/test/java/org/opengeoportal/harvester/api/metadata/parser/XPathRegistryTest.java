@@ -0,0 +1,46 @@
+package org.opengeoportal.harvester.api.metadata.parser;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.xpath.XPathExpression;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.metadata.parser.BaseXmlMetadataParser.Tag;
+import org.opengeoportal.harvester.api.metadata.parser.FgdcMetadataParser.FgdcTag;
+
+public class XPathRegistryTest {
+
+    @Test
+    public void testExpressionsAreCompiledOncePerThread() throws Exception {
+        final XPathRegistry registry = new XPathRegistry(
+                Collections.<String, String> emptyMap(), FgdcTag.values());
+        final String title = FgdcTag.Title.getXPathName();
+
+        XPathExpression expression = registry.get(title);
+        Assert.assertSame(expression, registry.get(title));
+
+        final AtomicReference<XPathExpression> other = new AtomicReference<XPathExpression>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    other.set(registry.get(title));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(other.get());
+        Assert.assertNotSame(expression, other.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        new XPathRegistry(Collections.<String, String> emptyMap(),
+                new Tag[0], "/metadata/[");
+    }
+}
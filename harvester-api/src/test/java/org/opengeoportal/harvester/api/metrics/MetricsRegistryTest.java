@@ -0,0 +1,132 @@
+package org.opengeoportal.harvester.api.metrics;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testHistogramBucketsAndPercentiles() {
+        Histogram histogram = new Histogram(new long[] { 10, 100 });
+        for (int i = 0; i < 8; i++) {
+            histogram.update(5);
+        }
+        histogram.update(50);
+        histogram.update(500);
+
+        Assert.assertEquals(10, histogram.getCount());
+        Assert.assertEquals(590, histogram.getSum());
+        Assert.assertEquals(500, histogram.getMax());
+        Assert.assertArrayEquals(new long[] { 8, 1, 1 },
+                histogram.getBucketCounts());
+        Assert.assertEquals(10, histogram.getPercentile(0.5));
+        Assert.assertEquals(100, histogram.getPercentile(0.9));
+        Assert.assertEquals(500, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void testMetricsAreIdentifiedByNameAndTags() {
+        MetricsRegistry registry = new MetricsRegistry();
+        IngestMetrics metrics = registry.forIngest(1L, "CSW");
+
+        Assert.assertSame(metrics.timer("csw.getRecords"),
+                registry.timer("csw.getRecords", 1L, "CSW"));
+        Assert.assertNotSame(metrics.timer("csw.getRecords"),
+                registry.timer("csw.getRecords", 2L, "CSW"));
+        Assert.assertEquals(2, registry.getMetrics().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNameCannotBeUsedByTwoMetricTypes() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.timer("solr.add", null, "LOCAL_SOLR");
+        registry.histogram("solr.add", null, "LOCAL_SOLR");
+    }
+
+    @Test
+    public void testTextFormat() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.timer("csw.getRecords", 3L, "CSW").update(3,
+                TimeUnit.MILLISECONDS);
+        registry.histogram("solr.add.documents", null, "LOCAL_SOLR")
+                .update(40);
+
+        StringWriter writer = new StringWriter();
+        new MetricsTextFormat("harvester").write(registry, writer);
+        String text = writer.toString();
+
+        Assert.assertTrue(text
+                .contains("# TYPE harvester_csw_getrecords_seconds histogram\n"));
+        Assert.assertTrue(text
+                .contains("harvester_csw_getrecords_seconds_bucket{ingest=\"3\",source=\"CSW\",le=\"0.002\"} 0\n"));
+        Assert.assertTrue(text
+                .contains("harvester_csw_getrecords_seconds_bucket{ingest=\"3\",source=\"CSW\",le=\"0.005\"} 1\n"));
+        Assert.assertTrue(text
+                .contains("harvester_csw_getrecords_seconds_sum{ingest=\"3\",source=\"CSW\"} 0.003\n"));
+        Assert.assertTrue(text
+                .contains("harvester_solr_add_documents_bucket{source=\"LOCAL_SOLR\",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(text
+                .contains("harvester_solr_add_documents_count{source=\"LOCAL_SOLR\"} 1\n"));
+    }
+
+    @Test
+    public void testMetricsAreRegisteredInJmx() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setJmxDomain("org.opengeoportal.harvester.metrics.test");
+        registry.timer("geonetwork.search", 5L, "GEONETWORK").update(2,
+                TimeUnit.MILLISECONDS);
+        registry.startJmx();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName search = new ObjectName(
+                    "org.opengeoportal.harvester.metrics.test:type=Timer,name=geonetwork.search,source=GEONETWORK,ingest=5");
+            Assert.assertEquals(1L, server.getAttribute(search, "Count"));
+            Assert.assertEquals(2.0, (Double) server.getAttribute(search,
+                    "Max"), 0.001);
+
+            // Metrics created after starting JMX are registered too
+            registry.timer("geonetwork.retrieveMetadata", 5L, "GEONETWORK");
+            Assert.assertTrue(server.isRegistered(new ObjectName(
+                    "org.opengeoportal.harvester.metrics.test:type=Timer,name=geonetwork.retrieveMetadata,source=GEONETWORK,ingest=5")));
+        } finally {
+            registry.stopJmx();
+        }
+        Assert.assertTrue(server.queryNames(
+                new ObjectName("org.opengeoportal.harvester.metrics.test:*"),
+                null).isEmpty());
+    }
+
+    @Test
+    public void testIngestMetricsAreRemoved() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setJmxDomain("org.opengeoportal.harvester.metrics.test");
+        registry.timer("csw.getRecords", 1L, "CSW");
+        registry.histogram("csw.records", 1L, "CSW");
+        registry.timer("csw.getRecords", 2L, "CSW");
+        registry.timer("solr.add", null, "LOCAL_SOLR");
+        registry.startJmx();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName removed = new ObjectName(
+                    "org.opengeoportal.harvester.metrics.test:type=Timer,name=csw.getRecords,source=CSW,ingest=1");
+            Assert.assertTrue(server.isRegistered(removed));
+
+            Assert.assertEquals(2, registry.removeIngest(1L));
+
+            Assert.assertEquals(2, registry.getMetrics().size());
+            Assert.assertFalse(server.isRegistered(removed));
+            Assert.assertTrue(server.isRegistered(new ObjectName(
+                    "org.opengeoportal.harvester.metrics.test:type=Timer,name=csw.getRecords,source=CSW,ingest=2")));
+            Assert.assertEquals(0, registry.removeIngest(1L));
+        } finally {
+            registry.stopJmx();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.opengeoportal.harvester.api.scheduler;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestOGP;
+import org.opengeoportal.harvester.api.scheduler.IngestConcurrencyLimiter.Permit;
+
+public class IngestConcurrencyLimiterTest {
+
+    private Ingest newIngest(String url) {
+        Ingest ingest = new IngestOGP();
+        ingest.setUrl(url);
+        return ingest;
+    }
+
+    /**
+     * Acquire a permit in a new thread.
+     *
+     * @return queue receiving the permit when it is granted.
+     */
+    private BlockingQueue<Permit> acquireInBackground(
+            final IngestConcurrencyLimiter limiter, final Ingest ingest) {
+        final BlockingQueue<Permit> result = new LinkedBlockingQueue<Permit>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result.add(limiter.acquire(ingest));
+                } catch (InterruptedException e) {
+                    // test finished
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    private void waitForQueueDepth(IngestConcurrencyLimiter limiter,
+            int depth) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (limiter.getStatistics().getQueueDepth() != depth) {
+            Assert.assertTrue("Timeout waiting for the queue",
+                    System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testFullHostDoesNotBlockOtherHosts() throws Exception {
+        IngestConcurrencyLimiter limiter = new IngestConcurrencyLimiter();
+        limiter.setMaxConcurrentIngests(2);
+        limiter.setMaxConcurrentIngestsPerHost(1);
+
+        Permit first = limiter.acquire(newIngest("http://Host-A/solr"));
+        Assert.assertEquals("host-a", first.getHost());
+        BlockingQueue<Permit> second = acquireInBackground(limiter,
+                newIngest("http://host-a:8080/geonetwork"));
+        waitForQueueDepth(limiter, 1);
+
+        // Queued after the second host-a ingest but runs first
+        Permit other = limiter.acquire(newIngest("http://host-b/csw"));
+        IngestConcurrencyLimiter.Statistics statistics = limiter
+                .getStatistics();
+        Assert.assertEquals(2, statistics.getRunning());
+        Assert.assertEquals(1, statistics.getQueueDepth());
+        Assert.assertEquals(Integer.valueOf(1), statistics.getWaitingByHost()
+                .get("host-a"));
+        Assert.assertNull(second.poll(100, TimeUnit.MILLISECONDS));
+
+        limiter.release(other);
+        Assert.assertNull(second.poll(100, TimeUnit.MILLISECONDS));
+        limiter.release(first);
+        Permit secondPermit = second.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(secondPermit);
+        Assert.assertTrue(secondPermit.getWaitMs() > 0);
+
+        limiter.release(secondPermit);
+        statistics = limiter.getStatistics();
+        Assert.assertEquals(0, statistics.getRunning());
+        Assert.assertEquals(3, statistics.getGranted());
+        Assert.assertTrue(statistics.getRunningByHost().isEmpty());
+    }
+
+    @Test
+    public void testGlobalLimit() throws Exception {
+        IngestConcurrencyLimiter limiter = new IngestConcurrencyLimiter();
+        limiter.setMaxConcurrentIngests(1);
+        limiter.setMaxConcurrentIngestsPerHost(5);
+
+        Permit first = limiter.acquire(newIngest("http://host-a/solr"));
+        BlockingQueue<Permit> second = acquireInBackground(limiter,
+                newIngest("http://host-b/solr"));
+        waitForQueueDepth(limiter, 1);
+        Assert.assertNull(second.poll(100, TimeUnit.MILLISECONDS));
+
+        // Releasing twice does not free two slots
+        limiter.release(first);
+        limiter.release(first);
+        Assert.assertNotNull(second.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limiter.getStatistics().getRunning());
+    }
+
+    @Test
+    public void testInterruptedIngestLeavesTheQueue() throws Exception {
+        final IngestConcurrencyLimiter limiter = new IngestConcurrencyLimiter();
+        limiter.setMaxConcurrentIngests(1);
+
+        Permit first = limiter.acquire(newIngest("http://host-a/solr"));
+        final BlockingQueue<Boolean> interrupted = new LinkedBlockingQueue<Boolean>();
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(newIngest("http://host-b/solr"));
+                    interrupted.add(false);
+                } catch (InterruptedException e) {
+                    interrupted.add(true);
+                }
+            }
+        };
+        waiting.start();
+        waitForQueueDepth(limiter, 1);
+        waiting.interrupt();
+
+        Assert.assertTrue(interrupted.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, limiter.getStatistics().getQueueDepth());
+        limiter.release(first);
+        Assert.assertEquals(0, limiter.getStatistics().getRunning());
+    }
+}
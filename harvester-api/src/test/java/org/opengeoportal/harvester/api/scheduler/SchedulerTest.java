@@ -34,6 +34,9 @@ import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.Map;
 
 import org.junit.Assert;
@@ -94,6 +97,9 @@ public class SchedulerTest {
 	@Autowired
 	private IngestService ingestService;
 
+	@Autowired
+	private Scheduler scheduler;
+
 	/**
 	 * Dummy metadata ingester.
 	 */
@@ -185,4 +191,27 @@ public class SchedulerTest {
 
 		// verify(metadataIngester, atLeastOnce()).ingest(any(Metadata.class));
 	}
+
+	@Test
+	@DatabaseSetup("schedulerData.xml")
+	public void nextRunFollowsScheduleAndUnscheduleTest() throws Exception {
+		Ingest ingest = ingestService.findById(11L);
+		Calendar beginDate = Calendar.getInstance();
+		beginDate.add(Calendar.DAY_OF_MONTH, 2);
+		beginDate.set(Calendar.MILLISECOND, 0);
+		ingest.setBeginDate(beginDate.getTime());
+
+		Assert.assertTrue(scheduler.scheduleIngest(ingest));
+		try {
+			Map<Long, Date> nextRuns = scheduler.getNextRuns(Arrays.asList(
+					10L, 11L));
+			Assert.assertEquals(beginDate.getTime(), nextRuns.get(11L));
+			Assert.assertFalse(nextRuns.containsKey(10L));
+			Assert.assertEquals(beginDate.getTime(),
+					scheduler.getNextRun(ingest));
+		} finally {
+			scheduler.unschedule(ingest);
+		}
+		Assert.assertTrue(scheduler.getNextRuns(Arrays.asList(11L)).isEmpty());
+	}
 }
@@ -0,0 +1,77 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DbUnitTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestHighWaterMarkServiceImplTest {
+
+	@Autowired
+	private IngestService ingestService;
+
+	@Autowired
+	private IngestHighWaterMarkService highWaterMarkService;
+
+	@Test
+	@DatabaseSetup("ingestData.xml")
+	public void testGetIncrementalFrom() {
+		Ingest ingest = ingestService.findById(2L);
+		DateTime firstRun = new DateTime(2014, 1, 1, 0, 0);
+
+		// Not incremental: always a full run
+		highWaterMarkService.update(ingest, firstRun.toDate(), true);
+		Assert.assertNull(highWaterMarkService.getIncrementalFrom(ingest,
+				firstRun.plusDays(1).toDate()));
+
+		// Incremental without full run interval
+		ingest.setIncremental(true);
+		ingest.setIncrementalOverlap(0);
+		Assert.assertEquals(firstRun.toDate(), highWaterMarkService
+				.getIncrementalFrom(ingest, firstRun.plusDays(1).toDate()));
+
+		// An incremental run moves the mark but not the last full run
+		DateTime secondRun = firstRun.plusDays(1);
+		highWaterMarkService.update(ingest, secondRun.toDate(), false);
+		ingest.setFullRunInterval(7);
+		Assert.assertEquals(secondRun.toDate(), highWaterMarkService
+				.getIncrementalFrom(ingest, firstRun.plusDays(6).toDate()));
+		Assert.assertNull(highWaterMarkService.getIncrementalFrom(ingest,
+				firstRun.plusDays(7).toDate()));
+
+		// The overlap moves the mark back
+		ingest.setIncrementalOverlap(30);
+		Assert.assertEquals(secondRun.minusMinutes(30).toDate(),
+				highWaterMarkService.getIncrementalFrom(ingest, firstRun
+						.plusDays(6).toDate()));
+		ingest.setIncrementalOverlap(null);
+		Assert.assertEquals(
+				secondRun.minusMinutes(
+						IngestHighWaterMarkServiceImpl.DEFAULT_INCREMENTAL_OVERLAP)
+						.toDate(), highWaterMarkService.getIncrementalFrom(
+						ingest, firstRun.plusDays(6).toDate()));
+
+		highWaterMarkService.deleteByIngestId(ingest.getId());
+		Assert.assertNull(highWaterMarkService.getIncrementalFrom(ingest,
+				new Date()));
+	}
+}
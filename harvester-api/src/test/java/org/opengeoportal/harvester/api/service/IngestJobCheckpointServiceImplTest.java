@@ -0,0 +1,170 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
+import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorMetadata;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.google.common.collect.Maps;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DbUnitTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestJobCheckpointServiceImplTest {
+
+	@Autowired
+	private IngestService ingestService;
+
+	@Autowired
+	private IngestJobStatusService jobStatusService;
+
+	@Autowired
+	private IngestReportService reportService;
+
+	@Autowired
+	private IngestReportErrorService errorService;
+
+	@Autowired
+	private IngestReportWarningsService warningService;
+
+	@Autowired
+	private IngestJobCheckpointService checkpointService;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private IngestReportError saveError(IngestReport report, String field) {
+		return saveError(report, field, null);
+	}
+
+	private IngestReportError saveError(IngestReport report, String field,
+			String metadata) {
+		IngestReportError error = new IngestReportError();
+		error.setReport(report);
+		error.setType(IngestReportErrorType.REQUIRED_FIELD_ERROR);
+		error.setField(field);
+		error.setMetadata(metadata);
+		return errorService.save(error);
+	}
+
+	private IngestReport newReport(Ingest ingest) {
+		IngestJobStatus jobStatus = new IngestJobStatus();
+		jobStatus.setIngest(ingest);
+		jobStatus = jobStatusService.save(jobStatus);
+		IngestReport report = new IngestReport();
+		report.setJobStatus(jobStatus);
+		return reportService.save(report);
+	}
+
+	private void saveWarningCount(IngestReport report, long count) {
+		Map<String, Long> counts = Maps.newHashMap();
+		counts.put("abstract", count);
+		warningService.saveWarningCounts(report,
+				IngestReportWarningType.UNREQUIRED_FIELD_WARNING, counts);
+	}
+
+	@Test
+	@DatabaseSetup("ingestData.xml")
+	public void testEntriesSavedAfterTheCheckpointAreDiscarded() {
+		Ingest ingest = ingestService.findById(1L);
+		IngestJobStatus jobStatus = new IngestJobStatus();
+		jobStatus.setIngest(ingest);
+		jobStatus = jobStatusService.save(jobStatus);
+		IngestReport report = new IngestReport();
+		report.setJobStatus(jobStatus);
+		report = reportService.save(report);
+
+		saveError(report, "title");
+		saveWarningCount(report, 3L);
+		report.setPublicRecords(40L);
+		IngestJobCheckpoint checkpoint = new IngestJobCheckpoint();
+		checkpoint.setIngest(ingest);
+		checkpoint.setJobStatus(jobStatus);
+		checkpoint.setReport(report);
+		checkpoint.setPosition("41");
+		checkpoint.saveCounters(report);
+		checkpointService.save(checkpoint);
+
+		// Work done after the checkpoint
+		saveError(report, "title");
+		saveError(report, "abstract");
+		saveWarningCount(report, 2L);
+		report.setPublicRecords(60L);
+
+		checkpoint = checkpointService.findByIngestId(ingest.getId());
+		Assert.assertNotNull(checkpoint);
+		Assert.assertEquals("41", checkpoint.getPosition());
+		checkpointService.discardEntriesAfter(checkpoint);
+		checkpoint.restoreCounters(report);
+
+		Assert.assertEquals(40L, report.getPublicRecords());
+		Assert.assertEquals(Long.valueOf(1L), errorService
+				.getCountErrorTypesByReportId(report.getId()).get(
+						IngestReportErrorType.REQUIRED_FIELD_ERROR));
+		Assert.assertEquals(Long.valueOf(3L), warningService
+				.getCountWarningTypesByReportId(report.getId()).get(
+						IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+
+		checkpointService.deleteByIngestId(ingest.getId());
+		Assert.assertNull(checkpointService.findByIngestId(ingest.getId()));
+	}
+
+	@Test
+	@DatabaseSetup("ingestData.xml")
+	public void testMetadataOfDiscardedErrorsIsDeleted() {
+		Ingest ingest = ingestService.findById(1L);
+		IngestReport report = newReport(ingest);
+		IngestReport otherReport = newReport(ingest);
+
+		String kept = saveError(report, "title", "<metadata>kept</metadata>")
+				.getMetadataBlob().getHash();
+		IngestJobCheckpoint checkpoint = new IngestJobCheckpoint();
+		checkpoint.setIngest(ingest);
+		checkpoint.setJobStatus(report.getJobStatus());
+		checkpoint.setReport(report);
+		checkpoint.setPosition("41");
+		checkpoint.saveCounters(report);
+		checkpoint = checkpointService.save(checkpoint);
+
+		saveError(report, "title", "<metadata>kept</metadata>");
+		String shared = saveError(report, "title",
+				"<metadata>shared</metadata>").getMetadataBlob().getHash();
+		saveError(otherReport, "title", "<metadata>shared</metadata>");
+		String discarded = saveError(report, "title",
+				"<metadata>discarded</metadata>").getMetadataBlob().getHash();
+
+		checkpointService.discardEntriesAfter(checkpoint);
+
+		Assert.assertNotNull(entityManager.find(
+				IngestReportErrorMetadata.class, kept));
+		Assert.assertNotNull(entityManager.find(
+				IngestReportErrorMetadata.class, shared));
+		Assert.assertNull(entityManager.find(IngestReportErrorMetadata.class,
+				discarded));
+		checkpointService.deleteByIngestId(ingest.getId());
+	}
+}
@@ -0,0 +1,50 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DbUnitTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestJobStatusServiceImplTest {
+
+	@Autowired
+	private IngestJobStatusService jobStatusService;
+
+	@Test
+	@DatabaseSetup("jobStatusData.xml")
+	public void testLastStatusOfSeveralIngests() {
+		Map<Long, IngestJobStatusValue> lastStatuses = jobStatusService
+				.findLastStatusValuesForIngests(Arrays.asList(10L, 11L, 12L));
+
+		Assert.assertEquals(2, lastStatuses.size());
+		// Running executions are not finished
+		Assert.assertEquals(IngestJobStatusValue.SUCCESSED,
+				lastStatuses.get(10L));
+		// Executions ended at the same time, the last one saved wins
+		Assert.assertEquals(IngestJobStatusValue.FAILED,
+				lastStatuses.get(11L));
+		Assert.assertEquals(jobStatusService.findLastStatusForIngest(10L)
+				.getStatus(), lastStatuses.get(10L));
+		Assert.assertEquals(jobStatusService.findLastStatusForIngest(11L)
+				.getStatus(), lastStatuses.get(11L));
+	}
+}
@@ -0,0 +1,150 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestReportErrorServiceImplTest {
+
+	@Autowired
+	private IngestReportService reportService;
+
+	@Autowired
+	private IngestReportErrorService errorService;
+
+	private IngestReportError saveError(IngestReport report, String metadata) {
+		IngestReportError error = new IngestReportError();
+		error.setReport(report);
+		error.setType(IngestReportErrorType.REQUIRED_FIELD_ERROR);
+		error.setField("title");
+		error.setMetadata(metadata);
+		return errorService.save(error);
+	}
+
+	private Map<String, String> readZip(byte[] zip) throws Exception {
+		Map<String, String> entries = Maps.newHashMap();
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+		for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in
+				.getNextEntry()) {
+			entries.put(entry.getName(),
+					new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+		}
+		return entries;
+	}
+
+	@Test
+	public void testMetadataIsStoredOnce() throws Exception {
+		IngestReport report = reportService.save(new IngestReport());
+		IngestReportError first = saveError(report, "<metadata>a</metadata>");
+		IngestReportError second = saveError(report, "<metadata>a</metadata>");
+		IngestReportError third = saveError(report, "<metadata>b</metadata>");
+
+		Assert.assertEquals(first.getMetadataBlob().getHash(), second
+				.getMetadataBlob().getHash());
+		Assert.assertFalse(first.getMetadataBlob().getHash()
+				.equals(third.getMetadataBlob().getHash()));
+
+		// The metadata is decompressed when the errors are exported
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		errorService.writeErrorZipForIngest(report.getId(), out,
+				new String[] { "title" }, null, null);
+		out.close();
+
+		Map<String, String> entries = readZip(bytes.toByteArray());
+		Assert.assertEquals(3, entries.size());
+		Assert.assertEquals("<metadata>b</metadata>",
+				entries.get("required_field_error/title/error_" + third.getId()
+						+ ".xml"));
+	}
+
+	@Test
+	public void testSameMetadataCanBeSavedConcurrently() throws Exception {
+		final IngestReport report = reportService.save(new IngestReport());
+		final String metadata = "<metadata>" + System.nanoTime()
+				+ "</metadata>";
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<IngestReportError>> saved = Lists.newArrayList();
+		try {
+			for (int i = 0; i < threads; i++) {
+				saved.add(executor.submit(new Callable<IngestReportError>() {
+					@Override
+					public IngestReportError call() throws Exception {
+						start.await();
+						return saveError(report, metadata);
+					}
+				}));
+			}
+			start.countDown();
+			String hash = null;
+			for (Future<IngestReportError> error : saved) {
+				// Fails if any of the saves failed
+				String errorHash = error.get(30, TimeUnit.SECONDS)
+						.getMetadataBlob().getHash();
+				if (hash == null) {
+					hash = errorHash;
+				}
+				Assert.assertEquals(hash, errorHash);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExportStopsAtTheErrorLimit() throws Exception {
+		IngestReport report = reportService.save(new IngestReport());
+		for (int i = 0; i < 5; i++) {
+			saveError(report, "<metadata>" + i + "</metadata>");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		boolean complete = errorService.writeErrorZipForIngest(
+				report.getId(), out, new String[] { "title" }, null, null, 2L,
+				0L);
+		out.close();
+
+		Assert.assertFalse(complete);
+		Map<String, String> entries = readZip(bytes.toByteArray());
+		// 2 errors and the truncation notice
+		Assert.assertEquals(3, entries.size());
+		Assert.assertTrue(entries.containsKey("TRUNCATED.txt"));
+	}
+}
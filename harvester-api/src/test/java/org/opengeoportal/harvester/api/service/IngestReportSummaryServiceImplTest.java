@@ -0,0 +1,107 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.google.common.collect.Maps;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestReportSummaryServiceImplTest {
+
+	@Autowired
+	private IngestReportService reportService;
+
+	@Autowired
+	private IngestReportErrorService errorService;
+
+	@Autowired
+	private IngestReportWarningsService warningService;
+
+	@Autowired
+	private IngestReportSummaryService summaryService;
+
+	private void saveError(IngestReport report, IngestReportErrorType type,
+			String field) {
+		IngestReportError error = new IngestReportError();
+		error.setReport(report);
+		error.setType(type);
+		error.setField(field);
+		errorService.save(error);
+	}
+
+	@Test
+	public void testFinishedReportIsSummarizedOnce() {
+		IngestReport report = reportService.save(new IngestReport());
+		saveError(report, IngestReportErrorType.REQUIRED_FIELD_ERROR, "title");
+		saveError(report, IngestReportErrorType.REQUIRED_FIELD_ERROR, "title");
+		saveError(report, IngestReportErrorType.SYSTEM_ERROR, "IOException");
+		Map<String, Long> counts = Maps.newHashMap();
+		counts.put("abstract", 7L);
+		warningService.saveWarningCounts(report,
+				IngestReportWarningType.UNREQUIRED_FIELD_WARNING, counts);
+
+		IngestReportSummary summary = summaryService.getSummary(report);
+		Assert.assertTrue(report.isSummaryComplete());
+		Assert.assertEquals(2L, summary
+				.getErrorCount(IngestReportErrorType.REQUIRED_FIELD_ERROR));
+		Assert.assertEquals(1L,
+				summary.getErrorCount(IngestReportErrorType.SYSTEM_ERROR));
+		Assert.assertEquals(0L,
+				summary.getErrorCount(IngestReportErrorType.WEB_SERVICE_ERROR));
+		Assert.assertEquals(Long.valueOf(7L), summary.getWarningCountsByField(
+				IngestReportWarningType.UNREQUIRED_FIELD_WARNING).get(
+				"abstract"));
+
+		// Complete summaries are read from the stored entries
+		saveError(report, IngestReportErrorType.REQUIRED_FIELD_ERROR, "title");
+		summary = summaryService.getSummary(report);
+		Assert.assertEquals(Long.valueOf(2L), summary.getErrorCountsByField(
+				IngestReportErrorType.REQUIRED_FIELD_ERROR).get("title"));
+		Assert.assertEquals(Long.valueOf(7L), summary.getWarningCountsByField(
+				IngestReportWarningType.UNREQUIRED_FIELD_WARNING).get(
+				"abstract"));
+	}
+
+	@Test
+	public void testSavedSummaryReplacesThePreviousOne() {
+		IngestReport report = reportService.save(new IngestReport());
+		IngestReportSummary summary = new IngestReportSummary();
+		summary.addError(IngestReportErrorType.REQUIRED_FIELD_ERROR, "title",
+				3L);
+		summary.addError(IngestReportErrorType.WEB_SERVICE_ERROR, null, 1L);
+		summaryService.saveSummary(report, summary);
+
+		IngestReportSummary next = new IngestReportSummary();
+		next.addError(IngestReportErrorType.REQUIRED_FIELD_ERROR, "title", 5L);
+		next.addWarning(IngestReportWarningType.UNREQUIRED_FIELD_WARNING,
+				"abstract", 2L);
+		summaryService.saveSummary(report, next);
+		report.setSummaryComplete(true);
+
+		IngestReportSummary stored = summaryService.getSummary(report);
+		Assert.assertEquals(5L, stored
+				.getErrorCount(IngestReportErrorType.REQUIRED_FIELD_ERROR));
+		Assert.assertEquals(0L,
+				stored.getErrorCount(IngestReportErrorType.WEB_SERVICE_ERROR));
+		Assert.assertEquals(2L, stored
+				.getWarningCount(IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+	}
+}
@@ -0,0 +1,61 @@
+package org.opengeoportal.harvester.api.service;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+
+import com.google.common.collect.Maps;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:spring/test-data-config.xml" })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class,
+		DirtiesContextTestExecutionListener.class,
+		TransactionalTestExecutionListener.class })
+public class IngestReportWarningServiceImplTest {
+
+	@Autowired
+	private IngestReportService reportService;
+
+	@Autowired
+	private IngestReportWarningsService warningService;
+
+	@Test
+	public void testCountersAndWarningsAreAdded() {
+		IngestReport report = reportService.save(new IngestReport());
+
+		Map<String, Long> counts = Maps.newHashMap();
+		counts.put("title", 3L);
+		counts.put("abstract", 5L);
+		warningService.saveWarningCounts(report,
+				IngestReportWarningType.UNREQUIRED_FIELD_WARNING, counts);
+
+		// Warning saved one by one, as in reports created before the counters
+		IngestReportWarning warning = new IngestReportWarning();
+		warning.setReport(report);
+		warning.setType(IngestReportWarningType.UNREQUIRED_FIELD_WARNING);
+		warning.setField("title");
+		warningService.save(warning);
+
+		Map<String, Long> byField = warningService
+				.getCountWarningsByReportId(report.getId());
+		Assert.assertEquals(Long.valueOf(4L), byField.get("title"));
+		Assert.assertEquals(Long.valueOf(5L), byField.get("abstract"));
+
+		Map<IngestReportWarningType, Long> byType = warningService
+				.getCountWarningTypesByReportId(report.getId());
+		Assert.assertEquals(Long.valueOf(9L),
+				byType.get(IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+	}
+}
@@ -0,0 +1,38 @@
+package org.opengeoportal.harvester.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so the results include
+ * the allocation rate (<code>gc.alloc.rate.norm</code> is the number of bytes
+ * allocated per operation) next to the throughput.
+ * <p>
+ * Accepts the usual JMH command line options, e.g.
+ * <code>java -jar benchmarks.jar MetadataParserBenchmark -rf json</code>.
+ * </p>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+
+        Options options = new OptionsBuilder().parent(commandLine)
+                .addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package org.opengeoportal.harvester.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.impl.XMLResponseParser;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.NamedList;
+import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.opengeoportal.harvester.api.metadata.parser.OgpMetadataParser;
+import org.opengeoportal.harvester.api.metadata.parser.XmlMetadataParserProvider;
+import org.opengeoportal.harvester.api.util.XmlUtil;
+import org.w3c.dom.Document;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Metadata records bundled with the benchmarks. The records are read from the
+ * classpath once and kept in memory so the benchmarks do not measure I/O.
+ */
+public enum Corpus {
+    FGDC("fgdc-1.xml", "fgdc-2.xml"),
+    ISO_19139("iso19139-1.xml", "iso19139-2.xml", "iso19139-3.xml"),
+    /**
+     * OGP Solr records, stored as a Solr XML response.
+     */
+    OGP("ogp.xml");
+
+    private final String[] resources;
+
+    private Corpus(String... resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * @return the raw content of every record of this standard.
+     * @throws IOException if a record cannot be read.
+     */
+    public List<byte[]> getBytes() throws IOException {
+        List<byte[]> result = new ArrayList<byte[]>();
+        for (String resource : resources) {
+            result.add(read(resource));
+        }
+        return result;
+    }
+
+    /**
+     * @return every record of this standard as a DOM document.
+     * @throws Exception if a record cannot be read or parsed.
+     */
+    public List<Document> getDocuments() throws Exception {
+        if (this == OGP) {
+            throw new IllegalStateException(
+                    "OGP records are Solr records, not XML documents");
+        }
+        List<Document> result = new ArrayList<Document>();
+        for (byte[] content : getBytes()) {
+            result.add(XmlUtil.load(new ByteArrayInputStream(content)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the Solr records of the OGP corpus.
+     * @throws IOException if the records cannot be read.
+     */
+    public List<SolrRecord> getSolrRecords() throws IOException {
+        if (this != OGP) {
+            throw new IllegalStateException("Only OGP records are Solr records");
+        }
+        List<SolrRecord> result = new ArrayList<SolrRecord>();
+        DocumentObjectBinder binder = new DocumentObjectBinder();
+        for (byte[] content : getBytes()) {
+            NamedList<Object> response = new XMLResponseParser()
+                    .processResponse(new ByteArrayInputStream(content), "UTF-8");
+            SolrDocumentList documents = (SolrDocumentList) response
+                    .get("response");
+            result.addAll(binder.getBeans(SolrRecord.class, documents));
+        }
+        return result;
+    }
+
+    /**
+     * @return every record of this standard parsed with the parser used by
+     * the ingests.
+     * @throws Exception if a record cannot be read or parsed.
+     */
+    public List<Metadata> getMetadata() throws Exception {
+        List<Metadata> result = new ArrayList<Metadata>();
+        if (this == OGP) {
+            OgpMetadataParser parser = new OgpMetadataParser();
+            for (SolrRecord record : getSolrRecords()) {
+                result.add(parser.parse(record).getMetadata());
+            }
+        } else {
+            XmlMetadataParserProvider provider = new XmlMetadataParserProvider();
+            for (Document document : getDocuments()) {
+                result.add(provider.getMetadataParser(document).parse(document)
+                        .getMetadata());
+            }
+        }
+        return result;
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("corpus/"
+                + resource);
+        if (in == null) {
+            throw new IOException("Corpus record not found: " + resource);
+        }
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.opengeoportal.harvester.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.component.MetadataValidator;
+import org.opengeoportal.harvester.api.domain.IngestReport;
+import org.opengeoportal.harvester.api.domain.IngestReportError;
+import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
+import org.opengeoportal.harvester.api.domain.IngestReportWarning;
+import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.opengeoportal.harvester.api.domain.IngestWebDav;
+import org.opengeoportal.harvester.api.metadata.model.Metadata;
+import org.opengeoportal.harvester.api.service.IngestReportErrorService;
+import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
+
+/**
+ * Steps run by the ingest jobs on every parsed record before sending it to
+ * Solr: validation of the required fields and mapping to {@link SolrRecord}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetadataIngestBenchmark {
+
+    @Param({ "FGDC", "ISO_19139", "OGP" })
+    private Corpus corpus;
+
+    private List<Metadata> metadata;
+    private MetadataValidator validator;
+    private IngestReport report;
+
+    @Setup
+    public void setup() throws Exception {
+        metadata = corpus.getMetadata();
+
+        // Some required fields and the rest as warnings, so both paths of
+        // the validator are measured
+        IngestWebDav ingest = new IngestWebDav();
+        ingest.addRequiredField("geographicExtent");
+        ingest.addRequiredField("dataType");
+        validator = new MetadataValidator(ingest, new NullErrorService(),
+                new NullWarningsService());
+        report = new IngestReport();
+    }
+
+    @Benchmark
+    public void validate(Blackhole blackhole) {
+        for (Metadata record : metadata) {
+            blackhole.consume(validator.validate(record, report));
+        }
+    }
+
+    @Benchmark
+    public void buildSolrRecord(Blackhole blackhole) {
+        for (Metadata record : metadata) {
+            blackhole.consume(SolrRecord.build(record));
+        }
+    }
+
+    /**
+     * Discards the errors so the database is not measured.
+     */
+    private static class NullErrorService implements IngestReportErrorService {
+
+        @Override
+        public IngestReportError save(IngestReportError reportError) {
+            return reportError;
+        }
+
+        @Override
+        public Map<IngestReportErrorType, Long> getCountErrorTypesByReportId(
+                Long reportId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, Long> getCountErrorsByReportId(Long id,
+                IngestReportErrorType errorType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeErrorZipForIngest(Long reportId,
+                ZipOutputStream zipOutputStream, String[] requiredFieldErrors,
+                String[] webserviceErrors, String[] systemErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean writeErrorZipForIngest(Long reportId,
+                ZipOutputStream zipOutputStream, String[] requiredFieldErrors,
+                String[] webserviceErrors, String[] systemErrors,
+                long maxErrors, long maxMillis) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Discards the warnings so the database is not measured.
+     */
+    private static class NullWarningsService implements
+            IngestReportWarningsService {
+
+        @Override
+        public IngestReportWarning save(IngestReportWarning reportWarning) {
+            return reportWarning;
+        }
+
+        @Override
+        public void saveWarningCounts(IngestReport report,
+                IngestReportWarningType warningType,
+                Map<String, Long> countsByField) {
+        }
+
+        @Override
+        public Map<String, Long> getCountWarningsByReportId(Long id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<IngestReportWarningType, Long> getCountWarningTypesByReportId(
+                Long reportId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
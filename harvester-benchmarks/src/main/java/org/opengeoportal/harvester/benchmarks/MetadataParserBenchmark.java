@@ -0,0 +1,75 @@
+package org.opengeoportal.harvester.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opengeoportal.harvester.api.client.solr.SolrRecord;
+import org.opengeoportal.harvester.api.metadata.parser.BaseXmlMetadataParser;
+import org.opengeoportal.harvester.api.metadata.parser.FgdcMetadataParser;
+import org.opengeoportal.harvester.api.metadata.parser.Iso19139MetadataParser;
+import org.opengeoportal.harvester.api.metadata.parser.OgpMetadataParser;
+import org.w3c.dom.Document;
+
+/**
+ * Metadata parsers. The XML parsers work on already loaded documents, see
+ * {@link XmlUtilBenchmark#load} for the cost of loading them. OGP records are
+ * already bound to {@link SolrRecord} instances.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetadataParserBenchmark {
+
+    @Param({ "FGDC", "ISO_19139", "OGP" })
+    private Corpus corpus;
+
+    private List<Document> documents = Collections.emptyList();
+    private BaseXmlMetadataParser parser;
+
+    private List<SolrRecord> solrRecords = Collections.emptyList();
+    private OgpMetadataParser ogpParser;
+
+    @Setup
+    public void setup() throws Exception {
+        switch (corpus) {
+        case FGDC:
+            documents = corpus.getDocuments();
+            parser = new FgdcMetadataParser();
+            break;
+        case ISO_19139:
+            documents = corpus.getDocuments();
+            parser = new Iso19139MetadataParser();
+            break;
+        default:
+            solrRecords = corpus.getSolrRecords();
+            ogpParser = new OgpMetadataParser();
+            break;
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (Document document : documents) {
+            blackhole.consume(parser.parse(document));
+        }
+        for (SolrRecord record : solrRecords) {
+            blackhole.consume(ogpParser.parse(record));
+        }
+    }
+}
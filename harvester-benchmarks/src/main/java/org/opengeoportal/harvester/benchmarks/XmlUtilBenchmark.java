@@ -0,0 +1,67 @@
+package org.opengeoportal.harvester.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opengeoportal.harvester.api.util.XmlUtil;
+import org.w3c.dom.Document;
+
+/**
+ * {@link XmlUtil} operations run on every record read by the XML based
+ * ingests. Each operation processes all the records of the corpus of a
+ * standard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XmlUtilBenchmark {
+
+    @Param({ "FGDC", "ISO_19139" })
+    private Corpus corpus;
+
+    private List<byte[]> records;
+    private List<Document> documents;
+
+    @Setup
+    public void setup() throws Exception {
+        records = corpus.getBytes();
+        documents = corpus.getDocuments();
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) throws Exception {
+        for (byte[] record : records) {
+            blackhole.consume(XmlUtil.load(new ByteArrayInputStream(record)));
+        }
+    }
+
+    @Benchmark
+    public void getMetadataType(Blackhole blackhole) throws Exception {
+        for (Document document : documents) {
+            blackhole.consume(XmlUtil.getMetadataType(document));
+        }
+    }
+
+    @Benchmark
+    public void getFullText(Blackhole blackhole) {
+        for (Document document : documents) {
+            blackhole.consume(XmlUtil.getFullText(document));
+        }
+    }
+}
@@ -32,15 +32,23 @@ package org.opengeoportal.harvester.mvc;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.opengeoportal.harvester.api.client.http.HttpTransport;
+import org.opengeoportal.harvester.api.component.IngestProgress;
 import org.opengeoportal.harvester.api.domain.Ingest;
+import org.opengeoportal.harvester.api.domain.IngestJobCheckpoint;
 import org.opengeoportal.harvester.api.domain.IngestJobStatus;
+import org.opengeoportal.harvester.api.domain.IngestJobStatusValue;
 import org.opengeoportal.harvester.api.domain.IngestReport;
 import org.opengeoportal.harvester.api.domain.IngestReportErrorType;
 import org.opengeoportal.harvester.api.domain.IngestReportWarningType;
+import org.opengeoportal.harvester.api.scheduler.IngestConcurrencyLimiter;
+import org.opengeoportal.harvester.api.scheduler.IngestProgressRegistry;
+import org.opengeoportal.harvester.api.service.IngestJobCheckpointService;
 import org.opengeoportal.harvester.api.service.IngestJobStatusService;
 import org.opengeoportal.harvester.api.service.IngestReportErrorService;
 import org.opengeoportal.harvester.api.service.IngestReportService;
-import org.opengeoportal.harvester.api.service.IngestReportWarningsService;
+import org.opengeoportal.harvester.api.service.IngestReportSummary;
+import org.opengeoportal.harvester.api.service.IngestReportSummaryService;
 import org.opengeoportal.harvester.api.service.IngestService;
 import org.opengeoportal.harvester.mvc.bean.IngestListItem;
 import org.opengeoportal.harvester.mvc.bean.JsonResponse;
@@ -48,6 +56,7 @@ import org.opengeoportal.harvester.mvc.bean.JsonResponse.STATUS;
 import org.opengeoportal.harvester.mvc.bean.PageWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -79,13 +88,38 @@ public class ManageIngestController {
     @Resource
     IngestReportErrorService errorService;
     @Resource
-    IngestReportWarningsService warningService;
-    @Resource
     private IngestService ingestService;
     @Resource
     private IngestJobStatusService jobStatusService;
     @Resource
     private IngestReportService reportService;
+    @Resource
+    private IngestReportSummaryService summaryService;
+    @Resource
+    private IngestConcurrencyLimiter concurrencyLimiter;
+    @Resource
+    private HttpTransport httpTransport;
+    @Resource
+    private IngestProgressRegistry progressRegistry;
+    @Resource
+    private IngestJobCheckpointService checkpointService;
+
+    /**
+     * Compression level of the error metadata ZIP files, from 0 (stored) to
+     * 9 (smallest, slowest).
+     */
+    @Value("#{harvester['errorExport.compressionLevel'] ?: 1}")
+    private int errorExportCompressionLevel;
+    /**
+     * Max number of errors in a ZIP file, 0 for no limit.
+     */
+    @Value("#{harvester['errorExport.maxErrors'] ?: 0}")
+    private long errorExportMaxErrors;
+    /**
+     * Max time spent writing a ZIP file, 0 for no limit.
+     */
+    @Value("#{harvester['errorExport.maxSeconds'] ?: 0}")
+    private long errorExportMaxSeconds;
 
     @RequestMapping("/manageIngests")
     public String indexRedirection() {
@@ -114,13 +148,20 @@ public class ManageIngestController {
 
         List<IngestListItem> resultList = Lists
                 .newArrayListWithCapacity(resultPage.getNumberOfElements());
+        List<Long> ingestIds = Lists.newArrayListWithCapacity(resultPage
+                .getNumberOfElements());
+        for (Ingest ingest : resultPage) {
+            ingestIds.add(ingest.getId());
+        }
+        // One query and one index lookup for the whole page
+        Map<Long, IngestJobStatusValue> lastStatuses = jobStatusService
+                .findLastStatusValuesForIngests(ingestIds);
+        Map<Long, Date> nextRuns = ingestService.getNextRuns(ingestIds);
         Set<Long> executingJobs = ingestService.getCurrentlyExecutingJobs();
         for (Ingest ingest : resultPage) {
-        	IngestJobStatus lastStatus = jobStatusService.findLastStatusForIngest(ingest.getId());
-        	
-            IngestListItem ingestListItem = new IngestListItem(ingest, lastStatus);
-            Date nextRun = ingestService.getNextRun(ingest);
-            ingestListItem.setNextRun(nextRun);
+            IngestListItem ingestListItem = new IngestListItem(ingest,
+                    lastStatuses.get(ingest.getId()));
+            ingestListItem.setNextRun(nextRuns.get(ingest.getId()));
             ingestListItem
                     .setInProgress(executingJobs.contains(ingest.getId()));
 
@@ -195,64 +236,69 @@ public class ManageIngestController {
         Long reportId = report.getId();
         ingestMap.put("reportId", reportId);
 
+        IngestJobCheckpoint checkpoint = checkpointService.findByIngestId(id);
+        if (checkpoint != null) {
+            ingestMap.put("checkpoint", toCheckpointMap(checkpoint));
+        }
+
         Map<String, Object> passed = new HashMap<String, Object>();
         passed.put("restrictedRecords", report.getRestrictedRecords());
         passed.put("publicRecords", report.getPublicRecords());
         passed.put("vectorRecords", report.getVectorRecords());
         passed.put("rasterRecords", report.getRasterRecords());
+        passed.put("unchangedRecords", report.getUnchangedRecords());
+        passed.put("deletedRecords", report.getDeletedRecords());
         ingestMap.put("passed", passed);
 
+        Map<String, Object> transfer = new HashMap<String, Object>();
+        transfer.put("receivedBytes", report.getReceivedBytes());
+        transfer.put("decodedBytes", report.getDecodedBytes());
+        transfer.put("cacheHits", report.getCacheHits());
+        transfer.put("cacheMisses", report.getCacheMisses());
+        long cacheable = report.getCacheHits() + report.getCacheMisses();
+        transfer.put("cacheHitRate", cacheable == 0 ? 0
+                : Math.round(100.0 * report.getCacheHits() / cacheable));
+        ingestMap.put("transfer", transfer);
+
        /* Map<String, Object> warning = new HashMap<String, Object>();
         warning.put("unrequiredFields", report.getUnrequiredFieldWarnings());
         warning.put("webserviceWarnings", report.getWebServiceWarnings());
         ingestMap.put("warning", warning);
         */
         
-        // Summarize error count by category
+        IngestReportSummary summary = summaryService.getSummary(report);
+
+        // Summarize warning count by category
         Map<String, Object> warningsMap = new HashMap<String, Object>();
-        
-        Map<IngestReportWarningType, Long> unrequiredFieldMap = warningService.getCountWarningTypesByReportId(
-                reportId);
-        
-        warningsMap.put("unrequiredFields", unrequiredFieldMap.get(IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
-        
-        
-        // Detail of required field errors
-        List<SimpleEntry<String, Long>> unrequiredFieldSubcat = handleDetailWarningCount(
-                reportId);
-        warningsMap.put("unrequiredFieldsList", unrequiredFieldSubcat);
-        
-        
+        warningsMap.put("unrequiredFields", summary
+                .getWarningCount(IngestReportWarningType.UNREQUIRED_FIELD_WARNING));
+
+        // Detail of unrequired field warnings
+        warningsMap.put("unrequiredFieldsList", toEntryList(summary
+                .getWarningCountsByField(IngestReportWarningType.UNREQUIRED_FIELD_WARNING)));
         ingestMap.put("warning", warningsMap);
 
-        
-        
-        Map<IngestReportErrorType, Long> errorMap = errorService
-                .getCountErrorTypesByReportId(reportId);
         // Summarize error count by category
         Map<String, Object> errorsMap = new HashMap<String, Object>();
         errorsMap.put("requiredFields",
-                errorMap.get(IngestReportErrorType.REQUIRED_FIELD_ERROR));
+                summary.getErrorCount(IngestReportErrorType.REQUIRED_FIELD_ERROR));
         errorsMap.put("webServiceErrors",
-                errorMap.get(IngestReportErrorType.WEB_SERVICE_ERROR));
+                summary.getErrorCount(IngestReportErrorType.WEB_SERVICE_ERROR));
         errorsMap.put("systemErrors",
-                errorMap.get(IngestReportErrorType.SYSTEM_ERROR));
+                summary.getErrorCount(IngestReportErrorType.SYSTEM_ERROR));
         errorsMap.put("failedrecordscount", report.getFailedRecordsCount());
 
         // Detail of required field errors
-        List<SimpleEntry<String, Long>> requiredFieldSubcat = handleDetailErrorCount(
-                reportId, IngestReportErrorType.REQUIRED_FIELD_ERROR);
-        errorsMap.put("requiredFieldsList", requiredFieldSubcat);
+        errorsMap.put("requiredFieldsList", toEntryList(summary
+                .getErrorCountsByField(IngestReportErrorType.REQUIRED_FIELD_ERROR)));
 
         // Detail of web service errors
-        List<SimpleEntry<String, Long>> webServiceErrorList = handleDetailErrorCount(
-                reportId, IngestReportErrorType.WEB_SERVICE_ERROR);
-        errorsMap.put("webServiceErrorList", webServiceErrorList);
+        errorsMap.put("webServiceErrorList", toEntryList(summary
+                .getErrorCountsByField(IngestReportErrorType.WEB_SERVICE_ERROR)));
 
         // Detail of system errors
-        List<SimpleEntry<String, Long>> systemErrorList = handleDetailErrorCount(
-                reportId, IngestReportErrorType.SYSTEM_ERROR);
-        errorsMap.put("systemErrorList", systemErrorList);
+        errorsMap.put("systemErrorList", toEntryList(summary
+                .getErrorCountsByField(IngestReportErrorType.SYSTEM_ERROR)));
 
         ingestMap.put("error", errorsMap);
 
@@ -263,49 +309,22 @@ public class ManageIngestController {
     }
 
     /**
-     * Return a list of SimpleEntry with the subcategory of the error as key and
-     * the count of that subcategory for the ingest report passed as parameter.
-     *
-     * @param reportId  the ingest report identifier.
-     * @param errorType the main category of errors.
-     * @return a list of SimpleEntry with the subcategory of the error as key
-     * and the count of that subcategory for the ingest report passed as
-     * parameter.
-     */
-    private List<SimpleEntry<String, Long>> handleDetailErrorCount(
-            Long reportId, IngestReportErrorType errorType) {
-        List<SimpleEntry<String, Long>> errorSubcategoryList = Lists
-                .newArrayList();
-        Map<String, Long> errorMap = errorService.getCountErrorsByReportId(
-                reportId, errorType);
-        for (Entry<String, Long> entry : errorMap.entrySet()) {
-            errorSubcategoryList.add(new SimpleEntry<String, Long>(entry
-                    .getKey(), entry.getValue()));
-        }
-        return errorSubcategoryList;
-    }
-    
-    /**
-     * Return a list of SimpleEntry with the subcategory of the error as key and
-     * the count of that subcategory for the ingest report passed as parameter.
+     * Return a list of SimpleEntry with the subcategory of the errors or
+     * warnings as key and the count of that subcategory as value.
      *
-     * @param reportId  the ingest report identifier.
-     * @param errorType the main category of errors.
-     * @return a list of SimpleEntry with the subcategory of the error as key
-     * and the count of that subcategory for the ingest report passed as
-     * parameter.
+     * @param countsBySubcategory the count of each subcategory.
+     * @return a list of SimpleEntry with the subcategory as key and its count
+     * as value, in the same order than the map.
      */
-    private List<SimpleEntry<String, Long>> handleDetailWarningCount(
-            Long reportId) {
-        List<SimpleEntry<String, Long>> warningSubcategoryList = Lists
-                .newArrayList();
-        Map<String, Long> warningMap = warningService.getCountWarningsByReportId(
-                reportId);
-        for (Entry<String, Long> entry : warningMap.entrySet()) {
-            warningSubcategoryList.add(new SimpleEntry<String, Long>(entry
+    private List<SimpleEntry<String, Long>> toEntryList(
+            Map<String, Long> countsBySubcategory) {
+        List<SimpleEntry<String, Long>> subcategoryList = Lists
+                .newArrayListWithCapacity(countsBySubcategory.size());
+        for (Entry<String, Long> entry : countsBySubcategory.entrySet()) {
+            subcategoryList.add(new SimpleEntry<String, Long>(entry
                     .getKey(), entry.getValue()));
         }
-        return warningSubcategoryList;
+        return subcategoryList;
     }
 
     @RequestMapping("/rest/ingests/{id}/metadata/{reportId}")
@@ -316,18 +335,25 @@ public class ManageIngestController {
                                  @RequestParam(defaultValue = "") String[] systemError,
                                  OutputStream out, HttpServletResponse response) {
 
-        // response.setHeader("Content-Type", "text/plain; charset=utf-8");
-        response.setHeader("Content-Type:", "application/octet-stream");
+        response.setContentType("application/zip");
         response.setHeader("Content-Disposition",
                 "attachment; filename=metadata_" + id + ".zip");
 
         ZipOutputStream zipOutputStream = null;
         try {
+            // Errors are streamed as they are read, the response has no
+            // known length
             zipOutputStream = new ZipOutputStream(out);
-            zipOutputStream.setLevel(9);
-            errorService.writeErrorZipForIngest(reportId, zipOutputStream,
-                    requiredField, webserviceError, systemError);
+            zipOutputStream.setLevel(errorExportCompressionLevel);
+            boolean complete = errorService.writeErrorZipForIngest(reportId,
+                    zipOutputStream, requiredField, webserviceError,
+                    systemError, errorExportMaxErrors,
+                    errorExportMaxSeconds * 1000L);
             zipOutputStream.close();
+            if (!complete) {
+                logger.info("Zip report detail for ingest report " + reportId
+                        + " truncated by the export limits");
+            }
 
         } catch (IOException e) {
             logger.warn("Error generating zip report detail for ingest report " + reportId);
@@ -340,6 +366,107 @@ public class ManageIngestController {
         }
     }
 
+    /**
+     * Return the state of the execution queue: running and waiting ingests by
+     * host and wait times.
+     *
+     * @return the queue statistics.
+     */
+    @RequestMapping("/rest/ingests/queue")
+    @ResponseBody
+    public IngestConcurrencyLimiter.Statistics getExecutionQueue() {
+        return concurrencyLimiter.getStatistics();
+    }
+
+    /**
+     * Return the usage of the HTTP connection pool shared by the remote
+     * catalogue clients: leased and idle connections and wait times.
+     *
+     * @return the connection pool statistics.
+     */
+    @RequestMapping("/rest/ingests/connections")
+    @ResponseBody
+    public HttpTransport.Statistics getConnectionPool() {
+        return httpTransport.getStatistics();
+    }
+
+    /**
+     * Return the live progress of the ingests running in this host.
+     *
+     * @return a map with the progress of each running ingest in the
+     * "elements" key.
+     */
+    @RequestMapping("/rest/ingests/progress")
+    @ResponseBody
+    public Map<String, Object> getAllProgress() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> elements = Lists.newArrayList();
+        for (IngestProgress progress : progressRegistry.getAll()) {
+            elements.add(toProgressMap(progress, now));
+        }
+        Map<String, Object> resultMap = Maps.newHashMap();
+        resultMap.put("elements", elements);
+        return resultMap;
+    }
+
+    /**
+     * Return the live progress of an ingest. Clients poll it while the
+     * ingest runs, it does not hold a request thread between two updates.
+     *
+     * @param id the ingest identifier.
+     * @return response with the progress or a fail status if the ingest is
+     * not running in this host.
+     */
+    @RequestMapping("/rest/ingests/{id}/progress")
+    @ResponseBody
+    public JsonResponse ingestProgress(@PathVariable Long id) {
+        JsonResponse response = new JsonResponse();
+        IngestProgress progress = progressRegistry.get(id);
+        if (progress == null) {
+            response.setStatus(STATUS.FAIL);
+            Map<String, Object> errorMap = Maps.newHashMap();
+            errorMap.put("errorCode", "INGEST_NOT_RUNNING");
+            errorMap.put("ingestId", id);
+            response.setResult(errorMap);
+            return response;
+        }
+        response.setStatus(STATUS.SUCCESS);
+        response.setResult(toProgressMap(progress,
+                System.currentTimeMillis()));
+        return response;
+    }
+
+    /**
+     * Build the response map of a job progress.
+     *
+     * @param progress the progress.
+     * @param now      current time in milliseconds.
+     * @return the progress values, the ETA is <code>null</code> if it
+     * cannot be estimated.
+     */
+    private Map<String, Object> toProgressMap(IngestProgress progress,
+                                              long now) {
+        Map<String, Object> progressMap = Maps.newHashMap();
+        progressMap.put("ingestId", progress.getIngestId());
+        progressMap.put("name", progress.getIngestName());
+        progressMap.put("jobId", progress.getJobId().toString());
+        progressMap.put("startTime", new Date(progress.getStartTime()));
+        progressMap.put("pagesFetched", progress.getPagesFetched());
+        progressMap.put("recordsFetched", progress.getRecordsFetched());
+        progressMap.put("recordsParsed", progress.getRecordsParsed());
+        progressMap.put("recordsIndexed", progress.getRecordsIndexed());
+        progressMap.put("recordsFailed", progress.getRecordsFailed());
+        long total = progress.getTotalRecords();
+        progressMap.put("totalRecords",
+                total == IngestProgress.UNKNOWN ? null : total);
+        progressMap.put("recordsPerSecond",
+                Math.round(progress.getRecordsPerSecond(now) * 10) / 10.0);
+        long eta = progress.getEtaSeconds(now);
+        progressMap.put("etaSeconds", eta == IngestProgress.UNKNOWN ? null
+                : eta);
+        return progressMap;
+    }
+
     /**
      * Interrupt the Ingest's job if it is running
      *
@@ -376,4 +503,62 @@ public class ManageIngestController {
         return response;
     }
 
+    /**
+     * Resume the Ingest's last interrupted or failed job from its last
+     * checkpoint, continuing the same report.
+     *
+     * @param id the ingest identifier.
+     * @return response indicating success or fail and the cause.
+     */
+    @RequestMapping("/rest/ingests/{id}/resume")
+    @ResponseBody
+    public JsonResponse resumeIngest(@PathVariable Long id) {
+        JsonResponse response = new JsonResponse();
+        try {
+            IngestJobCheckpoint checkpoint = checkpointService
+                    .findByIngestId(id);
+            if (checkpoint == null) {
+                response.setStatus(STATUS.FAIL);
+                Map<String, Object> errorMap = Maps.newHashMap();
+                errorMap.put("errorCode", "INGEST_WITHOUT_CHECKPOINT");
+                errorMap.put("ingestId", id);
+                response.setResult(errorMap);
+                return response;
+            }
+
+            boolean resumed = ingestService.resumeIngest(id);
+            if (resumed) {
+                response.setStatus(STATUS.SUCCESS);
+                Map<String, Object> data = toCheckpointMap(checkpoint);
+                data.put("ingestId", id);
+                response.setResult(data);
+
+            } else {
+                response.setStatus(STATUS.FAIL);
+                Map<String, Object> errorMap = Maps.newHashMap();
+                errorMap.put("errorCode", "ERROR_RESUMING_INGEST");
+                errorMap.put("ingestId", id);
+                response.setResult(errorMap);
+            }
+
+        } catch (Exception e) {
+            logger.error("Error resuming ingest " + id, e);
+            response.setStatus(STATUS.FAIL);
+            Map<String, Object> errorMap = Maps.newHashMap();
+            errorMap.put("errorCode", "EXCEPTION_RESUMING_INGEST");
+            errorMap.put("ingestId", id);
+            response.setResult(errorMap);
+        }
+        return response;
+    }
+
+    private Map<String, Object> toCheckpointMap(IngestJobCheckpoint checkpoint) {
+        Map<String, Object> checkpointMap = Maps.newHashMap();
+        checkpointMap.put("reportId", checkpoint.getReport().getId());
+        checkpointMap.put("position", checkpoint.getPosition());
+        checkpointMap.put("records", checkpoint.getRecords());
+        checkpointMap.put("checkpointTime", checkpoint.getCheckpointTime());
+        return checkpointMap;
+    }
+
 }
@@ -0,0 +1,35 @@
+package org.opengeoportal.harvester.mvc;
+
+import java.io.IOException;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+
+import org.opengeoportal.harvester.api.metrics.MetricsRegistry;
+import org.opengeoportal.harvester.api.metrics.MetricsTextFormat;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Serves the harvester metrics in a text format that scrapers can consume.
+ */
+@Controller
+public class MetricsController {
+    /**
+     * Prefix of the metric names.
+     */
+    private static final String METRICS_PREFIX = "ogp_harvester";
+
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
+    private final MetricsTextFormat textFormat = new MetricsTextFormat(
+            METRICS_PREFIX);
+
+    @RequestMapping(value = "/rest/metrics", method = RequestMethod.GET)
+    public void getMetrics(HttpServletResponse response) throws IOException {
+        response.setContentType(MetricsTextFormat.CONTENT_TYPE);
+        textFormat.write(metricsRegistry, response.getWriter());
+    }
+}
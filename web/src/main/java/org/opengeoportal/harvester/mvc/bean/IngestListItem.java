@@ -48,9 +48,20 @@ public class IngestListItem {
 	private Ingest ingest;
 	private Date nextRun;
 	private boolean inProgress = false;
-	private IngestJobStatus status;
+	private IngestJobStatusValue status;
 
 	public IngestListItem(Ingest ingest, IngestJobStatus lastStatus) {
+		this(ingest, lastStatus != null ? lastStatus.getStatus() : null);
+	}
+
+	/**
+	 * @param ingest
+	 *            the ingest.
+	 * @param lastStatus
+	 *            status of the last execution of the ingest, or
+	 *            <code>null</code> if it has never been executed.
+	 */
+	public IngestListItem(Ingest ingest, IngestJobStatusValue lastStatus) {
 		this.ingest = ingest;
 		this.status = lastStatus;
 
@@ -89,11 +100,7 @@ public class IngestListItem {
 	}
 
 	public IngestJobStatusValue getStatus() {
-		if (status != null) {
-			return status.getStatus();
-		} else {
-			return null;
-		}
+		return status;
 	}
 
 	public InstanceType getType() {